@@ -0,0 +1,747 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package edu.tufts.osidimpl.repository.localfiles;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * An in-memory index of the files under a set of local roots, built on a
+ * background thread and saved between runs, so a search of the local file
+ * system is a lookup instead of a walk of the disk.  Names, root-relative
+ * paths, sizes and modification times are indexed, and optionally the words
+ * in small text files.  Once the initial walk is done, a WatchService keeps
+ * the index current, with an occasional full rescan to catch anything the
+ * watcher misses (directories past the watch limit, overflows).
+ *
+ * Query words match any indexed word they're a prefix of, and every word
+ * must match.  Results are ranked: name matches over path matches over
+ * content matches, whole words over prefixes.
+ */
+final class LocalFileIndex {
+
+  private static final org.apache.log4j.Logger Log =
+    org.apache.log4j.Logger.getLogger(LocalFileIndex.class);
+
+  static final int DEFAULT_PAGE_SIZE = 100;
+
+  private static final int MAX_DEPTH = 12;
+  private static final int MAX_ENTRIES = 250000;
+  private static final int MAX_WATCHED = 4096;
+  private static final int MAX_TEXT_BYTES = 64 * 1024;
+  private static final int MAX_TEXT_TOKENS = 2000;
+  private static final long SAVE_DELAY = 5 * 1000;
+  private static final long RESCAN_INTERVAL = 30 * 60 * 1000;
+
+  private static final int INDEX_VERSION = 2;
+
+  private static final Set<String> TextExtensions = new HashSet<String>(
+    Arrays.asList(
+      "txt",
+      "text",
+      "md",
+      "csv",
+      "tsv",
+      "htm",
+      "html",
+      "xml",
+      "vue",
+      "json",
+      "properties",
+      "java"
+    )
+  );
+
+  private static final String[] NONE = new String[0];
+
+  /** a single indexed file or directory */
+  static final class Entry {
+
+    final String path;
+    final String name;
+    final boolean directory;
+    final long size;
+    final long modified;
+    final String[] nameTokens;
+    final String[] pathTokens;
+    final String[] textTokens;
+    /** the scan in which this entry was last seen on disk */
+    int scan;
+
+    Entry(
+      String path,
+      boolean directory,
+      long size,
+      long modified,
+      String relativeParent,
+      String[] textTokens
+    ) {
+      this.path = path;
+      this.name = new File(path).getName();
+      this.directory = directory;
+      this.size = size;
+      this.modified = modified;
+      this.nameTokens = tokenize(name);
+      this.pathTokens = tokenize(relativeParent);
+      this.textTokens = textTokens;
+    }
+
+    public String toString() {
+      return "Entry[" + path + "]";
+    }
+  }
+
+  /** one page of ranked search results */
+  static final class Page {
+
+    final List<Entry> entries;
+    final int offset;
+    /** the total number of matches, of which this page is a part */
+    final int total;
+
+    Page(List<Entry> entries, int offset, int total) {
+      this.entries = entries;
+      this.offset = offset;
+      this.total = total;
+    }
+  }
+
+  private static LocalFileIndex Default;
+
+  /**
+   * @param indexText true to also index the words in small text files
+   * @return the index of the given roots, started on first use
+   */
+  static synchronized LocalFileIndex getDefault(
+    List<File> roots,
+    boolean indexText
+  ) {
+    if (Default != null && Default.mIndexText != indexText) {
+      // the preference changed: start again with the text indexed, or not
+      try {
+        Default.close();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      Default = null;
+    }
+    if (Default == null) {
+      File indexFile = null;
+      try {
+        indexFile =
+          new File(tufts.vue.VueUtil.getDefaultUserFolder(), "localfiles.index");
+      } catch (Throwable t) {
+        Log.warn("no user folder; the local file index won't be saved: " + t);
+      }
+      Default = new LocalFileIndex(roots, indexFile, indexText);
+      Default.start();
+    }
+    return Default;
+  }
+
+  private final List<Path> mRoots = new ArrayList<Path>();
+  private final File mIndexFile;
+  private final boolean mIndexText;
+
+  // all guarded by this
+  private final TreeMap<String, Entry> mEntries = new TreeMap<String, Entry>();
+  private final TreeMap<String, Set<Entry>> mTokens = new TreeMap<String, Set<Entry>>();
+  private boolean mReady;
+  private boolean mDirty;
+  private int mScan;
+  /** true while the saved index has no text, but we want it: unchanged files are indexed again */
+  private boolean mRetext;
+
+  // only touched by the index thread, but for close()
+  private volatile WatchService mWatcher;
+  private final Map<WatchKey, Path> mWatched = new HashMap<WatchKey, Path>();
+
+  private volatile Thread mThread;
+
+  /**
+   * @param roots the directories to index
+   * @param indexFile where the index is saved between runs, or null for none
+   * @param indexText true to also index the words in small text files
+   */
+  LocalFileIndex(List<File> roots, File indexFile, boolean indexText) {
+    for (File root : roots) {
+      final Path path = root.toPath().toAbsolutePath().normalize();
+      if (!mRoots.contains(path)) mRoots.add(path);
+    }
+    // drop roots that are inside another root: they'd be indexed twice
+    for (Iterator<Path> i = mRoots.iterator(); i.hasNext();) {
+      final Path root = i.next();
+      for (Path other : mRoots) {
+        if (other != root && root.startsWith(other)) {
+          i.remove();
+          break;
+        }
+      }
+    }
+    mIndexFile = indexFile;
+    mIndexText = indexText;
+  }
+
+  /** load the saved index, then build it afresh and keep it current on a background thread */
+  void start() {
+    final Thread thread = new Thread("VUE-LocalFile-Index") {
+      public void run() {
+        try {
+          if (mIndexFile != null && mIndexFile.isFile()) load();
+          rescan();
+          watch();
+        } catch (InterruptedException e) {
+          // closed
+        } catch (ClosedWatchServiceException e) {
+          // closed
+        } catch (Throwable t) {
+          Log.error("local file index failed", t);
+        } finally {
+          if (mIndexFile != null) saveIfDirty();
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    mThread = thread;
+    thread.start();
+  }
+
+  /** stop keeping the index current, and save it */
+  void close() throws InterruptedException {
+    final Thread thread = mThread;
+    if (thread == null) return;
+    mThread = null;
+    thread.interrupt();
+    if (mWatcher != null) {
+      try {
+        mWatcher.close();
+      } catch (IOException e) {}
+    }
+    thread.join();
+  }
+
+  /** @return true once the index holds a complete walk of the roots, from this run or a saved one */
+  synchronized boolean isReady() {
+    return mReady;
+  }
+
+  /** wait up to the given time for the index to become ready: for tests */
+  synchronized boolean awaitReady(long millis) throws InterruptedException {
+    final long until = System.currentTimeMillis() + millis;
+    long remaining;
+    while (!mReady && (remaining = until - System.currentTimeMillis()) > 0) wait(
+      remaining
+    );
+    return mReady;
+  }
+
+  synchronized int size() {
+    return mEntries.size();
+  }
+
+  //----------------------------------------------------------------------------
+  // searching
+  //----------------------------------------------------------------------------
+
+  /**
+   * @return the given page of the files matching every word of the query,
+   * best matches first
+   */
+  Page search(String query, int offset, int pageSize) {
+    final String[] words = tokenize(query);
+    if (words.length == 0) return new Page(Collections.<Entry>emptyList(), offset, 0);
+    final String phrase = query.trim().toLowerCase();
+
+    final List<Entry> matches;
+    final Map<Entry, Integer> scores = new HashMap<Entry, Integer>();
+    synchronized (this) {
+      Set<Entry> candidates = null;
+      for (String word : words) {
+        final Set<Entry> found = new HashSet<Entry>();
+        for (Set<Entry> s : mTokens
+          .subMap(word, true, word + Character.MAX_VALUE, false)
+          .values()) found.addAll(s);
+        if (candidates == null) candidates = found; else candidates.retainAll(
+          found
+        );
+        if (candidates.isEmpty()) break;
+      }
+      matches = new ArrayList<Entry>(candidates);
+      for (Entry e : matches) scores.put(e, score(e, words, phrase));
+    }
+
+    Collections.sort(
+      matches,
+      new Comparator<Entry>() {
+        public int compare(Entry a, Entry b) {
+          final int sa = scores.get(a), sb = scores.get(b);
+          if (sa != sb) return sa > sb ? -1 : 1;
+          if (a.name.length() != b.name.length()) return (
+            a.name.length() - b.name.length()
+          );
+          if (a.modified != b.modified) return a.modified > b.modified ? -1 : 1;
+          return a.path.compareTo(b.path);
+        }
+      }
+    );
+
+    final int from = Math.max(0, Math.min(offset, matches.size()));
+    final int to = Math.min(matches.size(), from + Math.max(0, pageSize));
+    return new Page(
+      new ArrayList<Entry>(matches.subList(from, to)),
+      from,
+      matches.size()
+    );
+  }
+
+  private static int score(Entry e, String[] words, String phrase) {
+    int score = 0;
+    for (String word : words) {
+      score +=
+        Math.max(
+          match(e.nameTokens, word, 10, 6),
+          Math.max(
+            match(e.pathTokens, word, 3, 2),
+            match(e.textTokens, word, 2, 1)
+          )
+        );
+    }
+    final String name = e.name.toLowerCase();
+    if (name.equals(phrase)) score += 20; else if (name.startsWith(phrase)) score +=
+      5;
+    return score;
+  }
+
+  private static int match(String[] tokens, String word, int exact, int prefix) {
+    int best = 0;
+    for (String token : tokens) {
+      if (token.equals(word)) return exact;
+      if (token.startsWith(word)) best = prefix;
+    }
+    return best;
+  }
+
+  /** @return the distinct lower-cased runs of letters and digits in the text */
+  static String[] tokenize(String text) {
+    if (text == null || text.length() == 0) return NONE;
+    final Set<String> tokens = new LinkedHashSet<String>();
+    final StringBuilder token = new StringBuilder();
+    for (int i = 0, len = text.length(); i <= len; i++) {
+      final char c = i < len ? text.charAt(i) : ' ';
+      if (Character.isLetterOrDigit(c)) {
+        token.append(Character.toLowerCase(c));
+      } else if (token.length() > 0) {
+        tokens.add(token.toString());
+        token.setLength(0);
+      }
+    }
+    return tokens.toArray(new String[tokens.size()]);
+  }
+
+  //----------------------------------------------------------------------------
+  // maintaining the index
+  //----------------------------------------------------------------------------
+
+  private synchronized void put(Entry e) {
+    final Entry old = mEntries.put(e.path, e);
+    if (old != null) unlink(old);
+    link(e, e.nameTokens);
+    link(e, e.pathTokens);
+    link(e, e.textTokens);
+    mDirty = true;
+  }
+
+  private void link(Entry e, String[] tokens) {
+    for (String token : tokens) {
+      Set<Entry> set = mTokens.get(token);
+      if (set == null) mTokens.put(token, set = new HashSet<Entry>(2));
+      set.add(e);
+    }
+  }
+
+  private void unlink(Entry e) {
+    unlink(e, e.nameTokens);
+    unlink(e, e.pathTokens);
+    unlink(e, e.textTokens);
+  }
+
+  private void unlink(Entry e, String[] tokens) {
+    for (String token : tokens) {
+      final Set<Entry> set = mTokens.get(token);
+      if (set != null && set.remove(e) && set.isEmpty()) mTokens.remove(token);
+    }
+  }
+
+  /** remove the given path, and everything under it */
+  private synchronized void remove(String path) {
+    final Entry e = mEntries.remove(path);
+    if (e != null) unlink(e);
+    final Collection<Entry> under = mEntries
+      .subMap(
+        path + File.separator,
+        true,
+        path + File.separator + Character.MAX_VALUE,
+        false
+      )
+      .values();
+    for (Entry child : under) unlink(child);
+    under.clear();
+    mDirty = true;
+  }
+
+  private Path rootOf(Path path) {
+    for (Path root : mRoots) if (path.startsWith(root)) return root;
+    return null;
+  }
+
+  /** index the given file if it's new or has changed since it was last indexed */
+  private void update(Path root, Path path, BasicFileAttributes attrs) {
+    final String key = path.toString();
+    final long size = attrs.isDirectory() ? 0 : attrs.size();
+    final long modified = attrs.lastModifiedTime().toMillis();
+    synchronized (this) {
+      final Entry old = mEntries.get(key);
+      if (
+        old != null &&
+        !(mRetext && attrs.isRegularFile()) &&
+        old.directory == attrs.isDirectory() &&
+        old.size == size &&
+        old.modified == modified
+      ) {
+        old.scan = mScan;
+        return;
+      }
+    }
+    final Path parent = path.getParent();
+    final String relativeParent = path.equals(root) || parent == null
+      ? ""
+      : root.relativize(parent).toString();
+    final Entry e = new Entry(
+      key,
+      attrs.isDirectory(),
+      size,
+      modified,
+      relativeParent,
+      attrs.isRegularFile() ? extractText(path, size) : NONE
+    );
+    synchronized (this) {
+      e.scan = mScan;
+      put(e);
+    }
+  }
+
+  private String[] extractText(Path path, long size) {
+    if (!mIndexText || size > MAX_TEXT_BYTES) return NONE;
+    final String name = path.getFileName().toString();
+    final int dot = name.lastIndexOf('.');
+    if (dot < 0) return NONE;
+    final String extension = name.substring(dot + 1).toLowerCase();
+    if (!TextExtensions.contains(extension)) return NONE;
+    try {
+      String text = new String(Files.readAllBytes(path), "UTF-8");
+      if (extension.startsWith("htm") || extension.equals("xml") || extension.equals("vue")) text =
+        text.replaceAll("<[^>]*>", " ");
+      final String[] tokens = tokenize(text);
+      return tokens.length > MAX_TEXT_TOKENS
+        ? Arrays.copyOf(tokens, MAX_TEXT_TOKENS)
+        : tokens;
+    } catch (Throwable t) {
+      if (Log.isDebugEnabled()) Log.debug("can't read " + path + ": " + t);
+      return NONE;
+    }
+  }
+
+  private static boolean isHidden(Path path) {
+    final Path name = path.getFileName();
+    if (name != null && name.toString().startsWith(".")) return true;
+    try {
+      return Files.isHidden(path);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /** walk the given directory, indexing and watching everything under it */
+  private void walk(final Path root, Path dir) throws IOException {
+    final int depth = root.relativize(dir).getNameCount();
+    if (depth >= MAX_DEPTH) return;
+    Files.walkFileTree(
+      dir,
+      EnumSet.noneOf(FileVisitOption.class),
+      MAX_DEPTH - depth,
+      new SimpleFileVisitor<Path>() {
+        public FileVisitResult preVisitDirectory(
+          Path d,
+          BasicFileAttributes attrs
+        ) throws IOException {
+          if (Thread.currentThread().isInterrupted()) return FileVisitResult.TERMINATE;
+          if (!d.equals(root) && isHidden(d)) return FileVisitResult.SKIP_SUBTREE;
+          if (size() >= MAX_ENTRIES) return FileVisitResult.TERMINATE;
+          update(root, d, attrs);
+          watch(d);
+          return FileVisitResult.CONTINUE;
+        }
+
+        public FileVisitResult visitFile(Path f, BasicFileAttributes attrs) {
+          if (!isHidden(f) && !attrs.isDirectory()) update(root, f, attrs);
+          return FileVisitResult.CONTINUE;
+        }
+
+        public FileVisitResult visitFileFailed(Path f, IOException e) {
+          if (Log.isDebugEnabled()) Log.debug("can't index " + f + ": " + e);
+          return FileVisitResult.CONTINUE;
+        }
+      }
+    );
+  }
+
+  private void watch(Path dir) {
+    if (mWatcher == null || mWatched.size() >= MAX_WATCHED) return;
+    try {
+      final WatchKey key = dir.register(
+        mWatcher,
+        StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_DELETE,
+        StandardWatchEventKinds.ENTRY_MODIFY
+      );
+      mWatched.put(key, dir);
+    } catch (Throwable t) {
+      if (Log.isDebugEnabled()) Log.debug("can't watch " + dir + ": " + t);
+    }
+  }
+
+  /** walk every root, then drop whatever wasn't found */
+  private void rescan() throws InterruptedException {
+    if (mWatcher == null) {
+      try {
+        mWatcher = FileSystems.getDefault().newWatchService();
+      } catch (Throwable t) {
+        Log.warn("no watch service; the local file index will only be rescanned periodically: " + t);
+      }
+    }
+    final long start = System.currentTimeMillis();
+    final int scan;
+    synchronized (this) {
+      scan = ++mScan;
+    }
+    for (Path root : mRoots) {
+      try {
+        if (Files.isDirectory(root)) walk(root, root);
+      } catch (Throwable t) {
+        Log.warn("failed to index " + root + ": " + t);
+      }
+      if (Thread.interrupted()) throw new InterruptedException();
+    }
+    synchronized (this) {
+      for (Iterator<Entry> i = mEntries.values().iterator(); i.hasNext();) {
+        final Entry e = i.next();
+        if (e.scan != scan) {
+          unlink(e);
+          i.remove();
+          mDirty = true;
+        }
+      }
+      mReady = true;
+      mRetext = false;
+      notifyAll();
+    }
+    Log.info(
+      "indexed " +
+      size() +
+      " local files in " +
+      (System.currentTimeMillis() - start) +
+      "ms; watching " +
+      mWatched.size() +
+      " directories"
+    );
+    saveIfDirty();
+  }
+
+  /** apply file system changes as they're reported, saving once things quiet down */
+  private void watch() throws InterruptedException {
+    long lastScan = System.currentTimeMillis();
+    for (;;) {
+      final boolean dirty;
+      synchronized (this) {
+        dirty = mDirty;
+      }
+      final WatchKey key = mWatcher == null
+        ? null
+        : mWatcher.poll(
+          dirty ? SAVE_DELAY : RESCAN_INTERVAL,
+          java.util.concurrent.TimeUnit.MILLISECONDS
+        );
+      if (mWatcher == null) Thread.sleep(RESCAN_INTERVAL);
+      if (key == null) {
+        if (dirty) saveIfDirty(); else if (
+          System.currentTimeMillis() - lastScan >= RESCAN_INTERVAL
+        ) {
+          rescan();
+          lastScan = System.currentTimeMillis();
+        }
+        continue;
+      }
+      final Path dir = mWatched.get(key);
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (dir == null) break;
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+          changed(dir, true);
+        } else {
+          changed(
+            dir.resolve((Path) event.context()),
+            event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+          );
+        }
+      }
+      if (!key.reset()) mWatched.remove(key);
+    }
+  }
+
+  /**
+   * bring the index up to date with whatever is now at the given path
+   * @param walk true to also walk the path if it's a directory: a directory
+   * is modified whenever its contents change, which are watched themselves
+   */
+  private void changed(Path path, boolean walk) {
+    final Path root = rootOf(path);
+    if (root == null || isHidden(path)) return;
+    try {
+      final BasicFileAttributes attrs = Files.readAttributes(
+        path,
+        BasicFileAttributes.class,
+        LinkOption.NOFOLLOW_LINKS
+      );
+      if (attrs.isDirectory() && walk) {
+        walk(root, path);
+      } else {
+        update(root, path, attrs);
+      }
+    } catch (NoSuchFileException e) {
+      remove(path.toString());
+    } catch (Throwable t) {
+      if (Log.isDebugEnabled()) Log.debug("can't index " + path + ": " + t);
+    }
+  }
+
+  //----------------------------------------------------------------------------
+  // persistence
+  //----------------------------------------------------------------------------
+
+  private void saveIfDirty() {
+    synchronized (this) {
+      if (!mDirty) return;
+    }
+    save();
+  }
+
+  void save() {
+    if (mIndexFile == null) return;
+    final List<Entry> entries;
+    synchronized (this) {
+      mDirty = false;
+      entries = new ArrayList<Entry>(mEntries.values());
+    }
+    final File tmp = new File(mIndexFile.getPath() + ".tmp");
+    try {
+      final DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tmp))
+      );
+      try {
+        out.writeInt(INDEX_VERSION);
+        out.writeBoolean(mIndexText);
+        out.writeInt(entries.size());
+        for (Entry e : entries) {
+          out.writeUTF(e.path);
+          out.writeBoolean(e.directory);
+          out.writeLong(e.size);
+          out.writeLong(e.modified);
+          out.writeInt(e.textTokens.length);
+          for (String token : e.textTokens) out.writeUTF(token);
+        }
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(mIndexFile)) {
+        mIndexFile.delete();
+        if (!tmp.renameTo(mIndexFile)) throw new IOException(
+          "can't rename " + tmp + " to " + mIndexFile
+        );
+      }
+    } catch (Throwable t) {
+      Log.warn("failed to save " + mIndexFile + ": " + t);
+      tmp.delete();
+    }
+  }
+
+  /**
+   * load the saved index: entries no longer under one of our roots are dropped.
+   * If it was saved with text indexed and we don't want it, the text is dropped;
+   * if it was saved without, the next rescan indexes the text of every file.
+   */
+  void load() {
+    try {
+      final DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(mIndexFile))
+      );
+      final boolean savedText;
+      try {
+        if (in.readInt() != INDEX_VERSION) {
+          Log.info("ignoring old index " + mIndexFile);
+          return;
+        }
+        savedText = in.readBoolean();
+        for (int count = in.readInt(); count > 0; count--) {
+          final String path = in.readUTF();
+          final boolean directory = in.readBoolean();
+          final long size = in.readLong();
+          final long modified = in.readLong();
+          String[] text = new String[in.readInt()];
+          for (int i = 0; i < text.length; i++) text[i] = in.readUTF();
+          if (!mIndexText && text.length > 0) text = NONE;
+          final Path p = Paths.get(path);
+          final Path root = rootOf(p);
+          if (root == null) continue;
+          final Path parent = p.getParent();
+          put(
+            new Entry(
+              path,
+              directory,
+              size,
+              modified,
+              p.equals(root) || parent == null
+                ? ""
+                : root.relativize(parent).toString(),
+              text
+            )
+          );
+        }
+      } finally {
+        in.close();
+      }
+      synchronized (this) {
+        mDirty = savedText != mIndexText;
+        mRetext = mIndexText && !savedText;
+        mReady = mEntries.size() > 0;
+        notifyAll();
+      }
+      Log.info("loaded " + size() + " entries from " + mIndexFile);
+    } catch (Throwable t) {
+      Log.warn("failed to load " + mIndexFile + ": " + t);
+    }
+  }
+}
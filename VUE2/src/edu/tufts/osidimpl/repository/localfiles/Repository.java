@@ -26,6 +26,20 @@ import tufts.vue.*;
 
 public class Repository implements org.osid.repository.Repository {
 
+  /**
+   * Indexing the words in text files means reading everything small enough
+   * under the desktop folders, so it's off unless the user asks for it.
+   */
+  private static final edu.tufts.vue.preferences.implementations.BooleanPreference indexContentsPref =
+    edu.tufts.vue.preferences.implementations.BooleanPreference.create(
+      edu.tufts.vue.preferences.PreferenceConstants.DATA_CATEGORY,
+      "indexLocalFileContents",
+      VueResources.getString("preference.localfilecontents.title"),
+      VueResources.getString("preference.localfilecontents.description"),
+      Boolean.FALSE,
+      true
+    );
+
   private org.osid.shared.Id repositoryId = null;
   private org.osid.shared.Type repositoryType = null;
   private org.osid.shared.Type assetType = new Type(
@@ -36,6 +50,7 @@ public class Repository implements org.osid.repository.Repository {
   private String displayName = null;
   private String description = null;
   private java.util.Vector searchTypeVector = null;
+  private java.util.List<File> indexRoots = null;
 
   protected Repository(
     String displayName,
@@ -404,7 +419,23 @@ public class Repository implements org.osid.repository.Repository {
     String criteria = ((String) searchCriteria).toLowerCase();
     java.util.Vector result = new java.util.Vector();
     try {
-      // get all assets and look for matches
+      LocalFileIndex index = getIndex();
+      if (index != null && index.isReady()) {
+        LocalFileIndex.Page page = index.search(
+          criteria,
+          intProperty(searchProperties, "offset", 0),
+          intProperty(
+            searchProperties,
+            "pageSize",
+            LocalFileIndex.DEFAULT_PAGE_SIZE
+          )
+        );
+        for (LocalFileIndex.Entry e : page.entries) {
+          result.addElement(new Asset(cabinetEntry(e), this.repositoryId));
+        }
+        return new AssetIterator(result);
+      }
+      // the index isn't built yet: get all assets and look for matches
       org.osid.repository.AssetIterator ai = getAssets();
       while (ai.hasNextAsset()) {
         org.osid.repository.Asset a = ai.nextAsset();
@@ -421,6 +452,67 @@ public class Repository implements org.osid.repository.Repository {
     }
   }
 
+  /**
+   * @return the index of the local roots, started by the first search, or null if it can't be.
+   * Asked for on every search, so a change to the content indexing preference rebuilds it.
+   */
+  private synchronized LocalFileIndex getIndex() {
+    try {
+      if (this.indexRoots == null) {
+        Vector cabVector = new Vector();
+        installDesktopFolders(cabVector);
+        java.util.List<File> roots = new java.util.ArrayList<File>();
+        Iterator iterator = cabVector.iterator();
+        while (iterator.hasNext()) {
+          File dir = ((LocalCabinet) iterator.next()).getFile();
+          // whole file systems are left to the walk in getAssets
+          if (dir.getParentFile() != null) {
+            roots.add(dir);
+          }
+        }
+        this.indexRoots = roots;
+      }
+      return LocalFileIndex.getDefault(
+        this.indexRoots,
+        indexContentsPref.isTrue()
+      );
+    } catch (Throwable t) {
+      Utilities.log(t);
+      return null;
+    }
+  }
+
+  private static int intProperty(
+    org.osid.shared.Properties properties,
+    String key,
+    int defaultValue
+  ) {
+    if (properties == null) {
+      return defaultValue;
+    }
+    try {
+      Object value = properties.getProperty(key);
+      if (value != null) {
+        return Integer.parseInt(value.toString());
+      }
+    } catch (Throwable t) {
+      // unknown key, or not a number
+    }
+    return defaultValue;
+  }
+
+  private static CabinetEntry cabinetEntry(LocalFileIndex.Entry e)
+    throws osid.OsidException {
+    if (e.directory) {
+      return new LocalCabinet(e.path, null, null);
+    }
+    File file = new File(e.path);
+    return new LocalByteStore(
+      e.path,
+      new LocalCabinet(file.getParent(), null, null)
+    );
+  }
+
   public org.osid.shared.Id copyAsset(org.osid.repository.Asset asset)
     throws org.osid.repository.RepositoryException {
     throw new org.osid.repository.RepositoryException(
@@ -40,6 +40,10 @@ import tufts.vue.LWNode;
  * connection(b,a) = 1 implies there is a link from b to a
  * connection(b,a) may not be equal to connection(a,b)
  * connection(a,b) = connection(b,a) implies the link between a and b is not directed.
+ *
+ * Only the non-zero connections are stored (see Edges), so the cost of a matrix, and of
+ * merging and comparing matrices, grows with the number of links, not the square of the
+ * number of merge keys.
  */
 public class ConnectivityMatrix {
 
@@ -50,7 +54,7 @@ public class ConnectivityMatrix {
 
   protected final LWMap map;
   protected final IndexedCountingSet keys;
-  protected final int cx[][];
+  protected final Edges cx;
 
   protected int scanCount = 0;
   protected int hitCount = 0;
@@ -130,10 +134,144 @@ public class ConnectivityMatrix {
     }
   }
 
+  /**
+   * A sparse int matrix: a hash of the non-zero [row,col] values, with the row and column
+   * packed into a single long key.  Open addressing with linear probing, so there is no
+   * per-edge allocation.  A slot is empty when its value is zero, and setting a value to zero
+   * removes the edge.
+   */
+  protected static final class Edges {
+
+    private long[] edges;
+    private int[] values;
+    private int size = 0;
+
+    Edges() {
+      this(16);
+    }
+
+    private Edges(int capacity) {
+      edges = new long[capacity];
+      values = new int[capacity];
+    }
+
+    static long edge(int row, int col) {
+      return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    static int row(long edge) {
+      return (int) (edge >>> 32);
+    }
+
+    static int col(long edge) {
+      return (int) edge;
+    }
+
+    private int slotFor(long edge) {
+      final long h = edge * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32)) & (values.length - 1);
+    }
+
+    private int find(long edge) {
+      final int mask = values.length - 1;
+      int i = slotFor(edge);
+      while (values[i] != 0 && edges[i] != edge) i = (i + 1) & mask;
+      return i;
+    }
+
+    /** @return the number of non-zero values */
+    int size() {
+      return size;
+    }
+
+    int get(int row, int col) {
+      return values[find(edge(row, col))];
+    }
+
+    void set(int row, int col, int value) {
+      final long edge = edge(row, col);
+      final int i = find(edge);
+      if (values[i] != 0) {
+        if (value == 0) remove(i); else values[i] = value;
+      } else if (value != 0) {
+        edges[i] = edge;
+        values[i] = value;
+        if (++size * 2 > values.length) grow();
+      }
+    }
+
+    void add(int row, int col, int delta) {
+      set(row, col, get(row, col) + delta);
+    }
+
+    /** add all the values in other to the values in this */
+    void addAll(Edges other) {
+      for (int i = 0; i < other.values.length; i++) if (
+        other.values[i] != 0
+      ) add(row(other.edges[i]), col(other.edges[i]), other.values[i]);
+    }
+
+    /** @return the packed [row,col] keys of all the non-zero values, in no particular order */
+    long[] toArray() {
+      final long[] all = new long[size];
+      int n = 0;
+      for (int i = 0; i < values.length; i++) if (values[i] != 0) all[n++] =
+        edges[i];
+      return all;
+    }
+
+    Edges copy() {
+      final Edges copy = new Edges(values.length);
+      System.arraycopy(edges, 0, copy.edges, 0, edges.length);
+      System.arraycopy(values, 0, copy.values, 0, values.length);
+      copy.size = size;
+      return copy;
+    }
+
+    /** backward-shift deletion: re-home any following entries that probed past slot i */
+    private void remove(int i) {
+      final int mask = values.length - 1;
+      for (int j = (i + 1) & mask; values[j] != 0; j = (j + 1) & mask) {
+        final int home = slotFor(edges[j]);
+        final boolean stays = (i < j)
+          ? (home > i && home <= j)
+          : (home > i || home <= j);
+        if (!stays) {
+          edges[i] = edges[j];
+          values[i] = values[j];
+          i = j;
+        }
+      }
+      values[i] = 0;
+      size--;
+    }
+
+    private void grow() {
+      final long[] oldEdges = edges;
+      final int[] oldValues = values;
+      edges = new long[oldValues.length * 2];
+      values = new int[oldValues.length * 2];
+      for (int i = 0; i < oldValues.length; i++) {
+        if (oldValues[i] != 0) {
+          final int slot = find(oldEdges[i]);
+          edges[slot] = oldEdges[i];
+          values[slot] = oldValues[i];
+        }
+      }
+    }
+  }
+
   protected ConnectivityMatrix(IndexedCountingSet preComputedSet) {
+    this(preComputedSet, new Edges());
+  }
+
+  protected ConnectivityMatrix(
+    IndexedCountingSet preComputedSet,
+    Edges connections
+  ) {
     this.map = null;
     this.keys = preComputedSet;
-    this.cx = new int[keys.size()][keys.size()];
+    this.cx = connections;
     if (DEBUG.Enabled) Log.debug(this + " created from pre-computed.");
   }
 
@@ -146,8 +284,7 @@ public class ConnectivityMatrix {
     );
 
     indexMergeKeys(allInMap);
-    // after adding all keys, we know exactly how big to make the matrix
-    this.cx = new int[keys.size()][keys.size()];
+    this.cx = new Edges();
     generateMatrix(allInMap);
     if (DEBUG.Enabled) Log.debug(this + " created.");
   }
@@ -168,8 +305,21 @@ public class ConnectivityMatrix {
     return map;
   }
 
+  /**
+   * @return a dense copy of this matrix.  This is size^2 ints: use getConnection or
+   * getConnectionCount where possible.
+   */
   public int[][] getMatrix() {
-    return cx;
+    final int size = size();
+    final int[][] dense = new int[size][size];
+    for (long edge : cx.toArray()) dense[Edges.row(edge)][Edges.col(edge)] =
+      cx.get(Edges.row(edge), Edges.col(edge));
+    return dense;
+  }
+
+  /** @return the number of non-zero connection values in this matrix */
+  public int getConnectionCount() {
+    return cx.size();
   }
 
   public static final boolean isValidTarget(LWComponent c) {
@@ -236,12 +386,12 @@ public class ConnectivityMatrix {
             if (
               arrowState == LWLink.ARROW_BOTH || arrowState == LWLink.ARROW_NONE
             ) {
-              cx[headIndex][tailIndex] = 1;
-              cx[tailIndex][headIndex] = 1;
+              cx.set(headIndex, tailIndex, 1);
+              cx.set(tailIndex, headIndex, 1);
             } else if (arrowState == LWLink.ARROW_HEAD) {
-              cx[tailIndex][headIndex] = 1;
+              cx.set(tailIndex, headIndex, 1);
             } else if (arrowState == LWLink.ARROW_TAIL) {
-              cx[headIndex][tailIndex] = 1;
+              cx.set(headIndex, tailIndex, 1);
             }
           } catch (Throwable t) {
             // Should never happen, but theoretically could get NPE or ArrayOutOfBounds
@@ -254,20 +404,20 @@ public class ConnectivityMatrix {
   }
 
   public int getConnection(int i, int j) {
-    return cx[i][j];
+    return cx.get(i, j);
   }
 
   /** @return connection value found for these two keys, if any, otherwise 0 */
   public int getConnection(Object key1, Object key2) {
     final int row = keys.findIndex(key1);
     final int col = keys.findIndex(key2);
-    if (row >= 0 && col >= 0) return this.cx[row][col]; else return 0;
+    if (row >= 0 && col >= 0) return this.cx.get(row, col); else return 0;
   }
 
   public void setConnection(Object key1, Object key2, int value) {
     final int index1 = keys.findIndex(key1);
     final int index2 = keys.findIndex(key2);
-    if (index1 >= 0 && index2 >= 0) this.cx[index1][index2] = value;
+    if (index1 >= 0 && index2 >= 0) this.cx.set(index1, index2, value);
   }
 
   /**
@@ -280,10 +430,10 @@ public class ConnectivityMatrix {
   public boolean compare(ConnectivityMatrix c2) {
     final int size = size();
     if (c2.size() != size) return false;
-    for (int i = 0; i < size; i++) {
-      for (int j = 0; j < size; j++) {
-        if (this.cx[i][j] != c2.cx[i][j]) return false;
-      }
+    if (this.cx.size() != c2.cx.size()) return false;
+    for (long edge : this.cx.toArray()) {
+      final int i = Edges.row(edge), j = Edges.col(edge);
+      if (this.cx.get(i, j) != c2.cx.get(i, j)) return false;
     }
     return true;
   }
@@ -303,6 +453,8 @@ public class ConnectivityMatrix {
       size() +
       "^2=" +
       (size() * size()) +
+      " edges=" +
+      cx.size() +
       " for map " +
       (map == null ? "<aggregate>" : map) +
       "]"
@@ -333,7 +485,7 @@ public class ConnectivityMatrix {
     if (LABELS_LEFT) capacity += size * (maxLeftLen + 1);
 
     if (DEBUG.MERGE) {
-      Log.debug("toString:   cx.size=" + cx.length + " (max alloc matrix)");
+      Log.debug("toString:   cx.size=" + cx.size() + " (non-zero connections)");
       Log.debug("toString: nodesSeen=" + scanCount);
       Log.debug("toString: keysFound=" + hitCount);
       Log.debug(
@@ -384,7 +536,7 @@ public class ConnectivityMatrix {
       }
       for (int col = 0; col < size; col++) {
         if (col != 0) b.append(LABELS_TOP_BIG ? TAB : SPACE);
-        final int val = cx[row][col];
+        final int val = cx.get(row, col);
         if (val == 0) b.append((row == col) ? '0' : '.'); else b.append(val);
       }
       b.append(NewLine);
@@ -38,7 +38,7 @@ public class VoteAggregate extends WeightAggregate {
   private final int aggregateLinkThreshold;
   private final int aggregateNodeThreshold;
 
-  protected final int[][] linkCounts;
+  protected final Edges linkCounts;
 
   public static VoteAggregate create(
     List<ConnectivityMatrix> matrices,
@@ -60,7 +60,7 @@ public class VoteAggregate extends WeightAggregate {
   ) {
     super(preComputed, matrices);
     // WeightAggregate superclass will have merged in all the matrices to produce counts: we save them here
-    this.linkCounts = super.cx.clone(); // computeLinkVotes is about to write all over super.cx
+    this.linkCounts = super.cx.copy(); // computeLinkVotes is about to write all over super.cx
     this.nodePercentMaps = nodePercent;
     this.linkPercentMaps = linkPercent;
     final double nodeThresh = nodePercent * (double) matrices.size();
@@ -95,22 +95,23 @@ public class VoteAggregate extends WeightAggregate {
   }
 
   private void computeLinkVotes() {
-    final int size = super.size();
-
     // This will collapse the connection count values (in super.cx) from their counts down to a
     // 0 or 1, depending on if the vote passed (the count was at or over the threshold).
 
     // This is nice, and was in the original code, but probably not required: At best it only
     // gives us a slightly faster truth test. E.g., how much faster can (x == 1) be than a full
     // "vote", which is: x > 0 && x >= (final int this.aggregateLinkThreshold) ?  In both
-    // cases, we still need to hash two strings to indicies first, then do the 2d-array access.
-
-    for (int i = 0; i < size; i++) {
-      for (int j = 0; j < size; j++) {
-        if (
-          super.cx[i][j] > 0 && super.cx[i][j] >= aggregateLinkThreshold
-        ) super.cx[i][j] = POSITIVE_VOTE; else super.cx[i][j] = NEGATIVE_VOTE;
-      }
+    // cases, we still need to hash two strings to indicies first, then do the edge lookup.
+    // Only the non-zero counts need visiting: a NEGATIVE_VOTE (0) removes the edge.
+
+    for (long edge : super.cx.toArray()) {
+      final int i = Edges.row(edge), j = Edges.col(edge);
+      final int count = super.cx.get(i, j);
+      if (count > 0 && count >= aggregateLinkThreshold) super.cx.set(
+        i,
+        j,
+        POSITIVE_VOTE
+      ); else super.cx.set(i, j, NEGATIVE_VOTE);
     }
   }
 
@@ -132,9 +133,9 @@ public class VoteAggregate extends WeightAggregate {
     final int itail = super.keys.findIndex(tailKey);
     if (ihead < 0 || itail < 0) return false;
 
-    if (super.cx[ihead][itail] > 0) {
+    if (super.cx.get(ihead, itail) > 0) {
       // reverse the index order and consume the opposite direction link vote
-      super.cx[itail][ihead] = 0;
+      super.cx.set(itail, ihead, 0);
       return true;
     } else {
       return false;
@@ -151,7 +152,7 @@ public class VoteAggregate extends WeightAggregate {
     final int tailIndex = keys.findIndex(tailKey);
     if (
       headIndex >= 0 && tailIndex >= 0
-    ) return linkCounts[headIndex][tailIndex]; else return 0;
+    ) return linkCounts.get(headIndex, tailIndex); else return 0;
   }
   // /*
   //  * This method is similar to isNodeVoteAboveThreshold except it works for links
@@ -16,6 +16,8 @@
 package edu.tufts.vue.compare;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import tufts.vue.*;
 
 /**
@@ -41,32 +43,97 @@ public class WeightAggregate extends ConnectivityMatrix {
     IndexedCountingSet preComputed,
     List<ConnectivityMatrix> matrices
   ) {
-    super(preComputed);
+    super(preComputed, sumConnections(preComputed, matrices));
     this.count = matrices.size();
-    for (ConnectivityMatrix input : matrices) mergeInConnectionValues(input);
+  }
+
+  /**
+   * Sum the connection values of all the input matrices, indexed by the aggregate keys.  If
+   * we're running in a ForkJoinPool (e.g., a parallel MergeMapFactory), the sum is computed as
+   * a parallel reduction, otherwise sequentially in the calling thread.
+   */
+  private static Edges sumConnections(
+    final IndexedCountingSet keys,
+    final List<ConnectivityMatrix> matrices
+  ) {
+    if (matrices.isEmpty()) return new Edges();
+    if (ForkJoinTask.inForkJoinPool()) return new Sum(
+      keys,
+      matrices,
+      0,
+      matrices.size()
+    ).invoke();
+    final Edges sum = new Edges();
+    for (ConnectivityMatrix input : matrices) mergeInConnectionValues(
+      keys,
+      input,
+      sum
+    );
+    return sum;
+  }
+
+  /** Sums the matrices in [lo,hi): addition is associative, so the halves are summed concurrently */
+  private static final class Sum extends RecursiveTask<Edges> {
+
+    final IndexedCountingSet keys;
+    final List<ConnectivityMatrix> matrices;
+    final int lo, hi;
+
+    Sum(
+      IndexedCountingSet keys,
+      List<ConnectivityMatrix> matrices,
+      int lo,
+      int hi
+    ) {
+      this.keys = keys;
+      this.matrices = matrices;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    protected Edges compute() {
+      if (hi - lo == 1) return mergeInConnectionValues(
+        keys,
+        matrices.get(lo),
+        new Edges()
+      );
+      final int mid = (lo + hi) >>> 1;
+      final Sum left = new Sum(keys, matrices, lo, mid);
+      left.fork();
+      final Edges right = new Sum(keys, matrices, mid, hi).compute();
+      final Edges sum = left.join();
+      // add the smaller into the larger
+      if (sum.size() >= right.size()) {
+        sum.addAll(right);
+        return sum;
+      } else {
+        right.addAll(sum);
+        return right;
+      }
+    }
   }
 
   /**
    * This will search the input matrix for all non-zero connection values and add them to the
-   * connection value for the same two keys in this aggregate.  This will only work if the keys
-   * from the input matrix have already been merged to this aggregate, and the matrix for this
-   * aggregate has been sized to handle all of the input keys.
+   * connection value for the same two keys in the sum.  This will only work if the keys
+   * from the input matrix have already been merged to the aggregate keys.
    */
-  private void mergeInConnectionValues(final ConnectivityMatrix input) {
+  private static Edges mergeInConnectionValues(
+    final IndexedCountingSet keys,
+    final ConnectivityMatrix input,
+    final Edges sum
+  ) {
     Log.info("mergeIn " + input);
-    final int inSize = input.size();
-    for (int index1 = 0; index1 < inSize; index1++) {
-      for (int index2 = 0; index2 < inSize; index2++) {
-        final int connection = input.cx[index1][index2];
-        if (connection != 0) {
-          final Object key1 = input.keys.get(index1);
-          final Object key2 = input.keys.get(index2);
-          this.cx[this.keys.indexOf(key1)][this.keys.indexOf(key2)] +=
-          connection;
-          // Log.debug("merged " + connection + " for " + key1 + "," + key2);
-        }
-      }
+    for (long edge : input.cx.toArray()) {
+      final int index1 = Edges.row(edge);
+      final int index2 = Edges.col(edge);
+      final int connection = input.cx.get(index1, index2);
+      final Object key1 = input.keys.get(index1);
+      final Object key2 = input.keys.get(index2);
+      sum.add(keys.indexOf(key1), keys.indexOf(key2), connection);
+      // Log.debug("merged " + connection + " for " + key1 + "," + key2);
     }
+    return sum;
   }
 
   public ConnectivityMatrix getAggregate() {
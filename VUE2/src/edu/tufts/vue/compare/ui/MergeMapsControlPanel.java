@@ -267,7 +267,7 @@ public class MergeMapsControlPanel
     // else
     //     mergedMap.fillAsWeightMerge();
 
-    final LWMap mergedMap = createMergedMap();
+    final LWMap mergedMap = createMergedMap(progressLabel);
 
     // Thread.sleep(5000);
     final Runnable displayTask = new Runnable() {
@@ -286,7 +286,7 @@ public class MergeMapsControlPanel
     }
   }
 
-  private LWMap createMergedMap() {
+  private LWMap createMergedMap(final JLabel progressLabel) {
     final java.util.List<LWMap> mapList = mapSelectionPanel.getMapList();
 
     final LWMap baseMap = mapList.get(mapSelectionPanel.getBaseMapIndex());
@@ -317,6 +317,29 @@ public class MergeMapsControlPanel
     mm.setExcludeNodesFromBaseMap(
       mapSelectionPanel.getExcludeNodesFromBaseMap()
     );
+    mm.setProgressListener(
+      new MergeMapFactory.ProgressListener() {
+        public void mergeProgress(
+          String stage,
+          final int done,
+          final int total
+        ) {
+          SwingUtilities.invokeLater(
+            new Runnable() {
+              public void run() {
+                progressLabel.setText(
+                  VueResources.local("dialog.mergemap.inprogress") +
+                  " " +
+                  done +
+                  "/" +
+                  total
+                );
+              }
+            }
+          );
+        }
+      }
+    );
 
     if (
       visualizationSettingsPanel.getVisualizationSettingsType() ==
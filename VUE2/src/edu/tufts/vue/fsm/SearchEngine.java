@@ -56,4 +56,10 @@ public interface SearchEngine {
   public String getExceptionMessage(int index);
 
   public boolean isComplete();
+
+  /** @return an iterator over all assets found so far, that blocks for more until the search is complete */
+  public org.osid.repository.AssetIterator getStreamingAssetIterator();
+
+  /** stop all searches that haven't yet completed */
+  public void cancel();
 }
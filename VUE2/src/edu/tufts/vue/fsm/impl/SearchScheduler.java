@@ -0,0 +1,251 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package edu.tufts.vue.fsm.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ Runs the repository queries of every federated search on one bounded pool of
+ threads.  Each query has a deadline, counted from when it starts running: a
+ repository that hasn't answered by then is reported as failed, so the rest of
+ the search can complete without it.  Issuing a new search cancels whatever
+ is left of the previous one.  The time each repository takes to answer is
+ kept for as long as VUE runs.
+ */
+
+public class SearchScheduler {
+
+  public static final long DEFAULT_DEADLINE = 60 * 1000;
+
+  private static final int THREADS = 8;
+
+  /** response times for a single repository, keyed by foreign id string */
+  public static final class Latency {
+
+    private int searches;
+    private int failures;
+    private int timeouts;
+    private long totalMillis;
+    private long maxMillis;
+    private long lastMillis;
+
+    synchronized void record(long millis, int statusCode, boolean timedOut) {
+      searches++;
+      if (timedOut) timeouts++; else if (
+        statusCode != edu.tufts.vue.fsm.SearchEngine.SEARCH_COMPLETED
+      ) failures++;
+      totalMillis += millis;
+      lastMillis = millis;
+      if (millis > maxMillis) maxMillis = millis;
+    }
+
+    public synchronized int getSearchCount() {
+      return searches;
+    }
+
+    public synchronized int getFailureCount() {
+      return failures;
+    }
+
+    public synchronized int getTimeoutCount() {
+      return timeouts;
+    }
+
+    public synchronized long getAverageMillis() {
+      return searches == 0 ? 0 : totalMillis / searches;
+    }
+
+    public synchronized long getMaxMillis() {
+      return maxMillis;
+    }
+
+    public synchronized long getLastMillis() {
+      return lastMillis;
+    }
+
+    public synchronized String toString() {
+      return (
+        "Latency[searches=" +
+        searches +
+        " failures=" +
+        failures +
+        " timeouts=" +
+        timeouts +
+        " avg=" +
+        getAverageMillis() +
+        "ms max=" +
+        maxMillis +
+        "ms last=" +
+        lastMillis +
+        "ms]"
+      );
+    }
+  }
+
+  private static final SearchScheduler scheduler = new SearchScheduler(THREADS);
+
+  public static SearchScheduler getInstance() {
+    return scheduler;
+  }
+
+  private final ThreadPoolExecutor pool;
+  private final ScheduledExecutorService timer;
+
+  private final Map<String, Long> deadlines = new HashMap();
+  private long defaultDeadline = DEFAULT_DEADLINE;
+
+  private final Map<String, Latency> latencies = new HashMap();
+
+  /** the search most recently scheduled: cancelled when the next one is */
+  private VueSearchEngine current = null;
+
+  SearchScheduler(int threads) {
+    final AtomicInteger count = new AtomicInteger();
+    pool =
+      new ThreadPoolExecutor(
+        threads,
+        threads,
+        30,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "VUE-Search-" + count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+          }
+        }
+      );
+    pool.allowCoreThreadTimeOut(true);
+    final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(
+      1,
+      new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "VUE-Search-Deadline");
+          t.setDaemon(true);
+          return t;
+        }
+      }
+    );
+    timer.setRemoveOnCancelPolicy(true);
+    this.timer = timer;
+  }
+
+  /** @param millis how long any repository may take to answer, unless it has a deadline of its own */
+  public synchronized void setDefaultDeadline(long millis) {
+    this.defaultDeadline = millis;
+  }
+
+  /** @param millis how long the repository with the given foreign id string may take to answer */
+  public synchronized void setDeadline(String foreignIdString, long millis) {
+    deadlines.put(foreignIdString, millis);
+  }
+
+  public synchronized long getDeadline(String foreignIdString) {
+    final Long millis = deadlines.get(foreignIdString);
+    return millis == null ? defaultDeadline : millis;
+  }
+
+  /** @return the response times recorded for the repository with the given foreign id string, or null if it has never been searched */
+  public synchronized Latency getLatency(String foreignIdString) {
+    return latencies.get(foreignIdString);
+  }
+
+  /** @return a snapshot of the response times of every repository searched so far */
+  public synchronized Map<String, Latency> getLatencies() {
+    return new HashMap(latencies);
+  }
+
+  void recordLatency(
+    String foreignIdString,
+    long millis,
+    int statusCode,
+    boolean timedOut
+  ) {
+    Latency latency;
+    synchronized (this) {
+      latency = latencies.get(foreignIdString);
+      if (latency == null) latencies.put(
+        foreignIdString,
+        latency = new Latency()
+      );
+    }
+    latency.record(millis, statusCode, timedOut);
+  }
+
+  /**
+   Queue all of the engine's queries, after cancelling what's left of the
+   previous search.
+   */
+  void schedule(
+    final VueSearchEngine engine,
+    final int generation,
+    edu.tufts.vue.fsm.Query[] queries
+  ) {
+    final VueSearchEngine previous;
+    synchronized (this) {
+      previous = current;
+      current = engine;
+    }
+    if (previous != null && previous != engine) previous.cancel();
+
+    for (int i = 0; i < queries.length; i++) {
+      final edu.tufts.vue.fsm.Query query = queries[i];
+      final int index = i;
+      final long deadline = getDeadline(query.getForeignIdString());
+      final SearchThread search = new SearchThread(
+        query.getForeignIdString(),
+        query.getRepository(),
+        index,
+        query.getSearchCriteria(),
+        query.getSearchType(),
+        query.getSearchProperties(),
+        engine
+      );
+      final Future future = pool.submit(
+        new Runnable() {
+          public void run() {
+            if (!engine.searchStarted(generation, index)) return; // cancelled while queued
+            final Future expiry = timer.schedule(
+              new Runnable() {
+                public void run() {
+                  engine.searchTimedOut(generation, index, deadline);
+                }
+              },
+              deadline,
+              TimeUnit.MILLISECONDS
+            );
+            try {
+              search.run();
+            } finally {
+              expiry.cancel(false);
+            }
+          }
+        }
+      );
+      engine.setFuture(generation, index, future);
+    }
+  }
+}
@@ -28,8 +28,7 @@ public class SearchThread implements Runnable {
   private org.osid.shared.Properties searchProperties = null;
   private int searchIndex = -1;
   private long startTime = 0;
-  private edu.tufts.vue.fsm.SearchEngine searchEngine =
-    VueSearchEngine.getInstance();
+  private edu.tufts.vue.fsm.SearchEngine searchEngine = null;
 
   public SearchThread(
     String foreignIdString,
@@ -39,6 +38,27 @@ public class SearchThread implements Runnable {
     org.osid.shared.Type searchType,
     org.osid.shared.Properties searchProperties
   ) {
+    this(
+      foreignIdString,
+      repository,
+      searchIndex,
+      searchCriteria,
+      searchType,
+      searchProperties,
+      VueSearchEngine.getInstance()
+    );
+  }
+
+  public SearchThread(
+    String foreignIdString,
+    org.osid.repository.Repository repository,
+    int searchIndex,
+    java.io.Serializable searchCriteria,
+    org.osid.shared.Type searchType,
+    org.osid.shared.Properties searchProperties,
+    edu.tufts.vue.fsm.SearchEngine searchEngine
+  ) {
+    this.searchEngine = searchEngine;
     this.searchCriteria = searchCriteria;
     this.searchType = searchType;
     this.searchProperties = searchProperties;
@@ -56,6 +76,8 @@ public class SearchThread implements Runnable {
   }
 
   public void run() {
+    // time the search itself, not any wait for a thread to run it on
+    this.startTime = java.util.Calendar.getInstance().getTimeInMillis();
     try {
       org.osid.repository.AssetIterator assetIterator =
         this.repository.getAssetsBySearch(
@@ -43,7 +43,14 @@ public class VueResultSetManager implements edu.tufts.vue.fsm.ResultSetManager {
     return ai;
   }
 
+  /**
+   If the search is still running, returns assets as each repository answers,
+   blocking for more until all have.
+   */
   public org.osid.repository.AssetIterator getAssets() {
+    if (!searchEngine.isComplete()) return (
+      searchEngine.getStreamingAssetIterator()
+    );
     if (ai == null) {
       ai = new AddingAssetIterator();
       int numSearches = this.searchEngine.getNumSearches();
@@ -78,6 +85,7 @@ public class VueResultSetManager implements edu.tufts.vue.fsm.ResultSetManager {
   public void removeAsset(org.osid.repository.Asset assetId) {}
 
   public void clearResults() {
+    if (this.searchEngine != null) this.searchEngine.cancel();
     this.searchEngine = null;
     this.assetVector.removeAllElements();
     this.assetIdStringVector.removeAllElements();
@@ -15,24 +15,36 @@
 package edu.tufts.vue.fsm.impl;
 
 /**
- The enginer calls each search on its own thread.  The engine creates the threads.
- The engine also get called by the thread when the search is done.  Results are
- available via the engine for any particular search.
+ The engine runs each search on the shared SearchScheduler pool, and gets called
+ by the search when it's done.  Results are available via the engine for any
+ particular search, or as they arrive from all of them via getStreamingAssetIterator.
  */
 
 public class VueSearchEngine implements edu.tufts.vue.fsm.SearchEngine {
 
-  private static int completed = 0;
-  private static long startTime = 0;
-  private static long endTime = 0;
-  private static int numberOfSearches = -1;
-  private static boolean isComplete = false;
+  private int completed = 0;
+  private long startTime = 0;
+  private long endTime = 0;
+  private int numberOfSearches = -1;
+  private boolean isComplete = false;
 
-  private static int[] status = null;
-  private static String[] exceptionMessages = null;
-  private static long[] durations = null;
-  private static org.osid.repository.AssetIterator[] assetIterators = null;
-  private static java.util.Vector foreignIdStringVector = null;
+  private int[] status = null;
+  private String[] exceptionMessages = null;
+  private long[] durations = null;
+  private org.osid.repository.AssetIterator[] assetIterators = null;
+  private String[] foreignIdStrings = null;
+
+  /** the pool thread running each search, so we can ignore results from searches we've given up on */
+  private Thread[] runners = null;
+  private long[] startTimes = null;
+  private java.util.concurrent.Future[] futures = null;
+
+  /** incremented with each search, so the scheduler can tell if it's tasks are stale */
+  private int generation = 0;
+
+  /** every asset found so far, in the order they arrived */
+  private final java.util.List<org.osid.repository.Asset> hits =
+    new java.util.ArrayList();
 
   private static edu.tufts.vue.fsm.SearchEngine searchEngine =
     new VueSearchEngine();
@@ -44,45 +56,107 @@ public class VueSearchEngine implements edu.tufts.vue.fsm.SearchEngine {
   public VueSearchEngine() {}
 
   public void search(edu.tufts.vue.fsm.Query[] queries) {
-    completed = 0;
-    startTime = 0;
-    endTime = 0;
-    numberOfSearches = queries.length;
-    isComplete = false;
-
-    status = new int[numberOfSearches];
-    exceptionMessages = new String[numberOfSearches];
-    durations = new long[numberOfSearches];
-    assetIterators = new org.osid.repository.AssetIterator[numberOfSearches];
-    foreignIdStringVector = new java.util.Vector();
-
-    for (int j = 0; j < numberOfSearches; j++) {
-      status[j] = SEARCH_PENDING;
-    }
+    final int searchGeneration;
+    synchronized (this) {
+      if (!isComplete && numberOfSearches > 0) cancel();
+      searchGeneration = ++generation;
 
-    try {
+      completed = 0;
       startTime = java.util.Calendar.getInstance().getTimeInMillis();
+      endTime = 0;
+      numberOfSearches = queries.length;
+      isComplete = false;
 
-      int k = 0;
-      for (int i = 0; i < queries.length; i++) {
-        SearchThread searchThread = new SearchThread(
-          queries[i].getForeignIdString(),
-          queries[i].getRepository(),
-          k++,
-          queries[i].getSearchCriteria(),
-          queries[i].getSearchType(),
-          queries[i].getSearchProperties()
-        );
-        status[i] = SEARCH_RUNNING;
-        try {
-          searchThread.start();
-        } catch (Throwable discard) {}
+      status = new int[numberOfSearches];
+      exceptionMessages = new String[numberOfSearches];
+      durations = new long[numberOfSearches];
+      assetIterators = new org.osid.repository.AssetIterator[numberOfSearches];
+      foreignIdStrings = new String[numberOfSearches];
+      runners = new Thread[numberOfSearches];
+      startTimes = new long[numberOfSearches];
+      futures = new java.util.concurrent.Future[numberOfSearches];
+      hits.clear();
+
+      for (int j = 0; j < numberOfSearches; j++) {
+        status[j] = SEARCH_PENDING;
+        foreignIdStrings[j] = queries[j].getForeignIdString();
       }
+      if (numberOfSearches == 0) {
+        isComplete = true;
+        endTime = startTime;
+      }
+    }
+
+    try {
+      SearchScheduler.getInstance().schedule(this, searchGeneration, queries);
     } catch (Throwable t) {
       edu.tufts.vue.util.Logger.log(t, "while searching");
     }
   }
 
+  synchronized void setFuture(
+    int searchGeneration,
+    int searchIndex,
+    java.util.concurrent.Future future
+  ) {
+    if (
+      searchGeneration != generation || status[searchIndex] >= SEARCH_COMPLETED
+    ) future.cancel(true); else futures[searchIndex] = future;
+  }
+
+  /** @return false if the given search has been cancelled, and shouldn't be run */
+  synchronized boolean searchStarted(int searchGeneration, int searchIndex) {
+    if (
+      searchGeneration != generation || status[searchIndex] != SEARCH_PENDING
+    ) return false;
+    status[searchIndex] = SEARCH_RUNNING;
+    runners[searchIndex] = Thread.currentThread();
+    startTimes[searchIndex] = System.currentTimeMillis();
+    return true;
+  }
+
+  /** give up on the given search if it's still running: called at it's deadline */
+  void searchTimedOut(int searchGeneration, int searchIndex, long deadline) {
+    synchronized (this) {
+      if (
+        searchGeneration != generation || status[searchIndex] != SEARCH_RUNNING
+      ) return;
+      final long duration =
+        System.currentTimeMillis() - startTimes[searchIndex];
+      // record before finishing, so it's there for anyone waiting on completion
+      SearchScheduler.getInstance()
+        .recordLatency(
+          foreignIdStrings[searchIndex],
+          duration,
+          SEARCH_EXCEPTION,
+          true
+        );
+      finish(
+        searchIndex,
+        SEARCH_EXCEPTION,
+        "timed out after " + deadline + "ms",
+        duration,
+        null
+      );
+    }
+  }
+
+  /** stop all searches still pending or running: their results, if any arrive, are ignored */
+  public void cancel() {
+    synchronized (this) {
+      if (isComplete || status == null) return;
+      for (int i = 0; i < numberOfSearches; i++) {
+        if (status[i] < SEARCH_COMPLETED) finish(
+          i,
+          SEARCH_EXCEPTION,
+          "cancelled",
+          0,
+          null
+        );
+      }
+    }
+  }
+
   public void searchComplete(
     int searchIndex,
     int statusCode,
@@ -92,31 +166,119 @@ public class VueSearchEngine implements edu.tufts.vue.fsm.SearchEngine {
     String foreignIdString
   ) {
     try {
-      completed++;
-      status[searchIndex] = statusCode;
-      exceptionMessages[searchIndex] = exceptionMessage;
-      durations[searchIndex] = duration;
-      assetIterators[searchIndex] = assetIterator;
-      foreignIdStringVector.addElement(foreignIdString);
-
-      if (completed == numberOfSearches) {
-        isComplete = true;
-        endTime = java.util.Calendar.getInstance().getTimeInMillis();
+      if (!isCurrent(searchIndex)) return;
+
+      // pull the assets here, still on the search thread, as they may be fetched lazily
+      final java.util.Vector assets = new java.util.Vector();
+      if (assetIterator != null) {
+        try {
+          while (assetIterator.hasNextAsset()) assets.addElement(
+            assetIterator.nextAsset()
+          );
+        } catch (Throwable t) {
+          edu.tufts.vue.util.Logger.log(
+            t,
+            "reading results of " + foreignIdString
+          );
+        }
+      }
+
+      synchronized (this) {
+        if (!isCurrent(searchIndex)) return;
+        SearchScheduler.getInstance()
+          .recordLatency(foreignIdString, duration, statusCode, false);
+        finish(searchIndex, statusCode, exceptionMessage, duration, assets);
       }
     } catch (Throwable t) {
       edu.tufts.vue.util.Logger.log(t, "in serach complete");
     }
   }
 
-  public long getStartTime() {
+  /** @return true if the given search is still running on the current thread */
+  private synchronized boolean isCurrent(int searchIndex) {
+    return (
+      status[searchIndex] == SEARCH_RUNNING &&
+      runners[searchIndex] == Thread.currentThread()
+    );
+  }
+
+  private void finish(
+    int searchIndex,
+    int statusCode,
+    String exceptionMessage,
+    long duration,
+    java.util.Vector assets
+  ) {
+    if (assets == null) assets = new java.util.Vector();
+    completed++;
+    status[searchIndex] = statusCode;
+    exceptionMessages[searchIndex] = exceptionMessage;
+    durations[searchIndex] = duration;
+    runners[searchIndex] = null;
+    try {
+      assetIterators[searchIndex] = new AssetIterator(assets);
+    } catch (Throwable t) {}
+    hits.addAll(assets);
+
+    final java.util.concurrent.Future future = futures[searchIndex];
+    if (future != null && statusCode == SEARCH_EXCEPTION) future.cancel(true);
+
+    if (completed == numberOfSearches) {
+      isComplete = true;
+      endTime = java.util.Calendar.getInstance().getTimeInMillis();
+    }
+    notifyAll();
+  }
+
+  /**
+   @return an iterator over the assets found by all the searches, that returns
+   each as soon as the repository that found it answers, and only runs out once
+   all the searches are complete.  Each call returns a new iterator, starting
+   from the first asset found.
+   */
+  public org.osid.repository.AssetIterator getStreamingAssetIterator() {
+    return new StreamingAssetIterator();
+  }
+
+  private class StreamingAssetIterator
+    implements org.osid.repository.AssetIterator {
+
+    private int next = 0;
+
+    public boolean hasNextAsset()
+      throws org.osid.repository.RepositoryException {
+      synchronized (VueSearchEngine.this) {
+        try {
+          while (
+            next >= hits.size() && !isComplete
+          ) VueSearchEngine.this.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return next < hits.size();
+      }
+    }
+
+    public org.osid.repository.Asset nextAsset()
+      throws org.osid.repository.RepositoryException {
+      synchronized (VueSearchEngine.this) {
+        if (!hasNextAsset()) throw new org.osid.repository.RepositoryException(
+          org.osid.shared.SharedException.NO_MORE_ITERATOR_ELEMENTS
+        );
+        return hits.get(next++);
+      }
+    }
+  }
+
+  public synchronized long getStartTime() {
     return this.startTime;
   }
 
-  public long getEndTime() {
+  public synchronized long getEndTime() {
     return this.endTime;
   }
 
-  public long getDuration(int index) {
+  public synchronized long getDuration(int index) {
     try {
       return durations[index];
     } catch (Throwable t) {
@@ -125,7 +287,7 @@ public class VueSearchEngine implements edu.tufts.vue.fsm.SearchEngine {
     return 0;
   }
 
-  public int getStatus(int index) {
+  public synchronized int getStatus(int index) {
     try {
       return status[index];
     } catch (Throwable t) {
@@ -134,11 +296,13 @@ public class VueSearchEngine implements edu.tufts.vue.fsm.SearchEngine {
     return -1;
   }
 
-  public int getNumSearches() {
+  public synchronized int getNumSearches() {
     return numberOfSearches;
   }
 
-  public org.osid.repository.AssetIterator getAssetIterator(int index) {
+  public synchronized org.osid.repository.AssetIterator getAssetIterator(
+    int index
+  ) {
     try {
       return assetIterators[index];
     } catch (Throwable t) {
@@ -147,17 +311,14 @@ public class VueSearchEngine implements edu.tufts.vue.fsm.SearchEngine {
     return null;
   }
 
-  public org.osid.repository.AssetIterator getAssetIterator(
+  public synchronized org.osid.repository.AssetIterator getAssetIterator(
     String foreignIdString
   ) {
     try {
-      //			System.out.println("getAssetIterator in vSearchEngine " + foreignIdString);
-      int index = foreignIdStringVector.indexOf(foreignIdString);
-      if (index != -1) {
-        //				System.out.print("found at index " + index);
-        return assetIterators[index];
-      } else {
-        //				System.out.println("not found");
+      for (int i = 0; i < numberOfSearches; i++) {
+        if (foreignIdString.equals(foreignIdStrings[i])) return assetIterators[
+          i
+        ];
       }
     } catch (Throwable t) {
       edu.tufts.vue.util.Logger.log(t, "in getAssetIterator()");
@@ -165,7 +326,7 @@ public class VueSearchEngine implements edu.tufts.vue.fsm.SearchEngine {
     return null;
   }
 
-  public String getExceptionMessage(int index) {
+  public synchronized String getExceptionMessage(int index) {
     try {
       return exceptionMessages[index];
     } catch (Throwable t) {
@@ -174,7 +335,7 @@ public class VueSearchEngine implements edu.tufts.vue.fsm.SearchEngine {
     return null;
   }
 
-  public boolean isComplete() {
+  public synchronized boolean isComplete() {
     return isComplete;
   }
 }
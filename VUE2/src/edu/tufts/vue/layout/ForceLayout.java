@@ -24,24 +24,42 @@
 package edu.tufts.vue.layout;
 
 import edu.tufts.vue.dataset.*;
-import edu.tufts.vue.metadata.MetadataList;
-import edu.tufts.vue.metadata.VueMetadataElement;
-import java.awt.*;
-import java.awt.event.*;
-import java.io.*;
-import java.net.*;
 import java.util.*;
-import javax.swing.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.SwingUtilities;
 import tufts.vue.*;
 
-/*
- *  This is similar to circular layout, except nodes that have more link
- * gravitate to the center.
+/**
+ * A force-directed layout: linked nodes are pulled together, all nodes push each other apart,
+ * using their actual bounds, and the layout settles as it cools.  The current positions are
+ * snapshot into arrays on the calling thread, and the simulation runs on those (see
+ * ForceSimulation).  When called on the AWT event thread, the simulation runs in the
+ * background, so the UI stays live, and the new locations are then all set at once back on
+ * the event thread, batched into a single undoable change.  Otherwise, the calling thread
+ * waits for it.  Links to nodes outside the selection are ignored.
  */
-
 public class ForceLayout extends Layout {
 
-  /** Creates a new instance of TabularLayout */
+  private static final org.apache.log4j.Logger Log =
+    org.apache.log4j.Logger.getLogger(ForceLayout.class);
+
+  public static final int MAX_ITERATIONS = 200;
+
+  private static final ExecutorService Simulator =
+    Executors.newSingleThreadExecutor(
+      new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          final Thread t = new Thread(r, "VUE-ForceLayout");
+          t.setDaemon(true);
+          t.setPriority(Thread.NORM_PRIORITY - 1);
+          return t;
+        }
+      }
+    );
+
+  /** Creates a new instance of ForceLayout */
   public ForceLayout() {}
 
   public LWMap createMap(Dataset ds, String mapName) throws Exception {
@@ -50,79 +68,201 @@ public class ForceLayout extends Layout {
   }
 
   public void layout(LWSelection selection) throws Exception {
-    Map<LWComponent, Integer> repeatMap = new HashMap<LWComponent, Integer>();
-
-    double minX = 10000;
-    double minY = 10000;
-    int nodeSize = 100; // we assume node size is 100 which needs to be fixed.
-    boolean applyLayout = false;
-    int count = 0;
-    int total = 0;
-    int mod = 4;
-    int xAdd = 100;
-    int yAdd = 50;
-    Iterator<LWComponent> i = selection.iterator();
-
-    while (i.hasNext()) {
-      LWComponent c = i.next();
-      if (c.isManagedLocation()) continue;
-      if (c instanceof LWNode) {
-        LWNode node = (LWNode) c;
-        minX =
-          node.getLocation().getX() < minX ? node.getLocation().getX() : minX;
-        minY =
-          node.getLocation().getY() < minY ? node.getLocation().getY() : minY;
-        if (!repeatMap.containsKey(node)) repeatMap.put(node, new Integer(0));
-        total++;
-      }
-    }
-    // interate to map for links
-    i =
-      VUE
-        .getActiveMap()
-        .getAllDescendents(LWContainer.ChildKind.PROPER)
-        .iterator();
-    while (i.hasNext()) {
-      LWComponent c = i.next();
-      if (c.isManagedLocation()) continue;
-      if (c instanceof LWLink) {
-        applyLayout = true;
-        LWLink link = (LWLink) c;
-        LWComponent head = link.getHead();
-        LWComponent tail = link.getTail();
-        if (repeatMap.containsKey(head)) {
-          int nc = repeatMap.get(head).intValue();
-          repeatMap.put(head, new Integer(nc + 1));
+    if (layoutInBackground(selection, null)) return;
+    final Snapshot snapshot = Snapshot.take(selection, X_SPACING);
+    if (snapshot == null) return;
+    snapshot.simulate();
+    snapshot.apply();
+  }
+
+  /** Runs in the background only when called on the AWT event thread */
+  @Override
+  public boolean layoutInBackground(
+    LWSelection selection,
+    final Runnable whenDone
+  ) {
+    if (!SwingUtilities.isEventDispatchThread()) return false;
+    final Snapshot snapshot = Snapshot.take(selection, X_SPACING);
+    if (snapshot == null) return false;
+
+    Simulator.execute(
+      new Runnable() {
+        public void run() {
+          try {
+            snapshot.simulate();
+          } catch (Throwable t) {
+            Log.error("force layout of " + snapshot.nodes.size() + " nodes", t);
+            return;
+          }
+          SwingUtilities.invokeLater(
+            new Runnable() {
+              public void run() {
+                snapshot.applyAsUndoable();
+                if (whenDone != null) whenDone.run();
+              }
+            }
+          );
         }
-        if (repeatMap.containsKey(tail)) {
-          int nc = repeatMap.get(tail).intValue();
-          repeatMap.put(tail, new Integer(nc + 1));
+      }
+    );
+    return true;
+  }
+
+  /** For testing: wait for any layout running in the background to be applied */
+  static void sync() throws Exception {
+    Simulator.submit(
+      new Runnable() {
+        public void run() {}
+      }
+    ).get();
+    SwingUtilities.invokeAndWait(
+      new Runnable() {
+        public void run() {}
+      }
+    );
+  }
+
+  /** the nodes to lay out, and their positions, sizes and links as arrays */
+  private static final class Snapshot {
+
+    final List<LWComponent> nodes;
+    /** the map the nodes were in: any of them may be deleted by the time we're applied */
+    final LWMap map;
+    final double spacing;
+    final double[] x, y, width, height;
+    final int[] heads, tails;
+    final double minX, minY, maxX, maxY;
+    double[] newX, newY;
+
+    /** @return a snapshot of the layable nodes in the selection, or null if there aren't at least two */
+    static Snapshot take(LWSelection selection, double spacing) {
+      final List<LWComponent> nodes = new ArrayList<LWComponent>();
+      final Map<LWComponent, Integer> index = new HashMap<LWComponent, Integer>();
+
+      for (LWComponent c : selection) {
+        if (c.isManagedLocation()) continue;
+        if (c instanceof LWNode && !index.containsKey(c)) {
+          index.put(c, nodes.size());
+          nodes.add(c);
         }
       }
+      if (nodes.size() < 2) return null;
+      return new Snapshot(nodes, index, spacing);
     }
-    if (applyLayout) {
-      double x = minX;
-      double y = minY;
-      double size = Math.sqrt(total) * nodeSize;
-      double radius = size / 2;
-      double centerX = x + radius;
-      double centerY = y + radius;
-      i = selection.iterator();
-      while (i.hasNext()) {
-        LWComponent c = i.next();
-        if (c.isManagedLocation()) continue;
-        if (c instanceof LWNode) {
-          LWNode node = (LWNode) c;
-          double angle = Math.PI * 2 * Math.random();
-          int nc = repeatMap.get(node).intValue();
-          double r = radius * Math.pow(1.00 - (double) nc / total, 2.00);
-          node.setLocation(
-            centerX + r * Math.cos(angle),
-            centerY + r * Math.sin(angle)
-          );
-          //                    System.out.println("Node: "+node.getLabel()+" r:"+r+" angle:"+angle+" nc:"+nc+" total:"+total+" radius:"+radius);
+
+    private Snapshot(
+      List<LWComponent> nodes,
+      Map<LWComponent, Integer> index,
+      double spacing
+    ) {
+      final int n = nodes.size();
+      this.nodes = nodes;
+      this.map = nodes.get(0).getMap();
+      this.spacing = spacing;
+      x = new double[n];
+      y = new double[n];
+      width = new double[n];
+      height = new double[n];
+      double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+      double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+      final List<int[]> links = new ArrayList<int[]>();
+
+      for (int i = 0; i < n; i++) {
+        final LWComponent c = nodes.get(i);
+        width[i] = c.getWidth();
+        height[i] = c.getHeight();
+        x[i] = c.getX() + width[i] / 2;
+        y[i] = c.getY() + height[i] / 2;
+        minX = Math.min(minX, c.getX());
+        minY = Math.min(minY, c.getY());
+        maxX = Math.max(maxX, c.getX() + width[i]);
+        maxY = Math.max(maxY, c.getY() + height[i]);
+        for (LWLink link : c.getLinks()) {
+          // each link is seen from both ends: only take it from the head
+          if (link.getHead() != c) continue;
+          final Integer tail = index.get(link.getTail());
+          if (tail != null) links.add(new int[] { i, tail });
         }
       }
+      this.minX = minX;
+      this.minY = minY;
+      this.maxX = maxX;
+      this.maxY = maxY;
+      heads = new int[links.size()];
+      tails = new int[links.size()];
+      for (int e = 0; e < heads.length; e++) {
+        heads[e] = links.get(e)[0];
+        tails[e] = links.get(e)[1];
+      }
+    }
+
+    /** run the simulation: touches only the arrays, so may be run on any thread */
+    void simulate() {
+      final int n = nodes.size();
+      final long start = System.currentTimeMillis();
+      final ForceSimulation sim = new ForceSimulation(
+        x,
+        y,
+        width,
+        height,
+        heads,
+        tails,
+        spacing
+      );
+      final int iterations = sim.run(MAX_ITERATIONS);
+      if (DEBUG.LAYOUT || n > 1000) Log.info(
+        String.format(
+          "%d nodes, %d links: %d iterations in %dms",
+          n,
+          heads.length,
+          iterations,
+          System.currentTimeMillis() - start
+        )
+      );
+      newX = sim.getX();
+      newY = sim.getY();
+    }
+
+    /** set the new locations, keeping the laid out nodes centered where they were */
+    void apply() {
+      final int n = nodes.size();
+      double newMinX = Double.POSITIVE_INFINITY, newMinY = Double.POSITIVE_INFINITY;
+      double newMaxX = Double.NEGATIVE_INFINITY, newMaxY = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < n; i++) {
+        newMinX = Math.min(newMinX, newX[i] - width[i] / 2);
+        newMinY = Math.min(newMinY, newY[i] - height[i] / 2);
+        newMaxX = Math.max(newMaxX, newX[i] + width[i] / 2);
+        newMaxY = Math.max(newMaxY, newY[i] + height[i] / 2);
+      }
+      final double dx = (minX + maxX) / 2 - (newMinX + newMaxX) / 2;
+      final double dy = (minY + maxY) / 2 - (newMinY + newMaxY) / 2;
+
+      for (int i = 0; i < n; i++) {
+        final LWComponent c = nodes.get(i);
+        // anything deleted while we were running stays deleted
+        if (c.isDeleted()) continue;
+        c.setLocation(
+          newX[i] - width[i] / 2 + dx,
+          newY[i] - height[i] / 2 + dy
+        );
+      }
+    }
+
+    /**
+     * Apply the layout on the event thread as a single undoable change.  The action that
+     * started us has long since marked it's undo, with nothing in it, so this mark is ours.
+     */
+    void applyAsUndoable() {
+      if (map == null) return;
+      map.beginEventBatch();
+      try {
+        apply();
+      } finally {
+        map.endEventBatch();
+      }
+      if (map.getUndoManager() != null) map
+        .getUndoManager()
+        .mark(VueResources.getString("menu.format.layout.force"));
     }
   }
 }
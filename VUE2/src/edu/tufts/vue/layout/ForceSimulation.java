@@ -0,0 +1,441 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package edu.tufts.vue.layout;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A Fruchterman-Reingold style force-directed simulation over rectangular bodies: springs pull
+ * linked bodies together, every pair of bodies repels, and a weak gravity keeps disconnected
+ * pieces from drifting apart.  Distances are measured between the edges of the body
+ * rectangles, not their centers, so big nodes get the room they need.
+ *
+ * Repulsion is approximated with a Barnes-Hut quadtree, rebuilt each iteration, which makes an
+ * iteration O(n log n) instead of O(n^2).  The forces on each body only read the tree and the
+ * current positions, so they're computed in parallel in a ForkJoinPool.  The maximum distance a
+ * body may move in an iteration (the temperature) cools geometrically from iteration to
+ * iteration, as in simulated annealing.
+ *
+ * This knows nothing of LWComponents: see ForceLayout.
+ */
+final class ForceSimulation {
+
+  private static final org.apache.log4j.Logger Log =
+    org.apache.log4j.Logger.getLogger(ForceSimulation.class);
+
+  /** Barnes-Hut opening criterion: a cell is approximated if its size/distance is below this */
+  private static final double THETA = 1.0;
+  /** pull towards the center of the layout, relative to the spring force */
+  private static final double GRAVITY = 0.02;
+  /** the closest we'll consider any two bodies to be, relative to the ideal gap */
+  private static final double MIN_GAP = 0.05;
+  /** the temperature cools to this fraction of the ideal gap by the last iteration */
+  private static final double FINAL_TEMPERATURE = 0.02;
+  /** stop early if no body moved more than this in an iteration */
+  private static final double CONVERGED = 0.25;
+  /** bodies per parallel force task */
+  private static final int CHUNK = 256;
+  private static final int MAX_DEPTH = 32;
+
+  private static final ForkJoinPool LayoutPool = new ForkJoinPool(
+    Runtime.getRuntime().availableProcessors(),
+    new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+      public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        final ForkJoinWorkerThread t =
+          ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("VUE-Layout-" + t.getPoolIndex());
+        t.setDaemon(true);
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+      }
+    },
+    null,
+    false
+  );
+
+  private final int n;
+  /** body centers: the current positions, and the positions being computed */
+  private double[] x, y, nextX, nextY;
+  /** body half-widths and half-heights */
+  private final double[] hw, hh;
+  /** the mean half-extent of each body, used when approximating it as part of a cell */
+  private final double[] radius;
+  /** links, as a compressed adjacency list: the neighbors of i are adj[adjStart[i]..adjStart[i+1]] */
+  private final int[] adjStart, adj;
+  /** the ideal gap between the edges of two linked bodies */
+  private final double gap;
+  private final double centerX, centerY;
+
+  private double temperature;
+  private Cell root;
+
+  /**
+   * @param x the initial center x of each body (the array is reused by the simulation)
+   * @param y the initial center y of each body (the array is reused by the simulation)
+   * @param width the width of each body
+   * @param height the height of each body
+   * @param heads,tails the pairs of linked bodies, by index
+   * @param spacing the desired space between linked bodies
+   */
+  ForceSimulation(
+    double[] x,
+    double[] y,
+    double[] width,
+    double[] height,
+    int[] heads,
+    int[] tails,
+    double spacing
+  ) {
+    this.n = x.length;
+    this.x = x;
+    this.y = y;
+    this.nextX = new double[n];
+    this.nextY = new double[n];
+    this.hw = new double[n];
+    this.hh = new double[n];
+    this.radius = new double[n];
+
+    double meanRadius = 0, sumX = 0, sumY = 0;
+    for (int i = 0; i < n; i++) {
+      hw[i] = width[i] / 2;
+      hh[i] = height[i] / 2;
+      radius[i] = (hw[i] + hh[i]) / 2;
+      meanRadius += radius[i];
+      sumX += x[i];
+      sumY += y[i];
+    }
+    meanRadius = n == 0 ? 0 : meanRadius / n;
+    this.gap = Math.max(spacing, 1) + meanRadius;
+    this.centerX = n == 0 ? 0 : sumX / n;
+    this.centerY = n == 0 ? 0 : sumY / n;
+
+    final int[] degree = new int[n + 1];
+    for (int e = 0; e < heads.length; e++) {
+      if (heads[e] == tails[e]) continue;
+      degree[heads[e]]++;
+      degree[tails[e]]++;
+    }
+    adjStart = new int[n + 1];
+    for (int i = 0; i < n; i++) adjStart[i + 1] = adjStart[i] + degree[i];
+    adj = new int[adjStart[n]];
+    final int[] fill = Arrays.copyOf(adjStart, n);
+    for (int e = 0; e < heads.length; e++) {
+      if (heads[e] == tails[e]) continue;
+      adj[fill[heads[e]]++] = tails[e];
+      adj[fill[tails[e]]++] = heads[e];
+    }
+
+    spreadCoincident();
+  }
+
+  /** bodies stacked at the same point have no direction to repel each other in: spiral them apart */
+  private void spreadCoincident() {
+    final Set<Long> seen = new HashSet<Long>(n * 2);
+    int spread = 0;
+    for (int i = 0; i < n; i++) {
+      final long at =
+        Double.doubleToLongBits(x[i]) * 31 + Double.doubleToLongBits(y[i]);
+      if (!seen.add(at)) {
+        spread++;
+        final double r = gap * Math.sqrt(spread);
+        final double angle = spread * 2.399963; // golden angle
+        x[i] += r * Math.cos(angle);
+        y[i] += r * Math.sin(angle);
+      }
+    }
+    if (spread > 0 && tufts.vue.DEBUG.LAYOUT) Log.debug(
+      "spread " + spread + " coincident bodies"
+    );
+  }
+
+  /** @return the number of iterations actually run */
+  int run(int maxIterations) {
+    if (n < 2) return 0;
+    // start hot enough to untangle the whole layout
+    final double hot = Math.max(gap, gap * Math.sqrt(n) / 4);
+    final double cooling = Math.pow(
+      (FINAL_TEMPERATURE * gap) / hot,
+      1.0 / Math.max(1, maxIterations - 1)
+    );
+    temperature = hot;
+    int iteration = 0;
+    while (iteration < maxIterations) {
+      iteration++;
+      root = buildTree();
+      if (n <= CHUNK) new Step(0, n).compute(); else LayoutPool.invoke(
+        new Step(0, n)
+      );
+      root = null;
+      double moved = 0;
+      for (int i = 0; i < n; i++) {
+        final double dx = nextX[i] - x[i], dy = nextY[i] - y[i];
+        moved = Math.max(moved, dx * dx + dy * dy);
+      }
+      double[] swap = x;
+      x = nextX;
+      nextX = swap;
+      swap = y;
+      y = nextY;
+      nextY = swap;
+      if (Math.sqrt(moved) < CONVERGED) break;
+      temperature *= cooling;
+    }
+    return iteration;
+  }
+
+  /** @return the final center x of each body */
+  double[] getX() {
+    return x;
+  }
+
+  /** @return the final center y of each body */
+  double[] getY() {
+    return y;
+  }
+
+  /** For testing: the repulsion on body i from all the others, at the current positions */
+  double[] getRepulsion(int i) {
+    root = buildTree();
+    final double[] force = new double[2];
+    repulse(i, new Cell[MAX_DEPTH * 4 + 4], force);
+    root = null;
+    return force;
+  }
+
+  //-----------------------------------------------------------------------------
+  // Forces
+  //-----------------------------------------------------------------------------
+
+  /** computes the next positions of the bodies in [lo,hi) */
+  private final class Step extends RecursiveAction {
+
+    final int lo, hi;
+
+    Step(int lo, int hi) {
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    protected void compute() {
+      if (hi - lo > CHUNK) {
+        final int mid = (lo + hi) >>> 1;
+        invokeAll(new Step(lo, mid), new Step(mid, hi));
+        return;
+      }
+      final Cell[] stack = new Cell[MAX_DEPTH * 4 + 4];
+      final double[] force = new double[2];
+      for (int i = lo; i < hi; i++) {
+        force[0] = force[1] = 0;
+        repulse(i, stack, force);
+        attract(i, force);
+        // gravity
+        force[0] -= GRAVITY * (x[i] - centerX);
+        force[1] -= GRAVITY * (y[i] - centerY);
+        final double len = Math.hypot(force[0], force[1]);
+        if (len > 0) {
+          final double step = Math.min(len, temperature) / len;
+          nextX[i] = x[i] + force[0] * step;
+          nextY[i] = y[i] + force[1] * step;
+        } else {
+          nextX[i] = x[i];
+          nextY[i] = y[i];
+        }
+      }
+    }
+  }
+
+  /** @return distance from the center of body i to its edge, in the direction (ux,uy) */
+  private double extent(int i, double ux, double uy) {
+    final double ax = Math.abs(ux), ay = Math.abs(uy);
+    if (ax * hh[i] > ay * hw[i]) return hw[i] / ax; else return hh[i] / ay;
+  }
+
+  /** add to force the repulsion on body i from a mass at (px,py) with the given mean radius */
+  private void push(
+    int i,
+    double px,
+    double py,
+    double r,
+    double mass,
+    double[] force
+  ) {
+    double dx = x[i] - px, dy = y[i] - py;
+    double d = Math.sqrt(dx * dx + dy * dy);
+    if (d < 1e-6) {
+      // no direction: pick one that's stable for this body
+      dx = Math.cos(i);
+      dy = Math.sin(i);
+      d = 1;
+    }
+    final double ux = dx / d, uy = dy / d;
+    final double g = Math.max(d - extent(i, ux, uy) - r, MIN_GAP * gap);
+    final double f = mass * gap * gap / g;
+    force[0] += ux * f;
+    force[1] += uy * f;
+  }
+
+  private void repulse(int i, Cell[] stack, double[] force) {
+    int top = 0;
+    stack[top++] = root;
+    while (top > 0) {
+      final Cell c = stack[--top];
+      if (c.quads == null) {
+        // a leaf: one body, or several at MAX_DEPTH
+        double mass = c.mass, sx = c.sumX, sy = c.sumY, sr = c.sumR;
+        if (c.holds(i)) {
+          mass -= 1;
+          sx -= x[i];
+          sy -= y[i];
+          sr -= radius[i];
+        }
+        if (mass <= 0) continue;
+        if (mass == 1 && c.extra == null) {
+          // an exact interaction with a single body: use both real extents
+          final int j = c.body;
+          final double dx = x[j] - x[i], dy = y[j] - y[i];
+          final double d = Math.sqrt(dx * dx + dy * dy);
+          final double r = d < 1e-6 ? radius[j] : extent(j, dx / d, dy / d);
+          push(i, x[j], y[j], r, 1, force);
+        } else push(i, sx / mass, sy / mass, sr / mass, mass, force);
+        continue;
+      }
+      final double cx = c.sumX / c.mass, cy = c.sumY / c.mass;
+      final double dx = x[i] - cx, dy = y[i] - cy;
+      final double d2 = dx * dx + dy * dy;
+      if (!c.contains(x[i], y[i]) && c.size * c.size < THETA * THETA * d2) {
+        push(i, cx, cy, c.sumR / c.mass, c.mass, force);
+      } else {
+        for (Cell q : c.quads) if (q != null) stack[top++] = q;
+      }
+    }
+  }
+
+  private void attract(int i, double[] force) {
+    for (int a = adjStart[i]; a < adjStart[i + 1]; a++) {
+      final int j = adj[a];
+      final double dx = x[j] - x[i], dy = y[j] - y[i];
+      final double d = Math.sqrt(dx * dx + dy * dy);
+      if (d < 1e-6) continue;
+      final double ux = dx / d, uy = dy / d;
+      final double g = d - extent(i, ux, uy) - extent(j, ux, uy);
+      if (g <= 0) continue; // already touching
+      final double f = g * g / gap;
+      force[0] += ux * f;
+      force[1] += uy * f;
+    }
+  }
+
+  //-----------------------------------------------------------------------------
+  // Barnes-Hut quadtree
+  //-----------------------------------------------------------------------------
+
+  private static final class Cell {
+
+    final double x0, y0, size;
+    double mass, sumX, sumY, sumR;
+    /** the body in a leaf, or the first of several bodies in a leaf at MAX_DEPTH */
+    int body = -1;
+    /** any other bodies in a leaf at MAX_DEPTH */
+    int[] extra;
+    int extraCount;
+    Cell[] quads;
+
+    Cell(double x0, double y0, double size) {
+      this.x0 = x0;
+      this.y0 = y0;
+      this.size = size;
+    }
+
+    boolean contains(double px, double py) {
+      return px >= x0 && py >= y0 && px <= x0 + size && py <= y0 + size;
+    }
+
+    /** @return true if this is a leaf holding body i */
+    boolean holds(int i) {
+      if (body == i) return true;
+      for (int k = 0; k < extraCount; k++) if (extra[k] == i) return true;
+      return false;
+    }
+
+    void addExtra(int i) {
+      if (extra == null) extra = new int[2]; else if (
+        extraCount == extra.length
+      ) extra = Arrays.copyOf(extra, extraCount * 2);
+      extra[extraCount++] = i;
+    }
+  }
+
+  private Cell buildTree() {
+    double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < n; i++) {
+      minX = Math.min(minX, x[i]);
+      minY = Math.min(minY, y[i]);
+      maxX = Math.max(maxX, x[i]);
+      maxY = Math.max(maxY, y[i]);
+    }
+    final Cell root = new Cell(
+      minX,
+      minY,
+      Math.max(Math.max(maxX - minX, maxY - minY), 1) * 1.0001
+    );
+    for (int i = 0; i < n; i++) insert(root, i);
+    return root;
+  }
+
+  private void insert(Cell c, int i) {
+    for (int depth = 0;; depth++) {
+      c.mass++;
+      c.sumX += x[i];
+      c.sumY += y[i];
+      c.sumR += radius[i];
+      if (c.quads == null) {
+        if (c.mass == 1) {
+          c.body = i;
+          return;
+        }
+        if (depth >= MAX_DEPTH) {
+          c.addExtra(i); // keep the extra body in this leaf
+          return;
+        }
+        // split: move the resident body down a level
+        c.quads = new Cell[4];
+        final int resident = c.body;
+        c.body = -1;
+        final Cell q = quadFor(c, resident);
+        q.mass = 1;
+        q.sumX = x[resident];
+        q.sumY = y[resident];
+        q.sumR = radius[resident];
+        q.body = resident;
+      }
+      c = quadFor(c, i);
+    }
+  }
+
+  private Cell quadFor(Cell c, int i) {
+    final double half = c.size / 2;
+    final int right = x[i] >= c.x0 + half ? 1 : 0;
+    final int below = y[i] >= c.y0 + half ? 1 : 0;
+    final int q = right + below * 2;
+    if (c.quads[q] == null) c.quads[q] =
+      new Cell(c.x0 + right * half, c.y0 + below * half, half);
+    return c.quads[q];
+  }
+}
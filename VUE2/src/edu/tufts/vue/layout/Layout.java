@@ -53,4 +53,16 @@ public abstract class Layout {
   public abstract LWMap createMap(Dataset ds, String mapName) throws Exception;
 
   public abstract void layout(LWSelection s) throws Exception;
+
+  /**
+   * Start laying out the selection in the background, if this layout can: the new
+   * locations are set later, on the AWT event thread, after which whenDone (if
+   * non-null) is run there as well.
+   * @return false if this layout doesn't run in the background, in which case
+   * nothing has been done, and the caller should call layout(LWSelection)
+   */
+  public boolean layoutInBackground(LWSelection s, Runnable whenDone)
+    throws Exception {
+    return false;
+  }
 }
@@ -218,6 +218,7 @@ public class MetadataList implements tufts.vue.XMLUnmarshalListener {
     // the categoryList updates still trigger the updates, so we turn them off with a flag for now
 
     // disableEvents = true;
+    bulkAdding = true;
     try {
       for (Map.Entry e : kvEntries) {
         try {
@@ -233,10 +234,9 @@ public class MetadataList implements tufts.vue.XMLUnmarshalListener {
       }
     } catch (Throwable tx) {
       Log.error("add iterable " + Util.tags(kvEntries), tx);
+    } finally {
+      bulkAdding = false;
     }
-    // finally {
-    //     disableEvents = false;
-    // }
     fireListChanged("bulk-add");
   }
 
@@ -246,8 +246,7 @@ public class MetadataList implements tufts.vue.XMLUnmarshalListener {
 
   public void addElement(VueMetadataElement element) {
     if (true || DEBUG_LOCAL) Log.debug("addElement " + Util.tags(element));
-    dataList.add(element);
-    fireListChanged("addElement");
+    dataList.add(element); // fires the change
   }
 
   public VueMetadataElement get(int i) {
@@ -268,8 +267,7 @@ public class MetadataList implements tufts.vue.XMLUnmarshalListener {
   }
 
   public void remove(int i) {
-    dataList.remove(i);
-    fireListChanged("remove");
+    dataList.remove(i); // fires the change
   }
 
   public boolean removeAnyType(VueMetadataElement target) {
@@ -1142,11 +1140,27 @@ public class MetadataList implements tufts.vue.XMLUnmarshalListener {
     // listeners.add(listener);
   }
 
+  /** the component this is the meta-data of, if any */
+  private tufts.vue.LWComponent owner;
+  /** while set, changes are reported once, at the end of the bulk add */
+  private boolean bulkAdding;
+
+  /** Changes to this list will be reported as LWKey.MetaData events from the given component */
+  public void setOwner(tufts.vue.LWComponent c) {
+    owner = c;
+  }
+
   // Oops -- this disable flag was static, which means meta-data list events from other threads
   // could tromp all over the updates from other threads (not that we really need this update at
   // all, fortunately)
   // private static boolean disableEvents = false;
-  private static void fireListChanged(Object tag) {
+  private void fireListChanged(Object tag) {
+    // Only our owner hears of this (e.g., so SearchIndex sees meta-data added directly
+    // to the list by data-set code), and only via the usual LWCEvent channels.
+    if (owner != null && !unmarshalling && !bulkAdding) owner.notify(
+      this,
+      tufts.vue.LWKey.MetaData
+    );
     // if (DEBUG.Enabled) Log.info("fireListChanged: " + Util.tags(tag));
 
     // if (disableEvents)
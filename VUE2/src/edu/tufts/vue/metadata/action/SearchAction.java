@@ -376,21 +376,17 @@ public class SearchAction extends AbstractAction {
 
   private static final String INDEX_WITH_WAIT_CURSOR =
     "<index-with-wait-cursor>";
-  private static final String INDEX_NO_WAIT_CURSOR = "<index-no-wait-cursor>";
 
   /**
-   * @return an index over given search scope (e.g., the currently active map, or all open maps)
+   * @return the indices over given search scope (e.g., the currently active map, or all open maps)
    */
-  private RDFIndex getIndexForScope(final ComboKey scope) {
+  private List<SearchIndex> getIndexForScope(final ComboKey scope) {
     if (DEBUG.SEARCH) Log.debug("getIndexForScope " + Util.tags(scope));
 
     if (scope == SEARCH_SCOPE_ALL_OPEN_MAPS) {
       if (DEBUG.SEARCH) Log.debug("indexing all open maps...");
 
-      this.waitCursorActivated = true;
-      tufts.vue.gui.GUI.activateWaitCursor();
-
-      final RDFIndex globalIndex = new RDFIndex();
+      final List<SearchIndex> indices = new ArrayList<SearchIndex>();
 
       // TODO: do we really want to search amongst existing "Search Results" maps?
 
@@ -398,68 +394,42 @@ public class SearchAction extends AbstractAction {
         if (DEBUG.SEARCH || DEBUG.RDF) Log.debug(
           "adding to global index: " + map
         );
-        final RDFIndex mapIndex = getIndexForMap(
-          map,
-          !this.metadataOnly,
-          INDEX_NO_WAIT_CURSOR
-        );
-        globalIndex.addMapIndex(mapIndex);
+        indices.add(getIndexForMap(map, INDEX_WITH_WAIT_CURSOR));
       }
 
       if (DEBUG.SEARCH || DEBUG.RDF) Log.debug("done indexing all maps.");
 
-      return globalIndex;
+      return indices;
     } else { // default SEARCH_SCOPE_CURRENT_MAP
-      return getIndexForMap(
-        VUE.getActiveMap(),
-        !this.metadataOnly,
-        INDEX_WITH_WAIT_CURSOR
+      return Collections.singletonList(
+        getIndexForMap(VUE.getActiveMap(), INDEX_WITH_WAIT_CURSOR)
       );
     }
   }
 
   /**
-   * This will find a valid cached index for the given map, or create and populate a fresh
-   * one. Note that this call can also have a crucial side effect: it will activate the global wait
-   * cursor if indexing is begun, and this.waitCursorActivated must be checked later to see if it
-   * should be cleared.
+   * This will find the index for the given map, or create and populate a fresh one.  Once
+   * created, an index keeps itself up to date with changes to the map.  Note that this call
+   * can also have a crucial side effect: it will activate the global wait cursor if indexing
+   * is begun, and this.waitCursorActivated must be checked later to see if it should be
+   * cleared.
    */
-  private RDFIndex getIndexForMap(
-    final LWMap map,
-    boolean include_LWC_fields,
-    String activateWait
-  ) {
-    final CachedIndex cache = map.getClientData(CachedIndex.class);
-    final RDFIndex index;
+  private SearchIndex getIndexForMap(final LWMap map, String activateWait) {
+    SearchIndex index = map.getClientData(SearchIndex.class);
 
-    if (cache != null && cache.isStillValid(include_LWC_fields)) {
-      if (DEBUG.SEARCH) Log.debug(
-        "found valid cached index " + Util.tags(cache)
-      );
-      index = cache.index;
+    if (index != null) {
+      if (DEBUG.SEARCH) Log.debug("found index " + Util.tags(index));
     } else {
-      if (DEBUG.SEARCH || DEBUG.RDF) {
-        if (cache != null) Log.debug(
-          "saw cached index " + Util.tags(cache) + "; but was invalid"
-        );
-        Log.debug("indexing " + map + "...");
-      }
+      if (DEBUG.SEARCH || DEBUG.RDF) Log.debug("indexing " + map + "...");
 
-      if (activateWait == INDEX_WITH_WAIT_CURSOR) {
+      if (activateWait == INDEX_WITH_WAIT_CURSOR && !waitCursorActivated) {
         this.waitCursorActivated = true;
         tufts.vue.gui.GUI.activateWaitCursor();
       }
 
-      // Todo: can't we get rid of the METAONLY flag by modifying the search itself to ignore
-      // the specific URI keys?
-
-      index = new RDFIndex();
-      index.indexAdd(map, !include_LWC_fields, this.everything);
-      // note: the "everything" is currently ignored during indexing -- e.g., we never index LWSlide content
-      map.setClientData(
-        CachedIndex.class,
-        new CachedIndex(index, map, include_LWC_fields)
-      );
+      index = new SearchIndex(map);
+      // note: as with RDFIndex, the "everything" bit is ignored -- we never index LWSlide content
+      map.setClientData(SearchIndex.class, index);
 
       if (DEBUG.SEARCH || DEBUG.RDF) Log.debug(" indexed " + map + ".");
     }
@@ -467,30 +437,8 @@ public class SearchAction extends AbstractAction {
     return index;
   }
 
-  private static class CachedIndex {
-
-    final RDFIndex index;
-    final LWMap map;
-    final long mapChangeStateAtIndex;
-    final boolean indexHad_LWC_fields;
-
-    CachedIndex(RDFIndex i, LWMap m, boolean didIndex_LWC_fields) {
-      index = i;
-      map = m;
-      mapChangeStateAtIndex = map.getChangeState();
-      indexHad_LWC_fields = didIndex_LWC_fields;
-    }
-
-    boolean isStillValid(boolean want_LWC_fields) {
-      return (
-        map.getChangeState() == mapChangeStateAtIndex &&
-        indexHad_LWC_fields == want_LWC_fields
-      );
-    }
-  }
-
   private Collection<LWComponent> runSearch(
-    final edu.tufts.vue.rdf.RDFIndex index,
+    final List<SearchIndex> indices,
     final List<VueMetadataElement> terms
   ) // add actualCriteraAdded & crossTermOperator as explicit inputs
   {
@@ -532,7 +480,7 @@ public class SearchAction extends AbstractAction {
     // e.g., a search for "mentor" (ClubZora test data set) might reveal that all hits happened
     // to occur on a field named "Role" ]
 
-    final Collection<URI> results = new HashSet<URI>();
+    final Collection<LWComponent> results = new HashSet<LWComponent>();
 
     // TYPE_QUERY appears to be used in most (all?) cases, which works differently than
     // TYPE_FIELD.  TYPE_FIELD, I *thought* I saw was used when we search just amongst
@@ -568,10 +516,14 @@ public class SearchAction extends AbstractAction {
         );
         if (crossTermOperator == Operator.AND) {
           // In this case, the AND is built into the query via multiple SPARQL sub-statements:
-          results.addAll(index.search(query));
+          for (SearchIndex index : indices) results.addAll(
+            index.search(query, metadataOnly)
+          );
         } else if (crossTermOperator == Operator.OR) {
           // In this case, the OR is handled by running multiple single-statement queries:
-          for (Query q : queryList) results.addAll(index.search(q));
+          for (Query q : queryList) for (SearchIndex index : indices) results.addAll(
+            index.search(q, metadataOnly)
+          );
         } else {
           // should never happen:
           Log.error(
@@ -590,9 +542,9 @@ public class SearchAction extends AbstractAction {
         if (DEBUG.SEARCH) Log.debug("textToFind has " + Util.tags(textTerm));
         if (textTerm.length() > 0) {
           if (firstTerm || crossTermOperator == Operator.OR) results.addAll(
-            index.searchAllValues(textTerm)
+            searchAllValues(indices, textTerm)
           ); else if (crossTermOperator == Operator.AND) results.retainAll(
-            index.searchAllValues(textTerm)
+            searchAllValues(indices, textTerm)
           ); else Log.error(
             "Unhandled operator: " + Util.tags(crossTermOperator)
           );
@@ -600,7 +552,21 @@ public class SearchAction extends AbstractAction {
         firstTerm = false;
       }
     }
-    return index.decodeVueResults(results);
+    return new ArrayList<LWComponent>(results);
+  }
+
+  private Collection<LWComponent> searchAllValues(
+    List<SearchIndex> indices,
+    String text
+  ) {
+    if (indices.size() == 1) return indices
+      .get(0)
+      .searchAllValues(text, metadataOnly);
+    final Collection<LWComponent> hits = new HashSet<LWComponent>();
+    for (SearchIndex index : indices) hits.addAll(
+      index.searchAllValues(text, metadataOnly)
+    );
+    return hits;
   }
 
   /**
@@ -654,7 +620,7 @@ public class SearchAction extends AbstractAction {
 
     if (hits == null) {
       // Should only happen on exception:
-      Log.warn("hits is null back from RDFIndex");
+      Log.warn("hits is null back from SearchIndex");
       java.awt.Toolkit.getDefaultToolkit().beep();
       return;
     }
@@ -755,7 +721,7 @@ public class SearchAction extends AbstractAction {
     Flag.PRUNED.bit; // should never need (already hidden if this is set)
 
   /**
-   * Take the given set of hits from the RDFIndex based search, and process them depending on the
+   * Take the given set of hits from the SearchIndex based search, and process them depending on the
    * the user-selected resulting action.  Any returned collection of LWComponents are items to
    * actually be selected, which can vary from the LWComponents that were registered as hits.
    * (E.g., a hit on a node-icon will actually select it's parent node).
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package edu.tufts.vue.metadata.action;
+
+import edu.tufts.vue.metadata.Constants;
+import edu.tufts.vue.metadata.MetadataList;
+import edu.tufts.vue.metadata.VueMetadataElement;
+import edu.tufts.vue.rdf.Query;
+import edu.tufts.vue.rdf.RDFIndex;
+import java.util.*;
+import tufts.Util;
+import tufts.vue.DEBUG;
+import tufts.vue.LWCEvent;
+import tufts.vue.LWComponent;
+import tufts.vue.LWKey;
+import tufts.vue.LWMap;
+import tufts.vue.LWPathway;
+import tufts.vue.LWSlide;
+
+/**
+ * An inverted index over the searchable text in a map: labels, notes, tufts.vue.Resource
+ * properties, and meta-data.  This indexes the same values under the same keys as RDFIndex
+ * does for search, but is kept up to date incrementally: it listens to the map, and the
+ * components named in change events are re-indexed at the start of the next search, instead
+ * of re-indexing the whole map after every change.
+ *
+ * Values are matched case-independently, as literal substrings (or prefixes).  Each distinct
+ * value is indexed by its trigrams, so a substring of three or more characters only has to
+ * be checked against the values containing its rarest trigram.  Prefixes are found from a
+ * sorted map of the values.
+ *
+ * Every change to a component's MetadataList is reported as a LWKey.MetaData event from that
+ * component, even when made directly to the list (e.g., by data-set or analyzer code), so
+ * only the components named in events ever need re-indexing.
+ */
+final class SearchIndex implements LWComponent.Listener {
+
+  private static final org.apache.log4j.Logger Log =
+    org.apache.log4j.Logger.getLogger(SearchIndex.class);
+
+  static final String LABEL_KEY = RDFIndex.VUE_ONTOLOGY + Constants.LABEL;
+  static final String NOTES_KEY = RDFIndex.VUE_ONTOLOGY + Constants.NOTES;
+  static final String RESOURCE_KEY =
+    RDFIndex.VUE_ONTOLOGY + Constants.CONTENT_INFO_PROPERTY;
+
+  /** a distinct (lower-cased) value, and all the fields that have it */
+  private static final class Value {
+
+    final String text;
+    final Set<Field> fields = new HashSet<Field>(4);
+
+    Value(String text) {
+      this.text = text;
+    }
+  }
+
+  /** a single key/value on a component */
+  private static final class Field {
+
+    final LWComponent component;
+    /** encoded as by RDFIndex.getEncodedKey */
+    final String key;
+    /** false for labels, notes and resource properties */
+    final boolean isMetadata;
+    final Value value;
+
+    Field(LWComponent c, String key, boolean isMetadata, Value value) {
+      this.component = c;
+      this.key = key;
+      this.isMetadata = isMetadata;
+      this.value = value;
+    }
+  }
+
+  /** what we indexed for a component */
+  private static final class Entry {
+
+    final List<Field> fields = new ArrayList<Field>(4);
+  }
+
+  private final LWMap mMap;
+
+  private final TreeMap<String, Value> mValues = new TreeMap<String, Value>();
+  private final Map<Long, Set<Value>> mGrams = new HashMap<Long, Set<Value>>();
+  private final Map<LWComponent, Entry> mEntries = new HashMap<
+    LWComponent,
+    Entry
+  >();
+
+  /** components to re-index at the next search */
+  private final Set<LWComponent> mDirty = new HashSet<LWComponent>();
+  private boolean mRebuild;
+
+  SearchIndex(LWMap map) {
+    mMap = map;
+    rebuild();
+    map.addLWCListener(this);
+  }
+
+  public void LWCChanged(LWCEvent e) {
+    final Object key = e.key;
+    if (key == LWKey.ChildrenAdded || key == LWKey.ChildrenRemoved) {
+      final List<LWComponent> list = e.getComponents();
+      if (list != null) {
+        for (LWComponent c : list) markTree(c);
+      } else if (e.component != null) markTree(e.component);
+    } else if (
+      key == LWKey.Label ||
+      key == LWKey.Notes ||
+      key == LWKey.Resource ||
+      key == LWKey.MetaData
+    ) {
+      final LWComponent c = e.getComponent();
+      if (c == mMap) {
+        // The MetadataEditor reports edits to a multiple selection on the map itself.
+        // Changes to the map's own meta-data list are of no interest.
+        if (
+          key == LWKey.MetaData && !(e.getSource() instanceof MetadataList)
+        ) synchronized (this) {
+          mRebuild = true;
+        }
+      } else if (c != null) synchronized (this) {
+        mDirty.add(c);
+      }
+    }
+  }
+
+  private synchronized void markTree(LWComponent c) {
+    mDirty.add(c);
+    if (c.hasChildren()) mDirty.addAll(
+      c.getAllDescendents(LWComponent.ChildKind.ANY)
+    );
+  }
+
+  /**
+   * Find all the components with a field value containing the given text.
+   * @param metadataOnly if true, labels, notes and resource properties are not searched
+   */
+  synchronized Set<LWComponent> searchAllValues(
+    String text,
+    boolean metadataOnly
+  ) {
+    update();
+    final Set<LWComponent> hits = new HashSet<LWComponent>();
+    for (Field f : find(
+      text,
+      Query.Qualifier.CONTAINS
+    )) if (!metadataOnly || f.isMetadata) hits.add(f.component);
+    return hits;
+  }
+
+  /**
+   * Find all the components that match every criteria in the query.  STARTS_WITH criteria
+   * match prefixes, and all others are treated as CONTAINS.
+   */
+  synchronized Set<LWComponent> search(Query query, boolean metadataOnly) {
+    update();
+    Set<LWComponent> hits = null;
+    for (Query.Criteria criteria : query.getCriteria()) {
+      final String key = RDFIndex.getEncodedKey(criteria.getKey());
+      final Set<LWComponent> matched = new HashSet<LWComponent>();
+      for (Field f : find(criteria.getValue(), criteria.getQualifier())) {
+        if (
+          f.key.equals(key) &&
+          (!metadataOnly || f.isMetadata) &&
+          (hits == null || hits.contains(f.component))
+        ) matched.add(f.component);
+      }
+      hits = matched;
+      if (hits.isEmpty()) break;
+    }
+    return hits == null ? new HashSet<LWComponent>() : hits;
+  }
+
+  /** @return the number of components indexed */
+  synchronized int size() {
+    update();
+    return mEntries.size();
+  }
+
+  private List<Field> find(String text, Query.Qualifier qualifier) {
+    final String lower = text.toLowerCase();
+    final List<Field> found = new ArrayList<Field>();
+
+    if (qualifier == Query.Qualifier.STARTS_WITH) {
+      for (Value v : mValues
+        .tailMap(lower)
+        .values()) if (v.text.startsWith(lower)) found.addAll(
+        v.fields
+      ); else break;
+      return found;
+    }
+
+    final Collection<Value> candidates;
+    if (lower.length() < 3) {
+      candidates = mValues.values();
+    } else {
+      // only the values containing the query's rarest trigram need checking
+      Set<Value> rarest = null;
+      for (int i = 0; i + 3 <= lower.length(); i++) {
+        final Set<Value> values = mGrams.get(gram(lower, i));
+        if (values == null) return found;
+        if (rarest == null || values.size() < rarest.size()) rarest = values;
+      }
+      candidates = rarest;
+    }
+    for (Value v : candidates) if (v.text.contains(lower)) found.addAll(
+      v.fields
+    );
+    return found;
+  }
+
+  /** spaced so that Long.hashCode doesn't collide the characters of ASCII trigrams */
+  private static Long gram(String s, int i) {
+    return (
+      ((long) s.charAt(i) << 42) |
+      ((long) s.charAt(i + 1) << 21) |
+      s.charAt(i + 2)
+    );
+  }
+
+  //----------------------------------------------------------------------------------------
+  // Maintenance
+  //----------------------------------------------------------------------------------------
+
+  private void update() {
+    if (mRebuild) {
+      rebuild();
+      return;
+    }
+    if (!mDirty.isEmpty()) {
+      if (DEBUG.SEARCH) Log.debug(
+        "re-indexing " + mDirty.size() + " in " + mMap
+      );
+      for (LWComponent c : mDirty) {
+        remove(c);
+        if (isSearchable(c)) add(c);
+      }
+      mDirty.clear();
+    }
+  }
+
+  private void rebuild() {
+    final long start = System.currentTimeMillis();
+    mValues.clear();
+    mGrams.clear();
+    mEntries.clear();
+    mDirty.clear();
+    mRebuild = false;
+    for (LWComponent c : mMap.getAllDescendents()) if (isSearchable(c)) add(c);
+    if (DEBUG.SEARCH) Log.debug(
+      "indexed " +
+      mEntries.size() +
+      " components, " +
+      mValues.size() +
+      " values in " +
+      (System.currentTimeMillis() - start) +
+      "ms; " +
+      mMap
+    );
+  }
+
+  /** @return true if c is in our map, and not on a slide or pathway */
+  private boolean isSearchable(LWComponent c) {
+    if (
+      c.isDeleted() ||
+      c instanceof LWMap ||
+      c instanceof LWMap.Layer ||
+      c instanceof LWPathway ||
+      c instanceof LWSlide
+    ) return false;
+    for (LWComponent p = c.getParent(); p != null; p = p.getParent()) {
+      if (p == mMap) return true;
+      if (p instanceof LWSlide || p instanceof LWPathway) return false;
+    }
+    return false;
+  }
+
+  private void add(LWComponent c) {
+    final Entry entry = new Entry();
+
+    if (c.hasLabel()) addField(entry, c, LABEL_KEY, false, c.getLabel());
+    if (c.hasNotes()) addField(entry, c, NOTES_KEY, false, c.getNotes());
+
+    final tufts.vue.Resource r = c.getResource();
+    if (r != null) {
+      for (Map.Entry e : r.getProperties().entries()) {
+        if (
+          e.getValue() == null ||
+          tufts.vue.Resource.isInternalPropertyKey(e.getKey().toString())
+        ) continue;
+        final String value = e.getValue().toString();
+        if (value.length() > 0) addField(entry, c, RESOURCE_KEY, false, value);
+      }
+    }
+
+    for (VueMetadataElement vme : c.getMetadataList().getMetadata()) {
+      final String key = vme.getKey();
+      final String value = vme.getValue();
+      if (key == null || key.length() == 0 || value == null) continue;
+      if (key.equals(RDFIndex.VueTermOntologyNone)) {
+        // as with RDFIndex, don't bother with empty values that have no keyword
+        if (value.length() > 0) addField(
+          entry,
+          c,
+          RDFIndex.VueTermOntologyNone,
+          true,
+          value
+        );
+      } else addField(entry, c, RDFIndex.getEncodedKey(key), true, value);
+    }
+
+    mEntries.put(c, entry);
+  }
+
+  private void addField(
+    Entry entry,
+    LWComponent c,
+    String key,
+    boolean isMetadata,
+    String text
+  ) {
+    final String lower = text.toLowerCase();
+    Value value = mValues.get(lower);
+    if (value == null) {
+      value = new Value(lower);
+      mValues.put(lower, value);
+      for (int i = 0; i + 3 <= lower.length(); i++) {
+        final Long g = gram(lower, i);
+        Set<Value> values = mGrams.get(g);
+        if (values == null) mGrams.put(g, values = new HashSet<Value>(4));
+        values.add(value);
+      }
+    }
+    final Field field = new Field(c, key, isMetadata, value);
+    value.fields.add(field);
+    entry.fields.add(field);
+  }
+
+  private void remove(LWComponent c) {
+    final Entry entry = mEntries.remove(c);
+    if (entry == null) return;
+    for (Field field : entry.fields) {
+      final Value value = field.value;
+      value.fields.remove(field);
+      if (value.fields.isEmpty() && mValues.remove(value.text) != null) {
+        for (Long g : gramsOf(value.text)) {
+          final Set<Value> values = mGrams.get(g);
+          if (values != null) {
+            values.remove(value);
+            if (values.isEmpty()) mGrams.remove(g);
+          }
+        }
+      }
+    }
+  }
+
+  private static Set<Long> gramsOf(String s) {
+    final Set<Long> grams = new HashSet<Long>(Math.max(4, s.length() * 2));
+    for (int i = 0; i + 3 <= s.length(); i++) grams.add(gram(s, i));
+    return grams;
+  }
+
+  @Override
+  public String toString() {
+    return (
+      "SearchIndex[" + mEntries.size() + " in " + Util.tags(mMap) + "]"
+    );
+  }
+}
@@ -136,7 +136,12 @@ public class Query {
     return query.toString();
   }
 
-  class Criteria {
+  /** @return the criteria added so far, in order */
+  public List<Criteria> getCriteria() {
+    return Collections.unmodifiableList(criteriaList);
+  }
+
+  public class Criteria {
 
     String key;
     Qualifier qualifier;
@@ -151,6 +156,18 @@ public class Query {
       this.value = value;
       this.qualifier = qualifier;
     }
+
+    public String getKey() {
+      return key;
+    }
+
+    public String getValue() {
+      return value;
+    }
+
+    public Qualifier getQualifier() {
+      return qualifier;
+    }
     // public String toString() {
     //     return "Criteria[" + key + "=" + value + "]; qual=" + qualifier;
     // }
@@ -2338,10 +2338,10 @@ public class Actions implements VueConstants {
     keyStroke(KeyEvent.VK_MINUS, COMMAND + SHIFT)
   ) {
     void act(LWComponent c) {
-      int size = c.mFontSize.get();
+      int size = c.getFontSize();
       if (size > 1) {
         if (size >= 14 && size % 2 == 0) size -= 2; else size--;
-        c.mFontSize.set(size);
+        c.fontSize().set(size);
       }
     }
   };
@@ -2350,9 +2350,9 @@ public class Actions implements VueConstants {
     keyStroke(KeyEvent.VK_EQUALS, COMMAND + SHIFT)
   ) {
     void act(LWComponent c) {
-      int size = c.mFontSize.get();
+      int size = c.getFontSize();
       if (size >= 12 && size % 2 == 0) size += 2; else size++;
-      c.mFontSize.set(size);
+      c.fontSize().set(size);
     }
   };
   public static final LWCAction FontBold = new LWCAction(
@@ -2360,7 +2360,7 @@ public class Actions implements VueConstants {
     keyStroke(KeyEvent.VK_B, COMMAND)
   ) {
     void act(LWComponent c) {
-      c.mFontStyle.set(c.mFontStyle.get() ^ Font.BOLD);
+      c.fontStyle().set(c.fontStyle().get() ^ Font.BOLD);
     }
   };
   public static final LWCAction FontItalic = new LWCAction(
@@ -2368,7 +2368,7 @@ public class Actions implements VueConstants {
     keyStroke(KeyEvent.VK_I, COMMAND)
   ) {
     void act(LWComponent c) {
-      c.mFontStyle.set(c.mFontStyle.get() ^ Font.ITALIC);
+      c.fontStyle().set(c.fontStyle().get() ^ Font.ITALIC);
     }
   };
 
@@ -2377,8 +2377,8 @@ public class Actions implements VueConstants {
     keyStroke(KeyEvent.VK_U, COMMAND)
   ) {
     void act(LWComponent c) {
-      c.mFontUnderline.set(
-        (c.mFontUnderline.get().toString()).equals("underline")
+      c.fontUnderline().set(
+        c.getFontUnderline().equals("underline")
           ? "normal"
           : "underline"
       );
@@ -3264,7 +3264,7 @@ public class Actions implements VueConstants {
 
         if (moveToEdge) {
           n.setTextColor(java.awt.Color.red);
-          n.mFontStyle.set(java.awt.Font.BOLD);
+          n.fontStyle().set(java.awt.Font.BOLD);
         }
         n.setNotes(notes);
         if (newCenter != null) n.setCenterAt(newCenter);
@@ -484,7 +484,7 @@ public class AnalyzerAction extends Actions.LWCAction {
           if (al.size() > 0) {
             // node.setFillColor(new Color())
             node.setFillColor(joinNodeColor);
-            link.mStrokeStyle.setTo(LWComponent.StrokeStyle.DASHED);
+            link.strokeStyle().setTo(LWComponent.StrokeStyle.DASHED);
             categoryComps.add(node);
             categoryComps.add(link);
 
@@ -150,6 +150,7 @@ public abstract class ContentViewer extends JPanel {
     if (viewer != null) return viewer;
 
     StatusLabel.setText(statusName(ds));
+    StatusSource = ds;
 
     if (ds.isLoading()) {
       // could up priority any time we come back through
@@ -305,6 +306,28 @@ public abstract class ContentViewer extends JPanel {
     return sviewer;
   }
 
+  /** the data source the status label was last set for */
+  private static tufts.vue.BrowseDataSource StatusSource;
+
+  /**
+   * Update the status shown while the given data source is loading.  May be called
+   * from any thread: ignored if the status is no longer showing that data source.
+   */
+  public static void showLoadProgress(
+    final tufts.vue.BrowseDataSource ds,
+    final String progress
+  ) {
+    GUI.invokeAfterAWT(
+      new Runnable() {
+        public void run() {
+          if (ds == StatusSource && ds.isLoading()) StatusLabel.setText(
+            statusName(ds) + " " + progress
+          );
+        }
+      }
+    );
+  }
+
   protected static String statusName(tufts.vue.BrowseDataSource ds) {
     String s = ds.getAddressName();
 
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The on-disk image cache used by Images.  The cache file for a key is named by a
+ * hash of the key, in one of 256 sub-directories, so finding it is just a check for
+ * that file: nothing about the cache needs to be read at startup.
+ *
+ * The sizes and use order of the cache files are kept in an index file, so the cache
+ * can be held to a byte budget by deleting the least recently used files.  The index
+ * is a journal of records appended as files are stored, used and deleted, and it's
+ * only ever read or written on a single background thread, which also compacts it
+ * when it's grown well beyond the number of files.  If there's no index, the first
+ * thing that thread does is rebuild one, moving any cache files from the old flat
+ * cache directory into place.
+ *
+ * Any cache file may disappear out from under a user of it (it could be evicted):
+ * users must always check.
+ */
+final class DiskCache {
+
+  private static final org.apache.log4j.Logger Log =
+    org.apache.log4j.Logger.getLogger(DiskCache.class);
+
+  private static final String INDEX = "index";
+
+  /** rewrite the index once it has this many records beyond one per file */
+  private static final int COMPACT_SLACK = 2000;
+
+  private static final char STORED = 'P', USED = 'A', DELETED = 'D';
+
+  private final File mDir;
+  private final long mMaxBytes;
+  private final File mIndex;
+
+  private final ExecutorService mIndexer = Executors.newSingleThreadExecutor(
+    new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        final Thread it = new Thread(r, "VUE-DiskCache");
+        it.setDaemon(true);
+        it.setPriority(Thread.MIN_PRIORITY);
+        return it;
+      }
+    }
+  );
+
+  /** names already journaled as used this runtime: each is only recorded once */
+  private final Set<String> mUsed = Collections.newSetFromMap(
+    new ConcurrentHashMap()
+  );
+
+  /** true once any files from the old flat layout have been moved into place */
+  private volatile boolean isMigrated;
+
+  //-----------------------------------------------------------------------------
+  // only touched from the indexer thread:
+  //-----------------------------------------------------------------------------
+
+  /** file name to byte size, least recently used first */
+  private final LinkedHashMap<String, Long> mSizes = new LinkedHashMap(
+    256,
+    0.75f,
+    true
+  );
+  private long mTotalBytes;
+  private Writer mJournal;
+  private int mJournalRecords;
+
+  DiskCache(File dir, long maxBytes) {
+    mDir = dir;
+    mMaxBytes = maxBytes;
+    mIndex = new File(dir, INDEX);
+    submit(
+      new Runnable() {
+        public void run() {
+          loadIndex();
+        }
+      }
+    );
+  }
+
+  /** @return the existing cache file for the given key, or null if there isn't one */
+  File find(URI key) {
+    // read this before looking: the background migration may move the file meanwhile
+    final boolean migrated = isMigrated;
+    final File file = fileFor(key, false);
+    if (file.isFile()) {
+      used(file.getName());
+      return file;
+    }
+    if (!migrated) {
+      final File old = new File(mDir, Images.keyToCacheFileName(key));
+      if (old.isFile() && (move(old, file) || file.isFile())) {
+        stored(file);
+        return file;
+      }
+      if (file.isFile()) {
+        used(file.getName());
+        return file;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the file to cache data for the given key in, which may not exist yet, nor
+   * it's directory.  A temporary file is hidden from find until made permanent by
+   * renaming it without it's leading '.', and then passing that to stored.
+   */
+  File fileFor(URI key, boolean temporary) {
+    final String name = nameFor(key);
+    final File shard = new File(mDir, name.substring(0, 2));
+    return new File(shard, temporary ? "." + name : name);
+  }
+
+  private File fileNamed(String name) {
+    return new File(new File(mDir, name.substring(0, 2)), name);
+  }
+
+  /** record a new (or re-written) cache file as complete */
+  void stored(final File file) {
+    submit(
+      new Runnable() {
+        public void run() {
+          final String name = file.getName();
+          put(name, file.length());
+          journal(STORED, name);
+          evict();
+        }
+      }
+    );
+  }
+
+  /** delete the cache file for the given key, if any @return true if there was one */
+  boolean delete(URI key) {
+    final File file = fileFor(key, false);
+    if (!file.delete()) return false;
+    final String name = file.getName();
+    mUsed.remove(name);
+    submit(
+      new Runnable() {
+        public void run() {
+          remove(name);
+          journal(DELETED, name);
+        }
+      }
+    );
+    return true;
+  }
+
+  private void used(final String name) {
+    if (!mUsed.add(name)) return;
+    submit(
+      new Runnable() {
+        public void run() {
+          if (mSizes.get(name) == null) {
+            // not in the index: e.g., the index was lost after the file was written
+            put(name, fileNamed(name).length());
+            journal(STORED, name);
+          } else journal(USED, name);
+        }
+      }
+    );
+  }
+
+  /** for tests: wait for all index work submitted so far to complete */
+  void sync() {
+    try {
+      mIndexer
+        .submit(
+          new Runnable() {
+            public void run() {}
+          }
+        )
+        .get();
+    } catch (Exception e) {
+      Log.warn("sync", e);
+    }
+  }
+
+  /** for tests */
+  long getByteSize() {
+    sync();
+    return mTotalBytes;
+  }
+
+  void close() {
+    submit(
+      new Runnable() {
+        public void run() {
+          closeJournal();
+        }
+      }
+    );
+    mIndexer.shutdown();
+    try {
+      mIndexer.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  static String nameFor(URI key) {
+    try {
+      final byte[] hash = MessageDigest
+        .getInstance("SHA-1")
+        .digest(key.toString().getBytes("UTF-8"));
+      final StringBuilder name = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        name.append(Character.forDigit((b >> 4) & 0xF, 16));
+        name.append(Character.forDigit(b & 0xF, 16));
+      }
+      return name.toString();
+    } catch (Exception e) {
+      // SHA-1 and UTF-8 are always available
+      throw new Error(e);
+    }
+  }
+
+  private void submit(Runnable task) {
+    try {
+      mIndexer.execute(task);
+    } catch (RejectedExecutionException e) {
+      if (DEBUG.IO) Log.debug("closed; skipping index update");
+    }
+  }
+
+  private void put(String name, long size) {
+    final Long old = mSizes.put(name, size);
+    if (old != null) mTotalBytes -= old;
+    mTotalBytes += size;
+  }
+
+  private void remove(String name) {
+    final Long old = mSizes.remove(name);
+    if (old != null) mTotalBytes -= old;
+  }
+
+  //-----------------------------------------------------------------------------
+  // The index
+  //-----------------------------------------------------------------------------
+
+  private void loadIndex() {
+    final long start = System.currentTimeMillis();
+    if (mIndex.exists()) {
+      try {
+        readIndex();
+      } catch (Throwable t) {
+        Log.warn("damaged cache index; rebuilding: " + mIndex, t);
+        mSizes.clear();
+        mTotalBytes = 0;
+        rebuildIndex();
+      }
+    } else {
+      rebuildIndex();
+    }
+    isMigrated = true;
+    Log.info(
+      String.format(
+        "disk cache: %d files, %,d bytes; indexed in %dms",
+        mSizes.size(),
+        mTotalBytes,
+        System.currentTimeMillis() - start
+      )
+    );
+    compactIfNeeded();
+    evict();
+  }
+
+  private void readIndex() throws IOException {
+    final BufferedReader in = new BufferedReader(
+      new InputStreamReader(new FileInputStream(mIndex), "UTF-8")
+    );
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.length() < 3 || line.charAt(1) != ' ') break; // partial record: we crashed mid-write
+        mJournalRecords++;
+        final char type = line.charAt(0);
+        if (type == STORED) {
+          final int space = line.indexOf(' ', 2);
+          if (space < 0) break;
+          put(line.substring(2, space), Long.parseLong(line.substring(space + 1)));
+        } else if (type == USED) {
+          mSizes.get(line.substring(2));
+        } else if (type == DELETED) {
+          remove(line.substring(2));
+        }
+      }
+    } finally {
+      in.close();
+    }
+    isMigrated = !hasLegacyFiles();
+    if (!isMigrated) migrate();
+  }
+
+  private boolean hasLegacyFiles() {
+    final String[] names = mDir.list();
+    if (names != null) for (String name : names) if (isLegacyName(name)) return true;
+    return false;
+  }
+
+  private static boolean isLegacyName(String name) {
+    // the old flat cache files were named by the URL-encoded key
+    return name.length() > 2 && name.charAt(0) != '.' && name.indexOf('%') > 0;
+  }
+
+  /** index all the cache files we can find, oldest first */
+  private void rebuildIndex() {
+    migrate();
+    final List<File> files = new ArrayList();
+    final File[] shards = mDir.listFiles();
+    if (shards != null) {
+      for (File shard : shards) {
+        if (!shard.isDirectory() || shard.getName().length() != 2) continue;
+        for (File f : shard.listFiles()) if (
+          f.getName().charAt(0) != '.'
+        ) files.add(f);
+      }
+    }
+    Collections.sort(
+      files,
+      new Comparator<File>() {
+        public int compare(File a, File b) {
+          return Long.compare(a.lastModified(), b.lastModified());
+        }
+      }
+    );
+    for (File f : files) put(f.getName(), f.length());
+    writeSnapshot();
+  }
+
+  /** move any cache files from the old flat layout into their shards */
+  private void migrate() {
+    final File[] files = mDir.listFiles();
+    if (files == null) return;
+    int moved = 0;
+    for (File old : files) {
+      if (!old.isFile() || !isLegacyName(old.getName())) continue;
+      try {
+        final URI key = new URI(
+          java.net.URLDecoder.decode(old.getName(), "UTF-8")
+        );
+        final File file = fileFor(key, false);
+        file.getParentFile().mkdirs();
+        if (move(old, file)) {
+          put(file.getName(), file.length());
+          moved++;
+        }
+      } catch (Throwable t) {
+        if (DEBUG.IO) Log.debug("can't migrate " + old + "; " + t);
+      }
+    }
+    if (moved > 0) Log.info("moved " + moved + " files into the sharded disk cache");
+  }
+
+  private static boolean move(File from, File to) {
+    try {
+      to.getParentFile().mkdirs();
+      Files.move(
+        from.toPath(),
+        to.toPath(),
+        StandardCopyOption.REPLACE_EXISTING
+      );
+      return true;
+    } catch (IOException e) {
+      // it may have just been moved by someone else
+      if (from.exists()) Log.warn("couldn't move " + from + " to " + to + "; " + e);
+      return false;
+    }
+  }
+
+  private void journal(char type, String name) {
+    try {
+      if (mJournal == null) mJournal = new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(mIndex, true), "UTF-8")
+      );
+      mJournal.write(type);
+      mJournal.write(' ');
+      mJournal.write(name);
+      if (type == STORED) {
+        mJournal.write(' ');
+        mJournal.write(String.valueOf(mSizes.get(name)));
+      }
+      mJournal.write('\n');
+      mJournal.flush();
+      mJournalRecords++;
+    } catch (IOException e) {
+      Log.warn("writing cache index " + mIndex, e);
+      closeJournal();
+    }
+    compactIfNeeded();
+  }
+
+  private void closeJournal() {
+    if (mJournal == null) return;
+    try {
+      mJournal.close();
+    } catch (IOException e) {
+      Log.warn("closing cache index " + mIndex, e);
+    }
+    mJournal = null;
+  }
+
+  private void compactIfNeeded() {
+    if (mJournalRecords > mSizes.size() + COMPACT_SLACK) writeSnapshot();
+  }
+
+  /** replace the index with just what's needed to reproduce the current state */
+  private void writeSnapshot() {
+    closeJournal();
+    final File tmp = new File(mDir, "." + INDEX);
+    try {
+      final Writer out = new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8")
+      );
+      try {
+        for (Map.Entry<String, Long> e : mSizes.entrySet()) {
+          out.write(STORED + " " + e.getKey() + " " + e.getValue() + "\n");
+        }
+      } finally {
+        out.close();
+      }
+      Files.move(
+        tmp.toPath(),
+        mIndex.toPath(),
+        StandardCopyOption.REPLACE_EXISTING
+      );
+      mJournalRecords = mSizes.size();
+    } catch (IOException e) {
+      Log.warn("writing cache index " + mIndex, e);
+    }
+  }
+
+  /** if we're over budget, delete the least recently used files till we're at 90% of it */
+  private void evict() {
+    if (mTotalBytes <= mMaxBytes) return;
+    final long target = mMaxBytes - mMaxBytes / 10;
+    int count = 0;
+    final Iterator<Map.Entry<String, Long>> i = mSizes.entrySet().iterator();
+    while (mTotalBytes > target && i.hasNext()) {
+      final Map.Entry<String, Long> e = i.next();
+      final String name = e.getKey();
+      final File file = fileNamed(name);
+      if (file.delete() || !file.exists()) {
+        mTotalBytes -= e.getValue();
+        i.remove();
+        mUsed.remove(name);
+        count++;
+      }
+    }
+    if (count > 0) {
+      if (DEBUG.IO || DEBUG.IMAGE) Log.debug(
+        "evicted " + count + " files; " + mTotalBytes + " bytes remain"
+      );
+      // simplest to record all at once
+      writeSnapshot();
+    }
+  }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import tufts.Util;
+
+/**
+ * The in-memory image cache used by Images.  Values are either an Entry, which may
+ * be holding decoded image data, or anything else (e.g., an image Loader in
+ * progress), which the cache just stores.
+ *
+ * The cache tracks the total bytes of decoded image data held by it's entries, and
+ * when that goes over the byte budget, releases the image data of the least
+ * recently used entries until it's back under a low-water mark.  An entry whose
+ * data has been released stays in the cache if it still has somewhere to reload
+ * from (e.g., a disk cache file), and is removed if not.
+ *
+ * All operations are safe to call from any thread without any external lock: the
+ * mapping is a ConcurrentHashMap, and only one thread at a time will ever be
+ * evicting (any others needing to evict at the same time simply skip it).
+ */
+public class ImageCache {
+
+  private static final org.apache.log4j.Logger Log =
+    org.apache.log4j.Logger.getLogger(ImageCache.class);
+
+  /** never shrink the budget below this in low memory conditions */
+  public static final long MinBudget = 16 * 1024 * 1024;
+
+  /**
+   * A cache value that may be holding decoded image data.  The byte size is fixed
+   * at creation: it's counted against the budget from the time the entry is put in
+   * the cache until it's data is released.
+   */
+  public abstract static class Entry {
+
+    private final long byteSize;
+    private final AtomicBoolean held;
+    private volatile long lastAccess;
+
+    /**
+     * @param byteSize -- size of the image data held
+     * @param holding -- false if this entry was created without any image data (e.g., for a disk cache file)
+     */
+    protected Entry(long byteSize, boolean holding) {
+      this.byteSize = Math.max(0, byteSize);
+      this.held = new AtomicBoolean(holding);
+    }
+
+    /** @return true if this entry is still holding it's image data */
+    public boolean isHeld() {
+      return held.get();
+    }
+
+    public long getByteSize() {
+      return byteSize;
+    }
+
+    /** drop any reference to the image data */
+    protected abstract void releaseData();
+
+    /** @return true if, once it's data is released, this entry is no longer useful in the cache */
+    protected abstract boolean isDisposable();
+  }
+
+  private final ConcurrentHashMap<Object, Object> map = new ConcurrentHashMap(
+    256,
+    0.75f,
+    16
+  );
+  private final ReentrantLock evictLock = new ReentrantLock();
+  private final AtomicLong clock = new AtomicLong();
+  private final AtomicLong bytes = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private volatile long budget;
+
+  public ImageCache(long byteBudget) {
+    this.budget = Math.max(MinBudget, byteBudget);
+  }
+
+  /** @return the value for the given key, marking it as recently used */
+  public Object get(Object key) {
+    if (key == null) return null;
+    final Object value = map.get(key);
+    if (value instanceof Entry) ((Entry) value).lastAccess =
+      clock.incrementAndGet();
+    return value;
+  }
+
+  public boolean containsKey(Object key) {
+    return key != null && map.containsKey(key);
+  }
+
+  /** @return the previous value for the key, if any.  Any image data held by a previous Entry is released. */
+  public Object put(Object key, Object value) {
+    if (key == null) return null;
+    final boolean counted = admit(value);
+    final Object old = map.put(key, value);
+    if (old == value) {
+      // already in the cache: it's bytes are already counted
+      if (counted) unadmit(value);
+    } else {
+      release(old);
+    }
+    evictIfNeeded();
+    return old;
+  }
+
+  /**
+   * Put the given value only if there's no value for the key already.
+   * @return true if the value was put
+   */
+  public boolean putIfAbsent(Object key, Object value) {
+    if (key == null) return false;
+    final boolean counted = admit(value);
+    if (map.putIfAbsent(key, value) == null) {
+      evictIfNeeded();
+      return true;
+    } else {
+      // the value isn't ours to release: the caller still has it
+      if (counted) unadmit(value);
+      return false;
+    }
+  }
+
+  /**
+   * Atomically put the given value if there's no value for the key, or if the existing value is
+   * an Entry that isn't holding any image data.  Used to ensure only one loader is started
+   * for any given key.
+   *
+   * @return true if the value was put, false if there's a live value (one with image data,
+   * or that isn't an Entry) already in the cache.
+   */
+  public boolean claim(Object key, Object value) {
+    if (key == null) return true;
+    for (;;) {
+      final Object old = map.get(key);
+      if (old == null) {
+        if (map.putIfAbsent(key, value) == null) return true;
+      } else if (old instanceof Entry && !((Entry) old).isHeld()) {
+        if (map.replace(key, old, value)) return true;
+      } else {
+        return false;
+      }
+    }
+  }
+
+  public Object remove(Object key) {
+    if (key == null) return null;
+    final Object old = map.remove(key);
+    release(old);
+    return old;
+  }
+
+  /** Remove the key only if it's still mapped to the given value */
+  public boolean remove(Object key, Object value) {
+    if (key == null || !map.remove(key, value)) return false;
+    release(value);
+    return true;
+  }
+
+  /** @return a snapshot of all the values in the cache */
+  public List<Object> values() {
+    return new ArrayList(map.values());
+  }
+
+  public int size() {
+    return map.size();
+  }
+
+  /** Release all image data held in the cache.  Entries that aren't disposable remain in the cache. */
+  public void clear() {
+    for (Map.Entry<Object, Object> e : map.entrySet()) {
+      if (e.getValue() instanceof Entry) {
+        final Entry entry = (Entry) e.getValue();
+        release(entry);
+        if (entry.isDisposable()) map.remove(e.getKey(), entry);
+      }
+    }
+  }
+
+  void recordHit() {
+    hits.incrementAndGet();
+  }
+
+  void recordMiss() {
+    misses.incrementAndGet();
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  /** @return the total bytes of image data currently held in the cache */
+  public long getByteSize() {
+    return bytes.get();
+  }
+
+  public long getByteBudget() {
+    return budget;
+  }
+
+  public void setByteBudget(long byteBudget) {
+    budget = Math.max(MinBudget, byteBudget);
+    evictIfNeeded();
+  }
+
+  /**
+   * Reduce the budget to half of what's currently in use (but not below MinBudget), and
+   * evict down to it.  For use when we've run low on memory anyway.
+   */
+  public void shrink() {
+    final long newBudget = Math.max(
+      MinBudget,
+      Math.min(budget, bytes.get()) / 2
+    );
+    if (newBudget < budget) {
+      Log.info(
+        "shrinking budget from " +
+        Util.abbrevBytes(budget) +
+        " to " +
+        Util.abbrevBytes(newBudget)
+      );
+      setByteBudget(newBudget);
+    }
+  }
+
+  /** @return true if the value's bytes were counted against the budget */
+  private boolean admit(Object value) {
+    if (value instanceof Entry) {
+      final Entry entry = (Entry) value;
+      entry.lastAccess = clock.incrementAndGet();
+      if (entry.isHeld()) {
+        bytes.addAndGet(entry.byteSize);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** undo the accounting of a value that was admitted but didn't go into the cache */
+  private void unadmit(Object value) {
+    bytes.addAndGet(-((Entry) value).byteSize);
+  }
+
+  private void release(Object value) {
+    if (value instanceof Entry) {
+      final Entry entry = (Entry) value;
+      if (entry.held.compareAndSet(true, false)) {
+        bytes.addAndGet(-entry.byteSize);
+        entry.releaseData();
+      }
+    }
+  }
+
+  private void evictIfNeeded() {
+    if (bytes.get() <= budget) return;
+
+    // if someone else is evicting, they'll take care of it
+    if (!evictLock.tryLock()) return;
+
+    try {
+      // evict down to a low-water mark, so we're not back here on every put
+      final long target = budget - budget / 4;
+      final long start = DEBUG.PERF ? System.nanoTime() : 0;
+      final long startBytes = bytes.get();
+
+      final List<Map.Entry<Object, Object>> held = new ArrayList();
+      final Map<Entry, Long> stamps = new IdentityHashMap();
+      for (Map.Entry<Object, Object> e : map.entrySet()) {
+        if (e.getValue() instanceof Entry && ((Entry) e.getValue()).isHeld()) {
+          held.add(e);
+          // snapshot the stamps: they may change while we're sorting
+          stamps.put((Entry) e.getValue(), ((Entry) e.getValue()).lastAccess);
+        }
+      }
+      Collections.sort(
+        held,
+        new Comparator<Map.Entry<Object, Object>>() {
+          public int compare(
+            Map.Entry<Object, Object> e1,
+            Map.Entry<Object, Object> e2
+          ) {
+            final long t1 = stamps.get(e1.getValue());
+            final long t2 = stamps.get(e2.getValue());
+            return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+          }
+        }
+      );
+
+      int count = 0;
+      for (Map.Entry<Object, Object> e : held) {
+        if (bytes.get() <= target) break;
+        final Entry entry = (Entry) e.getValue();
+        if (entry.held.compareAndSet(true, false)) {
+          bytes.addAndGet(-entry.byteSize);
+          entry.releaseData();
+          if (entry.isDisposable()) map.remove(e.getKey(), entry);
+          evictions.incrementAndGet();
+          count++;
+        }
+      }
+
+      if (DEBUG.IMAGE || DEBUG.PERF) Log.debug(
+        String.format(
+          "evicted %d entries, %s -> %s of %s, in %.1fms",
+          count,
+          Util.abbrevBytes(startBytes),
+          Util.abbrevBytes(bytes.get()),
+          Util.abbrevBytes(budget),
+          (System.nanoTime() - start) / 1000000.0
+        )
+      );
+    } finally {
+      evictLock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return (
+      "ImageCache[n=" +
+      map.size() +
+      " " +
+      Util.abbrevBytes(bytes.get()) +
+      "/" +
+      Util.abbrevBytes(budget) +
+      " hits=" +
+      hits.get() +
+      " misses=" +
+      misses.get() +
+      " evictions=" +
+      evictions.get() +
+      "]"
+    );
+  }
+}
@@ -32,6 +32,14 @@ public class ImageRef {
   public static final Object REPAINT = "ImageRef.REPAINT";
   public static final Object KICKED = "ImageRef.*****KICKED*****";
 
+  /**
+   * The max pixel sizes of the intermediate resolutions between the icon and the full
+   * image that we may decode (with subsampling) and draw, so the full image need only
+   * be decoded when zoomed in beyond the largest of these, or when printing / exporting.
+   * Must be declared before EMPTY, as every instance allocates it's levels at construction.
+   */
+  private static final int[] LEVEL_SIZES = { 512, 1024, 2048 };
+
   public static final ImageRef EMPTY = new ImageRef() {
     //             @Override public void setImageSource(Object is) {
     //                 Log.error("attempt to set image source on the empty ImageRef: " + Util.tags(is), new Throwable("HERE"));
@@ -80,6 +88,9 @@ public class ImageRef {
   private volatile ImageRep _full = ImageRep.UNAVAILABLE;
   private volatile ImageRep _icon = ImageRep.UNAVAILABLE;
 
+  /** the intermediate resolution reps, created on demand */
+  private final ImageRep[] _levels = newLevels();
+
   //private volatile Object _desired = SIZE_UNKNOWN;
   // _desired not used at moment -- would be easy to have one global instance of an ImageRef per image w/out it,
   // and could add back in this functionality by allowing a client to implement a simple recording API for desired
@@ -175,6 +186,14 @@ public class ImageRef {
           _icon = createPreLoadedIconRep(iconKey);
         }
       }
+      if (_icon == UNAVAILABLE) {
+        // If we have the image data locally, we can decode the icon directly
+        // from it at reduced resolution, instead of waiting for the full image
+        // to load to generate it.  Otherwise, the icon will be created from
+        // the full image once it arrives.
+        final java.io.File decodable = _source.getDecodableFile();
+        if (decodable != null) _icon = createDecodedIconRep(decodable);
+      }
     } // _icon left as ImageRep.UNAVAILABLE
     //         // rep won't load until it attempts to draw:
     //         _full = ImageRep.create(this, _source);
@@ -249,6 +268,25 @@ public class ImageRef {
   );
 
   private ImageRep pickRepToDraw(final ImageRep ideal) {
+    if (ideal.available()) return ideal;
+
+    // Draw whatever other resolution we already have, preferring the closest
+    // above the ideal, then the closest below it.
+    final ImageRep[] ladder = new ImageRep[_levels.length + 2];
+    ladder[0] = _icon;
+    System.arraycopy(_levels, 0, ladder, 1, _levels.length);
+    ladder[ladder.length - 1] = _full;
+
+    int at = 0;
+    while (at < ladder.length && ladder[at] != ideal) at++;
+    if (at == ladder.length) at = 0;
+    for (int i = at + 1; i < ladder.length; i++) {
+      if (ladder[i].available()) return ladder[i];
+    }
+    for (int i = at - 1; i >= 0; i--) {
+      if (ladder[i].available()) return ladder[i];
+    }
+
     return pickRepToDraw(ideal, ideal == _full ? _icon : _full);
   }
 
@@ -344,6 +382,14 @@ public class ImageRef {
       //backupRep = _full;
       //_desired = SIZE_ICON;
       //debug("onScreenMaxDim below thresh " + PIXEL_THRESHOLD_FOR_ICON_DRAWING + " at " + onScreenMaxDim);
+    } else if (
+      _full.size() == ZERO_SIZE && _icon != UNAVAILABLE && !_icon.hasError()
+    ) {
+      // We don't know how big the full image is yet: get the icon first, which is
+      // quick, and will tell us, so we can then pick the right resolution to load.
+      idealRep = _icon;
+    } else if (!_full.available()) {
+      idealRep = getLevelRep(onDisplayMaxDim);
     } else {
       //debug("onScreenMaxDim ABOVE thresh " + PIXEL_THRESHOLD_FOR_ICON_DRAWING + " at " + onScreenMaxDim);
       //_desired = SIZE_FULL;
@@ -613,6 +659,69 @@ public class ImageRef {
 
   }
 
+  private static ImageRep[] newLevels() {
+    final ImageRep[] levels = new ImageRep[LEVEL_SIZES.length];
+    java.util.Arrays.fill(levels, UNAVAILABLE);
+    return levels;
+  }
+
+  /**
+   * @return the smallest intermediate resolution rep that covers the given on-display size,
+   * or the full rep if there isn't one (e.g., the full image is too small to bother,
+   * we don't know it's size yet, or we have no local image data to decode from).
+   */
+  private ImageRep getLevelRep(int onDisplayMaxDim) {
+    final int[] fullSize = _full.size();
+    if (fullSize == ZERO_SIZE || _source.key == null) return _full;
+    final int i = selectLevel(onDisplayMaxDim, Math.max(fullSize[0], fullSize[1]));
+    if (i < 0) return _full;
+    synchronized (_levels) {
+      if (_levels[i] == UNAVAILABLE) {
+        final java.io.File decodable = _source.getDecodableFile();
+        if (decodable == null) return _full;
+        _levels[i] =
+          ImageRep.create(
+            this,
+            ImageSource.createScaledSource(_source, decodable, LEVEL_SIZES[i])
+          );
+      }
+      return _levels[i];
+    }
+  }
+
+  /**
+   * @return the index of the smallest intermediate resolution that covers the given
+   * on-display size for a full image of the given max dimension, or -1 if the full
+   * image should be used.
+   */
+  static int selectLevel(int onDisplayMaxDim, int fullMaxDim) {
+    for (int i = 0; i < LEVEL_SIZES.length; i++) {
+      if (LEVEL_SIZES[i] < onDisplayMaxDim) continue;
+      // Subsampling only works in integer factors: if we can't at least halve
+      // the full image, we might as well use it.
+      if (LEVEL_SIZES[i] * 2 > fullMaxDim) return -1;
+      return i;
+    }
+    return -1;
+  }
+
+  /** @return the max pixel size of the given intermediate resolution */
+  static int getLevelSize(int level) {
+    return LEVEL_SIZES[level];
+  }
+
+  private ImageRep createDecodedIconRep(java.io.File decodable) {
+    return ImageRep.create(
+      this,
+      ImageSource.createDecodedIconSource(
+        _source,
+        decodable,
+        DEFAULT_ICON_SIZE
+      ),
+      ICONS_ARE_DISPOSABLE
+    );
+  }
+
   private ImageRep createPreLoadedIconRep(java.net.URI cacheKey) {
     return ImageRep.create(
       this,
@@ -779,6 +888,9 @@ public class ImageRef {
   public void reload() {
     _full = ImageRep.UNAVAILABLE;
     _icon = ImageRep.UNAVAILABLE;
+    synchronized (_levels) {
+      java.util.Arrays.fill(_levels, UNAVAILABLE);
+    }
     repaint();
   }
 
@@ -41,6 +41,9 @@ class ImageSource {
 
   final int iconSize;
 
+  /** if > 0, decode the image subsampled to no less than this many pixels on it's longest side */
+  final int decodeSize;
+
   //     boolean nextLoadIsImmediate;
 
   // //     interface Scaler {
@@ -71,6 +74,41 @@ class ImageSource {
     return new ImageSource(is, fullRep, hardFullImage, size);
   }
 
+  /**
+   * Create an icon source that will decode the icon straight from the given local file
+   * (the original, or it's disk cache file), without first decoding the full image.
+   */
+  static ImageSource createDecodedIconSource(
+    ImageSource is,
+    File decodable,
+    int size
+  ) {
+    return new ImageSource(is, decodable, size, 0);
+  }
+
+  /**
+   * Create a source for a reduced resolution version of the image, decoded from the
+   * given local file with subsampling, to no less than size pixels on it's longest
+   * side.  These are only ever cached in memory.
+   */
+  static ImageSource createScaledSource(
+    ImageSource is,
+    File decodable,
+    int size
+  ) {
+    return new ImageSource(is, decodable, -1, size);
+  }
+
+  /**
+   * @return a local file with the original image data (the original itself, or it's disk
+   * cache file) that can be decoded at reduced resolutions, or null if there isn't one yet.
+   */
+  File getDecodableFile() {
+    final Object r = readable;
+    if (r instanceof File) return (File) r;
+    if (key != null) return Images.getCacheFile(key); else return null;
+  }
+
   /** @return a key that could be used for an icon version of this image */
   URI getIconKey(int size) {
     if (key == null) {
@@ -99,6 +137,7 @@ class ImageSource {
     );
     this.original = is.original;
     this.iconSize = iconSize;
+    this.decodeSize = 0;
 
     if (Images.DELAYED_ICONS) {
       // Even if we end up getting DELAYED_ICONS to work under low-mem conditions,
@@ -133,6 +172,27 @@ class ImageSource {
     this._cacheFile = new File(Images.keyToCacheFileName(this.key));
   }
 
+  /** create a decoded icon or scaled source */
+  private ImageSource(
+    ImageSource is,
+    File decodable,
+    int iconSize,
+    int decodeSize
+  ) {
+    this.original = is.original;
+    this.readable = decodable;
+    this.iconSize = iconSize;
+    this.decodeSize = decodeSize;
+    this.resource = null;
+    if (iconSize > 0) {
+      this.key = makeIconKey(is.key, iconSize);
+      this._cacheFile = new File(Images.keyToCacheFileName(this.key));
+    } else {
+      this.key = makeScaledKey(is.key, decodeSize);
+      this._cacheFile = DO_NOT_CACHE_TO_DISK;
+    }
+  }
+
   // todo: would be better to use the actual CacheEntry.file to create
   // this, but we may not have that if there's a Loader in the Cache.
   private ImageSource(URI cacheKey, int iconSize) {
@@ -142,12 +202,14 @@ class ImageSource {
     this.resource = null;
     this._cacheFile = new File(Images.keyToCacheFileName(this.key));
     this.iconSize = iconSize; // okay if <=0: means not an icon
+    this.decodeSize = 0;
     // readable unset
     // todo: consistency check: key from file == incoming key
   }
 
   private ImageSource(Object original) {
     this.iconSize = -1;
+    this.decodeSize = 0;
     this.original = original;
 
     //Log.debug("NEW IMAGE SOURCE FROM " + Util.tags(original));
@@ -323,6 +385,10 @@ class ImageSource {
       s.append("; ICON");
       s.append(iconSize);
     }
+    if (decodeSize > 0) {
+      s.append("; DECODE");
+      s.append(decodeSize);
+    }
     if (_cacheFile != null) {
       s.append("; CF=");
       s.append(_cacheFile);
@@ -349,6 +415,18 @@ class ImageSource {
     return null;
   }
 
+  static URI makeScaledKey(URI cacheKey, int size) {
+    try {
+      return new URI(String.format("%s.s%d", cacheKey, size));
+    } catch (Throwable t) {
+      Util.printStackTrace(
+        t,
+        "can't make URI scaled cache key from key " + cacheKey
+      );
+    }
+    return null;
+  }
+
   private static URI makeKey(URL u) {
     try {
       if ("file".equals(u.getProtocol())) {
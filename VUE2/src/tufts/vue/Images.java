@@ -23,6 +23,7 @@ import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.RenderedImage;
 import java.io.*;
 import java.lang.ref.*;
@@ -46,8 +47,9 @@ import tufts.Util;
  *
  * Handle the loading of images in background threads, making callbacks to deliver
  * results to multiple listeners that can be added at any time during the image fetch,
- * and caching (memory and disk) with a URI key, using a HashMap with SoftReference's
- * for the BufferedImage's so if we run low on memory they just drop out of the cache.
+ * and caching (memory and disk) with a URI key.  The memory cache is an ImageCache,
+ * which holds decoded images up to a byte budget, dropping the least recently used
+ * images beyond that (they can still be reloaded from the disk cache).
  *
  * @version $Revision: 1.85 $ / $Date: 2010-02-03 19:17:40 $ / $Author: mike $
  * @author Scott Fraize
@@ -91,6 +93,9 @@ public class Images {
       LOW_MEMORY_COUNT++;
       ProcessingPool.shrinkIfPossible(first);
     }
+    // The memory cache holds hard references to it's images: give some back, as
+    // it's budget was evidently too large for everything else going on.
+    RawCache.shrink();
     // we do this out side of the sync just in case, as
     // below will obtain it's own sync
     //TaskQueue.flushCachingRequests(); // needs testing
@@ -116,10 +121,44 @@ public class Images {
     "Empty Image Cache"
   ) {
     public void act() {
-      RawCache.clear();
+      clearCache();
+      Log.info("cleared: " + RawCache);
     }
   };
 
+  /** @return the in-memory image cache, e.g., for reporting it's hit, miss and eviction counts */
+  public static ImageCache getCache() {
+    return RawCache;
+  }
+
+  // for now, only clears memory cache
+  private static void clearCache() {
+    for (Object entry : RawCache.values()) {
+      if (entry instanceof CacheEntry) continue;
+
+      // may be a Loader: todo: may want to kill thread if it is Especially:
+      // if we go off line, Loaders created immediately after that (or during)
+      // tend to hang forever.  Loaders created once the OS knows we're
+      // offline will usually fail immediately with "no route to host", but
+      // even after going back online, and other images load, the originally
+      // hung Loader's won't die...  So at least an image-cache should kill
+      // them.
+
+      // Interrupt may not be good enough: if blocked on non-async IO
+      // (non-channel IO, e.g., "regular"), this can have no
+      // effect.  Turns out using stop doesn't help even in this
+      // case.
+      if (entry instanceof LoadThread) {
+        Log.info("STOPPING THREAD ENTRY " + entry);
+        ((LoadThread) entry).stop();
+      } else { //if (entry instanceof Loader) {
+        Log.warn("LEAVING TO RUN OUT TASK ENTRY " + entry);
+        // if it was a Future, we could attempt to de-queue it
+      }
+    }
+    RawCache.clear();
+  }
+
   /**
    * Calls to Images.getImage must pass in a Listener to get results.
    * The first argument to all the callbacks is the original object
@@ -226,33 +265,44 @@ public class Images {
   //         }
   //     }
 
+  /**
+   * Start up the disk cache.  Nothing about the cache is read here: disk cache files
+   * are found by key as they're asked for, and the cache index is loaded in the
+   * background.
+   */
   public static void loadDiskCache() {
-    File dir = getCacheDirectory();
-    if (dir == null) return;
-
-    Log.debug("listing disk cache...");
-    File[] files = dir.listFiles();
-    Log.debug("listing disk cache: done; entries=" + files.length);
-
-    synchronized (RawCache) {
-      for (int i = 0; i < files.length; i++) {
-        File file = files[i];
-        String name = file.getName();
-        if (name.charAt(0) == '.') continue;
-        //out("found cache file " + file);
-        URI key = null;
-        try {
-          key = cacheFileNameToKey(name);
-          if (DEBUG.IMAGE && DEBUG.META) out("made cache key: " + key);
-          if (key != null) {
-            RawCache.put(key, new CacheEntry(file));
-            //RefCache.put(key, file);
-          }
-        } catch (Throwable t) {
-          Log.error("failed to load cache with [" + name + "]; key=" + key);
-        }
-      }
+    getDiskCache();
+  }
+
+  private static DiskCache DiskCache;
+
+  /** @return the disk cache, or null if there's no cache directory */
+  private static synchronized DiskCache getDiskCache() {
+    if (DiskCache == null) {
+      final File dir = getCacheDirectory();
+      if (dir != null) DiskCache =
+        new DiskCache(
+          dir,
+          VueResources.getInt("image.cache.diskMB", 1024) * 1024L * 1024L
+        );
     }
+    return DiskCache;
+  }
+
+  /**
+   * @return the cache entry for the given key, which will be a new entry for the disk
+   * cache file if there's one for the key, and the cache doesn't have one yet, or
+   * null if none.
+   */
+  private static Object getEntryOrDiskFile(URI key) {
+    final Object entry = RawCache.get(key);
+    if (entry != null) return entry;
+    final DiskCache disk = getDiskCache();
+    final File file = disk == null ? null : disk.find(key);
+    if (file == null) return null;
+    // don't replace anything that's already started loading
+    RawCache.putIfAbsent(key, new CacheEntry(file));
+    return RawCache.get(key);
   }
 
   /** @return the cache file for the given resource, or null if none exists */
@@ -260,10 +310,10 @@ public class Images {
     final ImageSource imageSRC = ImageSource.create(r);
 
     if (imageSRC.key != null) {
-      final Object entry = RawCache.get(imageSRC.key);
+      final Object entry = getEntryOrDiskFile(imageSRC.key);
       if (entry instanceof CacheEntry) {
         return ((CacheEntry) entry).file;
-      } else {
+      } else if (entry != null) {
         Log.warn("Cache is loading, no cache file yet for " + r);
       }
     }
@@ -271,13 +321,24 @@ public class Images {
     return null;
   }
 
+  /** @return the readable disk cache file for the given key, or null if there isn't one */
+  static File getCacheFile(URI key) {
+    final Object entry = getEntryOrDiskFile(key);
+    if (entry instanceof CacheEntry) {
+      final File file = ((CacheEntry) entry).file;
+      if (file != null && file.canRead()) return file;
+    }
+    return null;
+  }
+
   // todo: really, ImageCacheEntry v.s. Loader cache entries, tho they don't
   // currently have a common super-class.
-  private static class CacheEntry {
+  private static class CacheEntry extends ImageCache.Entry {
 
-    private final Reference<Image> ref;
+    private volatile Image image;
     private final Map<String, ?> data;
     private final File file;
+    private final boolean preloaded;
 
     // Loader loader;
     // todo: add loader here so we can always have CacheEntry's in the cache, and
@@ -288,13 +349,14 @@ public class Images {
 
     /** image should only be null for startup init with existing cache files */
     CacheEntry(Image image, File cacheFile, Map<String, ?> props) {
+      super(byteSize(image), image != null);
       if (
         image == null && cacheFile == null
       ) throw new IllegalArgumentException(
         "CacheEntry: at least one of image or file must be non null"
       );
-      if (image != null) this.ref = new SoftReference(image); else this.ref =
-        null;
+      this.image = image;
+      this.preloaded = image == null;
       this.file = cacheFile;
       this.data = props;
       if (DEBUG.IMAGE) out("new " + this);
@@ -315,19 +377,12 @@ public class Images {
     }
 
     boolean isPreloadedDiskEntry() {
-      return ref == null;
+      return preloaded;
     }
 
+    /** @return the image, or null if this was an init-time persistent cache file, or the image was evicted */
     Image getCachedImage() {
-      // if don't even have a ref, this was for an init-time persistent cache file
-      if (ref == null) return null;
-
-      Image image = ref.get();
-      // will be null if was cleared
-      if (image == null) {
-        if (DEBUG.Enabled && file != null) out("GC'd: " + file);
-        return null;
-      } else return image;
+      return image;
     }
 
     Handle getHandle() {
@@ -340,8 +395,16 @@ public class Images {
       return file;
     }
 
-    void clear() {
-      if (ref != null) ref.clear();
+    @Override
+    protected void releaseData() {
+      if (DEBUG.IMAGE && file != null) out("evicted: " + file);
+      image = null;
+    }
+
+    /** entries without a cache file have nothing left to offer once evicted */
+    @Override
+    protected boolean isDisposable() {
+      return file == null;
     }
 
     public String toString() {
@@ -349,7 +412,35 @@ public class Images {
     }
   }
 
-  private static final CacheMap RawCache = new CacheMap();
+  /** @return an estimate of the memory used by the pixel data of the given image */
+  static long byteSize(Image image) {
+    if (image == null) return 0;
+    if (image instanceof BufferedImage) {
+      final DataBuffer buf =
+        ((BufferedImage) image).getRaster().getDataBuffer();
+      return (
+        ((long) buf.getSize() *
+          buf.getNumBanks() *
+          DataBuffer.getDataTypeSize(buf.getDataType())) /
+        8
+      );
+    } else {
+      final int w = image.getWidth(null);
+      final int h = image.getHeight(null);
+      return w > 0 && h > 0 ? 4L * w * h : 0;
+    }
+  }
+
+  private static final ImageCache RawCache = new ImageCache(
+    initialCacheBudget()
+  );
+
+  private static long initialCacheBudget() {
+    final int mb = VueResources.getInt("image.cache.maxMB", 0);
+    if (mb > 0) return mb * 1024L * 1024L; else return (
+      Runtime.getRuntime().maxMemory() / 4
+    );
+  }
 
   //private static final NewCache RefCache = new NewCache();
   //private static final NewCache<URI,ImageRef> RefCache = new NewCache();
@@ -417,66 +508,6 @@ public class Images {
   // the icon rep instead.
   //===================================================================================================
 
-  /*
-   * Not all HashMap methods covered: only safe to use
-   * the ones explicity implemented here.
-   */
-  private static class CacheMap extends HashMap {
-
-    public synchronized Object get(Object key) {
-      return super.get(key);
-    }
-
-    public synchronized boolean containsKey(Object key) {
-      return super.containsKey(key);
-    }
-
-    public synchronized Object put(Object key, Object value) {
-      return super.put(key, value);
-    }
-
-    public synchronized Object remove(Object key) {
-      return super.remove(key);
-    }
-
-    // for now, only clears memory cache
-    public synchronized void clear() {
-      final Iterator i = values().iterator();
-      while (i.hasNext()) {
-        Object entry = i.next();
-
-        // may be a Loader: todo: may want to kill thread if it is Especially:
-        // if we go off line, Loaders created immediately after that (or during)
-        // tend to hang forever.  Loaders created once the OS knows we're
-        // offline will usually fail immediately with "no route to host", but
-        // even after going back online, and other images load, the originally
-        // hung Loader's won't die...  So at least an image-cache should kill
-        // them.
-
-        if (entry instanceof CacheEntry) {
-          CacheEntry ce = (CacheEntry) entry;
-          ce.clear();
-          if (ce.getFile() == null) i.remove();
-        } else {
-          // Interrupt may not be good enough: if blocked on non-async IO
-          // (non-channel IO, e.g., "regular"), this can have no
-          // effect.  Turns out using stop doesn't help even in this
-          // case.
-          if (entry instanceof LoadThread) {
-            Log.info("STOPPING THREAD ENTRY " + entry);
-            ((LoadThread) entry).stop();
-          } else { //if (entry instanceof Loader) {
-            Log.warn("LEAVING TO RUN OUT TASK ENTRY " + entry);
-            // if it was a Future, we could attempt to de-queue it
-          }
-          //((LoadThread)entry).stop();
-          //((Loader)entry).interrupt();
-        }
-      }
-      //super.clear();
-    }
-  }
-
   /**
    * flush any cache BufferedImages we have for the give file: future requests
    * will force the image data to be reloaded from the file (useful if we know
@@ -492,15 +523,10 @@ public class Images {
     // cache for all cache keys of any size (tho we only have one size for now)
 
     if (flushEntry(iconKey, "ic128")) {
-      File iconFile = new File(
-        getCacheDirectory(),
-        keyToCacheFileName(iconKey)
+      final DiskCache disk = getDiskCache();
+      if (disk != null && disk.delete(iconKey)) Log.info(
+        "   deleted cache file for " + iconKey
       );
-      Log.info("looking for cache file " + iconFile);
-      if (iconFile.exists()) {
-        Log.info("   deleting cache file " + iconFile);
-        iconFile.delete();
-      }
     }
   }
 
@@ -571,16 +597,6 @@ public class Images {
     return null;
   }
 
-  private static URI cacheFileNameToKey(String name) {
-    try {
-      return new URI(java.net.URLDecoder.decode(name, "UTF-8"));
-      //return new URL(java.net.URLDecoder.decode(name, "UTF-8"));
-    } catch (Throwable t) {
-      if (DEBUG.Enabled) tufts.Util.printStackTrace(t);
-      return null;
-    }
-  }
-
   /**
    * Using a relay system, as opposed to say a list of listeners maintained by the
    * Loader, allows the image loading code to not care if there is a single listener
@@ -1093,15 +1109,17 @@ public class Images {
       // So now that we've waited, we should be guaranteed to have a full
       // Image result in the cache at this point.
 
-      // Note: theoretically, the GC could have cleared our SoftReference
-      // betwen loading the cache and now.  We can't lock the cache while
-      // we're waiting on the join tho.
+      // Note: theoretically, the image could have already been evicted from
+      // the cache betwen loading the cache and now.  We can't lock the cache
+      // while we're waiting on the join tho.
 
       //                 cachedImage = ((CacheEntry)RawCache.get(imageSRC.key)).getCachedImage();
       //                 if (cachedImage == null)
       //                     Log.warn("Zealous GC: image tossed immediately " + imageSRC);
 
-      handle = ((CacheEntry) RawCache.get(imageSRC.key)).getHandle();
+      final Object loaded = RawCache.get(imageSRC.key);
+      if (loaded instanceof CacheEntry) handle =
+        ((CacheEntry) loaded).getHandle();
       if (handle == null) Log.warn(
         "Zealous GC: image tossed immediately " + imageSRC
       );
@@ -2045,7 +2063,7 @@ public class Images {
    * cache, and then the final result before we return.
    *
    * This method also deals with cache cleanup: if an entry is found to be
-   * empty (it has no disk file, and it's image has been GC'd), the entry
+   * empty (it has no disk file, and it's image has been evicted), the entry
    * is removed.
    *
    * @return If an Image, we had the image in the cache immediately availble.  If a
@@ -2062,11 +2080,11 @@ public class Images {
   ) {
     Loader loader = null;
 
-    //-------------------------------------------------------
-    // OBTAIN CACHE LOCK
-    //-------------------------------------------------------
+    // There is no cache lock: if another thread gets a loader into the cache for
+    // this key between our lookup and our claim, we just go around again, and will
+    // find that loader on the next lookup.
 
-    synchronized (RawCache) {
+    for (;;) {
       final Object entry = getCacheContentsWithAutoFlush(imageSRC);
 
       // if anything in the Cache, immediately return it.  Could
@@ -2080,31 +2098,25 @@ public class Images {
         // queue, it needs to be moved (LIFO style) to the front of the loading queue.
 
         return entry;
-        // cache lock released
+      }
 
-      } else {
-        // Nothing was in the cache.  Create a task for loading
-        // the image, which will then normally be run in another thread.
-        // the task immediately in the current thread and return the
-        // result.
+      // Nothing was in the cache.  Create a task for loading
+      // the image, which will then normally be run in another thread.
+      // the task immediately in the current thread and return the
+      // result.
 
-        loader = Task.create(imageSRC, listener, when);
+      if (loader == null) loader = Task.create(imageSRC, listener, when);
 
-        // Note that even if we've been requested to run synchronously (no listener or
-        // "immediate" is true) , we still want a Loader created that can have listeners
-        // added later, and have it marked in the cache, in case subsequent asynchronous
-        // requests come in for this image, or even future immediate requests, which then
-        // won't be honored: they'll get a callback when the previous immediate load
-        // finishes.
+      // Note that even if we've been requested to run synchronously (no listener or
+      // "immediate" is true) , we still want a Loader created that can have listeners
+      // added later, and have it marked in the cache, in case subsequent asynchronous
+      // requests come in for this image, or even future immediate requests, which then
+      // won't be honored: they'll get a callback when the previous immediate load
+      // finishes.
 
-        markCacheAsLoading(imageSRC.key, loader);
-      }
+      if (markCacheAsLoading(imageSRC.key, loader)) break;
     }
 
-    //-------------------------------------------------------
-    // CACHE LOCK IS RELEASED
-    //-------------------------------------------------------
-
     if (when == LOAD_IMMEDIATE) {
       // It's crucial that this NOT be run in a Cache-lock, or
       // every other image thread will soon hang until this is
@@ -2161,20 +2173,17 @@ public class Images {
   //         return loader;
   //     }
 
-  private static void markCacheAsLoading(URI key, Loader loader) {
-    final Object old = RawCache.put(key, loader); // todo: under what conditiions is this normal?
-    if (
-      old != null &&
-      old instanceof CacheEntry &&
-      !((CacheEntry) old).isPreloadedDiskEntry()
-    ) {
-      Log.warn(
-        "blew away existing cache content:\n\told: " +
-        Util.tags(old) +
-        "\n\tfor: " +
-        Util.tags(loader)
-      );
-    }
+  /**
+   * @return true if the loader is now in the cache for the given key.  It will replace
+   * any entry without image data (a disk cache entry, or one who's image was evicted),
+   * but it will NOT replace a live entry or another loader.
+   */
+  private static boolean markCacheAsLoading(URI key, Loader loader) {
+    final boolean claimed = RawCache.claim(key, loader);
+    if (!claimed && DEBUG.IMAGE) out(
+      "lost race to load " + tag(key) + "; retrying lookup"
+    );
+    return claimed;
   }
 
   private static void kickTask(Loader loader) {
@@ -2197,9 +2206,12 @@ public class Images {
   private static Object getCacheContentsWithAutoFlush(ImageSource imageSRC) {
     if (imageSRC.key == null) return null;
 
-    final Object entry = RawCache.get(imageSRC.key);
+    final Object entry = getEntryOrDiskFile(imageSRC.key);
 
-    if (entry == null) return null;
+    if (entry == null) {
+      RawCache.recordMiss();
+      return null;
+    }
 
     if (DEBUG.IMAGE) out(
       "found cache entry for key " + tag(imageSRC.key) + ": " + entry
@@ -2209,6 +2221,7 @@ public class Images {
       if (DEBUG.IMAGE) out(
         "Image is loading into the cache via already existing Loader..."
       );
+      RawCache.recordMiss();
 
       // For ideal LIFO handling of image requests, we should at this point
       // find out if the Loader is already running in the thread pool or not.  If
@@ -2227,14 +2240,15 @@ public class Images {
     final CacheEntry ce = (CacheEntry) entry;
     final Image cachedImage = ce.getCachedImage();
 
-    // if we have the image, we're done (it was loaded this runtime, and not GC'd)
-    // if not, either it was GC'd, or it's a cache file entry from the persistent
+    // if we have the image, we're done (it was loaded this runtime, and not evicted)
+    // if not, either it was evicted, or it's a cache file entry from the persistent
     // cache -- in either case, there is a file on disk -- mark it in the imageSRC,
     // and the loader will notice it and use it.
 
     boolean emptyEntry = true;
 
     if (cachedImage != null) {
+      RawCache.recordHit();
       emptyEntry = false;
     } else if (ce.getFile() != null) {
       if (ce.file.canRead()) {
@@ -2243,13 +2257,15 @@ public class Images {
       } else Log.warn("cache file no longer available: " + ce.file);
     }
 
+    if (cachedImage == null) RawCache.recordMiss();
+
     if (emptyEntry) {
       // there is a cache entry with no image OR file: this could only
       // happen if the disk cache is not operating, and the memory
-      // image was garbage collected: we need to remove this entry
+      // image was evicted: we need to remove this entry
       // from the cache completely and start from scratch:
       if (DEBUG.IMAGE) out("REMOVING FROM CACHE: " + imageSRC);
-      RawCache.remove(imageSRC.key);
+      RawCache.remove(imageSRC.key, ce);
     }
 
     if (cachedImage == null) return null; else return new Handle(
@@ -2261,9 +2277,9 @@ public class Images {
     // If cachedImage is null at this point, there was an entry in the cache, but it was of no use:
 
     // That happens in the following cases:
-    // (1) We had the image, but is was GC'd -- we're going back to the cache file
-    // (2) We had the image, but is was GC'd -- original was on disk: go back to that
-    // (3) We had the image, but is was GC'd, and disk cache not working: reload original from network
+    // (1) We had the image, but is was evicted -- we're going back to the cache file
+    // (2) We had the image, but is was evicted -- original was on disk: go back to that
+    // (3) We had the image, but is was evicted, and disk cache not working: reload original from network
     // (4) We never had the image, but it is in disk cache: go get it
     // (5) unlikely case case of zealous GC: reload original
 
@@ -2277,7 +2293,7 @@ public class Images {
    * an unloaded pre-registered disk cache entry, a loaded cache entry, or a loader in progress.
    */
   public static boolean hasCacheEntry(URI cacheKey) {
-    return cacheKey != null && RawCache.get(cacheKey) != null;
+    return cacheKey != null && getEntryOrDiskFile(cacheKey) != null;
   }
 
   private static Handle createAndCacheIcon(
@@ -2285,6 +2301,7 @@ public class Images {
     ImageSource iconSource
   ) {
     final Image hardImage;
+    int[] sourcePixels = null;
     boolean badReadable = false;
 
     if (iconSource.readable instanceof Image) {
@@ -2313,6 +2330,27 @@ public class Images {
 
     } else if (iconSource.readable instanceof ImageRep) {
       hardImage = ((ImageRep) iconSource.readable).image();
+    } else if (iconSource.readable instanceof File) {
+      // Decode the original straight from disk at about twice the icon size, which
+      // is plenty for a smooth scale-down, instead of decoding the full image just
+      // to throw nearly all of it away.
+      final Handle scaled;
+      try {
+        scaled =
+          readScaled((File) iconSource.readable, iconSource.iconSize * 2);
+      } catch (Throwable t) {
+        RawCache.remove(iconSource.key);
+        final String msg;
+        if (t instanceof OutOfMemoryError) {
+          setLowMemory(t);
+          msg = OUT_OF_MEMORY;
+        } else msg = t.toString();
+        Log.warn(iconSource + ": " + t);
+        if (listener != null) listener.gotImageError(iconSource, msg);
+        return null;
+      }
+      hardImage = scaled.image;
+      sourcePixels = (int[]) scaled.data.get("sourcePixels");
     } else {
       badReadable = true;
       hardImage = null;
@@ -2342,12 +2380,30 @@ public class Images {
       }
     }
 
-    final Dimension originalSize = new Dimension(
-      hardImage.getWidth(null),
-      hardImage.getHeight(null)
-    );
+    final Dimension originalSize;
+    final Handle iconHandle;
 
-    final Handle iconHandle = createIcon(hardImage, iconSource.iconSize);
+    if (sourcePixels != null) {
+      originalSize = new Dimension(sourcePixels[0], sourcePixels[1]);
+      final Map<String, Object> data = new HashMap(2);
+      data.put("sourcePixels", sourcePixels);
+      if (
+        hardImage.getWidth(null) <= iconSource.iconSize &&
+        hardImage.getHeight(null) <= iconSource.iconSize
+      ) {
+        // the original is no bigger than an icon: it is the icon
+        iconHandle = new Handle(hardImage, data);
+        if (listener != null) listener.gotImage(iconSource, iconHandle);
+        RawCache.put(iconSource.key, new CacheEntry(iconHandle, null));
+        return iconHandle;
+      }
+      iconHandle =
+        new Handle(createIcon(hardImage, iconSource.iconSize).image, data);
+    } else {
+      originalSize =
+        new Dimension(hardImage.getWidth(null), hardImage.getHeight(null));
+      iconHandle = createIcon(hardImage, iconSource.iconSize);
+    }
 
     if (listener != null) {
       // note that we could init the handle with data containing he size of the source image,
@@ -2371,12 +2427,16 @@ public class Images {
     // Some code is actually sensitive to this.  Oh -- wait -- maybe the problem is that it is NOT
     // in after it's been loaded to the disk cache?
 
-    if (cacheFile != null && iconHandle.image != null) cacheIconToDisk(
-      iconSource.key,
-      (RenderedImage) iconHandle.image,
-      cacheFile,
-      originalSize
-    );
+    if (
+      cacheFile != null &&
+      iconHandle.image != null &&
+      cacheIconToDisk(
+        iconSource.key,
+        (RenderedImage) iconHandle.image,
+        cacheFile,
+        originalSize
+      )
+    ) getDiskCache().stored(cacheFile);
     return iconHandle;
   }
 
@@ -2749,7 +2809,7 @@ public class Images {
         //                     imageSRC.resource.setCacheFile(permanentCacheFile);
       }
     } else {
-      if (imageData.image != null) RawCache.put(
+      if (imageData != null && imageData.image != null) RawCache.put(
         imageSRC.key,
         new CacheEntry(imageData, null)
       );
@@ -2876,27 +2936,21 @@ public class Images {
 
   }
 
-  private static File makePermanentCacheFile(URI key)
-    throws java.io.UnsupportedEncodingException {
+  private static File makePermanentCacheFile(URI key) {
     return makeCacheFile(key, false);
   }
 
-  private static File makeTmpCacheFile(URI key)
-    throws java.io.UnsupportedEncodingException {
+  private static File makeTmpCacheFile(URI key) {
     return makeCacheFile(key, true);
   }
 
   /** @param temporary -- for temporary cache files that have yet to complete (e.g., not all data has arrived)  */
-  private static File makeCacheFile(URI key, boolean temporary)
-    throws java.io.UnsupportedEncodingException {
-    final String cacheName;
-    if (temporary) cacheName = "." + keyToCacheFileName(key); else cacheName =
-      keyToCacheFileName(key);
-
-    File cacheDir = getCacheDirectory();
+  private static File makeCacheFile(URI key, boolean temporary) {
+    final DiskCache disk = getDiskCache();
     File file = null;
-    if (cacheDir != null) {
-      file = new File(getCacheDirectory(), cacheName);
+    if (disk != null) {
+      file = disk.fileFor(key, temporary);
+      file.getParentFile().mkdirs();
       try {
         if (!file.createNewFile()) {
           if (DEBUG.IO) Log.debug("cache file already exists: " + file);
@@ -2931,6 +2985,7 @@ public class Images {
       File permanentFile = new File(file.getParentFile(), permanentName);
       if (file.renameTo(permanentFile)) {
         Log.debug("new perm cache file: " + permanentFile);
+        getDiskCache().stored(permanentFile);
         return permanentFile;
       }
     } catch (Throwable t) {
@@ -3210,6 +3265,10 @@ public class Images {
       "invalid size: width=" + w + "; height=" + h
     );
 
+    final int subsampling = imageSRC.decodeSize > 0
+      ? getSubsampling(w, h, imageSRC.decodeSize)
+      : 1;
+
     if (imageSRC.resource != null) {
       if (DEBUG.IMAGE || DEBUG.THREAD || DEBUG.RESOURCE) out(
         "setting resource image.* meta-data for " + imageSRC.resource
@@ -3232,7 +3291,13 @@ public class Images {
 
     if (listener != null) {
       if (DEBUG.IMAGE) out("Sending size to " + tag(listener));
-      listener.gotImageSize(imageSRC.original, w, h, dataSize, null);
+      listener.gotImageSize(
+        imageSRC.original,
+        subsampledSize(w, subsampling),
+        subsampledSize(h, subsampling),
+        dataSize,
+        null
+      );
     }
 
     // FYI, if fetch meta-data, will need to trap exceptions here, as if there are
@@ -3258,7 +3323,13 @@ public class Images {
     Throwable exception = null;
 
     try {
-      image = reader.read(0);
+      if (imageSRC.decodeSize > 0) {
+        image = reader.read(0, createSubsamplingParam(reader, subsampling));
+        imageData = new HashMap(2);
+        imageData.put("sourcePixels", new int[] { w, h });
+      } else {
+        image = reader.read(0);
+      }
       if (DEBUG.Enabled) out("    got " + imageSRC + ".");
       //testImageInspect(reader, image, imageSRC);
 
@@ -3369,6 +3440,80 @@ public class Images {
     }
   }
 
+  /**
+   * @return the largest power-of-two source subsampling factor that will still decode
+   * an image of the given size to at least minSide pixels on it's longest side.  Powers
+   * of two keep the intermediate resolutions of the same image proportional to each
+   * other, and are what decoders with native scaling support (e.g., JPEG) handle best.
+   */
+  static int getSubsampling(int width, int height, int minSide) {
+    final int max = Math.max(1, Math.max(width, height) / Math.max(1, minSide));
+    return Integer.highestOneBit(max);
+  }
+
+  private static int subsampledSize(int size, int subsampling) {
+    return (size + subsampling - 1) / subsampling;
+  }
+
+  private static ImageReadParam createSubsamplingParam(
+    ImageReader reader,
+    int subsampling
+  ) {
+    final ImageReadParam param = reader.getDefaultReadParam();
+    if (subsampling > 1) param.setSourceSubsampling(
+      subsampling,
+      subsampling,
+      0,
+      0
+    );
+    return param;
+  }
+
+  /**
+   * Decode the image in the given file subsampled (if it's big enough) to no less than
+   * minSide pixels on it's longest side.  With most readers (e.g., JPEG), only the rows
+   * and columns that are kept are ever decoded, so this costs memory only for the
+   * reduced image, regardless of the size of the original.
+   *
+   * @return a Handle with the pixel size of the full image in data as "sourcePixels"
+   */
+  static Handle readScaled(File file, int minSide)
+    throws IOException, ImageException {
+    final ImageInputStream input = ImageIO.createImageInputStream(file);
+    if (input == null) throw new ImageException("Can't Access [" + file + "]");
+    try {
+      final ImageReader reader = getDecoder(input, null);
+      if (reader == null) throw new ImageException("Unreadable Image Stream");
+      try {
+        reader.setInput(input, true, true);
+        final int w = reader.getWidth(0);
+        final int h = reader.getHeight(0);
+        final int subsampling = getSubsampling(w, h, minSide);
+        final Image image = reader.read(
+          0,
+          createSubsamplingParam(reader, subsampling)
+        );
+        if (DEBUG.IMAGE) Log.debug(
+          String.format(
+            "readScaled %dx%d /%d -> %s; %s",
+            w,
+            h,
+            subsampling,
+            Util.tags(image),
+            file
+          )
+        );
+        final Map<String, Object> data = new HashMap(2);
+        data.put("sourcePixels", new int[] { w, h });
+        return new Handle(image, data);
+      } finally {
+        reader.dispose();
+      }
+    } finally {
+      input.close();
+    }
+  }
+
   static Handle createIcon(Image source, int maxSide) {
     final Handle icon;
 
@@ -19,8 +19,10 @@ import static tufts.Util.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import tufts.Util;
 
 /**
@@ -28,6 +30,10 @@ import tufts.Util;
  * class can use this for event dispatch, selective listening, and the heavy-duty
  * diagnostic support.
  *
+ * Listener lists are copy-on-write arrays, so dispatch never locks or copies them.
+ * Dispatch is serialized per map (not globally), and a client may batch its events: see
+ * beginBatch.
+ *
  * @version $Revision: 1.10 $ / $Date: 2007/11/19 06:20:27 $ / $Author: sfraize $
  * @author Scott Fraize
  */
@@ -36,9 +42,19 @@ public class LWChangeSupport {
   private static final org.apache.log4j.Logger Log =
     org.apache.log4j.Logger.getLogger(LWChangeSupport.class);
 
-  private static int sEventDepth = 0;
+  private static final LWComponent.Listener[] NO_LISTENERS =
+    new LWComponent.Listener[0];
+
+  /** per thread, as dispatch is only serialized per map */
+  private static final ThreadLocal<int[]> EventDepth = new ThreadLocal<int[]>() {
+    protected int[] initialValue() {
+      return new int[1];
+    }
+  };
 
-  private List listeners;
+  /** copy-on-write: replaced, never modified, and read without locking */
+  private volatile LWComponent.Listener[] listeners = NO_LISTENERS;
+  private volatile EventBatch mBatch;
   private Object mClient;
   private boolean mEventsDisabled = false;
   private int mEventSuspensions = 0;
@@ -96,29 +112,28 @@ public class LWChangeSupport {
     }
   }
 
-  private class LWCListenerList extends java.util.Vector {
-
-    public synchronized int indexOf(Object elem, int index) {
-      if (elem == null) {
-        for (int i = index; i < elementCount; i++) if (
-          elementData[i] == null
-        ) return i;
-      } else {
-        for (int i = index; i < elementCount; i++) {
-          Object ed = elementData[i];
-          if (elem.equals(ed)) return i;
-          if (
-            ed instanceof LWCListenerProxy &&
-            ((LWCListenerProxy) ed).listener == elem
-          ) return i;
-        }
-      }
-      return -1;
+  /** @return the index of the given listener, or the proxy for it, or -1 */
+  private static int indexOf(LWComponent.Listener[] list, Object listener) {
+    for (int i = 0; i < list.length; i++) {
+      final LWComponent.Listener l = list[i];
+      if (
+        l == listener ||
+        (l instanceof LWCListenerProxy &&
+          ((LWCListenerProxy) l).listener == listener)
+      ) return i;
     }
+    return -1;
+  }
 
-    public synchronized int lastIndexOf(Object elem, int index) {
-      throw new UnsupportedOperationException("lastIndexOf");
-    }
+  private static LWComponent.Listener[] without(
+    LWComponent.Listener[] list,
+    int i
+  ) {
+    final LWComponent.Listener[] less = new LWComponent.Listener[list.length -
+    1];
+    System.arraycopy(list, 0, less, 0, i);
+    System.arraycopy(list, i + 1, less, i, list.length - i - 1);
+    return less;
   }
 
   /**
@@ -131,7 +146,7 @@ public class LWChangeSupport {
    * map & viewer listeners, etc, can all use.
    */
   public synchronized void setPriorityListener(LWComponent.Listener listener) {
-    if (listeners == null) {
+    if (listeners.length == 0) {
       Log.error(
         "Attempting to set priorty listener with no listeners at all for client " +
         mClient
@@ -139,17 +154,15 @@ public class LWChangeSupport {
       return;
     }
 
-    int i = listeners.indexOf(listener);
+    final LWComponent.Listener[] list = listeners;
+    final int i = indexOf(list, listener);
 
     if (i > 0) {
-      if (i == 1) {
-        // swap first two
-        listeners.set(1, listeners.set(0, listener));
-      } else {
-        // remove & add back at the front
-        listeners.remove(listener);
-        listeners.add(0, listener);
-      }
+      // move it to the front, keeping the rest in order
+      final LWComponent.Listener[] moved = list.clone();
+      System.arraycopy(list, 0, moved, 1, i);
+      moved[0] = list[i];
+      listeners = moved;
     } else if (i == 0) {
       // already priority listener
     } else throw new IllegalArgumentException(
@@ -165,8 +178,7 @@ public class LWChangeSupport {
     LWComponent.Listener listener,
     Object eventMask
   ) {
-    if (listeners == null) listeners = new LWCListenerList();
-    if (listeners.contains(listener)) {
+    if (indexOf(listeners, listener) >= 0) {
       // do nothing (they're already listening to us)
       if (DEBUG.EVENTS) {
         if (DEBUG.META) System.out.println(
@@ -187,26 +199,33 @@ public class LWChangeSupport {
         mClient +
         (eventMask == null ? "" : (" eventMask=" + eventMask))
       );
-      if (eventMask == null) {
-        listeners.add(listener);
-      } else listeners.add(new LWCListenerProxy(listener, eventMask));
+      final LWComponent.Listener[] more = Arrays.copyOf(
+        listeners,
+        listeners.length + 1
+      );
+      more[more.length - 1] =
+        eventMask == null
+          ? listener
+          : new LWCListenerProxy(listener, eventMask);
+      listeners = more;
     }
   }
 
   public synchronized void removeListener(LWComponent.Listener listener) {
-    if (listeners == null) return;
+    final int i = indexOf(listeners, listener);
+    if (i < 0) return;
     if (DEBUG.EVENTS && DEBUG.META) System.out.println(
       "*** LISTENER " + listener + "\tREMOVES " + mClient
     );
-    listeners.remove(listener);
+    listeners = without(listeners, i);
   }
 
   public synchronized void removeAllListeners() {
-    if (listeners != null) {
+    if (listeners.length > 0) {
       if (DEBUG.EVENTS) System.out.println(
-        mClient + " *** CLEARING ALL LISTENERS " + listeners
+        mClient + " *** CLEARING ALL LISTENERS " + Arrays.asList(listeners)
       );
-      listeners.clear();
+      listeners = NO_LISTENERS;
     }
   }
 
@@ -234,13 +253,131 @@ public class LWChangeSupport {
     return mEventsDisabled;
   }
 
+  /**
+   * Events queued during a batch.  Repeated property events for the same component are
+   * coalesced into the first of them (which has the oldest old value), keeping its place
+   * in the order.  Hierarchy, creation, deletion and other signal events are all kept.
+   */
+  private static final class EventBatch {
+
+    final LWComponent.Listener exempt;
+    final List<LWCEvent> events = new ArrayList<LWCEvent>();
+    final Map<LWComponent, Object> keysSeen = new HashMap<LWComponent, Object>();
+    int depth = 1;
+    int coalesced;
+
+    EventBatch(LWComponent.Listener exempt) {
+      this.exempt = exempt;
+    }
+
+    void add(LWCEvent e) {
+      if (isCoalescable(e)) {
+        final Object seen = keysSeen.get(e.component);
+        if (seen == null) {
+          keysSeen.put(e.component, e.key);
+        } else if (seen == e.key) {
+          coalesced++;
+          return;
+        } else if (seen instanceof KeyList) {
+          if (((KeyList) seen).contains(e.key)) {
+            coalesced++;
+            return;
+          }
+          ((KeyList) seen).add(e.key);
+        } else {
+          final KeyList keys = new KeyList();
+          keys.add(seen);
+          keys.add(e.key);
+          keysSeen.put(e.component, keys);
+        }
+      }
+      events.add(e);
+    }
+
+    private static boolean isCoalescable(LWCEvent e) {
+      if (e.component == null || e.getComponents() != null) return false;
+      final Object k = e.key;
+      return (
+        k instanceof LWComponent.Key ||
+        k == LWKey.Location ||
+        k == LWKey.Size ||
+        k == LWKey.Frame ||
+        k == LWKey.Scale ||
+        k == LWKey.Hidden ||
+        k == LWKey.Resource ||
+        k == LWKey.Repaint ||
+        k == LWKey.RepaintComponent ||
+        k == LWKey.DataUpdate ||
+        k == LWKey.MetaData
+      );
+    }
+
+    /** distinguishes a list of keys from a key */
+    private static final class KeyList extends ArrayList<Object> {
+
+      KeyList() {
+        super(4);
+      }
+    }
+  }
+
+  /**
+   * Start queuing events for our listeners until the matching endBatch, when they're
+   * delivered once each, coalesced (see EventBatch).  Batches nest.  The exempt listener
+   * (e.g., an UndoManager, which must record every change exactly) still gets every event
+   * as it happens, and isn't sent them again at the end.
+   */
+  synchronized void beginBatch(LWComponent.Listener exempt) {
+    if (mBatch != null) mBatch.depth++; else mBatch = new EventBatch(exempt);
+  }
+
+  /** end a batch started with beginBatch: at the outermost, deliver what was queued */
+  synchronized void endBatch(LWComponent client) {
+    final EventBatch batch = mBatch;
+    if (batch == null) throw new IllegalStateException(
+      "event batch begin/end unpaired: " + client
+    );
+    if (--batch.depth > 0) return;
+    mBatch = null;
+
+    if (DEBUG.EVENTS) Log.debug(
+      client +
+      ": delivering " +
+      batch.events.size() +
+      " batched events; coalesced " +
+      batch.coalesced
+    );
+
+    // The listeners to deliver to are worked out once for the whole batch, and again
+    // only if a listener is added or removed during delivery (listeners is replaced,
+    // never modified).
+    LWComponent.Listener[] snapshot = null;
+    LWComponent.Listener[] list = null;
+    for (LWCEvent e : batch.events) {
+      if (
+        e.component != null &&
+        e.component.isDeleted() &&
+        !e.component.permitZombieEvent(e) &&
+        EventBatch.isCoalescable(e)
+      ) continue; // a change to something since deleted: no-one needs to hear about it
+      if (snapshot != listeners) {
+        snapshot = listeners;
+        final int exempt = batch.exempt == null
+          ? -1
+          : indexOf(snapshot, batch.exempt);
+        list = exempt >= 0 ? without(snapshot, exempt) : snapshot;
+      }
+      if (list.length > 0) dispatchLWCEvent(client, list, e);
+    }
+  }
+
   private static final String DELIVERY_ARROW = TERM_GREEN + " => " + TERM_CLEAR;
 
   /**
    * This method for clients that are LWComponent's ONLY.  Otherwise call dispatchLWCEvent
    * directly.
    */
-  synchronized void notifyListeners(LWComponent client, LWCEvent e) {
+  void notifyListeners(LWComponent client, LWCEvent e) {
     if (mEventsDisabled) {
       if (DEBUG.EVENTS) System.out.println(
         e + " (dispatch skipped: events disabled)"
@@ -256,7 +393,7 @@ public class LWChangeSupport {
         "\n\tattempting delivery of: " +
         e +
         "\n\t     current listeners: " +
-        listeners +
+        Arrays.asList(listeners) +
         "\n\tparent (ought be null): " +
         client.getParent() +
         "\n";
@@ -270,24 +407,27 @@ public class LWChangeSupport {
     if (
       DEBUG.EVENTS &&
       (DEBUG.META || e.isUndoable()) &&
-      (DEBUG.META || listeners != null)
+      (DEBUG.META || listeners.length > 0)
     ) {
       final String ldesc =
-        (listeners == null
+        (listeners.length == 0
             ? " -> <no listeners>"
-            : ((listeners.size() > 0 ? TERM_GREEN : "") +
+            : ((listeners.length > 0 ? TERM_GREEN : "") +
               " => (" +
-              listeners.size() +
+              listeners.length +
               " listeners)" +
               TERM_CLEAR//+ " " + Arrays.asList(listeners)
             ));
-      //: (DELIVERY_ARROW + "(" + listeners.size() + " listeners)"));a
+      //: (DELIVERY_ARROW + "(" + listeners.length + " listeners)"));a
       if (client != e.getSource()) eoutln(
         e + " => " + client + ldesc
       ); else eoutln(e + ldesc);
     }
 
-    if (listeners != null && listeners.size() > 0) {
+    final EventBatch batch = mBatch;
+    if (batch != null && deferToBatch(client, e)) {
+      // queued for delivery at the end of the batch
+    } else if (listeners.length > 0) {
       if (DEBUG.EVENTS && DEBUG.META) eoutln(
         e +
         " dispatching for client " +
@@ -317,7 +457,7 @@ public class LWChangeSupport {
       }
       client.getParent().broadcastChildEvent(e);
     } else if (client.isOrphan() && !client.permitZombieEvent(e)) {
-      if (listeners != null && listeners.size() > 0) {
+      if (listeners.length > 0) {
         Log.info(
           "ORPHAN NODE w/LISTENERS DELIVERED EVENTS:" +
           "\n\torphan=" +
@@ -325,7 +465,7 @@ public class LWChangeSupport {
           "\n\tevent=" +
           e +
           "\n\tlisteners=" +
-          listeners
+          Arrays.asList(listeners)
         );
         if (DEBUG.PARENTING) new Throwable().printStackTrace();
       }
@@ -337,13 +477,30 @@ public class LWChangeSupport {
     }
   }
 
+  /** @return false if the batch ended before we could queue the event */
+  private synchronized boolean deferToBatch(LWComponent client, LWCEvent e) {
+    final EventBatch batch = mBatch;
+    if (batch == null) return false;
+    if (batch.exempt != null) {
+      final LWComponent.Listener[] list = listeners;
+      final int i = indexOf(list, batch.exempt);
+      if (i >= 0) dispatchLWCEvent(
+        client,
+        new LWComponent.Listener[] { list[i] },
+        e
+      );
+    }
+    batch.add(e);
+    return true;
+  }
+
   private static void eout(String s) {
     synchronized (System.err) {
       //if (DEBUG.THREAD) System.err.format("%-27s", Thread.currentThread().toString().substring(6));
       if (
         !javax.swing.SwingUtilities.isEventDispatchThread()
       ) System.err.format("[%s]", Thread.currentThread().getName());
-      for (int x = 0; x < sEventDepth; x++) System.err.print("--->");
+      for (int x = 0; x < EventDepth.get()[0]; x++) System.err.print("--->");
       System.err.print(s);
     }
   }
@@ -357,42 +514,62 @@ public class LWChangeSupport {
   }
 
   public void dispatchEvent(LWCEvent e) {
-    if (listeners != null) dispatchLWCEvent(mClient, listeners, e);
+    if (listeners.length > 0) dispatchLWCEvent(mClient, listeners, e);
+  }
+
+  /**
+   * @return the lock serializing event delivery for the given source: its map, if it has
+   * one.  Events in different maps are delivered independently.
+   */
+  private static Object dispatchLock(Object source) {
+    if (source instanceof LWComponent) {
+      final LWMap map = ((LWComponent) source).getMap();
+      if (map != null) return map;
+    }
+    return source;
   }
 
   /**
    * Deliver LWCEvent @param e to all the @param listeners
    */
-  static synchronized void dispatchLWCEvent(
+  static void dispatchLWCEvent(
     Object source,
-    List listeners,
+    LWComponent.Listener[] listeners,
     LWCEvent e
   ) {
+    synchronized (dispatchLock(source)) {
+      dispatchLWCEventImpl(source, listeners, e);
+    }
+  }
+
+  private static void dispatchLWCEventImpl(
+    Object source,
+    LWComponent.Listener[] listener_array,
+    LWCEvent e
+  ) {
+    final int[] eventDepth = EventDepth.get();
     if (
-      sEventDepth > 5
+      eventDepth[0] > 5
     ) throw new IllegalStateException( // guestimate max based on current architecture -- increase if you need to
       "eventDepth=" +
-      sEventDepth +
+      eventDepth[0] +
       ", assumed looping on delivery of " +
       e +
       " in " +
       source +
       " to " +
-      listeners
+      Arrays.asList(listener_array)
     );
 
     if (source instanceof LWComponent) {
       final LWComponent client = (LWComponent) source;
-      if (
-        (client.isDeleted() && !client.permitZombieEvent(e)) ||
-        listeners == null
-      ) {
+      if (client.isDeleted() && !client.permitZombieEvent(e)) {
         System.err.println(
-          "ZOMBIE DISPATCH: deleted component or null listeners attempting event dispatch:" +
+          "ZOMBIE DISPATCH: deleted component attempting event dispatch:" +
           "\n\tsource=" +
           source +
           "\n\tlisteners=" +
-          listeners +
+          Arrays.asList(listener_array) +
           "\n\tattempted notification=" +
           e
         );
@@ -401,26 +578,10 @@ public class LWChangeSupport {
       }
     }
 
-    // todo perf: take array code out and see if can fix all
-    // concurrent mod exceptions (e.g., delete out from under a
-    // pathway was giving us some problems, tho I think that may
-    // have gone away) or: allow listener removes via nulling, tho
-    // that's not really a concern anyway in that a component that
-    // removes itself as a listener after having been notified of
-    // an event has already had it's notification and we don't
-    // need to make sure it doesn't get one further down the list.
-
-    //int nlistener = listeners.size();
-    //Listener[] listener_array = (Listener[]) listeners.toArray(listener_buf);
-    //if (listener_array != listener_buf)
-    //    out("FYI: listener count " + nlistener + " exceeded performance buffer.");
-    // Of course, using a static buf of course doesn't work the second we have any event depth!
-    // and we can't make it a member as this is a static method...
-    // We could actually just only allocate a new array if there IS any event depth...
-
-    LWComponent.Listener[] listener_array =
-      new LWComponent.Listener[listeners.size()];
-    listeners.toArray(listener_array);
+    // The listener array is never modified (it's replaced on add/remove), so there's
+    // no need to copy it: a listener added or removed during delivery doesn't affect
+    // this delivery.
+
     for (int i = 0; i < listener_array.length; i++) {
       if (DEBUG.EVENTS && DEBUG.META) {
         if (e.getSource() != source) eout(
@@ -454,7 +615,7 @@ public class LWChangeSupport {
       if (
         e.getSource() == target
       ) continue; // this prevents events from going back to their source
-      sEventDepth++;
+      eventDepth[0]++;
       try {
         if (DEBUG.EVENTS && DEBUG.THREAD) outln(target + "");
 
@@ -475,7 +636,7 @@ public class LWChangeSupport {
           target
         );
       } finally {
-        sEventDepth--;
+        eventDepth[0]--;
       }
       if (DEBUG.EVENTS && DEBUG.META) eoutln(
         e + " disptach returned from: " + target
@@ -32,6 +32,7 @@ import java.awt.Transparency;
 import java.awt.font.TextAttribute;
 import java.awt.geom.*;
 import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
 import java.net.*;
 import java.util.*;
 import java.util.regex.*;
@@ -319,12 +320,14 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
   /** creation time-stamp (when this node first joined a map) */
   private long mCreated;
 
-  /** cached affine transform for use by getZeroTransform() */
-  private final transient AffineTransform _zeroTransform =
-    new AffineTransform();
+  /** cached affine transform for use by getZeroTransform(): created on first use */
+  private transient AffineTransform _zeroTransform;
   protected transient double scale = 1.0;
   private transient AffineTransform mTemporaryTransform;
 
+  /** measures & paints the label */
+  protected transient TextLabel textLabel = null;
+  /** only exists while the label is being edited (see getLabelBox) */
   protected transient TextBox labelBox = null;
   protected transient BasicStroke stroke = STROKE_ZERO;
   //protected transient boolean selected = false;
@@ -349,6 +352,8 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
 
   /** properties for use by model clients (e.g., UI components) */
   protected transient HashMap mClientData;
+  /** values of slotted style properties (see Property) that differ from their defaults, indexed by Key slot */
+  private Object[] mSlots;
   // need MetaMap (a multi-map) for XML data-sets that can have more than one value per key
   protected transient MetaMap mDataMap;
 
@@ -581,6 +586,10 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     >();
 
     private static int InstanceCount; // increment for each key instance, to establish the appropriate bit
+    private static int SlotCount; // increment for each key that stores it's value in LWComponent slots
+
+    /** The index of this key's value in the slot array of an LWComponent, or -1 until a value is first stored */
+    private volatile int slot = -1;
     private static final java.util.Map<Class, Long> ClassProperties =
       new java.util.HashMap<Class, Long>();
 
@@ -701,7 +710,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     }
 
     private static final LWComponent EmptyStyle = new LWComponent();
-    static final Property NO_SLOT_PROVIDED = EmptyStyle.mFillColor; // any slot will do
+    static final Property NO_SLOT_PROVIDED = EmptyStyle.fillColor(); // any slot will do
 
     //private static final Property BAD_SLOT = EmptyStyle.mStrokeColor; // any (different) slot will do
     /** If this isn't overriden to return non-null, getValue & setValue must be overriden to provide the setter/getter impl  */
@@ -713,6 +722,25 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
       return getSlot(c) != NO_SLOT_PROVIDED;
     }
 
+    /** @return the slot index for this key, allocating the next free one the first time a value is stored for it */
+    final int allocateSlot() {
+      int i = slot;
+      if (i < 0) {
+        synchronized (Key.class) {
+          if (slot < 0) slot = SlotCount++;
+          i = slot;
+        }
+      }
+      return i;
+    }
+
+    /** @return the number of slot indices allocated so far: the array size that holds all values stored up to now */
+    static int slotCount() {
+      synchronized (Key.class) {
+        return SlotCount;
+      }
+    }
+
     // If we wanted to get rid of the slot decl's in the key's (for those that use
     // slots), we could, in our defult slot-using set/getValue, search all property
     // objects in the LWComponent, and if any of them match our key, we know that's
@@ -958,18 +986,24 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
    * notifications.  It also allows us to easily attach meta-data to the property itself: e.g.,
    * it's locked, it's overriding a parent style value, it's caching some related computed value,
    * etc.
+   *
+   * A Property holds no value itself: it's a view onto the value for it's key in the
+   * LWComponent slot array (see getSlotValue), which costs nothing while the value is
+   * the default.  Property objects are created as needed, and needn't be kept.
    */
   protected abstract class Property<T> {
 
     final Key key;
-    protected T value;
+    /** the shared value returned while nothing has been stored in this property's slot */
+    final T defaultValue;
 
-    Property(Key key) {
+    Property(Key key, T defaultValue) {
       this.key = key;
+      this.defaultValue = defaultValue;
     }
 
     T get() {
-      return value;
+      return (T) getSlotValue(key, defaultValue);
     }
 
     public void setTo(T newValue) {
@@ -977,9 +1011,9 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     }
 
     boolean isChanged(T newValue) {
+      final T value = get();
       if (
-        this.value == newValue ||
-        (newValue != null && newValue.equals(this.value))
+        value == newValue || (newValue != null && newValue.equals(value))
       ) return false; else return true;
     }
 
@@ -987,7 +1021,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
       //final Object old = get(); // if "get" actually does anything tho, this is a BAD idea; if needbe, create a "curValue"
 
       if (!isChanged(newValue)) return;
-      final Object oldValue = this.value;
+      final Object oldValue = get();
       take(newValue);
       onChange();
 
@@ -1005,7 +1039,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
 
     /** This JUST changes the stored value: no notifications of any kind will be triggered, no undo recorded. */
     void take(T o) {
-      this.value = o;
+      putSlotValue(key, o, defaultValue);
       if (DEBUG.TOOL) System.out.printf(
         "     TAKING: %-30s -> %s\n",
         vtag(key, o, this),
@@ -1047,6 +1081,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
 
     /** override to provide an impl other than value.toString() */
     String asString() {
+      final T value = get();
       return value == null ? null : value.toString();
     }
 
@@ -1059,15 +1094,14 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
 
     /** used for debugging */
     public String toString() {
-      return key + "[" + value + "]";
+      return key + "[" + get() + "]";
     }
   }
 
   public class EnumProperty<T extends Enum> extends Property<T> {
 
     EnumProperty(Key key, T defaultValue) {
-      super(key);
-      value = defaultValue;
+      super(key, defaultValue);
       //System.out.println("enum values: " + Arrays.asList(defaultValue.getClass().getEnumConstants()));
       //System.out.println("enum test: " + Enum.valueOf(defaultValue.getClass(), "DASH1"));
     }
@@ -1076,7 +1110,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
       // note: value can never be null, or we'll need to store the Enum class reference elsewhere
       // (e.g., in the Key -- better there anyway, where we could provide a generic "values"
       // to list the supported values)
-      set((T) Enum.valueOf(value.getClass(), s.trim()));
+      set((T) Enum.valueOf(defaultValue.getClass(), s.trim()));
     }
   }
 
@@ -1085,8 +1119,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
   public class StringProperty extends Property<java.lang.String> {
 
     StringProperty(Key key) {
-      super(key);
-      value = _DefaultString;
+      super(key, _DefaultString);
     }
 
     void setBy(String s) {
@@ -1097,8 +1130,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
   public class BooleanProperty extends Property<java.lang.Boolean> {
 
     BooleanProperty(Key key, Boolean defaultValue) {
-      super(key);
-      value = defaultValue;
+      super(key, defaultValue);
     }
 
     BooleanProperty(Key key) {
@@ -1112,8 +1144,8 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
 
   public abstract class NumberProperty<T> extends Property<T> {
 
-    NumberProperty(Key key) {
-      super(key);
+    NumberProperty(Key key, T defaultValue) {
+      super(key, defaultValue);
     }
 
     void setFromCSS(String cssKey, String value) {
@@ -1137,8 +1169,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
   public class IntProperty extends NumberProperty<java.lang.Integer> {
 
     IntProperty(Key key, Integer defaultValue) {
-      super(key);
-      value = defaultValue;
+      super(key, defaultValue);
     }
 
     IntProperty(Key key) {
@@ -1155,8 +1186,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
   public class FloatProperty extends NumberProperty<java.lang.Float> {
 
     FloatProperty(Key key) {
-      super(key);
-      value = _DefaultFloat;
+      super(key, _DefaultFloat);
     }
 
     void setBy(String s) {
@@ -1167,8 +1197,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
   public class FontProperty extends Property<java.awt.Font> {
 
     FontProperty(Key key) {
-      super(key);
-      value = VueConstants.FONT_DEFAULT;
+      super(key, VueConstants.FONT_DEFAULT);
     }
 
     final void setBy(String s) {
@@ -1178,7 +1207,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
       p = p.substring(0, p.indexOf("-"));
 
       if (p.endsWith("underline")) { //do something
-        LWComponent.this.mFontUnderline.set("underline");
+        LWComponent.this.fontUnderline().set("underline");
         s = s.replaceAll(p, p.substring(0, p.indexOf("underline")));
       }
       Font f = Font.decode(s);
@@ -1199,7 +1228,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
         strStyle = font.isItalic() ? "italic" : "plain";
       }
 
-      if (LWComponent.this.mFontUnderline.get().equals("underline")) strStyle =
+      if (LWComponent.this.getFontUnderline().equals("underline")) strStyle =
         strStyle.concat("underline");
       return font.getName() + "-" + strStyle + "-" + font.getSize();
     }
@@ -1251,46 +1280,32 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
 
   public class ColorProperty extends Property<java.awt.Color> {
 
-    private static final short ALPHA_NOT_PERMITTED = Short.MIN_VALUE;
-    private static final short NO_ALPHA_SET = -1;
-    private short fixedAlpha = NO_ALPHA_SET;
-
     ColorProperty(Key key) {
-      super(key);
+      super(key, null);
     }
 
     ColorProperty(Key key, Color defaultValue) {
-      this(key);
-      this.value = defaultValue;
+      super(key, defaultValue);
     }
 
     public boolean isTransparent() {
+      final Color value = get();
       return value == null || value.getAlpha() == 0;
     }
 
     public boolean isTranslucent() {
+      final Color value = get();
       return value == null || value.getAlpha() != 0xFF;
     }
 
-    void setAllowAlpha(boolean allow) {
-      if (allow) fixedAlpha = NO_ALPHA_SET; else fixedAlpha =
-        ALPHA_NOT_PERMITTED;
-    }
-
-    /** alpha should be in the range 0-255 */
-    void setFixedAlpha(int alpha) {
-      if (alpha > 255) alpha = 255; else if (alpha < 0) alpha = 0;
-      fixedAlpha = (short) alpha;
-      //out("SET FIXED ALPHA " + fixedAlpha);
-    }
-
     @Override
     void set(Color newColor) {
+      final int fixedAlpha = getFixedAlpha(key);
       if (fixedAlpha < 0) {
         // the common case
         super.set(newColor);
       } else {
-        if (value == newColor) return;
+        if (get() == newColor) return;
 
         // enforce the fixed alpha on any incoming color:
         if (
@@ -1314,13 +1329,14 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     @Override
     void take(Color c) {
       if (
-        fixedAlpha < NO_ALPHA_SET && (c == null || c.getAlpha() != 0xFF)
+        getFixedAlpha(key) < NO_FIXED_ALPHA &&
+        (c == null || c.getAlpha() != 0xFF)
       ) throw new PropertyValueVeto(
         key +
         "; color with translucence: " +
         c +
         " alpha=" +
-        c.getAlpha() +
+        (c == null ? null : c.getAlpha()) +
         " not allowed on " +
         LWComponent.this
       );
@@ -1349,7 +1365,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
      * e.g.: white returns 1, black returns 0
      */
     public float brightness() {
-      return Util.brightness(value);
+      return Util.brightness(get());
     }
 
     //         dynamic version not workng
@@ -1360,6 +1376,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     //         }
 
     public boolean equals(Color c) {
+      final Color value = get();
       return value == c || (c != null && c.equals(value));
     }
 
@@ -1409,12 +1426,12 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
 
   public static final Key KEY_FillColor = new Key("fill.color", "background") {
     final Property getSlot(LWComponent c) {
-      return c.mFillColor;
+      return c.fillColor();
     }
   };
   public static final Key KEY_TextColor = new Key("text.color", "font-color") {
     final Property getSlot(LWComponent c) {
-      return c.mTextColor;
+      return c.textColor();
     }
   };
   public static final Key KEY_StrokeColor = new Key(
@@ -1422,7 +1439,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     "border-color"
   ) {
     final Property getSlot(LWComponent c) {
-      return c.mStrokeColor;
+      return c.strokeColor();
     }
   };
   //public static final Key KEY_StrokeStyle = new Key("stroke.style", "border-style")   { final Property getSlot(LWComponent c) { return null; } };
@@ -1431,7 +1448,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     "stroke-width"
   ) {
     final Property getSlot(LWComponent c) {
-      return c.mStrokeWidth;
+      return c.strokeWidth();
     }
   };
   public static final Key KEY_StrokeStyle = new Key<LWComponent, StrokeStyle>(
@@ -1439,7 +1456,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     KeyType.STYLE
   ) {
     final Property getSlot(LWComponent c) {
-      return c.mStrokeStyle;
+      return c.strokeStyle();
     }
   };
   public static final Key KEY_Alignment = new Key<LWComponent, Alignment>(
@@ -1447,7 +1464,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     KeyType.STYLE
   ) {
     final Property getSlot(LWComponent c) {
-      return c.mAlignment;
+      return c.alignment();
     }
   };
 
@@ -1458,7 +1475,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
   /** Aggregate font key, which represents the combination of it's three sub-properties */
   public static final Key KEY_Font = new Key("font", KeyType.STYLE) {
     final Property getSlot(LWComponent c) {
-      return c.mFont;
+      return c.font();
     }
   };
   public static final Key KEY_FontSize = new Key(
@@ -1466,7 +1483,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     KeyType.SUB_STYLE
   ) {
     final Property getSlot(LWComponent c) {
-      return c.mFontSize;
+      return c.fontSize();
     }
   };
   public static final Key KEY_FontStyle = new Key(
@@ -1474,7 +1491,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     KeyType.SUB_STYLE
   ) {
     final Property getSlot(LWComponent c) {
-      return c.mFontStyle;
+      return c.fontStyle();
     }
   };
   public static final Key KEY_FontUnderline = new Key(
@@ -1482,7 +1499,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     KeyType.SUB_STYLE
   ) {
     final Property getSlot(LWComponent c) {
-      return c.mFontUnderline;
+      return c.fontUnderline();
     }
   };
   public static final Key KEY_FontName = new Key(
@@ -1490,7 +1507,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     KeyType.SUB_STYLE
   ) {
     final Property getSlot(LWComponent c) {
-      return c.mFontName;
+      return c.fontName();
     }
   };
 
@@ -1520,42 +1537,54 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     }
   };
 
-  public final ColorProperty mFillColor = new ColorProperty(KEY_FillColor);
-  public final ColorProperty mTextColor = new ColorProperty(
-    KEY_TextColor,
-    java.awt.Color.black
-  ) {
-    //{ color = java.awt.Color.black; } // default value
-    void onChange() {
-      if (labelBox != null) labelBox.copyStyle(LWComponent.this); // todo better: handle thru style.textColor notification?
-    }
-  };
-  public final ColorProperty mStrokeColor = new ColorProperty(
-    KEY_StrokeColor,
-    java.awt.Color.darkGray
-  );
-  public final FloatProperty mStrokeWidth = new FloatProperty(KEY_StrokeWidth) {
-    void onChange() {
-      rebuildStroke();
-    }
-  };
-  public final EnumProperty<Alignment> mAlignment = new EnumProperty(
-    KEY_Alignment,
-    Alignment.LEFT
-  ) {
-    void onChange() {
-      layout(KEY_Alignment);
-    }
-  };
+  // The style properties are views onto the slot array (see getSlotValue): they're
+  // created on demand, so a component holding only defaults carries none of them.
+  // They're for changing values, and for persistance: the getters, which are called
+  // constantly while drawing, read the slots directly and allocate nothing.
 
-  public final EnumProperty<StrokeStyle> mStrokeStyle = new EnumProperty(
-    KEY_StrokeStyle,
-    StrokeStyle.SOLID
-  ) {
-    void onChange() {
-      rebuildStroke();
-    }
-  };
+  private static final Color _DefaultTextColor = java.awt.Color.black;
+  private static final Color _DefaultStrokeColor = java.awt.Color.darkGray;
+
+  final ColorProperty fillColor() {
+    return new ColorProperty(KEY_FillColor);
+  }
+
+  final ColorProperty textColor() {
+    return new ColorProperty(KEY_TextColor, _DefaultTextColor) {
+      void onChange() {
+        if (labelBox != null) labelBox.copyStyle(LWComponent.this); // todo better: handle thru style.textColor notification?
+        // TextLabel picks up the text color as it paints
+      }
+    };
+  }
+
+  final ColorProperty strokeColor() {
+    return new ColorProperty(KEY_StrokeColor, _DefaultStrokeColor);
+  }
+
+  final FloatProperty strokeWidth() {
+    return new FloatProperty(KEY_StrokeWidth) {
+      void onChange() {
+        rebuildStroke();
+      }
+    };
+  }
+
+  final EnumProperty<Alignment> alignment() {
+    return new EnumProperty(KEY_Alignment, Alignment.LEFT) {
+      void onChange() {
+        layout(KEY_Alignment);
+      }
+    };
+  }
+
+  final EnumProperty<StrokeStyle> strokeStyle() {
+    return new EnumProperty(KEY_StrokeStyle, StrokeStyle.SOLID) {
+      void onChange() {
+        rebuildStroke();
+      }
+    };
+  }
 
   public enum StrokeStyle {
     SOLID(1, 0),
@@ -1598,9 +1627,10 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
   }
 
   private void rebuildStroke() {
-    final float width = mStrokeWidth.get();
-    if (width > 0) this.stroke =
-      mStrokeStyle.get().makeStroke(width); else this.stroke = STROKE_ZERO;
+    final float width = getStrokeWidth();
+    if (width > 0) this.stroke = Flyweight(
+      getStrokeStyle().makeStroke(width)
+    ); else this.stroke = STROKE_ZERO;
     /*/ below code was broken in previous code.  Node child layout does NOT
         // appear to be taking into account total bounds with at the moment anyway...
         // (Or was that just for Groups?  No, those appear to be handling the full bounds change.)
@@ -1613,42 +1643,47 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
         layout();*/
   }
 
-  public final IntProperty mFontStyle = new CSSFontStyleProperty(
-    KEY_FontStyle
-  ) {
-    void onChange() {
-      rebuildFont();
-    }
-  };
-  public final IntProperty mFontSize = new IntProperty(KEY_FontSize) {
-    void onChange() {
-      rebuildFont();
-    }
-  };
-  public final StringProperty mFontName = new CSSFontFamilyProperty(
-    KEY_FontName
-  ) {
-    void onChange() {
-      rebuildFont();
-    }
-  };
+  final IntProperty fontStyle() {
+    return new CSSFontStyleProperty(KEY_FontStyle) {
+      void onChange() {
+        rebuildFont();
+      }
+    };
+  }
 
-  public final StringProperty mFontUnderline = new StringProperty(
-    KEY_FontUnderline
-  ) {
-    boolean isChanged(String newValue) {
-      return true;
-    }
+  final IntProperty fontSize() {
+    return new IntProperty(KEY_FontSize) {
+      void onChange() {
+        rebuildFont();
+      }
+    };
+  }
 
-    @Override
-    void onChange() {
-      rebuildFont();
-      if (labelBox != null) {
-        labelBox.copyStyle(LWComponent.this);
-        layout(this.key); // could make this generic: add a key bit that says "layout needed on-change";
+  final StringProperty fontName() {
+    return new CSSFontFamilyProperty(KEY_FontName) {
+      void onChange() {
+        rebuildFont();
       }
-    }
-  };
+    };
+  }
+
+  final StringProperty fontUnderline() {
+    return new StringProperty(KEY_FontUnderline) {
+      boolean isChanged(String newValue) {
+        return true;
+      }
+
+      @Override
+      void onChange() {
+        rebuildFont();
+        if (labelBox != null) labelBox.copyStyle(LWComponent.this);
+        if (textLabel != null) {
+          textLabel.copyStyle(LWComponent.this);
+          layout(this.key); // could make this generic: add a key bit that says "layout needed on-change";
+        }
+      }
+    };
+  }
 
   private boolean fontIsRebuilding; // todo: use a bit flag
 
@@ -1656,31 +1691,110 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     // This so at least for now we have backward compat with the old font property (esp. for tools & persistance)
     fontIsRebuilding = true;
     try {
-      Font f = new Font(mFontName.get(), mFontStyle.get(), mFontSize.get());
-      mFont.set(f);
+      Font f = new Font(getFontName(), getFontStyle(), getFontSize());
+      font().set(f);
     } finally {
       fontIsRebuilding = false;
     }
   }
 
-  public final FontProperty mFont = new FontProperty(KEY_Font) {
-    @Override
-    void onChange() {
-      if (!fontIsRebuilding) {
-        final Font f = get();
+  final FontProperty font() {
+    return new FontProperty(KEY_Font) {
+      @Override
+      void onChange() {
+        if (!fontIsRebuilding) {
+          final Font f = get();
 
-        mFontStyle.take(f.getStyle());
+          fontStyle().take(f.getStyle());
 
-        mFontSize.take(f.getSize());
-        mFontName.take(f.getName());
-      }
+          fontSize().take(f.getSize());
+          fontName().take(f.getName());
+        }
 
-      if (labelBox != null) {
-        labelBox.copyStyle(LWComponent.this);
-        layout(this.key); // could make this generic: add a key bit that says "layout needed on-change";
+        if (labelBox != null) labelBox.copyStyle(LWComponent.this);
+        if (textLabel != null) {
+          textLabel.copyStyle(LWComponent.this);
+          layout(this.key); // could make this generic: add a key bit that says "layout needed on-change";
+        }
       }
+    };
+  }
+
+  /** Marks a stored null, for properties with a non-null default value */
+  private static final Object NULL_SLOT_VALUE = new Object();
+
+  /** @return the value stored for the given key, or defaultValue if nothing has been */
+  final Object getSlotValue(Key key, Object defaultValue) {
+    final Object[] slots = mSlots;
+    final int i = key.slot;
+    if (slots == null || i < 0 || i >= slots.length) return defaultValue;
+    final Object value = slots[i];
+    if (value == null) return defaultValue; else if (
+      value == NULL_SLOT_VALUE
+    ) return null; else return value;
+  }
+
+  /** Store the shared instance of the value for the given key.  Storing the default value
+   * empties the slot, and the slot array is only allocated for the first value that isn't. */
+  final void putSlotValue(Key key, Object value, Object defaultValue) {
+    if (
+      value == defaultValue || (value != null && value.equals(defaultValue))
+    ) {
+      final Object[] slots = mSlots;
+      if (slots != null && key.slot >= 0 && key.slot < slots.length) slots[
+        key.slot
+      ] = null;
+      return;
     }
-  };
+    final int i = key.allocateSlot();
+    if (mSlots == null) mSlots =
+      new Object[Math.max(i + 1, Key.slotCount())]; else if (
+      i >= mSlots.length
+    ) mSlots = Arrays.copyOf(mSlots, Math.max(i + 1, Key.slotCount()));
+    mSlots[i] = value == null ? NULL_SLOT_VALUE : Flyweight(value);
+  }
+
+  /** The value classes of properties we share instances of: all are immutable, and commonly equal across components */
+  private static final Collection<Class> FlyweightTypes = Arrays.asList(
+    new Class[] {
+      Color.class,
+      Font.class,
+      BasicStroke.class,
+      Float.class,
+      Integer.class,
+      String.class,
+    }
+  );
+
+  private static final Map<Object, WeakReference<Object>> Flyweights =
+    new WeakHashMap<Object, WeakReference<Object>>();
+
+  /** @return a shared instance equal to the given value if it's one of the FlyweightTypes, otherwise the value itself.
+   * E.g., every node restored with the same fill color from a save file shares one Color object. */
+  static <T> T Flyweight(T value) {
+    if (
+      value == null || !FlyweightTypes.contains(value.getClass())
+    ) return value;
+    synchronized (Flyweights) {
+      final WeakReference<Object> ref = Flyweights.get(value);
+      final Object shared = ref == null ? null : ref.get();
+      if (shared != null) return (T) shared;
+      Flyweights.put(value, new WeakReference<Object>(value));
+      return value;
+    }
+  }
+
+  public static final int NO_FIXED_ALPHA = -1;
+  public static final int ALPHA_NOT_PERMITTED = Short.MIN_VALUE;
+
+  /**
+   * Subclasses can override to constrain the values of a color property: return an alpha
+   * (0-255) to have it forced on every non-transparent color set, ALPHA_NOT_PERMITTED to
+   * refuse translucent colors, or NO_FIXED_ALPHA (the default) to take colors as given.
+   */
+  int getFixedAlpha(Key colorKey) {
+    return NO_FIXED_ALPHA;
+  }
 
   public static final String KEY_LabelFormat = "label.format";
   public static final Key KEY_Label = new Key<LWComponent, String>(
@@ -2101,7 +2215,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
         .setText(((LWText) this).getRichLabelBox().getRichText());
     } else {
       c.setLabelImpl(this.label, true, false);
-      c.getLabelBox().setSize(getLabelBox().getSize());
+      c.getTextLabel().setSize(getTextLabel().getSize());
     }
 
     if (hasResource()) c.setResource(getResource());
@@ -2461,12 +2575,16 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
    * for any data added directly through LWComponent itself in future.
    **/
   public MetadataList getMetadataList() {
-    if (metadataList == null) metadataList = new MetadataList();
+    if (metadataList == null) {
+      metadataList = new MetadataList();
+      metadataList.setOwner(this);
+    }
     return metadataList;
   }
 
   public void setMetadataList(MetadataList list) {
     metadataList = list;
+    if (list != null) list.setOwner(this);
   }
 
   public void setXMLmetadataList(MetadataList list) {
@@ -2697,21 +2815,17 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
 
     if (newLabel == null || newLabel.length() == 0) {
       this.label = null;
+      if (textLabel != null) textLabel.setText("");
       if (labelBox != null) labelBox.setText("");
     } else {
       this.label = newLabel;
       if (DEBUG.TEXT || DEBUG.DATA) out(
         "setLabelImpl textSet " + Util.tags(newLabel)
       );
-      // todo opt: only need to do this if node or link (LWImage?)
-      // Handle this more completely -- shouldn't need to create
-      // label box at all -- why can't do entirely lazily?
-      if (this.labelBox == null) {
-        // figure out how to skip this:
-        //getLabelBox();
-      } else if (setDocument) {
+      // note: this needs to happen before the call to layout below
+      if (this.textLabel != null) this.textLabel.setText(newLabel);
+      if (this.labelBox != null && setDocument) {
         try {
-          // note: this needs to happen before the call to layout below
           getLabelBox().setText(newLabel);
         } catch (Throwable t) {
           Log.error(
@@ -2830,12 +2944,37 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     return tufts.vue.ds.Field.valueText(value);
   }
 
+  /** @return the lightweight object that measures & paints our label */
+  protected TextLabel getTextLabel() {
+    if (this.textLabel == null) {
+      synchronized (this) {
+        if (this.textLabel == null) this.textLabel =
+          new TextLabel(this, this.label);
+      }
+    }
+    return this.textLabel;
+  }
+
+  /**
+   * @return the TextBox for interactively editing our label.  This is a full
+   * JTextPane, so it's only created when an edit is starting, and it's released
+   * again when the edit completes: the rest of the time our label is measured
+   * and painted by our TextLabel.  A new TextBox sizes itself to its text, and
+   * takes its location from the TextLabel.
+   */
   protected tufts.vue.TextBox getLabelBox() {
     try {
       if (this.labelBox == null) {
         synchronized (this) {
-          if (this.labelBox == null) this.labelBox =
-            new tufts.vue.TextBox(this, this.label);
+          if (this.labelBox == null) {
+            final TextLabel text = getTextLabel();
+            final TextBox box = new tufts.vue.TextBox(this, this.label);
+            if (!Float.isNaN(text.getBoxX())) box.setBoxLocation(
+              text.getBoxX(),
+              text.getBoxY()
+            );
+            this.labelBox = box;
+          }
         }
       }
     } catch (Throwable t) {
@@ -2846,6 +2985,11 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     return this.labelBox;
   }
 
+  /** called by the TextBox when an edit is complete: the TextLabel takes over again */
+  void releaseLabelBox(TextBox box) {
+    if (this.labelBox == box && box.getParent() == null) this.labelBox = null;
+  }
+
   public void setNotes(String pNotes) {
     pNotes = cleanControlChars(pNotes);
     Object old = this.notes;
@@ -3233,6 +3377,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     }
     if (!mEntries.contains(e)) mEntries.add(e);
     addPathwayRef(e.pathway);
+    invalidateIndexedBounds(); // we may now have slide icons
   }
 
   protected void removeEntryRef(LWPathway.Entry e) {
@@ -3244,6 +3389,17 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
       this + "; Warning: didn't contain entry " + e
     );
     removePathwayRef(e.pathway);
+    invalidateIndexedBounds();
+  }
+
+  /**
+   * Let any ancestors keeping a SpatialIndex of their children know our bounds may
+   * have changed.  Only needed for changes that don't otherwise issue an LWCEvent.
+   */
+  protected void invalidateIndexedBounds() {
+    for (LWContainer p = parent; p != null; p = p.parent) {
+      p.notifyIndexedBoundsChanged(this);
+    }
   }
 
   private void addPathwayRef(LWPathway p) {
@@ -3452,9 +3608,9 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
       bad = true;
     }
 
-    if (supportsProperty(KEY_FontSize) && mFontSize.get() < 1) {
-      Log.warn("bad font size " + mFontSize.get() + " " + this);
-      mFontSize.take(1); // don't risk triggering an event at a bad time
+    if (supportsProperty(KEY_FontSize) && getFontSize() < 1) {
+      Log.warn("bad font size " + getFontSize() + " " + this);
+      fontSize().take(1); // don't risk triggering an event at a bad time
       bad = true;
     }
 
@@ -3481,11 +3637,18 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
   }
 
   public boolean isTransparent() {
-    return mFillColor.isTransparent();
+    return isFillTransparent();
   }
 
   public boolean isTranslucent() {
-    return mFillColor.isTranslucent();
+    final Color fill = getFillColor();
+    return fill == null || fill.getAlpha() != 0xFF;
+  }
+
+  /** @return true if the fill color is null or fully transparent, whatever a subclass isTransparent may report */
+  final boolean isFillTransparent() {
+    final Color fill = getFillColor();
+    return fill == null || fill.getAlpha() == 0;
   }
 
   /**
@@ -3493,7 +3656,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
    * We also use this for the background color in active on-map text edits.
    */
   public Color getRenderFillColor(DrawContext dc) {
-    if (mFillColor.isTransparent()) {
+    if (isFillTransparent()) {
       if (dc != null && dc.focal == this) {
         //System.out.println("     DC FILL: " + dc.getFill() + " " + this);
         return dc.getBackgroundFill();
@@ -3502,12 +3665,12 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
         return parent.getRenderFillColor(dc);
       }
     }
-    //System.out.println("DEFAULT FILL: " + mFillColor.get() + " " + this);
-    return mFillColor.get();
+    //System.out.println("DEFAULT FILL: " + fillColor().get() + " " + this);
+    return getFillColor();
   }
 
   public Color getFinalFillColor(DrawContext dc) {
-    if (mFillColor.isTransparent()) {
+    if (isFillTransparent()) {
       Color c = null;
       if (getParent() != null) return getParent()
         .getFinalFillColor(dc); else if (
@@ -3547,7 +3710,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
   }
 
   void takeFillColor(Color color) {
-    mFillColor.take(color);
+    fillColor().take(color);
   }
 
   // We still need these standard style setters & getters for backward compat
@@ -3555,17 +3718,17 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
   // mapping, which refers to these methods)
 
   public float getStrokeWidth() {
-    return mStrokeWidth.get();
+    return ((Float) getSlotValue(KEY_StrokeWidth, _DefaultFloat)).floatValue();
   }
 
   public void setStrokeWidth(float w) {
-    mStrokeWidth.set(w);
+    strokeWidth().set(w);
   }
 
   /** @return null for SOLID (ordinal 0, the default, as for old save files), or otherwise, the ordinal of the style enum
    * Castor will not bother to generate the attribute/element when it's value is null. */
   public Integer getXMLstrokeStyle() {
-    int code = mStrokeStyle.get().ordinal();
+    int code = getStrokeStyle().ordinal();
     return code == 0 ? null : code;
   }
 
@@ -3573,74 +3736,120 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     // todo: have the Key class process enum's generically, caching the results of Class<? extends Enum>.getEnumConstants()
     for (StrokeStyle ss : StrokeStyle.values()) {
       if (ss.ordinal() == ordinal) {
-        mStrokeStyle.set(ss);
+        strokeStyle().set(ss);
         break;
       }
     }
   }
 
   public Color getFillColor() {
-    return mFillColor.get();
+    return (Color) getSlotValue(KEY_FillColor, null);
   }
 
   public void setFillColor(Color c) {
-    mFillColor.set(c);
+    fillColor().set(c);
   }
 
   public String getXMLfillColor() {
-    return mFillColor.asString();
+    return fillColor().asString();
   }
 
   public void setXMLfillColor(String xml) {
-    mFillColor.setFromString(xml);
+    fillColor().setFromString(xml);
   }
 
   public Color getTextColor() {
-    return mTextColor.get();
+    return (Color) getSlotValue(KEY_TextColor, _DefaultTextColor);
   }
 
   public void setTextColor(Color c) {
-    mTextColor.set(c);
+    textColor().set(c);
   }
 
   public String getXMLtextColor() {
-    return mTextColor.asString();
+    return textColor().asString();
   }
 
   public void setXMLtextColor(String xml) {
-    mTextColor.setFromString(xml);
+    textColor().setFromString(xml);
   }
 
   public Color getStrokeColor() {
-    return mStrokeColor.get();
+    return (Color) getSlotValue(KEY_StrokeColor, _DefaultStrokeColor);
   }
 
   public void setStrokeColor(Color c) {
-    mStrokeColor.set(c);
+    strokeColor().set(c);
   }
 
   public String getXMLstrokeColor() {
-    return mStrokeColor.asString();
+    return strokeColor().asString();
   }
 
   public void setXMLstrokeColor(String xml) {
-    mStrokeColor.setFromString(xml);
+    strokeColor().setFromString(xml);
   }
 
   public Font getFont() {
-    return mFont.get();
+    return (Font) getSlotValue(KEY_Font, VueConstants.FONT_DEFAULT);
   }
 
   public void setFont(Font font) {
-    mFont.set(font);
+    font().set(font);
   }
 
   public String getXMLfont() {
-    return mFont.asString();
+    return font().asString();
   }
 
   public void setXMLfont(String xml) {
-    mFont.setFromString(xml);
+    font().setFromString(xml);
+  }
+
+  public int getFontSize() {
+    return ((Integer) getSlotValue(KEY_FontSize, _DefaultInteger)).intValue();
+  }
+
+  public void setFontSize(int size) {
+    fontSize().set(size);
+  }
+
+  /** @return the java.awt.Font style bits: Font.PLAIN, or any of Font.BOLD and Font.ITALIC */
+  public int getFontStyle() {
+    return ((Integer) getSlotValue(KEY_FontStyle, _DefaultInteger)).intValue();
+  }
+
+  public void setFontStyle(int style) {
+    fontStyle().set(style);
+  }
+
+  public String getFontName() {
+    return (String) getSlotValue(KEY_FontName, _DefaultString);
+  }
+
+  /** @return "underline" if the label is underlined, otherwise the empty string */
+  public String getFontUnderline() {
+    return (String) getSlotValue(KEY_FontUnderline, _DefaultString);
+  }
+
+  public void setFontUnderline(String underline) {
+    fontUnderline().set(underline);
+  }
+
+  public StrokeStyle getStrokeStyle() {
+    return (StrokeStyle) getSlotValue(KEY_StrokeStyle, StrokeStyle.SOLID);
+  }
+
+  public void setStrokeStyle(StrokeStyle style) {
+    strokeStyle().set(style);
+  }
+
+  public Alignment getAlignment() {
+    return (Alignment) getSlotValue(KEY_Alignment, Alignment.LEFT);
+  }
+
+  public void setAlignment(Alignment alignment) {
+    alignment().set(alignment);
   }
 
   /**
@@ -5268,12 +5477,12 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
 
   /** @return local width including any border stroke ((width + stroke) * scale) */
   public float getLocalBorderWidth() {
-    return (float) ((this.width + mStrokeWidth.get()) * getScale());
+    return (float) ((this.width + getStrokeWidth()) * getScale());
   }
 
   /** @return local height including any border stroke ((height + stroke) * scale) */
   public float getLocalBorderHeight() {
-    return (float) ((this.height + mStrokeWidth.get()) * getScale());
+    return (float) ((this.height + getStrokeWidth()) * getScale());
   }
 
   /** convenience */
@@ -5735,6 +5944,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
   // TODO OPT: can cache this transform: if track all ancestor hierarcy, location AND scale changes,
   // can skip recomputing it each time.
   public final AffineTransform getZeroTransform() {
+    if (_zeroTransform == null) _zeroTransform = new AffineTransform();
     return loadZeroTransform(_zeroTransform);
     //         final AffineTransform a;
     //         if (parent == null) {
@@ -7932,7 +8142,7 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
   }
 
   /** @return the map bounds to use for rendering when generating an image of this LWComponent */
-  protected Rectangle2D.Float getImageBounds() {
+  public Rectangle2D.Float getImageBounds() {
     final Rectangle2D.Float bounds = (Rectangle2D.Float) getPaintBounds()
       .clone();
 
@@ -8293,6 +8503,64 @@ public class LWComponent implements VueConstants, XMLUnmarshalListener {
     if (DEBUG.IMAGE) out(TERM_GREEN + "drawImage: completed\n" + TERM_CLEAR);
   }
 
+  private static final float RegionCullMargin = 16;
+
+  /**
+   * Render only the given map region of this component into the given GC, at the given
+   * zoom, with the upper left corner of the region at 0,0.  This is for producing
+   * large images a tile at a time (see tufts.vue.action.TiledImageWriter).  Unlike
+   * drawImage, this is clip-optimized: only children intersecting the region will draw.
+   *
+   * @param mapRegion -- the region in map coordinates to render
+   * @param fillColor -- if non-null, will be rendered as background for the region
+   */
+  public void drawImageRegion(
+    Graphics2D g,
+    Rectangle2D.Float mapRegion,
+    double zoom,
+    Color fillColor
+  ) {
+    final DrawContext dc = new DrawContext(g, this);
+
+    dc.setInteractive(false);
+    dc.setPrintQuality();
+    dc.setBackgroundFill(getRenderFillColor(null));
+    dc.setClipOptimized(true);
+
+    if (fillColor != null) {
+      g.setColor(fillColor);
+      g.fillRect(
+        0,
+        0,
+        (int) Math.ceil(mapRegion.width * zoom),
+        (int) Math.ceil(mapRegion.height * zoom)
+      );
+    }
+
+    if (zoom != 1.0) dc.g.scale(zoom, zoom);
+    g.translate(-mapRegion.getX(), -mapRegion.getY());
+
+    // GC *must* have a bounds set or we get NPE's in JComponent (textBox) rendering.
+    // Children are culled against a slightly larger region than we clip to:
+    // some (e.g., link arrow heads) paint a bit outside their reported bounds,
+    // and would otherwise go missing at the edge of the neighbouring tile.
+    dc.setMasterClip(
+      new Rectangle2D.Float(
+        mapRegion.x - RegionCullMargin,
+        mapRegion.y - RegionCullMargin,
+        mapRegion.width + RegionCullMargin * 2,
+        mapRegion.height + RegionCullMargin * 2
+      )
+    );
+    g.clip(mapRegion);
+
+    draw(dc);
+
+    if (DEBUG.IMAGE) out(
+      TERM_GREEN + "drawImageRegion: completed " + fmt(mapRegion) + TERM_CLEAR
+    );
+  }
+
   private String cleanControlChars(String s) {
     if (s == null) return null;
     String patternString = "";
@@ -44,6 +44,9 @@ public abstract class LWContainer extends LWComponent {
 
   protected java.util.List<LWComponent> mChildren = NO_CHILDREN;
 
+  /** only present if we support one and have enough children to make it worthwhile */
+  private transient SpatialIndex mSpatialIndex;
+
   @Override
   public void XML_fieldAdded(Object context, String name, Object child) {
     super.XML_fieldAdded(context, name, child);
@@ -175,9 +178,71 @@ public abstract class LWContainer extends LWComponent {
   /** called by LWChangeSupport, available here for override by parent classes that want to
    * monitor what's going on with their children */
   void broadcastChildEvent(LWCEvent e) {
+    if (mSpatialIndex != null) mSpatialIndex.childEvent(e);
     notifyLWCListeners(e);
   }
 
+  @Override
+  protected synchronized void notifyLWCListeners(LWCEvent e) {
+    if (
+      mSpatialIndex != null &&
+      e.source == this &&
+      e.getName().startsWith("hier.")
+    ) mSpatialIndex.invalidate();
+    super.notifyLWCListeners(e);
+  }
+
+  /**
+   * @return false by default -- subclasses whose children all live in the
+   * map coordinate space can return true to have their children spatially
+   * indexed once there are enough of them.
+   */
+  protected boolean supportsSpatialIndex() {
+    return false;
+  }
+
+  /** @return our spatial index, or null if we aren't currently maintaining one */
+  SpatialIndex getSpatialIndex() {
+    if (
+      !supportsSpatialIndex() ||
+      mChildren.size() < SpatialIndex.MinIndexedChildren
+    ) {
+      mSpatialIndex = null;
+    } else if (mSpatialIndex == null) {
+      mSpatialIndex = new SpatialIndex(this);
+    }
+    return mSpatialIndex;
+  }
+
+  /** called for changes in the bounds of a descendent that happen without issuing an LWCEvent */
+  void notifyIndexedBoundsChanged(LWComponent descendent) {
+    if (mSpatialIndex != null) mSpatialIndex.markChanged(descendent);
+  }
+
+  /**
+   * @return children that may intersect the given map region, in z-order.  If
+   * we're not spatially indexed, this is just all of our children.
+   */
+  public java.util.List<LWComponent> getChildrenInRegion(
+    Rectangle2D mapRegion
+  ) {
+    final SpatialIndex index = getSpatialIndex();
+    if (index == null) return getChildren(); else return index.query(mapRegion);
+  }
+
+  /** if we're spatially indexed, only the children in the region of the pick need be considered */
+  @Override
+  public java.util.List<LWComponent> getPickList(
+    PickContext pc,
+    java.util.List<LWComponent> stored
+  ) {
+    final SpatialIndex index = getSpatialIndex();
+    if (index == null || hasEntries()) return super.getPickList(
+      pc,
+      stored
+    ); else return index.query(SpatialIndex.pickRegion(pc));
+  }
+
   /**
    * @param possibleChildren should contain at least one child of this container
    * to be reparented.  Children not in this container are ignored.
@@ -1356,7 +1421,13 @@ public abstract class LWContainer extends LWComponent {
   protected void drawChildren(DrawContext dc) {
     if (hasChildren() == false) return;
 
-    for (LWComponent c : getChildren()) {
+    final java.util.List<LWComponent> children;
+
+    if (dc.isClipOptimized()) children =
+      getChildrenInRegion(dc.getMasterClipRect()); else children =
+      getChildren();
+
+    for (LWComponent c : children) {
       //-------------------------------------------------------
       // Using a requiresPaint is a huge speed optimzation.
       // Eliminating all the Graphics2D calls that would end up
@@ -518,7 +518,7 @@ public abstract class LWIcon extends Rectangle2D.Float implements VueConstants {
           if (mLWC.hasLabel()) {
             avoidRegion = new Rectangle2D.Float();
             // Stay away from the link label:
-            avoidRegion.setRect(mLWC.labelBox.getBoxBounds());
+            avoidRegion.setRect(mLWC.getTextLabel().getBoxBounds());
             // Also stay way from the whole icon block:
             avoidRegion.add(this);
           } else {
@@ -374,7 +374,7 @@ public class LWLink
     private boolean vueHeadOffFromCSS = false;
 
     final Property getSlot(LWLink l) {
-      return l.mArrowState; // if getting a type-mismatch on mLine, feed this file to javac with LWComponent.java at the same time
+      return l.arrowState(); // if getting a type-mismatch on mLine, feed this file to javac with LWComponent.java at the same time
     }
 
     public boolean setValueFromCSS(LWLink c, String cssKey, String cssValue) {
@@ -425,15 +425,14 @@ public class LWLink
         }
     }; */
 
-  private final IntProperty mArrowState = new IntProperty(
-    KEY_LinkArrows,
-    ARROW_TAIL
-  ) {
-    void onChange() {
-      mRecompute = true;
-      layout();
-    }
-  };
+  private IntProperty arrowState() {
+    return new IntProperty(KEY_LinkArrows, ARROW_TAIL) {
+      void onChange() {
+        mRecompute = true;
+        layout();
+      }
+    };
+  }
 
   public static final Key KEY_LinkShape = new Key<LWLink, Integer>(
     "link.shape"
@@ -1737,7 +1736,7 @@ public class LWLink
 
     if (mIconBlock.isShowing() && mIconBlock.intersects(localRect)) return true;
 
-    if (labelBox != null && hasLabel()) return labelBox.boxIntersects(
+    if (textLabel != null && hasLabel()) return textLabel.boxIntersects(
       localRect
     ); else return false;
   }
@@ -1827,7 +1826,7 @@ public class LWLink
 
     if (!isNestedLink()) {
       if (mIconBlock.contains(x, y)) return 0; else if (
-        hasLabel() && labelBox != null && labelBox.boxContains(x, y)
+        hasLabel() && textLabel != null && textLabel.boxContains(x, y)
       ) return 0;
     }
 
@@ -2021,6 +2020,7 @@ public class LWLink
       // inside a collective parent context (or we already marked)
     } else {
       mRecompute = true;
+      invalidateIndexedBounds();
     }
 
     if (DEBUG.CONTAINMENT) {
@@ -2054,6 +2054,7 @@ public class LWLink
     //Util.printStackTrace("ENDPOINT REPARENTED: " + this + "; which=" +  end);
     //this.endpointReparented = true;
     addCleanupTask(this);
+    invalidateIndexedBounds();
     // in case of links to links, we can reasonable get cascading cleanup tasks
     // (tasks that are added while tasks are being run), but the UndoManager
     // doesn't safely support that yet, so this is a workaround for now.
@@ -2624,7 +2625,7 @@ public class LWLink
 
     if (getStrokeWidth() > 0) grow(bounds, getStrokeWidth() / 2f);
 
-    if (labelBox != null && hasLabel()) bounds.add(labelBox.getBoxBounds());
+    if (textLabel != null && hasLabel()) bounds.add(textLabel.getBoxBounds());
 
     if (mIconBlock.isShowing()) bounds.add(mIconBlock);
 
@@ -2660,7 +2661,7 @@ public class LWLink
     final boolean badCurve;
 
     if (mCurveControls == 1) {
-      if (false && (mArrowState.get() & ARROW_HEAD) != 0) {
+      if (false && (getArrowState() & ARROW_HEAD) != 0) {
         // This backs up the curve endpoint to the tail of the arrow
         // This will slightly move the curve, but it keeps the connection
         // to the arrow much cleaner.
@@ -2849,11 +2850,11 @@ public class LWLink
   }
 
   public void setArrowState(int arrowState) {
-    mArrowState.set(arrowState);
+    arrowState().set(arrowState);
   }
 
   public int getArrowState() {
-    return mArrowState.get();
+    return arrowState().get();
   }
 
   public void rotateArrowState() {
@@ -2899,11 +2900,11 @@ public class LWLink
     // we currently use the stroke width drawn around the arrows
     // to keep them reasonably sized relative to the line, but
     // we don't want any dash-pattern in the stroke for this
-    if (mStrokeStyle.get() == StrokeStyle.SOLID) dc.g.setStroke(
+    if (getStrokeStyle() == StrokeStyle.SOLID) dc.g.setStroke(
       this.stroke
-    ); else dc.g.setStroke(StrokeStyle.SOLID.makeStroke(mStrokeWidth.get()));
+    ); else dc.g.setStroke(StrokeStyle.SOLID.makeStroke(getStrokeWidth()));
 
-    if ((mArrowState.get() & ARROW_HEAD) != 0) {
+    if ((getArrowState() & ARROW_HEAD) != 0) {
       dc.g.setColor(getStrokeColor());
       dc.g.translate(head.x, head.y);
       dc.g.rotate(head.rotation);
@@ -2925,7 +2926,7 @@ public class LWLink
       dc.g.setTransform(savedTransform);
     }
 
-    if ((mArrowState.get() & ARROW_TAIL) != 0) {
+    if ((getArrowState() & ARROW_TAIL) != 0) {
       dc.g.setColor(getStrokeColor());
       // draw the second arrow
       //dc.g.translate(line.getX2(), line.getY2());
@@ -3131,7 +3132,7 @@ public class LWLink
     // Draw arrow heads if there are any
     //-------------------------------------------------------
 
-    if (mArrowState.get() != 0) {
+    if (getArrowState() != 0) {
       if (dc.zoom <= 0.125 && dc.isLODEnabled()); // don't draw arrows
       else drawArrows(dc);
     }
@@ -3144,18 +3145,18 @@ public class LWLink
     // modifying the drawn stroke width, as well as the text box.
     // -------------------------------------------------------
 
-    float strokeWidth = mStrokeWidth.get();
+    float strokeWidth = getStrokeWidth();
     if (strokeWidth <= 0) strokeWidth = 0.5f;
 
     //         if (dc.drawAbsoluteLinks) {
     //             //dc.setAbsoluteStroke(stroke.getLineWidth() * getMapScale());
     //             g.setStroke(mStrokeStyle.get().makeStroke(strokeWidth / g.getTransform().getScaleX()));
     //         } else {
-    if (stroke == STROKE_ZERO) { // mStrokeWidth.get() was 0
+    if (stroke == STROKE_ZERO) { // getStrokeWidth() was 0
       // never draw an invisible link: draw zero strokes at small absolute scale tho
       float curScale = (float) dc.g.getTransform().getScaleX();
       if (curScale > 1) strokeWidth /= curScale;
-      dc.g.setStroke(mStrokeStyle.get().makeStroke(strokeWidth));
+      dc.g.setStroke(getStrokeStyle().makeStroke(strokeWidth));
     } else {
       dc.g.setStroke(stroke);
     }
@@ -3284,7 +3285,7 @@ public class LWLink
       QuadCurve2D right = new QuadCurve2D.Float();
       mQuad.subdivide(left, right);
       g.setColor(Color.green);
-      g.setStroke(new BasicStroke(mStrokeWidth.get() + 4));
+      g.setStroke(new BasicStroke(getStrokeWidth() + 4));
       g.draw(left);
       g.setColor(Color.red);
       g.draw(right);
@@ -3293,7 +3294,7 @@ public class LWLink
       CubicCurve2D right = new CubicCurve2D.Float();
       mCubic.subdivide(left, right);
       g.setColor(Color.green);
-      g.setStroke(new BasicStroke(mStrokeWidth.get() + 4));
+      g.setStroke(new BasicStroke(getStrokeWidth() + 4));
       g.draw(left);
       g.setColor(Color.red);
       g.draw(right);
@@ -3328,9 +3329,8 @@ public class LWLink
     // Paint label if there is one
     //-------------------------------------------------------
 
-    if (DisplayLabels && hasLabel() && getLabelBox().getParent() == null) {
-      // todo perf minor: only get/check label box once (also done in drawLabel)
-      // only draw if we have a label, and it's not an active edit on the map (parent == null)
+    if (DisplayLabels && hasLabel() && !getTextLabel().isEditing()) {
+      // only draw if we have a label, and it's not an active edit on the map
       drawLabel(dc);
     }
 
@@ -3361,14 +3361,12 @@ public class LWLink
   }
 
   private void drawLabel(DrawContext dc) {
-    final TextBox textBox = getLabelBox();
+    final TextLabel textBox = getTextLabel();
 
     // We force a fill color on link labels to make sure we create
     // a contrast between the text and the background, which otherwise
     // would include the usually black link stroke in the middle, obscuring
     // some of the text.
-    // todo perf: only set opaque-bit/background once/when it changes.
-    // (probably put a textbox factory on LWComponent and override in LWLink)
 
     //                 if (fillColor == null || !dc.isInteractive()) {
     //                     textBox.setOpaque(false);
@@ -3377,10 +3375,9 @@ public class LWLink
     //                     textBox.setOpaque(true);
     //                 }
 
-    if (dc.isDraftQuality()) {
-      textBox.setBackground(null);
-      textBox.setOpaque(false);
-    } else {
+    Color background = null;
+
+    if (!dc.isDraftQuality()) {
       Color textFill = getRenderFillColor(dc);
       if (textFill != null || dc.isInteractive()) {
         // experiment in color mixing:
@@ -3395,13 +3392,8 @@ public class LWLink
             Util.alphaMix(textFill, fill);
         }
 
-        textBox.setBackground(textFill == null ? Color.white : textFill);
-        textBox.setOpaque(true);
+        background = textFill == null ? Color.white : textFill;
         //if (DEBUG.IMAGE) out("textFill: " + textFill);
-      } else {
-        textBox.setBackground(null);
-        textBox.setOpaque(false);
-        //if (DEBUG.Enabled) Util.printStackTrace(this + "; FYI: null (transparent) text fill");
       }
     }
 
@@ -3409,7 +3401,7 @@ public class LWLink
     final float ly = textBox.getBoxY();
 
     dc.g.translate(lx, ly);
-    textBox.draw(dc);
+    textBox.draw(dc, background);
 
     if (DEBUG.LINK && DEBUG.META) {
       dc.g.setColor(Color.red);
@@ -3526,14 +3518,12 @@ public class LWLink
     // Always call LWIcon.Block.layout first to have it compute size/determine if showing
     // before asking it if isShowing()
 
-    TextBox textBox;
-
     boolean vertical = false;
     if (hasLabel() && !putBelow) {
       // Check to see if we want to make it vertical
       mIconBlock.setOrientation(LWIcon.Block.VERTICAL);
       mIconBlock.layout();
-      vertical = (getLabelBox().getBoxHeight() >= mIconBlock.getHeight());
+      vertical = (getTextLabel().getBoxHeight() >= mIconBlock.getHeight());
       if (!vertical) {
         mIconBlock.setOrientation(LWIcon.Block.HORIZONTAL);
         mIconBlock.layout();
@@ -3553,7 +3543,7 @@ public class LWLink
     float lx = 0;
     float ly = 0;
 
-    if (labelBox == null && hasLabel()) getLabelBox(); // make sure labelBox is set if we have a label
+    final TextLabel labelBox = hasLabel() ? getTextLabel() : textLabel; // make sure the label is measured if we have one
 
     if (labelBox != null) {
       // Record the location of the TextBox (used later for picking).  The
@@ -3711,7 +3701,7 @@ public class LWLink
   public String paramString() {
     String s = String.format(
       "%s %.0f,%.0f-->%.0f,%.0f",
-      mStrokeStyle.get(),
+      getStrokeStyle(),
       head.x,
       head.y,
       tail.x,
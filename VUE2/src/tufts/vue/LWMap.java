@@ -172,7 +172,6 @@ public class LWMap extends LWContainer {
     disablePropertyTypes(KeyType.STYLE);
     enableProperty(LWKey.FillColor);
     disableProperty(LWKey.Label);
-    mFillColor.setAllowAlpha(false);
     // //         // TODO: need to handle persistance -- could match via a special name, for maybe persistIsStyle
     // //         mInternalLayer = new Layer("*Internal*");
     // //         mInternalLayer.setVisible(false);
@@ -180,6 +179,14 @@ public class LWMap extends LWContainer {
     // //         addChild(mInternalLayer);
   }
 
+  /** the map fill is the background of everything: it may not be translucent */
+  @Override
+  int getFixedAlpha(Key colorKey) {
+    return colorKey == KEY_FillColor
+      ? ALPHA_NOT_PERMITTED
+      : super.getFixedAlpha(colorKey);
+  }
+
   // if/when we support maps embedded in maps, we'll want to have these return something real / make not final
   @Override
   public final float getX() {
@@ -290,6 +297,21 @@ public class LWMap extends LWContainer {
     markAsSaved();
   }
 
+  /**
+   * For bulk operations (layouts, data drops) that change many components at once: until the
+   * matching endEventBatch, events are queued instead of delivered to the map's listeners.
+   * At the end, they're delivered once each, with repeated property changes to the same
+   * component coalesced.  The UndoManager still sees every event as it happens, so undo
+   * records stay exact.  Batches nest, and must always be ended (use try/finally).
+   */
+  public synchronized void beginEventBatch() {
+    mChangeSupport.beginBatch(mUndoManager);
+  }
+
+  public synchronized void endEventBatch() {
+    mChangeSupport.endBatch(this);
+  }
+
   public File getFile() {
     return mFile;
   }
@@ -954,6 +976,12 @@ public class LWMap extends LWContainer {
       setLabel(name);
     }
 
+    /** @return true: layers share the map coordinate space, and may hold very many children */
+    @Override
+    protected boolean supportsSpatialIndex() {
+      return true;
+    }
+
     private void initLayer() {
       // style properties not used on layers (pretty much no properties at all actually)
       // we disable them mainly to prevent warnings on layers with invalid values
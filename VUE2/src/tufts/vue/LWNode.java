@@ -1109,10 +1109,10 @@ public class LWNode extends LWContainer {
 
     mIconBlock.layout(); // in order to compute the size & determine if anything showing
 
-    if (DEBUG.LAYOUT && labelBox != null) {
-      // do NOT call getLabelBox -- has caching side effect
-      final int prefHeight = labelBox.getPreferredSize().height;
-      final int realHeight = labelBox.getHeight();
+    if (DEBUG.LAYOUT && textLabel != null) {
+      // do NOT call getTextLabel -- has caching side effect
+      final int prefHeight = textLabel.getPreferredSize().height;
+      final int realHeight = textLabel.getHeight();
       // NOTE: prefHeight often a couple of pixels less than getHeight
       if (prefHeight != realHeight) {
         Log.debug(
@@ -1220,7 +1220,7 @@ public class LWNode extends LWContainer {
       // mIconDivider set by layoutCentered in the other case
     }
 
-    if (labelBox != null) labelBox.setBoxLocation(
+    if (textLabel != null) textLabel.setBoxLocation(
       relativeLabelX(),
       relativeLabelY()
     );
@@ -1240,7 +1240,7 @@ public class LWNode extends LWContainer {
 
   protected Size getTextSize() {
     if (WrapText) {
-      Size s = new Size(getLabelBox().getSize());
+      Size s = new Size(getTextLabel().getSize());
       //s.width += 3;
       return s;
     } else {
@@ -1250,8 +1250,8 @@ public class LWNode extends LWContainer {
       // This is gross, but gives us best case data: we want the largest in width,
       // and smallest in height, as reported by BOTH getSize and getPreferredSize.
 
-      Size s = new Size(getLabelBox().getPreferredSize());
-      Size ps = new Size(getLabelBox().getSize());
+      Size s = new Size(getTextLabel().getPreferredSize());
+      Size ps = new Size(getTextLabel().getSize());
       //if (ps.width > s.width)
       //    s.width = s.width; // what the hell
       if (ps.height < s.height) s.height = ps.height;
@@ -1262,7 +1262,7 @@ public class LWNode extends LWContainer {
   }
 
   private int getTextWidth() {
-    if (WrapText) return labelBox.getWidth(); else return Math.round(
+    if (WrapText) return getTextLabel().getWidth(); else return Math.round(
       getTextSize().width
     );
   }
@@ -1879,7 +1879,7 @@ public class LWNode extends LWContainer {
 
     final Size min = new Size(); // the minimum size of the Node
 
-    getLabelBox(); // make sure labelBox is set
+    final TextLabel labelBox = getTextLabel(); // make sure the label is measured
 
     //------------------------------------------------------------------
     // start building up minimum width & height
@@ -2095,7 +2095,7 @@ public class LWNode extends LWContainer {
     //         else
     if (
       hasFlag(Flag.SLIDE_STYLE) &&
-      mAlignment.get() != Alignment.LEFT &&
+      getAlignment() != Alignment.LEFT &&
       isImageNode(this)
     ) layoutChildrenColumnAligned(
       baseX,
@@ -2138,10 +2138,10 @@ public class LWNode extends LWContainer {
       ) continue; // todo: don't allow adding of links into a manged layout node!
       if (first) first = false; else y += ChildVerticalGap * getScale();
 
-      if (mAlignment.get() == Alignment.RIGHT) c.setLocation(
+      if (getAlignment() == Alignment.RIGHT) c.setLocation(
         baseX + maxLayoutWidth - c.getLocalWidth(),
         y
-      ); else if (mAlignment.get() == Alignment.CENTER) c.setLocation(
+      ); else if (getAlignment() == Alignment.CENTER) c.setLocation(
         baseX + (maxLayoutWidth - c.getLocalWidth()) / 2,
         y
       ); else c.setLocation(baseX, y);
@@ -2383,8 +2383,8 @@ public class LWNode extends LWContainer {
     final int hh = (int) ((getHeight() / 2f) + 0.5f);
     //dc.setAntiAlias(false); // too crappy
     dc.g.setStroke(STROKE_SEVEN);
-    dc.g.setColor(mTextColor.get());
-    dc.g.drawLine(0, hh, getLabelBox().getWidth(), hh);
+    dc.g.setColor(getTextColor());
+    dc.g.drawLine(0, hh, getTextLabel().getWidth(), hh);
   }
 
   @Override
@@ -2450,7 +2450,7 @@ public class LWNode extends LWContainer {
       // with reduced LOD (level-of-detail)
 
       final float renderScale = (float) dc.getAbsoluteScale();
-      final float renderFont = mFontSize.get() * renderScale;
+      final float renderFont = getFontSize() * renderScale;
       final boolean canSkipLabel = renderFont < 5;
       final boolean canSkipIcon;
 
@@ -2549,10 +2549,8 @@ public class LWNode extends LWContainer {
     // this.label is still getting set -- maybe we have to null it out
     // manually (and maybe labelBox also)
 
-    if (
-      hasLabel() && this.labelBox != null && this.labelBox.getParent() == null
-    ) {
-      // if parent is not null, this box is an active edit on the map
+    if (hasLabel() && !getTextLabel().isEditing()) {
+      // if the label is being edited, the TextBox is an active edit on the map
       // and we don't want to paint it here as AWT/Swing is handling
       // that at the moment (and at a possibly slightly different offset)
 
@@ -2565,7 +2563,7 @@ public class LWNode extends LWContainer {
     float ly = relativeLabelY();
     dc.g.translate(lx, ly);
     //if (DEBUG.CONTAINMENT) System.out.println("*** " + this + " drawing label at " + lx + "," + ly);
-    this.labelBox.draw(dc);
+    getTextLabel().draw(dc);
     dc.g.translate(-lx, -ly);
     // todo: this (and in LWLink) is a hack -- can't we
     // do this relative to the node?
@@ -2637,9 +2635,9 @@ public class LWNode extends LWContainer {
         // is center label, left children: when we move to generally
         // suporting left/center/right alignment, that configuration won't
         // be supported: we may need a special "old-style" alignment style
-        if (mAlignment.get() == Alignment.LEFT && hasFlag(Flag.SLIDE_STYLE)) {
+        if (getAlignment() == Alignment.LEFT && hasFlag(Flag.SLIDE_STYLE)) {
           return ChildPadX;
-        } else if (mAlignment.get() == Alignment.RIGHT) {
+        } else if (getAlignment() == Alignment.RIGHT) {
           return (this.width - getTextSize().width) - 1;
         } else {
           // CENTER:
@@ -2717,8 +2715,8 @@ public class LWNode extends LWContainer {
         (baseY + ChildOffsetY)
       );
     } else {
-      final TextBox labelBox = getLabelBox();
-      int labelHeight = labelBox == null ? 12 : labelBox.getHeight();
+      final TextLabel labelBox = getTextLabel();
+      int labelHeight = labelBox.getHeight();
       //if (DEBUG.WORK) out("labelHeight: " + labelHeight);
       baseY = relativeLabelY() + labelHeight;
     }
@@ -612,7 +612,13 @@ public class LWPathway extends LWContainer implements LWComponent.Listener {
 
   private void initPathway() {
     disablePropertyTypes(KeyType.STYLE);
-    mStrokeColor.setFixedAlpha(PathwayAlpha);
+  }
+
+  @Override
+  int getFixedAlpha(Key colorKey) {
+    return colorKey == KEY_StrokeColor
+      ? PathwayAlpha
+      : super.getFixedAlpha(colorKey);
   }
 
   /** @return null -- will prevent participating in auto-styling system */
@@ -1714,7 +1720,7 @@ public class LWPathway extends LWContainer implements LWComponent.Listener {
 
   /** @return the color of the pathway (same as stroke-color) */
   public Color getColor() {
-    return mStrokeColor.get();
+    return getStrokeColor();
   }
 
   public static void decorateOver(
@@ -35,8 +35,13 @@ public class LWPortal extends LWNode {
 
   public LWPortal() {
     updateCapabilities();
-    mFillColor.setFixedAlpha(64);
-    mStrokeColor.setFixedAlpha(64);
+  }
+
+  @Override
+  int getFixedAlpha(Key colorKey) {
+    return colorKey == KEY_FillColor || colorKey == KEY_StrokeColor
+      ? 64
+      : super.getFixedAlpha(colorKey);
   }
 
   @Override
@@ -141,8 +146,8 @@ public class LWPortal extends LWNode {
 
   @Override
   public Color getRenderFillColor(DrawContext dc) {
-    if (mFillColor.isTransparent()) return (
-        getMap().mFillColor.brightness() > 0.5
+    if (isFillTransparent()) return (
+        Util.brightness(getMap().getFillColor()) > 0.5
       )
       ? DarkFill
       : LightFill; else return getFillColor();
@@ -235,7 +240,7 @@ public class LWPortal extends LWNode {
         dc.g.fill(getZeroShape());
       }
     } else {
-      if (this.stroke == STROKE_ZERO || !mFillColor.isTransparent()) {
+      if (this.stroke == STROKE_ZERO || !isFillTransparent()) {
         // Show the portal region:
         dc.g.setColor(getRenderFillColor(dc));
         dc.g.fill(getZeroShape());
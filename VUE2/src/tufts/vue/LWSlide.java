@@ -364,7 +364,7 @@ public class LWSlide extends LWContainer {
     }
 
     c.setFlag(Flag.SLIDE_STYLE);
-    c.mAlignment.set(Alignment.LEFT);
+    c.alignment().set(Alignment.LEFT);
 
     final LWComponent style;
 
@@ -491,7 +491,7 @@ public class LWSlide extends LWContainer {
   /** implemented to return the bg color of the master slide (for proper on-slide text edit fill color) */
   @Override
   public Color getRenderFillColor(DrawContext dc) {
-    if (mFillColor.isTransparent()) {
+    if (isFillTransparent()) {
       final LWSlide master = getMasterSlide();
       if (
         master == null
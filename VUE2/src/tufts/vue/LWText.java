@@ -483,7 +483,7 @@ public class LWText extends LWComponent {
       dc.g.drawLine(
         0,
         line,
-        (int) (getLabelBox().getWidth() * zoomFactor),
+        (int) (getTextLabel().getWidth() * zoomFactor),
         line
       );
       line += 100;
@@ -587,12 +587,12 @@ public class LWText extends LWComponent {
 
   @Override
   public float getLocalBorderWidth() {
-    return (float) ((getWidth() + mStrokeWidth.get()) * getScale());
+    return (float) ((getWidth() + getStrokeWidth()) * getScale());
   }
 
   @Override
   public float getLocalBorderHeight() {
-    return (float) ((getHeight() + mStrokeWidth.get()) * getScale());
+    return (float) ((getHeight() + getStrokeWidth()) * getScale());
   }
 
   private boolean inLayout = false;
@@ -753,12 +753,12 @@ public class LWText extends LWComponent {
 
     if (
       DEBUG.LAYOUT &&
-      getLabelBox().getHeight() != getLabelBox().getPreferredSize().height
+      getTextLabel().getHeight() != getTextLabel().getPreferredSize().height
     ) {
       // NOTE: prefHeight often a couple of pixels less than getHeight
       System.err.println("prefHeight != height in " + this);
-      System.err.println("\tpref=" + getLabelBox().getPreferredSize().height);
-      System.err.println("\treal=" + getLabelBox().getHeight());
+      System.err.println("\tpref=" + getTextLabel().getPreferredSize().height);
+      System.err.println("\treal=" + getTextLabel().getHeight());
     }
 
     // The current width & height is at this moment still a
@@ -99,28 +99,40 @@ public abstract class LayoutAction extends Actions.LWCAction {
   public void act(LWSelection selection, boolean autoFit) {
     if (DEBUG.Enabled) Log.debug(this + "; autoFit=" + autoFit);
     try {
-      layout.layout(selection);
+      // the map being laid out, which needn't be the active map (e.g., a scripted layout)
+      final LWMap map = selection.isEmpty()
+        ? VUE.getActiveMap()
+        : selection.first().getMap();
       if (DEBUG.Enabled) Log.debug(
         "autoFit: " +
         autoFit +
         " s.size " +
         selection.size() +
         " map.size:" +
-        VUE
-          .getActiveMap()
-          .getAllDescendents(LWContainer.ChildKind.PROPER)
-          .size()
+        (map == null
+          ? 0
+          : map.getAllDescendents(LWContainer.ChildKind.PROPER).size())
       );
-      if (
+      final boolean zoomFit =
         autoFit ||
-        (selection.size() ==
-          VUE
-            .getActiveMap()
-            .getAllDescendents(LWContainer.ChildKind.PROPER)
-            .size())
-      ) {
-        ZoomTool.setZoomOutFit();
+        (map != null &&
+          selection.size() ==
+          map.getAllDescendents(LWContainer.ChildKind.PROPER).size());
+      final Runnable fit = new Runnable() {
+        public void run() {
+          ZoomTool.setZoomOutFit();
+        }
+      };
+      // a layout running in the background batches it's own changes, and nothing
+      // has moved yet, so we can only fit once it's done
+      if (layout.layoutInBackground(selection, zoomFit ? fit : null)) return;
+      if (map != null) map.beginEventBatch();
+      try {
+        layout.layout(selection);
+      } finally {
+        if (map != null) map.endEventBatch();
       }
+      if (zoomFit) fit.run();
     } catch (Throwable t) {
       Log.debug("LayoutAction.act: " + t.getMessage());
       tufts.Util.printStackTrace(t);
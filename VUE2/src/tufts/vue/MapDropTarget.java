@@ -56,6 +56,20 @@ public class MapDropTarget implements java.awt.dnd.DropTargetListener {
 
   private static final boolean DropImagesAsNodes = true;
 
+  /**
+   * Scanning a dropped URL for meta-data connects to it, and may replace the node's label with
+   * the page title, so it's something the user has to ask for.
+   */
+  private static final edu.tufts.vue.preferences.implementations.BooleanPreference scanDroppedURLsPref =
+    edu.tufts.vue.preferences.implementations.BooleanPreference.create(
+      edu.tufts.vue.preferences.PreferenceConstants.INTERACTIONS_CATEGORY,
+      "scanDroppedURLs",
+      VueResources.getString("preference.urlmetadata.title"),
+      VueResources.getString("preference.urlmetadata.description"),
+      Boolean.FALSE,
+      true
+    );
+
   private static final int DROP_FILE_LIST = 1;
   private static final int DROP_NODE_LIST = 2;
   private static final int DROP_RESOURCE_LIST = 3;
@@ -1059,7 +1073,9 @@ public class MapDropTarget implements java.awt.dnd.DropTargetListener {
           // TODO: master slides in slide-viewer are "hit", thus we can set a resource on them this way!
           drop.hit.setResource(foundURL.toString());
           // TODO: clean this up:  resource should load meta-data on CREATION.
-          ((URLResource) drop.hit.getResource()).scanForMetaDataAsync(drop.hit);
+          if (scanDroppedURLsPref.isTrue()) {
+            ((URLResource) drop.hit.getResource()).scanForMetaDataAsync(drop.hit);
+          }
         } else if (drop.hitParent != null) {
           drop.hitParent.dropChild(
             createNodeAndResource(
@@ -1367,7 +1383,15 @@ public class MapDropTarget implements java.awt.dnd.DropTargetListener {
     // Could wait to start this till end of all drop processing
     // and pull it from drop.added
 
-    //resource.scanForMetaDataAsync(c, true);
+    // Only if the user has asked for it.  Scans are queued with a bounded,
+    // per-host limited scanner, so even a large group drop only opens a few
+    // connections at a time.
+    if (
+      scanDroppedURLsPref.isTrue() &&
+      file == null &&
+      resource instanceof URLResource &&
+      !resource.isImage()
+    ) ((URLResource) resource).scanForMetaDataAsync(c);
 
     return c;
   }
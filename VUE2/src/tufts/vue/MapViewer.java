@@ -1795,6 +1795,7 @@ public class MapViewer
         }
         mUndoManager = new UndoManager(mMap);
         mMap.setUndoManager(mUndoManager);
+        tufts.vue.action.MapJournal.attach(mMap);
       } else mUndoManager = mMap.getUndoManager();
     }
 
@@ -4438,7 +4439,7 @@ public class MapViewer
     // ideal image memory cache behaviour when drawing slides (e.g., a slide with 4 images, of which only 3 actually
     // fit into memory).
 
-    mFocal.draw(dc);
+    if (!drawCachedSlide(dc)) mFocal.draw(dc);
     // if (mFocal instanceof LWNode) mMap.draw(dc); else mFocal.draw(dc);
 
     if (mRollover != null && mRollover.hasAncestor(mFocal)) {
@@ -4446,6 +4447,23 @@ public class MapViewer
     }
   }
 
+  /**
+   * When presenting a slide, draw it from a pre-rendered image if one is ready.
+   * @return false if the focal still needs to be drawn
+   */
+  private boolean drawCachedSlide(DrawContext dc) {
+    if (
+      !dc.isPresenting() ||
+      dc.isAnimating() ||
+      dc.drawPathways() ||
+      dc.skipDraw != null ||
+      !(mFocal instanceof LWSlide) ||
+      hasActiveTextEdit()
+    ) return false;
+
+    return SlideRenderCache.getDefault().draw(dc.g, mFocal, this);
+  }
+
   // This code handled transparent anything (with map showing thru) + links as focals:
   /*
           protected void drawFocalImpl(DrawContext dc)
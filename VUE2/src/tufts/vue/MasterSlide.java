@@ -326,7 +326,7 @@ public final class MasterSlide extends LWSlide {
 
     if (dc.focal == this) {
       dc.g.setFont(EditLabelFont);
-      if (mFillColor.brightness() < 0.5) dc.g.setColor(
+      if (Util.brightness(getFillColor()) < 0.5) dc.g.setColor(
         EditLabelColorDarkBG
       ); else dc.g.setColor(EditLabelColorLightBG);
       dc.g.drawString("Master Slide", 72 / 4, 72);
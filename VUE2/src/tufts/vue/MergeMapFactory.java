@@ -29,6 +29,11 @@ import edu.tufts.vue.style.*;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import tufts.vue.LWComponent.ChildKind;
 import tufts.vue.LWComponent.Flag;
 
@@ -43,6 +48,10 @@ import tufts.vue.LWComponent.Flag;
  * will be the nodes that are duplicated to the final merge map.  Thus, the base-map also serves as
  * a kind of priority template map.
  *
+ * The analysis of the source maps (a ConnectivityMatrix for each, summed into a vote or weight
+ * aggregate) only reads the source maps, and by default runs in parallel in a ForkJoinPool.
+ * The output map is always built afterwords on the calling thread.
+ *
  */
 
 public class MergeMapFactory {
@@ -52,6 +61,32 @@ public class MergeMapFactory {
 
   public static final int THRESHOLD_DEFAULT = 20;
 
+  /** Receives progress reports during a merge.  Can be called from any thread. */
+  public interface ProgressListener {
+    /**
+     * @param stage a short description of the current stage of the merge
+     * @param done the number of maps processed so far in this stage
+     * @param total the number of maps to process in this stage
+     */
+    void mergeProgress(String stage, int done, int total);
+  }
+
+  private static final ForkJoinPool MergePool = new ForkJoinPool(
+    Runtime.getRuntime().availableProcessors(),
+    new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+      public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        final ForkJoinWorkerThread t =
+          ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("VUE-Merge-" + t.getPoolIndex());
+        t.setDaemon(true);
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+      }
+    },
+    null,
+    false
+  );
+
   private int nodeThresholdSliderValue = THRESHOLD_DEFAULT;
   private int linkThresholdSliderValue = THRESHOLD_DEFAULT;
 
@@ -80,11 +115,18 @@ public class MergeMapFactory {
   /** keysMerged will be used during construction to track what's already been merged */
   private final Map<Object, LWComponent> keysMerged = new HashMap();
 
+  /** The merged nodes and links, added to the output map all at once: each add does a layout */
+  private final List<LWComponent> mergedNodes = new ArrayList();
+  private final List<LWComponent> mergedLinks = new ArrayList();
+
   /** if we will be excluding all keys found on the base map from the output, this will be filled */
   private Set baseMapKeys;
 
   private boolean alreadyUsed = false;
 
+  private boolean parallel = true;
+  private ProgressListener progressListener;
+
   private static int CreationCount = 0;
 
   public MergeMapFactory(
@@ -136,6 +178,8 @@ public class MergeMapFactory {
 
     baseMapKeys = null; // gc
     keysMerged.clear(); // gc
+    mergedNodes.clear(); // gc
+    mergedLinks.clear(); // gc
     for (LWMap m : activeMaps) m.setClientData(LinksCache.class, null); // gc
 
     // we only allow one creation per factory in case anyone ever wants
@@ -145,6 +189,26 @@ public class MergeMapFactory {
     return outputMap;
   }
 
+  /** @param parallel if false, analyze the source maps sequentially on the calling thread */
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
+
+  public void setProgressListener(ProgressListener listener) {
+    progressListener = listener;
+  }
+
+  private void progress(String stage, int done, int total) {
+    final ProgressListener listener = progressListener;
+    if (listener != null) {
+      try {
+        listener.mergeProgress(stage, done, total);
+      } catch (Throwable t) {
+        Log.warn("progress listener " + listener, t);
+      }
+    }
+  }
+
   public void setFilterOnBaseMap(boolean doFilter) {
     includeSecondaryMaps = !doFilter;
   }
@@ -220,6 +284,60 @@ public class MergeMapFactory {
     return actives;
   }
 
+  /**
+   * Create a connectivity matrix for each active map, adding them to cms in active map order,
+   * and sum them into the desired aggregate.  If parallel, the matrices are built
+   * concurrently, and the aggregate summed as a parallel reduction, in the MergePool.
+   */
+  private WeightAggregate createAggregate(
+    final Class clazz,
+    final ConnectivityMatrixList cms
+  ) {
+    final int mapCount = activeMaps.size();
+    final ConnectivityMatrix[] matrices = new ConnectivityMatrix[mapCount];
+    final AtomicInteger built = new AtomicInteger();
+    final List<RecursiveAction> builds = new ArrayList(mapCount);
+
+    progress("analyzing", 0, mapCount);
+
+    for (int i = 0; i < mapCount; i++) {
+      final int index = i;
+      // if (map != getBaseMap()) // TODO: check -- really add baseMap matrix if ignoring baseMap?
+      // old comment had commented out check to skip baseMap...
+      builds.add(
+        new RecursiveAction() {
+          protected void compute() {
+            matrices[index] = new ConnectivityMatrix(activeMaps.get(index));
+            progress("analyzing", built.incrementAndGet(), mapCount);
+          }
+        }
+      );
+    }
+
+    final RecursiveTask<WeightAggregate> analysis =
+      new RecursiveTask<WeightAggregate>() {
+        protected WeightAggregate compute() {
+          if (parallel) {
+            invokeAll(builds);
+          } else {
+            for (RecursiveAction build : builds) build.invoke(); // in this thread
+          }
+          cms.addAll(Arrays.asList(matrices));
+          if (clazz == VoteAggregate.class) {
+            double nodeThresh = (double) getNodeThresholdSliderValue() / 100.0;
+            double linkThresh = (double) getLinkThresholdSliderValue() / 100.0;
+            return VoteAggregate.create(cms, nodeThresh, linkThresh);
+          } else {
+            return WeightAggregate.create(cms);
+          }
+        }
+      };
+
+    // When not run in a ForkJoinPool, invoke runs the task in this thread,
+    // and the aggregate sums sequentially as well.
+    return parallel ? MergePool.invoke(analysis) : analysis.invoke();
+  }
+
   private void createAggregateAndFillMap(final Class clazz) {
     // Only one of these two will be set to non-null
     final VoteAggregate voteAggregate;
@@ -227,30 +345,21 @@ public class MergeMapFactory {
 
     final ConnectivityMatrixList cms = new ConnectivityMatrixList();
 
-    //-----------------------------------------------------------------------------
-    // Create a connectivity matrix for each active map to be fed to the Aggregate
-    //-----------------------------------------------------------------------------
     if (excludeNodesOnBaseMap) {
       // generate the key set that will be used to exclude any keys
       // that were found on the base map.
       this.baseMapKeys = hashMergeKeys(baseMap);
     }
 
-    for (LWMap map : activeMaps) {
-      // if (map != getBaseMap()) // TODO: check -- really add baseMap matrix if ignoring baseMap?
-      // old comment had commented out check to skip baseMap...
-      cms.add(new ConnectivityMatrix(map));
-    }
     //-----------------------------------------------------------------------------
-    // Create the desired aggregate
+    // Create a connectivity matrix for each active map, and the desired aggregate
     //-----------------------------------------------------------------------------
-    if (clazz == VoteAggregate.class) {
-      double nodeThresh = (double) getNodeThresholdSliderValue() / 100.0;
-      double linkThresh = (double) getLinkThresholdSliderValue() / 100.0;
+    final WeightAggregate aggregate = createAggregate(clazz, cms);
+    if (aggregate instanceof VoteAggregate) {
+      voteAggregate = (VoteAggregate) aggregate;
       weightAggregate = null;
-      voteAggregate = VoteAggregate.create(cms, nodeThresh, linkThresh);
     } else {
-      weightAggregate = WeightAggregate.create(cms);
+      weightAggregate = aggregate;
       voteAggregate = null;
     }
     //-----------------------------------------------------------------------------
@@ -270,15 +379,19 @@ public class MergeMapFactory {
       // aggregate merge-key analysis of all maps, but only ever take nodes from the base map
       // -- nodes and links from all other maps will be ignored except for the presence of
       // their merge keys in the matrix.
+      int merged = 0;
       for (LWMap map : activeMaps) {
         if (map == baseMap) {
           Log.info("    loop; skipping baseMap " + baseMap);
         } else {
           mergeInNodes(map, voteAggregate);
         }
+        progress("merging", ++merged, activeMaps.size());
       }
     }
 
+    if (!mergedNodes.isEmpty()) outputMap.addChildren(mergedNodes);
+
     // Ah: note that CHILDREN OF A MERGED NODE CAN BE ANYTHING... WE ONLY WANT THE TOP-LEVEL-CHILDREN!
     //final Collection<LWComponent> allMergedNodes = outputMap.getAllDescendents(ChildKind.PROPER);
 
@@ -304,6 +417,8 @@ public class MergeMapFactory {
       cms,
       weightAggregate
     );
+
+    if (!mergedLinks.isEmpty()) outputMap.addChildren(mergedLinks);
   }
 
   private static boolean isMergeSkipped(LWComponent c) {
@@ -351,7 +466,7 @@ public class MergeMapFactory {
     }
   }
 
-  /** duplicate the source, annotate with it's source, and copy it to the
+  /** duplicate the source, annotate with it's source, and queue it for the
    * output map, also recording the mergeKey in the keysMerged map */
   private void copyInNode(
     LWMap sourceMap,
@@ -361,10 +476,10 @@ public class MergeMapFactory {
     final LWComponent node = sourceNode.duplicate();
     annotateNodeSource(sourceMap, sourceNode, node);
     keysMerged.put(mergeKey, node);
-    outputMap.addChild(node);
+    mergedNodes.add(node);
   }
 
-  /** takes an already duplicated link, annotates it, and adds it to the map */
+  /** takes an already duplicated link, annotates it, and queues it for the map */
   private void copyInLink(
     ConnectivityMatrixList cms,
     Object headKey,
@@ -372,7 +487,7 @@ public class MergeMapFactory {
     LWLink link
   ) {
     annotateLinkSources(cms, headKey, tailKey, link);
-    outputMap.addChild(link);
+    mergedLinks.add(link);
   }
 
   private void installLinksForVotes(
@@ -438,7 +553,7 @@ public class MergeMapFactory {
         final int weightAlpha = weightAggregate.getConnection(headKey, tailKey);
         if (weightAlpha <= 0) continue;
 
-        double score = (100 * weightAlpha) / weightAggregate.getCount();
+        double score = (100.0 * weightAlpha) / weightAggregate.getCount();
         // [DAN] are either of these ever happenning? If so, why? [SMF: if merge on 0 maps...]
         if (score > 100) score = 100; else if (score < 0) score = 0;
         final Style linkStyle = linkStyles.get(getIntervalForLink(score) - 1);
@@ -475,7 +590,7 @@ public class MergeMapFactory {
   private int getIntervalForNode(double score) {
     int count = 0;
     for (Double d : nodeIntervalBoundaries) {
-      if (score < d.doubleValue()) return count;
+      if (score < d.doubleValue()) return Math.max(count, 1); // below the 1st boundary is still the 1st interval
       count++;
     }
     return 0;
@@ -484,7 +599,7 @@ public class MergeMapFactory {
   private int getIntervalForLink(double score) {
     int count = 0;
     for (Double d : linkIntervalBoundaries) {
-      if (score < d.doubleValue()) return count;
+      if (score < d.doubleValue()) return Math.max(count, 1);
       count++;
     }
     return 0;
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.SwingUtilities;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+import javax.swing.tree.TreePath;
+
+/**
+ * The tree model behind the OutlineViewTree.  Each container lists the links
+ * attached to it, followed by its non-link children, so a link appears
+ * under both of its endpoints.
+ *
+ * Tree nodes are only created for a component when its parent is first
+ * expanded (or when a path to it is requested), and every node that exists is
+ * indexed by component ID, so label changes repaint just the affected rows.
+ * Structural events mark the containing component dirty, and the dirty set is
+ * diffed against the existing tree nodes once per batch of events, on the AWT
+ * thread, firing the minimal insert/remove events.
+ *
+ * This replaces the eager tufts.oki.hierarchy.OutlineViewHierarchyModel.
+ */
+class OutlineViewModel extends DefaultTreeModel implements LWComponent.Listener {
+
+  private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(
+    OutlineViewModel.class
+  );
+
+  /** the keys the model should be listening for on the displayed container */
+  static final Object[] KEYS = {
+    LWKey.Label,
+    LWKey.ChildrenAdded,
+    LWKey.ChildrenRemoved,
+    LWKey.HierarchyChanged,
+    LWKey.LinkAdded,
+    LWKey.LinkRemoved,
+  };
+
+  private final LWContainer container;
+
+  /** all materialized tree nodes by component ID: links may have two */
+  private final Map<String, List<OutlineNode>> index = new HashMap();
+
+  private final Set<LWComponent> relabeled = new LinkedHashSet();
+  private final Set<LWComponent> restructured = new LinkedHashSet();
+  private boolean flushScheduled;
+
+  OutlineViewModel(LWContainer container) {
+    super(null);
+    this.container = container;
+    setRoot(new OutlineNode(container));
+  }
+
+  LWContainer getContainer() {
+    return container;
+  }
+
+  /** A tree node for a single LWComponent, which creates it's children on first use */
+  final class OutlineNode extends DefaultMutableTreeNode {
+
+    private boolean loaded;
+
+    OutlineNode(LWComponent c) {
+      super(c);
+      addToIndex(this);
+    }
+
+    LWComponent getComponent() {
+      return (LWComponent) getUserObject();
+    }
+
+    boolean isLoaded() {
+      return loaded;
+    }
+
+    private void load() {
+      if (loaded) return;
+      loaded = true;
+      for (LWComponent c : getOutlineChildren(getComponent())) super.add(
+        new OutlineNode(c)
+      );
+    }
+
+    @Override
+    public int getChildCount() {
+      load();
+      return super.getChildCount();
+    }
+
+    @Override
+    public TreeNode getChildAt(int index) {
+      load();
+      return super.getChildAt(index);
+    }
+
+    @Override
+    public int getIndex(TreeNode child) {
+      load();
+      return super.getIndex(child);
+    }
+
+    @Override
+    public Enumeration children() {
+      load();
+      return super.children();
+    }
+
+    /** answered without creating the child nodes */
+    @Override
+    public boolean isLeaf() {
+      if (loaded) return super.getChildCount() == 0;
+      final LWComponent c = getComponent();
+      if (c.hasLinks()) return false;
+      for (LWComponent child : c.getChildren()) if (
+        !(child instanceof LWLink)
+      ) return false;
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return getNodeLabel(getComponent());
+    }
+  }
+
+  /** @return the components displayed under the given one: it's links, then it's non-link children */
+  static List<LWComponent> getOutlineChildren(LWComponent c) {
+    final List<LWComponent> children = new ArrayList(
+      c.getLinks().size() + c.numChildren()
+    );
+    children.addAll(c.getLinks());
+    for (LWComponent child : c.getChildren()) if (
+      !(child instanceof LWLink)
+    ) children.add(child);
+    return children;
+  }
+
+  static String getNodeLabel(LWComponent c) {
+    String label = c.getLabel();
+    if (label == null) label = c.getDisplayLabel();
+    if (label == null) {
+      if (c instanceof LWLink) label = "Link-ID# " + c.getID(); else if (
+        c instanceof LWNode
+      ) label = "Node-ID# " + c.getID(); else label = "no label";
+    }
+    return label;
+  }
+
+  private void addToIndex(OutlineNode node) {
+    final String id = node.getComponent().getID();
+    List<OutlineNode> nodes = index.get(id);
+    if (nodes == null) index.put(id, nodes = new ArrayList(1));
+    nodes.add(node);
+  }
+
+  /** remove the given node and all it's materialized descendents from the index */
+  private void removeFromIndex(OutlineNode node) {
+    final String id = node.getComponent().getID();
+    final List<OutlineNode> nodes = index.get(id);
+    if (nodes != null && nodes.remove(node) && nodes.isEmpty()) index.remove(
+      id
+    );
+    if (node.loaded) {
+      // don't use children(), which would load them
+      for (int i = 0; i < node.getChildCount(); i++) removeFromIndex(
+        (OutlineNode) node.getChildAt(i)
+      );
+    }
+  }
+
+  /** @return the tree nodes currently materialized for the given component, if any */
+  List<OutlineNode> getIndexedNodes(LWComponent c) {
+    final List<OutlineNode> nodes = index.get(c.getID());
+    return nodes == null ? Collections.EMPTY_LIST : nodes;
+  }
+
+  /** @return the number of tree nodes that have been created */
+  int getIndexedNodeCount() {
+    int count = 0;
+    for (List<OutlineNode> nodes : index.values()) count += nodes.size();
+    return count;
+  }
+
+  public void LWCChanged(LWCEvent e) {
+    final Object key = e.key;
+    final LWComponent c = e.getComponent();
+
+    if (c instanceof LWPathway) return;
+
+    synchronized (this) {
+      if (key == LWKey.Label) {
+        relabeled.add(c);
+      } else if (key == LWKey.LinkAdded || key == LWKey.LinkRemoved) {
+        // the source is the endpoint, the component is the link
+        restructured.add((LWComponent) e.getSource());
+      } else if (
+        key == LWKey.ChildrenAdded || key == LWKey.ChildrenRemoved
+      ) {
+        restructured.add((LWComponent) e.getSource());
+        for (LWComponent child : e.getComponents()) {
+          if (child instanceof LWLink) {
+            final LWLink link = (LWLink) child;
+            if (link.getHead() != null) restructured.add(link.getHead());
+            if (link.getTail() != null) restructured.add(link.getTail());
+          }
+        }
+      } else if (key == LWKey.HierarchyChanged) {
+        restructured.add((LWComponent) e.getSource());
+      } else return;
+
+      if (flushScheduled) return;
+      flushScheduled = true;
+    }
+
+    scheduleFlush();
+  }
+
+  /** arrange for flush() to be called on the AWT thread once the current batch of events is done */
+  void scheduleFlush() {
+    SwingUtilities.invokeLater(
+      new Runnable() {
+        public void run() {
+          flush();
+        }
+      }
+    );
+  }
+
+  /** Apply all the changes collected since the last flush to the tree. */
+  void flush() {
+    final List<LWComponent> labels;
+    final List<LWComponent> dirty;
+
+    synchronized (this) {
+      flushScheduled = false;
+      if (relabeled.isEmpty() && restructured.isEmpty()) return;
+      labels = new ArrayList(relabeled);
+      dirty = new ArrayList(restructured);
+      relabeled.clear();
+      restructured.clear();
+    }
+
+    if (DEBUG.EVENTS) Log.debug(
+      "flush: " + labels.size() + " relabeled, " + dirty.size() + " restructured"
+    );
+
+    for (LWComponent c : dirty) {
+      // copy: updating the children may un-index nodes for this component
+      for (OutlineNode node : new ArrayList<OutlineNode>(
+        getIndexedNodes(c)
+      )) updateChildren(node);
+    }
+
+    for (LWComponent c : labels) for (OutlineNode node : getIndexedNodes(
+      c
+    )) nodeChanged(node);
+  }
+
+  /** Bring the children of the given node up to date with it's component */
+  private void updateChildren(OutlineNode node) {
+    if (!node.loaded) {
+      // the leaf state may have changed
+      nodeChanged(node);
+      return;
+    }
+
+    final List<LWComponent> desired = getOutlineChildren(node.getComponent());
+    final Map<LWComponent, Boolean> wanted = new IdentityHashMap(
+      desired.size()
+    );
+    for (LWComponent c : desired) wanted.put(c, Boolean.TRUE);
+
+    // first remove the nodes for components no longer present
+
+    final List<Integer> removedIndices = new ArrayList();
+    final List<OutlineNode> removed = new ArrayList();
+    for (int i = 0; i < node.getChildCount(); i++) {
+      final OutlineNode child = (OutlineNode) node.getChildAt(i);
+      if (!wanted.containsKey(child.getComponent())) {
+        removedIndices.add(i);
+        removed.add(child);
+      }
+    }
+
+    if (!removed.isEmpty()) {
+      for (OutlineNode child : removed) {
+        node.remove(child);
+        removeFromIndex(child);
+      }
+      nodesWereRemoved(node, toArray(removedIndices), removed.toArray());
+    }
+
+    // the remaining nodes must be in the desired order, or we just rebuild this level
+
+    int next = 0;
+    for (int i = 0; i < node.getChildCount(); i++) {
+      final LWComponent c = ((OutlineNode) node.getChildAt(i)).getComponent();
+      while (next < desired.size() && desired.get(next) != c) next++;
+      if (next == desired.size()) {
+        reorderChildren(node, desired);
+        return;
+      }
+      next++;
+    }
+
+    // then insert nodes for the new components
+
+    final List<Integer> insertedIndices = new ArrayList();
+    for (int i = 0; i < desired.size(); i++) {
+      final LWComponent c = desired.get(i);
+      if (
+        i >= node.getChildCount() ||
+        ((OutlineNode) node.getChildAt(i)).getComponent() != c
+      ) {
+        node.insert(new OutlineNode(c), i);
+        insertedIndices.add(i);
+      }
+    }
+
+    if (!insertedIndices.isEmpty()) nodesWereInserted(
+      node,
+      toArray(insertedIndices)
+    );
+  }
+
+  /** Re-order the child nodes, keeping any that exist, and re-announce this level of the tree */
+  private void reorderChildren(OutlineNode node, List<LWComponent> desired) {
+    final Map<LWComponent, OutlineNode> existing = new IdentityHashMap();
+    for (int i = 0; i < node.getChildCount(); i++) {
+      final OutlineNode child = (OutlineNode) node.getChildAt(i);
+      existing.put(child.getComponent(), child);
+    }
+    node.removeAllChildren();
+    for (LWComponent c : desired) {
+      final OutlineNode child = existing.get(c);
+      node.add(child == null ? new OutlineNode(c) : child);
+    }
+    nodeStructureChanged(node);
+  }
+
+  private static int[] toArray(List<Integer> list) {
+    final int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+    return array;
+  }
+
+  /** @return true if the given component is displayed in this outline -- does not create any tree nodes */
+  boolean contains(LWComponent c) {
+    if (c == null) return false;
+    if (c == container) return true;
+    if (c instanceof LWLink) {
+      final LWLink link = (LWLink) c;
+      return contains(link.getHead()) || contains(link.getTail());
+    }
+    return c.hasAncestor(container);
+  }
+
+  /**
+   * @return the path to the first tree node for the given component, creating the
+   * tree nodes along the way as needed, or null if the component isn't in this outline
+   */
+  TreePath getTreePath(LWComponent c) {
+    flush();
+    final OutlineNode node = findNode(c);
+    return node == null ? null : new TreePath(node.getPath());
+  }
+
+  private OutlineNode findNode(LWComponent c) {
+    if (c == null) return null;
+
+    final List<OutlineNode> indexed = getIndexedNodes(c);
+    if (!indexed.isEmpty()) return indexed.get(0);
+
+    final LWComponent parent;
+    if (c instanceof LWLink) {
+      final LWLink link = (LWLink) c;
+      parent = contains(link.getHead()) ? link.getHead() : link.getTail();
+    } else if (c == container) {
+      return null; // can't happen: the root is always indexed
+    } else {
+      parent = c.getParent();
+    }
+
+    if (!contains(parent)) return null;
+
+    final OutlineNode parentNode = findNode(parent);
+    if (parentNode == null) return null;
+
+    // loads the children of the parent node, which will index the one we want
+    for (int i = 0; i < parentNode.getChildCount(); i++) {
+      final OutlineNode child = (OutlineNode) parentNode.getChildAt(i);
+      if (child.getComponent() == c) return child;
+    }
+    return null;
+  }
+
+  /** the edited value is the component itself, who's label the editor has already set */
+  @Override
+  public void valueForPathChanged(TreePath path, Object newValue) {
+    nodeChanged((TreeNode) path.getLastPathComponent());
+  }
+}
@@ -50,16 +50,13 @@ import javax.swing.tree.*;
 
 public class OutlineViewTree
   extends JTree
-  implements LWComponent.Listener, LWSelection.Listener, ActiveListener<LWMap> {
+  implements LWSelection.Listener, ActiveListener<LWMap> {
 
   private boolean selectionFromVUE = false;
   private boolean valueChangedState = false;
 
-  //a variable that controls the label change of nodes
-  private boolean labelChangeState = false;
-
   private LWContainer currentContainer = null;
-  private tufts.oki.hierarchy.OutlineViewHierarchyModel hierarchyModel = null;
+  private OutlineViewModel hierarchyModel = null;
 
   private ImageIcon nodeIcon = VueResources.getImageIcon("outlineIcon.node");
   private ImageIcon linkIcon = VueResources.getImageIcon("outlineIcon.link");
@@ -109,10 +106,7 @@ public class OutlineViewTree
               o +
               "]"
             );
-            tufts.oki.hierarchy.HierarchyNode hierarchyNode =
-              (tufts.oki.hierarchy.HierarchyNode) o;
-
-            LWComponent component = hierarchyNode.getLWComponent();
+            LWComponent component = (LWComponent) o;
 
             //if it is not LWMap, add to the selected components list
             if (!(component instanceof LWMap)) {
@@ -147,34 +141,25 @@ public class OutlineViewTree
   /**A method which switches the displayed container*/
   public void switchContainer(LWContainer newContainer) {
     //removes itself from the old container's listener list
-    if (currentContainer != null) {
-      currentContainer.removeLWCListener(this);
-      currentContainer.removeLWCListener(hierarchyModel);
-    }
+    if (currentContainer != null) currentContainer.removeLWCListener(
+      hierarchyModel
+    );
 
     //adds itself to the new container's listener list
     if (newContainer != null) {
       currentContainer = newContainer;
 
       //creates the new model for the tree with the given new LWContainer
-      hierarchyModel =
-        new tufts.oki.hierarchy.OutlineViewHierarchyModel(newContainer);
-      DefaultTreeModel model = hierarchyModel.getTreeModel();
-
-      setModel(model);
-
-      currentContainer.addLWCListener(this, LWKey.Label);
-      currentContainer.addLWCListener(
-        hierarchyModel,
-        new Object[] {
-          LWKey.ChildrenAdded,
-          LWKey.ChildrenRemoved,
-          LWKey.HierarchyChanged,
-          LWKey.LinkAdded,
-          LWKey.LinkRemoved,
-        }
-      );
-    } else setModel(null);
+      hierarchyModel = new OutlineViewModel(newContainer);
+
+      setModel(hierarchyModel);
+
+      currentContainer.addLWCListener(hierarchyModel, OutlineViewModel.KEYS);
+    } else {
+      currentContainer = null;
+      hierarchyModel = null;
+      setModel(null);
+    }
   }
 
   /**A method that sets the current tree path to the one designated by the given LWComponent*/
@@ -214,24 +199,6 @@ public class OutlineViewTree
     if (hierarchyModel != null) return true; else return false;
   }
 
-  /**A method for handling a LWC event*/
-  public void LWCChanged(LWCEvent e) {
-    if (e.getComponent() instanceof LWPathway) return;
-
-    //when a label on a node was changed
-    //Already label filtered.
-
-    if (!labelChangeState) {
-      labelChangeState = true;
-      hierarchyModel.updateHierarchyNodeLabel(
-        e.getComponent().getLabel(),
-        e.getComponent().getID()
-      );
-      repaint();
-      labelChangeState = false;
-    }
-  }
-
   /** A method for handling LWSelection event **/
   public void selectionChanged(LWSelection selection) {
     if (
@@ -267,12 +234,10 @@ public class OutlineViewTree
       String label = null;
 
       if (
-        ((DefaultMutableTreeNode) value).getUserObject() instanceof
-        tufts.oki.hierarchy.HierarchyNode
+        ((DefaultMutableTreeNode) value).getUserObject() instanceof LWComponent
       ) {
-        tufts.oki.hierarchy.HierarchyNode hierarchyNode =
-          (tufts.oki.hierarchy.HierarchyNode) (((DefaultMutableTreeNode) value).getUserObject());
-        LWComponent component = hierarchyNode.getLWComponent();
+        LWComponent component =
+          (LWComponent) ((DefaultMutableTreeNode) value).getUserObject();
 
         if (component instanceof LWMap) setIcon(mapIcon); else if (
           component instanceof LWNode
@@ -317,7 +282,7 @@ public class OutlineViewTree
 
     // This is the component that will handle the editing of the cell value
     private OutlineViewEditorElement editorElement = null;
-    private tufts.oki.hierarchy.HierarchyNode hierarchyNode = null;
+    private LWComponent editedComponent = null;
 
     private boolean modified = false;
     private final int clickToStartEditing = 2;
@@ -354,8 +319,8 @@ public class OutlineViewTree
 
       DefaultMutableTreeNode node =
         (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-      hierarchyNode = (tufts.oki.hierarchy.HierarchyNode) node.getUserObject();
-      LWComponent selectedLWComponent = hierarchyNode.getLWComponent();
+      editedComponent = (LWComponent) node.getUserObject();
+      LWComponent selectedLWComponent = editedComponent;
 
       if (selectedLWComponent instanceof LWText) editorElement.setIcon(
         nodeIcon
@@ -372,16 +337,17 @@ public class OutlineViewTree
     // This method is called when editing is completed.
     // It must return the new value to be stored in the cell.
     public Object getCellEditorValue() {
-      try {
-        String text = editorElement.getText();
-        if (DEBUG.FOCUS) System.out.println(
-          this + " getCellEditorValue returns [" + text + "]"
-        );
+      String text = editorElement.getText();
+      if (DEBUG.FOCUS) System.out.println(
+        this + " getCellEditorValue returns [" + text + "]"
+      );
 
-        hierarchyNode.changeLWComponentLabel(text);
-      } catch (osid.hierarchy.HierarchyException he) {}
+      if (!text.equals(editedComponent.getDisplayLabel())) {
+        editedComponent.setLabel(text);
+        VUE.getUndoManager().mark();
+      }
 
-      return hierarchyNode;
+      return editedComponent;
     }
 
     /** When any key is pressed on the text area, then it sets the flag that the value needs to be modified,
@@ -835,6 +835,10 @@ public class PathwayTable
 
   private class ImageRenderer extends DefaultTableCellRenderer {
 
+    /** a rendered slide, in place of the pathway slide icon once it's ready */
+    private final SlideRenderCache.Thumbnail slideThumbnail =
+      new SlideRenderCache.Thumbnail(14, 10);
+
     public java.awt.Component getTableCellRendererComponent(
       javax.swing.JTable jTable,
       Object obj,
@@ -925,7 +929,11 @@ public class PathwayTable
               setBorder(NodeIconBorder);
               setIcon(mapViewIcon);
             } else {
-              setIcon(entry.pathway.mSlideIcon);
+              slideThumbnail.setSlide(
+                entry.canProvideSlide() ? entry.getSlide() : null,
+                entry.pathway.mSlideIcon
+              );
+              setIcon(slideThumbnail);
               //setIcon(slideViewIcon);
             }
           } else {
@@ -827,8 +827,9 @@ public class PresentationTool extends VueTool implements LWComponent.Listener {
         //final Color color = Util.alphaMix(pathway.getColor(), pathway.getMasterSlide().getFillColor());
         final Color color = Util.alphaMix(pathway.getColor(), Color.gray);
         //final Color color = pathway.getColor();
-        mFillColor.setFixedAlpha(224);
-        setFillColor(color);
+        setFillColor(
+          new Color(color.getRed(), color.getGreen(), color.getBlue(), 224)
+        );
         setTextColor(Color.black);
         setStrokeWidth(0);
         //setStrokeColor(color);
@@ -2036,6 +2037,7 @@ public class PresentationTool extends VueTool implements LWComponent.Listener {
 
     if (!selected) {
       ResumeButton.setVisible(false);
+      SlideRenderCache.getDefault().clear(); // release the full-screen slide images
       return;
     }
 
@@ -2826,6 +2828,7 @@ public class PresentationTool extends VueTool implements LWComponent.Listener {
     final Entry lastEntry = mLastPage.entry;
 
     Entry cachingEntry = null;
+    boolean forward = true;
 
     if (lastEntry != null && thisEntry != null && lastEntry != thisEntry) {
       if (lastEntry.index() < thisEntry.index()) {
@@ -2833,6 +2836,7 @@ public class PresentationTool extends VueTool implements LWComponent.Listener {
         //Log.debug("CACHING FORWARD CONTENT " + cachingEntry);
       } else {
         cachingEntry = thisEntry.prev(); // moving backward
+        forward = false;
         //Log.debug("CACHING BACKWARD CONTENT " + cachingEntry);
       }
     } else if (thisEntry != null) {
@@ -2840,6 +2844,8 @@ public class PresentationTool extends VueTool implements LWComponent.Listener {
       //Log.debug("DEFAULTING TO FORWARD CACHING " + cachingEntry);
     }
 
+    if (thisEntry != null) prefetchSlides(thisEntry, forward);
+
     if (cachingEntry != null) {
       final LWComponent focal = cachingEntry.getFocal();
       if (focal != null) {
@@ -2871,6 +2877,50 @@ public class PresentationTool extends VueTool implements LWComponent.Listener {
     }
   }
 
+  /** how many slides to keep rendered ahead of us along the pathway */
+  private static final int PrefetchSlideCount = 2;
+
+  /**
+   * Have the next slides in the direction we're moving rendered in the background,
+   * so the MapViewer can draw them with a single image blit when we get there.
+   */
+  private void prefetchSlides(Entry from, boolean forward) {
+    final MapViewer viewer = VUE.getActiveViewer();
+    if (viewer == null || viewer.getVisibleWidth() <= 1) return;
+
+    final List<LWComponent> slides = new ArrayList();
+    Entry entry = from;
+    for (int i = 0; i < PrefetchSlideCount; i++) {
+      entry = forward ? entry.next() : entry.prev();
+      if (entry == null) break;
+      final LWComponent focal = entry.getFocal();
+      if (focal instanceof LWSlide) slides.add(focal);
+    }
+
+    if (slides.isEmpty()) {
+      SlideRenderCache.getDefault().prefetch(slides, 0);
+      return;
+    }
+
+    // The slides on a pathway normally all share the size of the master slide, so
+    // the scale the first will be shown at will do for all of them.  The cache
+    // will draw an image that's slightly off-scale, but if this is way off, the
+    // slide will just be drawn normally.
+    final LWComponent first = slides.get(0);
+    final java.awt.GraphicsConfiguration gc = viewer.getGraphicsConfiguration();
+    final double deviceScale = gc == null
+      ? 1.0
+      : gc.getDefaultTransform().getScaleX();
+    final double zoom = ZoomTool.computeZoomFit(
+      viewer.getVisibleSize(),
+      first.getFocalMargin(),
+      MapViewer.getFocalBounds(first),
+      new Point2D.Float()
+    );
+
+    SlideRenderCache.getDefault().prefetch(slides, zoom * deviceScale);
+  }
+
   private void drawNavNodes(DrawContext dc) {
     LWComponent node = mCurrentPage.getOriginalMapNode();
 
@@ -1535,9 +1535,11 @@ return super.viewToModel(new Point(alloc));
       // (e.g. the master slide has a black background), and the text box
       // has to fill of it's own for contrast, then temporarily swap
       // the text color to white or black so it can be seen.
-      if (lwc.mTextColor.equals(dc.getBackgroundFill())) {
+      final Color fg = lwc.getTextColor();
+      final Color bg = dc.getBackgroundFill();
+      if (fg == bg || (bg != null && bg.equals(fg))) {
         restoreTextColor = true;
-        if (lwc.mTextColor.brightness() > 0.5) {
+        if (tufts.Util.brightness(fg) > 0.5) {
           setDocumentColor(DEBUG.Enabled ? Color.blue : Color.black);
         } else {
           setDocumentColor(DEBUG.Enabled ? Color.green : Color.white);
@@ -1564,7 +1566,7 @@ return super.viewToModel(new Point(alloc));
 
     if (restoreTextColor) {
       // return document color to black
-      setDocumentColor(lwc.mTextColor.get());
+      setDocumentColor(lwc.getTextColor());
     }
 
     // draw a border for links -- why?
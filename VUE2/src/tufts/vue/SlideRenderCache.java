@@ -0,0 +1,621 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.Icon;
+
+/**
+ * Rendered images of slides, so that presentation slide changes, and pathway
+ * thumbnails, can be drawn with a single image blit instead of drawing the
+ * slide's LWComponent tree every frame.
+ *
+ * Images are rendered at the device scale they're needed at, and held in an
+ * ImageCache under a byte budget.  Requests are queued by priority on a
+ * background thread, but the drawing itself is done on the AWT thread, as the
+ * slide is the live component tree: each slide is rendered in a single AWT
+ * event, so user input is still handled between slides.  Each slide is watched for
+ * any change to it, it's contents, or it's master slide, and any change
+ * invalidates it's images.  Slides that have been asked to be prefetched (e.g.,
+ * the next few slides along a pathway) are re-rendered as soon as they're
+ * invalidated, so an image load completing on a slide that isn't on screen yet
+ * will still be in the image by the time it's displayed.
+ *
+ * If an image isn't ready, the caller draws the slide normally, and the
+ * component that asked for the image is repainted when it's ready.
+ */
+public class SlideRenderCache {
+
+  private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(
+    SlideRenderCache.class
+  );
+
+  /** an image within this ratio of the needed scale is drawn scaled instead of re-rendered */
+  private static final double ScaleTolerance = 0.01;
+
+  /** never render an image larger than this in either dimension */
+  private static final int MaxDimension = 4096;
+
+  private static final int PRIORITY_DISPLAY = 0;
+  private static final int PRIORITY_PREFETCH = 1;
+
+  /** set while we're rendering: any events from the slide during drawing (e.g., lazy layout) don't invalidate it */
+  private static final ThreadLocal<Boolean> Rendering = new ThreadLocal();
+
+  private static SlideRenderCache Default;
+
+  /** @return the cache shared by all viewers, which queues renders on a single low priority background thread */
+  public static synchronized SlideRenderCache getDefault() {
+    if (Default == null) {
+      final ThreadPoolExecutor renderer = new ThreadPoolExecutor(
+        1,
+        1,
+        30,
+        TimeUnit.SECONDS,
+        new PriorityBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            final Thread it = new Thread(r, "VUE-SlideRenderer");
+            it.setDaemon(true);
+            it.setPriority(Thread.NORM_PRIORITY - 1);
+            return it;
+          }
+        }
+      );
+      renderer.allowCoreThreadTimeOut(true);
+      Default =
+        new SlideRenderCache(Runtime.getRuntime().maxMemory() / 16, renderer);
+    }
+    return Default;
+  }
+
+  /** A rendered image of a slide, covering the given map bounds at the given scale */
+  static final class Raster extends ImageCache.Entry {
+
+    final Rectangle2D.Float bounds;
+    final double scale;
+    final long generation;
+    private volatile BufferedImage image;
+
+    Raster(
+      BufferedImage image,
+      Rectangle2D.Float bounds,
+      double scale,
+      long generation
+    ) {
+      super(4L * image.getWidth() * image.getHeight(), true);
+      this.image = image;
+      this.bounds = bounds;
+      this.scale = scale;
+      this.generation = generation;
+    }
+
+    BufferedImage getImage() {
+      return image;
+    }
+
+    @Override
+    protected void releaseData() {
+      image = null;
+    }
+
+    @Override
+    protected boolean isDisposable() {
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      final BufferedImage i = image;
+      return (
+        "Raster[" +
+        (i == null ? "released" : i.getWidth() + "x" + i.getHeight()) +
+        " @" +
+        (float) scale +
+        " gen " +
+        generation +
+        "]"
+      );
+    }
+  }
+
+  /**
+   * Tracks changes to a slide, and it's master slide, and which images we have of it.
+   * Only a weak reference is held to the slide, and slides are only weakly mapped to
+   * these, so closing a map releases everything but any images still in the cache.
+   */
+  private final class Watch implements LWComponent.Listener {
+
+    private final WeakReference<LWComponent> slideRef;
+    private final List<Raster> rasters = new ArrayList(2);
+    private long generation;
+    /** if non-zero, keep an image at this scale rendered */
+    private double keepScale;
+
+    Watch(LWComponent slide) {
+      slideRef = new WeakReference(slide);
+      slide.addLWCListener(this);
+      if (slide instanceof LWSlide) {
+        final LWSlide master = ((LWSlide) slide).getMasterSlide();
+        if (master != null && master != slide) master.addLWCListener(this);
+      }
+    }
+
+    LWComponent getSlide() {
+      return slideRef.get();
+    }
+
+    synchronized long getGeneration() {
+      return generation;
+    }
+
+    public void LWCChanged(LWCEvent e) {
+      if (
+        e.key == LWKey.UserActionCompleted || Rendering.get() != null
+      ) return;
+      invalidate();
+    }
+
+    void invalidate() {
+      final List<Raster> dropped;
+      final double rerender;
+      synchronized (this) {
+        generation++;
+        if (rasters.isEmpty() && keepScale == 0) return;
+        dropped = new ArrayList(rasters);
+        rasters.clear();
+        rerender = keepScale;
+      }
+      for (Raster r : dropped) mCache.remove(r, r);
+      if (rerender != 0) schedule(this, rerender, PRIORITY_PREFETCH, null);
+    }
+
+    /** @return a current image within the scale tolerance, if we have one */
+    synchronized Raster find(double scale) {
+      Raster best = null;
+      for (Iterator<Raster> i = rasters.iterator(); i.hasNext();) {
+        final Raster r = i.next();
+        if (r.getImage() == null) {
+          i.remove(); // evicted from the cache
+        } else if (Math.abs(r.scale / scale - 1) <= ScaleTolerance) {
+          if (
+            best == null ||
+            Math.abs(r.scale - scale) < Math.abs(best.scale - scale)
+          ) best = r;
+        }
+      }
+      return best;
+    }
+
+    /** @return false if the slide changed since the given generation, in which case the raster isn't kept */
+    synchronized boolean add(Raster r) {
+      if (r.generation != generation) return false;
+      rasters.add(r);
+      return true;
+    }
+
+    synchronized void setKeepScale(double scale) {
+      keepScale = scale;
+    }
+  }
+
+  /** A request to render a slide at a given scale */
+  private final class Render implements Runnable, Comparable<Render> {
+
+    final Watch watch;
+    final double scale;
+    final int priority;
+    final long seq = mSequence.incrementAndGet();
+    /** components to repaint when the image is ready: guarded by mPending */
+    final List<Component> requesters = new ArrayList(1);
+
+    Render(Watch watch, double scale, int priority) {
+      this.watch = watch;
+      this.scale = scale;
+      this.priority = priority;
+    }
+
+    public int compareTo(Render r) {
+      if (priority != r.priority) return priority < r.priority ? -1 : 1;
+      return seq < r.seq ? -1 : (seq == r.seq ? 0 : 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Render)) return false;
+      final Render r = (Render) o;
+      return r.watch == watch && r.scale == scale && r.priority == priority;
+    }
+
+    @Override
+    public int hashCode() {
+      return (
+        System.identityHashCode(watch) * 31 +
+        Double.valueOf(scale).hashCode() +
+        priority
+      );
+    }
+
+    public void run() {
+      final List<Component> toRepaint;
+      synchronized (mPending) {
+        mPending.remove(this);
+        toRepaint = new ArrayList(requesters);
+      }
+
+      if (watch.find(scale) == null) {
+        final Raster raster = renderOnAWT();
+        if (raster == null || !watch.add(raster)) return;
+        mCache.put(raster, raster);
+        mRenders.incrementAndGet();
+      }
+
+      for (Component c : toRepaint) c.repaint();
+    }
+
+    /** @return an image of the slide as it is now, drawn on the AWT thread, or null if there isn't one */
+    private Raster renderOnAWT() {
+      if (java.awt.EventQueue.isDispatchThread()) return renderNow();
+      final Raster[] result = new Raster[1];
+      try {
+        java.awt.EventQueue.invokeAndWait(
+          new Runnable() {
+            public void run() {
+              result[0] = renderNow();
+            }
+          }
+        );
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (java.lang.reflect.InvocationTargetException e) {
+        Log.warn("rendering " + this, e.getCause());
+      }
+      return result[0];
+    }
+
+    private Raster renderNow() {
+      final LWComponent slide = watch.getSlide();
+      if (slide == null || slide.isDeleted()) return null;
+      return render(slide, scale, watch.getGeneration());
+    }
+
+    @Override
+    public String toString() {
+      return (
+        "Render[" + watch.getSlide() + " @" + (float) scale + " p" + priority + "]"
+      );
+    }
+  }
+
+  private final ImageCache mCache;
+  private final Executor mRenderer;
+  private final Map<LWComponent, Watch> mWatches = new WeakHashMap();
+  private final Map<Render, Render> mPending = new HashMap();
+  private final AtomicLong mSequence = new AtomicLong();
+  private final AtomicLong mRenders = new AtomicLong();
+  private List<Watch> mPrefetched = new ArrayList();
+
+  /**
+   * @param byteBudget -- the max bytes of image data to hold
+   * @param renderer -- where to run the rendering: a single background thread is best
+   */
+  SlideRenderCache(long byteBudget, Executor renderer) {
+    mCache = new ImageCache(byteBudget);
+    mRenderer = renderer;
+  }
+
+  private Watch getWatch(LWComponent slide) {
+    synchronized (mWatches) {
+      Watch watch = mWatches.get(slide);
+      if (watch == null) mWatches.put(slide, watch = new Watch(slide));
+      return watch;
+    }
+  }
+
+  private void schedule(
+    Watch watch,
+    double scale,
+    int priority,
+    Component requester
+  ) {
+    final Render request = new Render(watch, scale, priority);
+    synchronized (mPending) {
+      final Render pending = mPending.get(request);
+      if (pending != null) {
+        if (
+          requester != null && !pending.requesters.contains(requester)
+        ) pending.requesters.add(requester);
+        return;
+      }
+      if (requester != null) request.requesters.add(requester);
+      mPending.put(request, request);
+    }
+    mRenderer.execute(request);
+  }
+
+  /**
+   * @return a current image of the slide at about the given scale (device pixels per map
+   * unit), or null if there isn't one yet, in which case one is requested, and the
+   * requester, if any, will be repainted when it's ready.
+   */
+  Raster getRaster(LWComponent slide, double scale, Component requester) {
+    final Watch watch = getWatch(slide);
+    final Raster raster = watch.find(scale);
+    if (raster != null) {
+      mCache.get(raster); // mark as recently used
+      mCache.recordHit();
+      return raster;
+    }
+    mCache.recordMiss();
+    schedule(watch, scale, PRIORITY_DISPLAY, requester);
+    return null;
+  }
+
+  /**
+   * Draw the slide into the given graphics from an image, if one is ready at the
+   * scale of the graphics transform, which must map map coordinates to the device.
+   *
+   * @return false if nothing was drawn, in which case the caller should draw the
+   * slide itself.  The requester will be repainted when an image is ready.
+   */
+  public boolean draw(Graphics2D g, LWComponent slide, Component requester) {
+    final AffineTransform t = g.getTransform();
+    final double scale = t.getScaleX();
+    if (
+      t.getShearX() != 0 ||
+      t.getShearY() != 0 ||
+      scale <= 0 ||
+      scale != t.getScaleY()
+    ) return false;
+
+    final Raster raster = getRaster(slide, scale, requester);
+    final BufferedImage image = raster == null ? null : raster.getImage();
+    if (image == null) return false;
+
+    final Point2D corner = t.transform(
+      new Point2D.Double(raster.bounds.x, raster.bounds.y),
+      null
+    );
+    final double ratio = scale / raster.scale;
+    final Object interpolation = g.getRenderingHint(
+      RenderingHints.KEY_INTERPOLATION
+    );
+
+    g.setTransform(new AffineTransform());
+    try {
+      if (ratio == 1) {
+        g.drawImage(
+          image,
+          (int) Math.round(corner.getX()),
+          (int) Math.round(corner.getY()),
+          null
+        );
+      } else {
+        g.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION,
+          RenderingHints.VALUE_INTERPOLATION_BILINEAR
+        );
+        g.translate(corner.getX(), corner.getY());
+        g.scale(ratio, ratio);
+        g.drawImage(image, 0, 0, null);
+      }
+    } finally {
+      g.setTransform(t);
+      if (interpolation != null) g.setRenderingHint(
+        RenderingHints.KEY_INTERPOLATION,
+        interpolation
+      );
+    }
+    return true;
+  }
+
+  /**
+   * Render the given slides at the given scale in advance of their display, in
+   * order, and keep them rendered until the next call to prefetch.  Slides that
+   * change before they're displayed are re-rendered.
+   */
+  public void prefetch(List<? extends LWComponent> slides, double scale) {
+    final List<Watch> watches = new ArrayList(slides.size());
+    for (LWComponent slide : slides) if (slide != null) watches.add(
+      getWatch(slide)
+    );
+
+    final List<Watch> previous;
+    synchronized (this) {
+      previous = mPrefetched;
+      mPrefetched = watches;
+    }
+    for (Watch w : previous) if (!watches.contains(w)) w.setKeepScale(0);
+
+    int order = 0;
+    for (Watch w : watches) {
+      w.setKeepScale(scale);
+      if (w.find(scale) == null) schedule(
+        w,
+        scale,
+        PRIORITY_PREFETCH + order,
+        null
+      );
+      order++;
+    }
+  }
+
+  /** Drop all images, and stop keeping any slides rendered */
+  public void clear() {
+    prefetch(java.util.Collections.EMPTY_LIST, 0);
+    mCache.clear();
+  }
+
+  /** @return the number of images rendered so far */
+  long getRenderCount() {
+    return mRenders.get();
+  }
+
+  /** @return bytes of image data currently held */
+  long getByteSize() {
+    return mCache.getByteSize();
+  }
+
+  /** must be called on the AWT thread */
+  private static Raster render(LWComponent slide, double scale, long generation) {
+    final Rectangle2D.Float bounds = slide.getImageBounds();
+    final int width = (int) Math.ceil(bounds.width * scale);
+    final int height = (int) Math.ceil(bounds.height * scale);
+
+    if (
+      width <= 0 || height <= 0 || width > MaxDimension || height > MaxDimension
+    ) {
+      if (DEBUG.IMAGE) Log.debug(
+        "not rendering " + slide + " at " + width + "x" + height
+      );
+      return null;
+    }
+
+    final long start = DEBUG.PERF ? System.nanoTime() : 0;
+    final BufferedImage image = new BufferedImage(
+      width,
+      height,
+      BufferedImage.TYPE_INT_ARGB_PRE
+    );
+    final Graphics2D g = image.createGraphics();
+    Rendering.set(Boolean.TRUE);
+    try {
+      // draw exactly as a presentation viewer focused on the slide would
+      final DrawContext dc = new DrawContext(
+        g,
+        scale,
+        (float) (-bounds.x * scale),
+        (float) (-bounds.y * scale),
+        null,
+        slide,
+        false
+      );
+      dc.setInteractiveQuality();
+      dc.setInteractive(false);
+      dc.setPresenting(true);
+      dc.setDrawPathways(false);
+      dc.setClipOptimized(false);
+      dc.setMasterClip(bounds);
+      slide.draw(dc);
+    } catch (Throwable t) {
+      // don't take the AWT thread down over a thumbnail: the slide will be drawn
+      // normally instead, and re-requested as needed
+      if (DEBUG.Enabled) Log.warn("rendering " + slide, t); else Log.warn(
+        "rendering " + slide + ": " + t
+      );
+      return null;
+    } finally {
+      Rendering.remove();
+      g.dispose();
+    }
+
+    if (DEBUG.PERF) Log.debug(
+      String.format(
+        "rendered %s %dx%d in %.1fms",
+        slide,
+        width,
+        height,
+        (System.nanoTime() - start) / 1000000.0
+      )
+    );
+
+    return new Raster(image, bounds, scale, generation);
+  }
+
+  @Override
+  public String toString() {
+    return "SlideRenderCache[" + mRenders.get() + " renders; " + mCache + "]";
+  }
+
+  /**
+   * An icon that shows a slide thumbnail once it's been rendered, and the given
+   * fallback icon until then.  The slide is set before each paint, so one of
+   * these can serve, e.g., every row of a table.
+   */
+  public static class Thumbnail implements Icon {
+
+    private final int width, height;
+    private LWComponent slide;
+    private Icon fallback;
+
+    public Thumbnail(int width, int height) {
+      this.width = width;
+      this.height = height;
+    }
+
+    public void setSlide(LWComponent slide, Icon fallback) {
+      this.slide = slide;
+      this.fallback = fallback;
+    }
+
+    public int getIconWidth() {
+      return width;
+    }
+
+    public int getIconHeight() {
+      return height;
+    }
+
+    public void paintIcon(Component c, Graphics g, int x, int y) {
+      final LWComponent s = slide;
+      if (s != null) {
+        final Rectangle2D.Float bounds = s.getImageBounds();
+        final double scale = Math.min(
+          width / bounds.width,
+          height / bounds.height
+        );
+        final Graphics2D g2 = (Graphics2D) g.create();
+        try {
+          g2.translate(
+            x + (width - bounds.width * scale) / 2,
+            y + (height - bounds.height * scale) / 2
+          );
+          g2.scale(scale, scale);
+          g2.translate(-bounds.x, -bounds.y);
+          // a table or list cell renderer isn't itself ever repainted: it's parent is
+          final Component requester = c != null &&
+            c.getParent() instanceof javax.swing.CellRendererPane
+            ? c.getParent().getParent()
+            : c;
+          if (getDefault().draw(g2, s, requester)) return;
+        } finally {
+          g2.dispose();
+        }
+      }
+      if (fallback != null) fallback.paintIcon(c, g, x, y);
+    }
+  }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+import tufts.Util;
+
+/**
+ * A quadtree over the immediate children of an LWContainer, keyed by the map
+ * (paint) bounds of each child and all of it's descendents.  This lets us find
+ * the handful of children under a pick point, or inside a repaint clip region,
+ * without visiting every child in the container, which matters once a layer
+ * holds many thousands of nodes (e.g., data-import maps).
+ *
+ * The index is only ever a fast-reject: every component it returns still goes
+ * through the usual requiresPaint / pick checks, so it's always safe for it to
+ * return too much, but it must never miss anything.  To that end, any child
+ * with pathway entries anywhere in it's subtree (slide icons draw outside of
+ * the component bounds) is always returned.
+ *
+ * Children are flagged as changed as their LWCEvents bubble up through the
+ * container (see LWContainer.broadcastChildEvent), and by the few model changes
+ * that change bounds without issuing an event (e.g., a link recomputing after
+ * an endpoint moved).  Changed children are re-inserted lazily at the next
+ * query.  Any change to the child list itself causes a full rebuild at the next
+ * query.
+ *
+ * Results are always returned in the z-order of the children (top-most last),
+ * just as LWContainer.getChildren() would be.
+ */
+public final class SpatialIndex {
+
+  private static final org.apache.log4j.Logger Log =
+    org.apache.log4j.Logger.getLogger(SpatialIndex.class);
+
+  /** containers with fewer children than this aren't worth indexing */
+  public static final int MinIndexedChildren = 128;
+
+  private static final int MaxNodeItems = 16;
+  private static final int MaxDepth = 16;
+
+  /** how far beyond a point-pick we have to search to be sure we see all close-hits */
+  private static final float PickSlop = 8;
+
+  private static final Comparator<Entry> ChildOrder = new Comparator<Entry>() {
+    public int compare(Entry e1, Entry e2) {
+      return e1.order - e2.order;
+    }
+  };
+
+  private static final class Entry {
+
+    final LWComponent c;
+    final int order;
+    final Rectangle2D.Float bounds = new Rectangle2D.Float();
+    Quad quad;
+    boolean unbounded;
+    boolean changed;
+
+    Entry(LWComponent c, int order) {
+      this.c = c;
+      this.order = order;
+    }
+  }
+
+  private static final class Quad {
+
+    final float x, y, width, height;
+    final int depth;
+    final List<Entry> items = new ArrayList(4);
+    Quad[] kids;
+
+    Quad(float x, float y, float width, float height, int depth) {
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.height = height;
+      this.depth = depth;
+    }
+
+    boolean contains(Rectangle2D.Float r) {
+      return (
+        r.x >= x &&
+        r.y >= y &&
+        r.x + r.width <= x + width &&
+        r.y + r.height <= y + height
+      );
+    }
+
+    boolean intersects(Rectangle2D r) {
+      return overlaps(x, y, width, height, r);
+    }
+
+    void split() {
+      final float hw = width / 2;
+      final float hh = height / 2;
+      final int d = depth + 1;
+      kids =
+        new Quad[] {
+          new Quad(x, y, hw, hh, d),
+          new Quad(x + hw, y, hw, hh, d),
+          new Quad(x, y + hh, hw, hh, d),
+          new Quad(x + hw, y + hh, hw, hh, d),
+        };
+      final List<Entry> all = new ArrayList(items);
+      items.clear();
+      for (Entry e : all) insert(e);
+    }
+
+    void insert(Entry e) {
+      if (kids == null && items.size() >= MaxNodeItems && depth < MaxDepth) {
+        split();
+      }
+      if (kids != null) {
+        for (Quad q : kids) {
+          if (q.contains(e.bounds)) {
+            q.insert(e);
+            return;
+          }
+        }
+      }
+      items.add(e);
+      e.quad = this;
+    }
+
+    void collect(Rectangle2D r, List<Entry> hits) {
+      if (!intersects(r)) return;
+      for (Entry e : items) {
+        if (
+          overlaps(e.bounds.x, e.bounds.y, e.bounds.width, e.bounds.height, r)
+        ) {
+          hits.add(e);
+        }
+      }
+      if (kids != null) for (Quad q : kids) q.collect(r, hits);
+    }
+  }
+
+  /** inclusive overlap test: unlike Rectangle2D.intersects, zero width or height bounds (e.g., straight links) can still hit */
+  private static boolean overlaps(
+    float x,
+    float y,
+    float width,
+    float height,
+    Rectangle2D r
+  ) {
+    return (
+      x <= r.getMaxX() &&
+      x + width >= r.getX() &&
+      y <= r.getMaxY() &&
+      y + height >= r.getY()
+    );
+  }
+
+  private final LWContainer container;
+  private final Map<LWComponent, Entry> mEntries = new IdentityHashMap();
+  private final List<Entry> mUnbounded = new ArrayList();
+  private final List<Entry> mChanged = new ArrayList();
+
+  private Quad mRoot;
+  private List<LWComponent> mIndexedList;
+  private int mIndexedSize;
+  private boolean mInvalid = true;
+
+  SpatialIndex(LWContainer container) {
+    this.container = container;
+  }
+
+  /** Force a full rebuild at the next query -- e.g., the child list has changed */
+  synchronized void invalidate() {
+    mInvalid = true;
+  }
+
+  /** Note any descendents of the container involved in the given event as possibly having new bounds */
+  synchronized void childEvent(LWCEvent e) {
+    if (mInvalid) return;
+    if (e.component != null) markChanged(e.component); else if (
+      e.getComponents() != null
+    ) {
+      for (LWComponent c : e.getComponents()) markChanged(c);
+    }
+    if (e.source instanceof LWComponent && e.source != e.component) {
+      markChanged((LWComponent) e.source);
+    }
+  }
+
+  /** @param descendent - any descendent of the container whose bounds may have changed */
+  synchronized void markChanged(LWComponent descendent) {
+    if (mInvalid) return;
+
+    LWComponent child = descendent;
+    while (child != null && child.getParent() != container) {
+      child = child.getParent();
+    }
+    if (child == null) {
+      // no longer (or not yet) one of our descendents: any child list
+      // change will be handled via invalidate
+      return;
+    }
+
+    final Entry entry = mEntries.get(child);
+    if (entry == null) {
+      mInvalid = true;
+    } else if (!entry.changed) {
+      entry.changed = true;
+      mChanged.add(entry);
+    }
+  }
+
+  /**
+   * @return the region to search for any pick in the given PickContext.  For point
+   * picks, this includes enough slop around the point to catch any close-hits.
+   */
+  static Rectangle2D pickRegion(PickContext pc) {
+    if (pc.isRegionPick()) {
+      return new Rectangle2D.Float(pc.x, pc.y, pc.width, pc.height);
+    } else {
+      // twice the maximum close-enough distance used in LWTraversal.PointPick
+      final float slop = 2 * (pc.zoom < 1 ? PickSlop / pc.zoom : PickSlop);
+      return new Rectangle2D.Float(
+        pc.x - slop,
+        pc.y - slop,
+        slop * 2,
+        slop * 2
+      );
+    }
+  }
+
+  /**
+   * @return the children of the container that may intersect the given map region, in
+   * child (z) order.  This will always include any children with slide icons.
+   */
+  synchronized List<LWComponent> query(Rectangle2D mapRegion) {
+    refresh();
+
+    final List<Entry> hits = new ArrayList(mUnbounded);
+    if (mRoot != null) mRoot.collect(mapRegion, hits);
+    Collections.sort(hits, ChildOrder);
+
+    final List<LWComponent> found = new ArrayList(hits.size());
+    for (Entry e : hits) found.add(e.c);
+
+    if (DEBUG.PICK && DEBUG.META) Log.debug(
+      container +
+      "; query " +
+      Util.fmt(mapRegion) +
+      " found " +
+      found.size() +
+      " of " +
+      mEntries.size()
+    );
+
+    return found;
+  }
+
+  private void refresh() {
+    final List<LWComponent> children = container.getChildren();
+
+    if (
+      mInvalid || children != mIndexedList || children.size() != mIndexedSize
+    ) {
+      rebuild(children);
+      return;
+    }
+
+    if (mChanged.isEmpty()) return;
+
+    for (Entry e : mChanged) {
+      e.changed = false;
+      if (e.unbounded) mUnbounded.remove(e); else if (
+        e.quad != null
+      ) e.quad.items.remove(e);
+      e.quad = null;
+      computeBounds(e);
+      if (e.unbounded) {
+        mUnbounded.add(e);
+      } else if (mRoot.contains(e.bounds)) {
+        mRoot.insert(e);
+      } else {
+        // it's moved outside the space we've currently divided up
+        mInvalid = true;
+        break;
+      }
+    }
+    mChanged.clear();
+
+    if (mInvalid) rebuild(children);
+  }
+
+  private void rebuild(List<LWComponent> children) {
+    final long start = DEBUG.PERF ? System.nanoTime() : 0;
+
+    mEntries.clear();
+    mUnbounded.clear();
+    mChanged.clear();
+
+    final List<Entry> bounded = new ArrayList(children.size());
+    final Rectangle2D.Float extent = new Rectangle2D.Float();
+    int order = 0;
+    for (LWComponent c : children) {
+      final Entry e = new Entry(c, order++);
+      computeBounds(e);
+      mEntries.put(c, e);
+      if (e.unbounded) {
+        mUnbounded.add(e);
+      } else {
+        if (bounded.isEmpty()) extent.setRect(e.bounds); else extent.add(
+          e.bounds
+        );
+        bounded.add(e);
+      }
+    }
+
+    // leave plenty of room around the current contents so that most
+    // moves don't take anything outside the root
+    final float padX = Math.max(extent.width / 2, 512);
+    final float padY = Math.max(extent.height / 2, 512);
+    mRoot =
+      new Quad(
+        extent.x - padX,
+        extent.y - padY,
+        extent.width + padX * 2,
+        extent.height + padY * 2,
+        0
+      );
+    for (Entry e : bounded) mRoot.insert(e);
+
+    mIndexedList = children;
+    mIndexedSize = children.size();
+    mInvalid = false;
+
+    if (DEBUG.PERF) Log.debug(
+      String.format(
+        "%s; rebuilt index of %d children (%d unbounded) in %.1fms",
+        container,
+        mIndexedSize,
+        mUnbounded.size(),
+        (System.nanoTime() - start) / 1000000.0
+      )
+    );
+  }
+
+  private static void computeBounds(Entry e) {
+    e.unbounded = false;
+    e.bounds.setRect(e.c.getPaintBounds());
+    addDescendentBounds(e, e.c);
+
+    final Rectangle2D.Float b = e.bounds;
+    if (
+      Float.isNaN(b.x) ||
+      Float.isNaN(b.y) ||
+      Float.isNaN(b.width) ||
+      Float.isNaN(b.height) ||
+      Float.isInfinite(b.width) ||
+      Float.isInfinite(b.height) ||
+      b.width < 0 ||
+      b.height < 0
+    ) {
+      // don't trust it: always include it
+      e.unbounded = true;
+    }
+  }
+
+  private static void addDescendentBounds(Entry e, LWComponent c) {
+    if (c.hasEntries()) {
+      // slide icons may draw anywhere
+      e.unbounded = true;
+      return;
+    }
+    if (!c.hasChildren()) return;
+
+    for (LWComponent child : c.getChildren()) {
+      e.bounds.add(child.getPaintBounds());
+      addDescendentBounds(e, child);
+      if (e.unbounded) return;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return (
+      "SpatialIndex[" +
+      container +
+      " n=" +
+      mEntries.size() +
+      " unbounded=" +
+      mUnbounded.size() +
+      "]"
+    );
+  }
+}
@@ -77,6 +77,10 @@ import tufts.vue.gui.TextRow;
  * (getParent() != null) as the AWT/Swing tree is dealing with that
  * while it's in its activated edit state.
  *
+ * Labels on the map are now measured and painted by a TextLabel, and a TextBox
+ * is only created for the "edit" mode: LWComponent.getLabelBox() creates one
+ * when an edit starts, and it's released again once the edit is complete.
+ *
  * We use a JTextPane because it supports a StyledDocument, which is
  * what we need to be able to set left/center/right aligment for all
  * the paragraphs in the document.  This is a bit heavy weight for our
@@ -472,7 +476,7 @@ public class TextBox
     StyleConstants.setItalic(a, f.isItalic());
     StyleConstants.setBold(a, f.isBold());
     if (c != null) {
-      String s = c.mFontUnderline.get();
+      String s = c.getFontUnderline();
       if (s.equals("underline")) StyleConstants.setUnderline(
         a,
         true
@@ -772,6 +776,7 @@ public class TextBox
       lwc.setLabel0(text, false);
       VUE.getUndoManager().mark();
     }
+    lwc.releaseLabelBox(this);
     lwc.notify(this, LWKey.Repaint);
   }
 
@@ -1078,9 +1083,11 @@ public class TextBox
       // (e.g. the master slide has a black background), and the text box
       // has to fill of it's own for contrast, then temporarily swap
       // the text color to white or black so it can be seen.
-      if (lwc.mTextColor.equals(dc.getBackgroundFill())) {
+      final Color fg = lwc.getTextColor();
+      final Color bg = dc.getBackgroundFill();
+      if (fg == bg || (bg != null && bg.equals(fg))) {
         restoreTextColor = true;
-        if (lwc.mTextColor.brightness() > 0.5) {
+        if (Util.brightness(fg) > 0.5) {
           setDocumentColor(DEBUG.Enabled ? Color.blue : Color.black);
         } else {
           setDocumentColor(DEBUG.Enabled ? Color.green : Color.white);
@@ -1107,7 +1114,7 @@ public class TextBox
 
     if (restoreTextColor) {
       // return document color to black
-      setDocumentColor(lwc.mTextColor.get());
+      setDocumentColor(lwc.getTextColor());
     }
 
     // draw a border for links -- why?
@@ -0,0 +1,495 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.LineMetrics;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The label of an LWComponent as it's measured, laid out and painted on the
+ * map.  This is a lightweight replacement for keeping a TextBox (a JTextPane
+ * with a StyledDocument) around for every label: the text is broken into rows
+ * at newlines, and if the box is narrower than the text, wrapped with a
+ * LineBreakMeasurer, and each row is measured and drawn with a TextLayout.
+ *
+ * The rows computed for a given text, font and wrap width are shared through
+ * a small LRU cache, and a label only holds on to its measured size, so a map
+ * of thousands of nodes doesn't hold thousands of laid out documents.
+ *
+ * A TextBox is only created when the user actually starts editing a label
+ * (see LWComponent.getLabelBox()).  It takes its initial size and location
+ * from this object, and while it's active on the map, we don't paint.
+ *
+ * The measuring API mirrors the part of TextBox that the layout code has
+ * always used, so LWNode and LWLink lay themselves out the same way.
+ *
+ * @see tufts.vue.TextBox
+ */
+
+final class TextLabel implements VueConstants {
+
+  private static final org.apache.log4j.Logger Log =
+    org.apache.log4j.Logger.getLogger(TextLabel.class);
+
+  /** how many laid out texts we keep around for painting */
+  private static final int CacheSize = 2048;
+
+  private static final int BigWordLen = 9;
+
+  private final LWComponent lwc;
+
+  /** the location and size of the box, in the local coordinates of the component */
+  private final Rectangle2D.Float mBounds = new Rectangle2D.Float();
+
+  private String mText = "";
+  private Font mFont;
+  private boolean mUnderline;
+  private boolean mLeftAligned;
+
+  /** the current size of the box, as TextBox.getSize() would report it */
+  private int mWidth;
+  private int mHeight;
+
+  /** the width of the widest unwrapped row, or -1 if the text or font has changed */
+  private float mNaturalWidth = -1;
+  private float mMaxWordWidth = -1;
+
+  TextLabel(LWComponent lwc, String text) {
+    this.lwc = lwc;
+    mBounds.x = Float.NaN; // mark as uninitialized
+    mBounds.y = Float.NaN; // mark as uninitialized
+    setText(text);
+  }
+
+  LWComponent getLWC() {
+    return lwc;
+  }
+
+  String getText() {
+    return mText;
+  }
+
+  /** @return true if a TextBox is currently active on the map editing this label */
+  boolean isEditing() {
+    final TextBox edit = lwc.labelBox;
+    return edit != null && edit.getParent() != null;
+  }
+
+  void setText(String text) {
+    if (text == null) text = "";
+    if (DEBUG.TEXT) out("setText[" + text + "]");
+    mText = text;
+    copyStyle(lwc);
+  }
+
+  /** pick up the font & alignment of the given component, and size the box to fit the text */
+  void copyStyle(LWComponent c) {
+    mFont = c.getFont();
+    if (mFont == null) mFont = FONT_DEFAULT;
+    mUnderline = "underline".equals(c.getFontUnderline());
+    mLeftAligned = c instanceof LWNode && ((LWNode) c).isTextNode();
+    mNaturalWidth = -1;
+    mMaxWordWidth = -1;
+    // TextBox has always sized itself to it's preferred size whenever its text
+    // or style changed: we start over from the unwrapped width.
+    mWidth = 0;
+    setSize(getPreferredSize());
+  }
+
+  //------------------------------------------------------------------
+  // Measurement
+  //------------------------------------------------------------------
+
+  /**
+   * @return the width of the widest row, and the height of all the rows
+   * wrapped to the current width of the box, as a JTextPane would report it
+   * (which includes a pixel of width for the caret).
+   */
+  Dimension getPreferredSize() {
+    final Rows rows = getRows(wrapWidth());
+    return new Dimension(
+      (int) Math.ceil(getNaturalWidth()) + 1,
+      (int) Math.ceil(rows.height)
+    );
+  }
+
+  /** @return the width of the widest word in the text, or a rough figure for very long text */
+  float getMaxWordWidth() {
+    if (mMaxWordWidth < 0) mMaxWordWidth = maxWordWidth(mFont, mText);
+    return mMaxWordWidth;
+  }
+
+  float getMaxCharWidth() {
+    return (float) mFont.getMaxCharBounds(DefaultFontContext).getWidth();
+  }
+
+  private float getNaturalWidth() {
+    if (mNaturalWidth < 0) mNaturalWidth = getRows(0).width;
+    return mNaturalWidth;
+  }
+
+  /** @return the width to wrap the text at, or 0 if the box is wide enough to need no wrapping */
+  private int wrapWidth() {
+    if (mWidth > 0 && mWidth - 1 < getNaturalWidth()) return mWidth - 1; else return 0;
+  }
+
+  private Rows getRows(int wrapWidth) {
+    return Rows.get(mText, mFont, mUnderline, wrapWidth);
+  }
+
+  private float maxWordWidth(Font font, String text) {
+    final float maxCharWidth = getMaxCharWidth();
+    if (text.length() == 0) return maxCharWidth;
+    if (text.length() > 512) return maxCharWidth * BigWordLen; // provide a rough figure if string is long
+
+    float maxWidth = 0;
+    for (String word : text.split("[\\s.,]+")) {
+      if (word.length() == 0) continue;
+      final float w = (float) font
+        .getStringBounds(word, DefaultFontContext)
+        .getWidth();
+      if (w > maxWidth) maxWidth = w;
+    }
+    if (text.indexOf(' ') < 0 && text.indexOf('\n') < 0) return maxWidth; // no spaces: it's all one word
+    return Math.min(maxWidth, maxCharWidth * BigWordLen);
+  }
+
+  //------------------------------------------------------------------
+  // Size & location
+  //------------------------------------------------------------------
+
+  Dimension getSize() {
+    return new Dimension(mWidth, mHeight);
+  }
+
+  int getWidth() {
+    return mWidth;
+  }
+
+  int getHeight() {
+    return mHeight;
+  }
+
+  void setSize(Size s) {
+    setSize(s.dim());
+  }
+
+  void setSize(float w, float h) {
+    setSize(new Dimension((int) w, (int) h));
+  }
+
+  void setSize(Dimension s) {
+    if (DEBUG.TEXT) out("setSize " + s.width + "x" + s.height);
+    mWidth = s.width;
+    mHeight = s.height;
+    mBounds.width = s.width;
+    mBounds.height = s.height;
+  }
+
+  /**
+   * Set the size to the given size, increasing or decreasing height as
+   * needed to provide a fit around our text at that width.
+   */
+  void setSizeFlexHeight(Size newSize) {
+    setSize(newSize);
+    setSize(new Dimension(mWidth, getPreferredSize().height));
+  }
+
+  Rectangle2D getBoxBounds() {
+    return mBounds;
+  }
+
+  boolean boxContains(float x, float y) {
+    return (
+      x >= mBounds.x &&
+      y >= mBounds.y &&
+      x <= mBounds.x + mBounds.width &&
+      y <= mBounds.y + mBounds.height
+    );
+  }
+
+  boolean boxIntersects(Rectangle2D rect) {
+    return rect.intersects(mBounds);
+  }
+
+  void setBoxLocation(float x, float y) {
+    mBounds.x = x;
+    mBounds.y = y;
+  }
+
+  void setBoxLocation(Point2D p) {
+    setBoxLocation((float) p.getX(), (float) p.getY());
+  }
+
+  void setBoxCenter(float x, float y) {
+    setBoxLocation(x - getBoxWidth() / 2, y - getBoxHeight() / 2);
+  }
+
+  Point2D.Float getBoxPoint() {
+    return new Point2D.Float(mBounds.x, mBounds.y);
+  }
+
+  float getBoxWidth() {
+    return mBounds.width;
+  }
+
+  float getBoxHeight() {
+    return mBounds.height;
+  }
+
+  float getBoxX() {
+    return mBounds.x;
+  }
+
+  float getBoxY() {
+    return mBounds.y;
+  }
+
+  //------------------------------------------------------------------
+  // Painting
+  //------------------------------------------------------------------
+
+  /** draw the label at 0,0 */
+  void draw(DrawContext dc) {
+    draw(dc, null);
+  }
+
+  /** draw the label at 0,0, first filling the box with the given color if it's non-null */
+  void draw(DrawContext dc, Color fill) {
+    final Graphics2D g = dc.g;
+
+    if (fill != null) {
+      g.setColor(fill);
+      g.fillRect(0, 0, mWidth, mHeight);
+    }
+
+    final Color lwcTextColor = lwc.getTextColor();
+    Color textColor = lwcTextColor;
+    if (textColor == null) textColor = Color.black;
+    if (dc.isPresenting() && lwc.isTransparent()) {
+      // if the text color equals the background color when in a presentation
+      // (e.g. the master slide has a black background), and the text box
+      // has to fill of it's own for contrast, then temporarily swap
+      // the text color to white or black so it can be seen.
+      final Color bg = dc.getBackgroundFill();
+      if (lwcTextColor == bg || (bg != null && bg.equals(lwcTextColor))) {
+        if (tufts.Util.brightness(lwcTextColor) > 0.5) textColor =
+          DEBUG.Enabled ? Color.blue : Color.black; else textColor =
+          DEBUG.Enabled ? Color.green : Color.white;
+      }
+    }
+    g.setColor(textColor);
+
+    final Rows rows = getRows(wrapWidth());
+    float y = 0;
+    for (int i = 0; i < rows.layouts.length; i++) {
+      final TextLayout row = rows.layouts[i];
+      y += rows.ascents[i];
+      if (row != null) {
+        final float x = mLeftAligned ? 0 : (mWidth - row.getAdvance()) / 2;
+        row.draw(g, x, y);
+      }
+      y += rows.heights[i] - rows.ascents[i];
+    }
+
+    if (DEBUG.BOXES) {
+      final Dimension s = getPreferredSize();
+      g.setColor(Color.red);
+      dc.setAbsoluteStroke(0.5);
+      g.drawRect(0, 0, s.width, s.height);
+      g.setColor(Color.blue);
+      g.drawRect(0, 0, mWidth, mHeight);
+    }
+  }
+
+  //------------------------------------------------------------------
+  // Laid out rows, shared through an LRU cache
+  //------------------------------------------------------------------
+
+  /** the rows of a laid out text: immutable once computed */
+  static final class Rows {
+
+    /** the layout for each row, or null for an empty row */
+    final TextLayout[] layouts;
+    final float[] ascents;
+    final float[] heights;
+    /** the advance of the widest row */
+    final float width;
+    /** the sum of the row heights */
+    final float height;
+
+    private static final Map<Key, Rows> Cache = new LinkedHashMap<Key, Rows>(
+      256,
+      0.75f,
+      true
+    ) {
+      protected boolean removeEldestEntry(Map.Entry<Key, Rows> eldest) {
+        return size() > CacheSize;
+      }
+    };
+
+    private static int hits;
+    private static int misses;
+
+    /** @param wrapWidth the width to wrap the text at, or 0 to break only at newlines */
+    static Rows get(String text, Font font, boolean underline, int wrapWidth) {
+      final Key key = new Key(text, font, underline, wrapWidth);
+      synchronized (Cache) {
+        final Rows rows = Cache.get(key);
+        if (rows != null) {
+          hits++;
+          return rows;
+        }
+        misses++;
+      }
+      final Rows rows = new Rows(text, font, underline, wrapWidth);
+      synchronized (Cache) {
+        Cache.put(key, rows);
+      }
+      return rows;
+    }
+
+    static String getCacheReport() {
+      synchronized (Cache) {
+        return (
+          "TextLabel rows: " +
+          Cache.size() +
+          " cached, " +
+          hits +
+          " hits, " +
+          misses +
+          " misses"
+        );
+      }
+    }
+
+    private Rows(String text, Font font, boolean underline, int wrapWidth) {
+      final FontRenderContext frc = DefaultFontContext;
+      final LineMetrics metrics = font.getLineMetrics("Xg", frc);
+      final List<TextLayout> rows = new ArrayList<TextLayout>();
+
+      // a trailing newline starts an empty last row, as it does in a text document
+      for (String para : text.split("\n", -1)) {
+        if (para.length() == 0) {
+          rows.add(null);
+          continue;
+        }
+        final AttributedString as = new AttributedString(para);
+        as.addAttribute(TextAttribute.FONT, font);
+        if (underline) as.addAttribute(
+          TextAttribute.UNDERLINE,
+          TextAttribute.UNDERLINE_ON
+        );
+        if (wrapWidth <= 0) {
+          rows.add(new TextLayout(as.getIterator(), frc));
+        } else {
+          final LineBreakMeasurer measurer = new LineBreakMeasurer(
+            as.getIterator(),
+            frc
+          );
+          while (measurer.getPosition() < para.length()) rows.add(
+            measurer.nextLayout(wrapWidth)
+          );
+        }
+      }
+
+      final int count = rows.size();
+      layouts = rows.toArray(new TextLayout[count]);
+      ascents = new float[count];
+      heights = new float[count];
+      float maxWidth = 0;
+      float total = 0;
+      for (int i = 0; i < count; i++) {
+        final TextLayout row = layouts[i];
+        final float ascent, descent, leading;
+        if (row == null) {
+          ascent = metrics.getAscent();
+          descent = metrics.getDescent();
+          leading = metrics.getLeading();
+        } else {
+          ascent = row.getAscent();
+          descent = row.getDescent();
+          leading = row.getLeading();
+          if (row.getAdvance() > maxWidth) maxWidth = row.getAdvance();
+        }
+        // round each up to whole pixels, as FontMetrics (and so a text document) does
+        ascents[i] = (float) Math.ceil(ascent);
+        heights[i] =
+          ascents[i] + (float) Math.ceil(descent) + (float) Math.ceil(leading);
+        total += heights[i];
+      }
+      this.width = maxWidth;
+      this.height = total;
+    }
+  }
+
+  private static final class Key {
+
+    final String text;
+    final Font font;
+    final boolean underline;
+    final int wrapWidth;
+    final int hash;
+
+    Key(String text, Font font, boolean underline, int wrapWidth) {
+      this.text = text;
+      this.font = font;
+      this.underline = underline;
+      this.wrapWidth = wrapWidth;
+      this.hash =
+        ((text.hashCode() * 31 + font.hashCode()) * 31 + wrapWidth) * 2 +
+        (underline ? 1 : 0);
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      final Key k = (Key) o;
+      return (
+        hash == k.hash &&
+        wrapWidth == k.wrapWidth &&
+        underline == k.underline &&
+        text.equals(k.text) &&
+        font.equals(k.font)
+      );
+    }
+  }
+
+  private void out(String s) {
+    Log.debug(this + ": " + s);
+  }
+
+  public String toString() {
+    return "TextLabel[" + lwc + "]";
+  }
+}
@@ -0,0 +1,590 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.*;
+
+/**
+ * Scrapes HTTP & HTML meta-data (content type, length, title) for URL's
+ * on a small pool of background threads.  Scans that will update a label
+ * run before those that only fill in properties, no more than a few
+ * connections are open to any one host at a time, concurrent requests for
+ * the same URL share a single connection, and results are remembered in a
+ * persistent cache for a while, so dropping the same bookmarks again
+ * doesn't go back to the network.
+ *
+ * @see URLResource#scanForMetaDataAsync
+ */
+final class URLMetaDataScanner {
+
+  private static final org.apache.log4j.Logger Log =
+    org.apache.log4j.Logger.getLogger(URLMetaDataScanner.class);
+
+  /** receives the results of a scan: called on a scanner thread, or in the requesting thread for a cache hit */
+  interface Callback {
+    /** @param metaData the scraped meta-data, or null if the scan failed */
+    void scanned(URL url, Properties metaData);
+  }
+
+  private static final int THREADS = 4;
+  private static final int PER_HOST = 2;
+  private static final long TTL = 7L * 24 * 60 * 60 * 1000; // one week
+  private static final int MAX_CACHED = 4096;
+  private static final int MAX_SEARCH_BYTES = 2048;
+  private static final int TIMEOUT = 15 * 1000;
+
+  private static final int CACHE_VERSION = 1;
+
+  private static URLMetaDataScanner Default;
+
+  static synchronized URLMetaDataScanner getDefault() {
+    if (Default == null) {
+      File cacheFile = null;
+      try {
+        cacheFile = new File(VueUtil.getDefaultUserFolder(), "url-metadata.cache");
+      } catch (Throwable t) {
+        Log.warn("no user folder; url meta-data won't be cached: " + t);
+      }
+      Default = new URLMetaDataScanner(THREADS, PER_HOST, TTL, cacheFile);
+    }
+    return Default;
+  }
+
+  /** a pending scan of a single URL, and everyone waiting on it */
+  private final class Request implements Runnable, Comparable<Request> {
+
+    final URL url;
+    final String key;
+    final String host;
+    final long sequence = Sequence.getAndIncrement();
+    final List<Callback> callbacks = new ArrayList(1);
+    boolean urgent;
+
+    Request(URL url, String key, boolean urgent) {
+      this.url = url;
+      this.key = key;
+      this.host = hostKey(url);
+      this.urgent = urgent;
+    }
+
+    /** urgent requests first, then in the order requested */
+    public int compareTo(Request other) {
+      if (urgent != other.urgent) return urgent ? -1 : 1;
+      return sequence < other.sequence ? -1 : sequence == other.sequence ? 0 : 1;
+    }
+
+    public void run() {
+      Properties metaData = null;
+      try {
+        metaData = scrape(url);
+      } catch (Throwable t) {
+        Log.info(url + ": meta-data extraction failed: " + t);
+        if (DEBUG.Enabled) tufts.Util.printStackTrace(t, url.toString());
+      }
+      finished(this, metaData);
+    }
+
+    public String toString() {
+      return "Request[" + key + (urgent ? " urgent" : "") + "]";
+    }
+  }
+
+  /** per-host bookkeeping: requests waiting for one of the host's slots */
+  private static final class Host {
+
+    int active;
+    final PriorityQueue<Request> waiting = new PriorityQueue();
+  }
+
+  /** a cached result */
+  private static final class Entry {
+
+    final long time;
+    final Properties metaData;
+
+    Entry(long time, Properties metaData) {
+      this.time = time;
+      this.metaData = metaData;
+    }
+  }
+
+  private static final AtomicLong Sequence = new AtomicLong();
+
+  private final ThreadPoolExecutor mExecutor;
+  private final int mPerHost;
+  private final long mTTL;
+  private final File mCacheFile;
+
+  /** guards mHosts & mPending */
+  private final Object mLock = new Object();
+  private final Map<String, Host> mHosts = new HashMap();
+  private final Map<String, Request> mPending = new HashMap();
+
+  /** guarded by itself: most recently used last */
+  private final Map<String, Entry> mCache = new LinkedHashMap(16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry eldest) {
+      return size() > MAX_CACHED;
+    }
+  };
+
+  private final ExecutorService mCacheWriter;
+  private boolean mSavePending;
+
+  private final AtomicInteger mScrapeCount = new AtomicInteger();
+
+  URLMetaDataScanner(int threads, int perHost, long ttl, File cacheFile) {
+    final ThreadFactory threadFactory = new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      public Thread newThread(Runnable r) {
+        final Thread it = new Thread(
+          r,
+          "VUE-URL-MetaData-" + count.incrementAndGet()
+        );
+        it.setDaemon(true);
+        it.setPriority(Thread.NORM_PRIORITY - 1);
+        return it;
+      }
+    };
+    // core == max: a ThreadPoolExecutor only grows past the core size when
+    // its queue is full, which an unbounded priority queue never is
+    mExecutor =
+      new ThreadPoolExecutor(
+        threads,
+        threads,
+        30,
+        TimeUnit.SECONDS,
+        new PriorityBlockingQueue<Runnable>(),
+        threadFactory
+      );
+    mExecutor.allowCoreThreadTimeOut(true);
+    mPerHost = perHost;
+    mTTL = ttl;
+    mCacheFile = cacheFile;
+    mCacheWriter = cacheFile == null
+      ? null
+      : Executors.newSingleThreadExecutor(
+        new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            final Thread it = new Thread(r, "VUE-URL-MetaData-Cache");
+            it.setDaemon(true);
+            it.setPriority(Thread.NORM_PRIORITY - 1);
+            return it;
+          }
+        }
+      );
+    if (cacheFile != null && cacheFile.isFile()) load();
+  }
+
+  /**
+   * Request the meta-data for the given URL.  If a fresh result is cached,
+   * the callback is run immediately in the calling thread, otherwise it's
+   * run on a scanner thread once the scan completes.
+   *
+   * @param urgent if true, this request will be run before any non-urgent
+   * requests still waiting
+   */
+  void scan(URL url, boolean urgent, Callback callback) {
+    final String key = url.toString();
+    final Properties cached = getCached(key);
+    if (cached != null) {
+      if (DEBUG.Enabled) Log.debug("cache hit: " + key);
+      callback.scanned(url, cached);
+      return;
+    }
+    synchronized (mLock) {
+      Request r = mPending.get(key);
+      if (r != null) {
+        if (DEBUG.Enabled) Log.debug("joining " + r);
+        r.callbacks.add(callback);
+        if (urgent && !r.urgent) {
+          // if it's still waiting on the host, move it up the line
+          final Host host = mHosts.get(r.host);
+          if (host.waiting.remove(r)) {
+            r.urgent = true;
+            host.waiting.add(r);
+          }
+        }
+        return;
+      }
+      r = new Request(url, key, urgent);
+      r.callbacks.add(callback);
+      mPending.put(key, r);
+      Host host = mHosts.get(r.host);
+      if (host == null) mHosts.put(r.host, host = new Host());
+      if (host.active < mPerHost) {
+        host.active++;
+        mExecutor.execute(r);
+      } else {
+        host.waiting.add(r);
+      }
+    }
+  }
+
+  private void finished(Request r, Properties metaData) {
+    if (metaData != null) {
+      synchronized (mCache) {
+        mCache.put(r.key, new Entry(System.currentTimeMillis(), metaData));
+      }
+      scheduleSave();
+    }
+
+    final List<Callback> callbacks;
+    synchronized (mLock) {
+      mPending.remove(r.key);
+      callbacks = new ArrayList(r.callbacks);
+      final Host host = mHosts.get(r.host);
+      final Request next = host.waiting.poll();
+      if (next != null) {
+        mExecutor.execute(next);
+      } else if (--host.active == 0) {
+        mHosts.remove(r.host);
+      }
+    }
+
+    for (Callback c : callbacks) {
+      try {
+        c.scanned(r.url, metaData);
+      } catch (Throwable t) {
+        Log.error("meta-data callback " + c + " for " + r.url, t);
+      }
+    }
+  }
+
+  /** @return a copy of the cached meta-data for the given URL if it hasn't expired, otherwise null */
+  private Properties getCached(String key) {
+    synchronized (mCache) {
+      final Entry e = mCache.get(key);
+      if (e == null) return null;
+      if (System.currentTimeMillis() - e.time > mTTL) {
+        mCache.remove(key);
+        return null;
+      }
+      return (Properties) e.metaData.clone();
+    }
+  }
+
+  private static String hostKey(URL url) {
+    final String host = url.getHost();
+    return (
+      (host == null ? "" : host.toLowerCase()) +
+      ':' +
+      (url.getPort() < 0 ? url.getDefaultPort() : url.getPort())
+    );
+  }
+
+  /** @return the number of URL's actually fetched so far */
+  int getScrapeCount() {
+    return mScrapeCount.get();
+  }
+
+  //----------------------------------------------------------------------------
+  // the persistent cache: [version, count, count * (url, time, n, n * (key, value))]
+  //----------------------------------------------------------------------------
+
+  private void scheduleSave() {
+    if (mCacheWriter == null) return;
+    synchronized (mCache) {
+      if (mSavePending) return;
+      mSavePending = true;
+    }
+    mCacheWriter.execute(
+      new Runnable() {
+        public void run() {
+          save();
+        }
+      }
+    );
+  }
+
+  /** @return a future that completes once any pending cache writes are done: for tests */
+  java.util.concurrent.Future flush() {
+    return mCacheWriter.submit(
+      new Runnable() {
+        public void run() {}
+      }
+    );
+  }
+
+  private void save() {
+    final List<Map.Entry<String, Entry>> entries;
+    synchronized (mCache) {
+      mSavePending = false;
+      entries = new ArrayList(mCache.entrySet());
+    }
+    final File tmp = new File(mCacheFile.getPath() + ".tmp");
+    try {
+      final DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tmp))
+      );
+      try {
+        out.writeInt(CACHE_VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, Entry> e : entries) {
+          final Properties p = e.getValue().metaData;
+          out.writeUTF(e.getKey());
+          out.writeLong(e.getValue().time);
+          out.writeInt(p.size());
+          for (String name : p.stringPropertyNames()) {
+            out.writeUTF(name);
+            out.writeUTF(p.getProperty(name));
+          }
+        }
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(mCacheFile)) {
+        mCacheFile.delete();
+        if (!tmp.renameTo(mCacheFile)) throw new IOException(
+          "can't rename " + tmp + " to " + mCacheFile
+        );
+      }
+    } catch (Throwable t) {
+      Log.warn("failed to save " + mCacheFile + ": " + t);
+      tmp.delete();
+    }
+  }
+
+  private void load() {
+    final long now = System.currentTimeMillis();
+    try {
+      final DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(mCacheFile))
+      );
+      try {
+        if (in.readInt() != CACHE_VERSION) {
+          Log.info("ignoring old cache " + mCacheFile);
+          return;
+        }
+        int count = in.readInt();
+        synchronized (mCache) {
+          while (count-- > 0) {
+            final String url = in.readUTF();
+            final long time = in.readLong();
+            final Properties p = new Properties();
+            for (int n = in.readInt(); n > 0; n--) p.setProperty(
+              in.readUTF(),
+              in.readUTF()
+            );
+            if (now - time <= mTTL) mCache.put(url, new Entry(time, p));
+          }
+        }
+      } finally {
+        in.close();
+      }
+      if (DEBUG.Enabled) Log.debug(
+        "loaded " + mCache.size() + " entries from " + mCacheFile
+      );
+    } catch (Throwable t) {
+      Log.warn("failed to load " + mCacheFile + ": " + t);
+    }
+  }
+
+  //----------------------------------------------------------------------------
+  // scraping
+  //----------------------------------------------------------------------------
+
+  // TODO: need to handle <title lang=he> example (is that legal HTML?) --
+  //private static final Pattern HTML_Title = Pattern.compile(".*<\\s*title\\s*>\\s*([^<]+)", // did we need .* at end?
+  // need to ensure there is a space after title or the '>' immediately: don't want to match a tag that was <title-i-am-not> !
+
+  private static final Pattern HTML_Title_Regex = Pattern.compile(
+    ".*<\\s*title[^>]*>\\s*([^<]+)", // hacked for lang=he constructs, but too broad
+    Pattern.MULTILINE | Pattern.DOTALL | Pattern.CASE_INSENSITIVE
+  );
+
+  private static final Pattern Content_Charset_Regex = Pattern.compile(
+    ".*charset\\s*=\\s*([^\">\\s]+)",
+    Pattern.MULTILINE | Pattern.DOTALL | Pattern.CASE_INSENSITIVE
+  );
+
+  private Properties scrape(URL url) throws IOException {
+    if (DEBUG.Enabled) Log.debug("opening connection to " + url);
+    mScrapeCount.incrementAndGet();
+    final URLConnection connection = url.openConnection();
+    connection.setConnectTimeout(TIMEOUT);
+    connection.setReadTimeout(TIMEOUT);
+    return scrapeHTMLmetaData(connection, MAX_SEARCH_BYTES);
+  }
+
+  private static boolean isHTML(URL url, String contentType) {
+    final String s = url.getPath().toLowerCase();
+    if (s.endsWith(".html") || s.endsWith(".htm")) return true;
+    // todo: why .vue files reporting as text/html on MacOSX to content scraper?
+    return (
+      !s.endsWith(".vue") &&
+      contentType != null &&
+      contentType.toLowerCase().startsWith("text/html")
+    );
+  }
+
+  // TODO: break out searching into looking for regex with each chunk of data we get in at least x size (e.g, 256)
+
+  /**
+   * @return the HTTP meta-data (url.contentType, url.contentEncoding,
+   * url.contentLength), and for HTML, the charset, contentEncoding and title
+   */
+  static Properties scrapeHTMLmetaData(
+    URLConnection connection,
+    int maxSearchBytes
+  ) throws IOException {
+    final Properties metaData = new Properties();
+
+    final InputStream byteStream = connection.getInputStream();
+
+    try {
+      if (DEBUG.DND && DEBUG.META) {
+        System.err.println("Getting headers from " + connection);
+        System.err.println("Headers: " + connection.getHeaderFields());
+      }
+
+      // note: be sure to call getContentType and don't rely on getting it from the HeaderFields map,
+      // as sometimes it's set by the OS for a file:/// URL when there are no header fields (no http server)
+      // (actually, this is set by java via a mime type table based on file extension, or a guess based on the stream)
+      final String contentType = connection.getContentType();
+      final String contentEncoding = connection.getContentEncoding();
+      final int contentLength = connection.getContentLength();
+
+      if (DEBUG.DND) System.err.println(
+        "*** contentType [" +
+        contentType +
+        "] contentEncoding [" +
+        contentEncoding +
+        "] contentLength [" +
+        contentLength +
+        "]"
+      );
+
+      if (contentType != null) metaData.setProperty(
+        "url.contentType",
+        contentType
+      );
+      if (contentEncoding != null) metaData.setProperty(
+        "url.contentEncoding",
+        contentEncoding
+      );
+      if (contentLength >= 0) metaData.setProperty(
+        "url.contentLength",
+        Integer.toString(contentLength)
+      );
+
+      if (!isHTML(connection.getURL(), contentType)) { // we only currently handle HTML
+        if (DEBUG.DND) System.err.println(
+          "*** contentType [" + contentType + "] not HTML; skipping title extraction"
+        );
+        return metaData;
+      }
+
+      try {
+        final BufferedInputStream bufStream = new BufferedInputStream(
+          byteStream,
+          maxSearchBytes
+        );
+        bufStream.mark(maxSearchBytes);
+
+        final byte[] byteBuffer = new byte[maxSearchBytes];
+        int bytesRead = 0;
+        int len = 0;
+        // BufferedInputStream still won't read thru a block, so we need to allow
+        // a few reads here to get thru a couple of blocks, so we can get up to
+        // our maxbytes (e.g., a common return chunk count is 1448 bytes, presumably related to the MTU)
+        do {
+          int max = maxSearchBytes - bytesRead;
+          len = bufStream.read(byteBuffer, bytesRead, max);
+          if (len > 0) bytesRead += len; else if (len < 0) break;
+        } while (len > 0 && bytesRead < maxSearchBytes);
+        if (DEBUG.DND) System.out.println("*** Got total chars: " + bytesRead);
+        final String html = new String(byteBuffer, 0, bytesRead);
+        if (DEBUG.DND && DEBUG.META) System.out.println(
+          "*** HTML-STRING[" + html + "]"
+        );
+
+        // first, look for a content encoding, so we can search for and get the title
+        // on a properly encoded character stream
+
+        String charset = null;
+
+        final Matcher cm = Content_Charset_Regex.matcher(html);
+        if (cm.lookingAt()) {
+          charset = cm.group(1);
+          if (DEBUG.DND) System.err.println(
+            "*** found HTML specified charset [" + charset + "]"
+          );
+          metaData.setProperty("charset", charset);
+        }
+
+        if (charset == null && contentEncoding != null) {
+          if (DEBUG.DND) System.err.println(
+            "*** no charset found: using contentEncoding charset " +
+            contentEncoding
+          );
+          charset = contentEncoding;
+        }
+
+        final String decodedHTML;
+
+        if (charset != null) {
+          bufStream.reset();
+          final InputStreamReader decodedStream = new InputStreamReader(
+            bufStream,
+            charset
+          );
+          metaData.setProperty("contentEncoding", decodedStream.getEncoding());
+          final char[] decoded = new char[bytesRead];
+          final int decodedChars = decodedStream.read(decoded);
+          if (DEBUG.DND) System.err.println(
+            "*** " + decodedChars + " characters decoded using " + charset
+          );
+          decodedHTML = new String(decoded, 0, Math.max(decodedChars, 0));
+        } else decodedHTML = html; // we'll just have to go with the default platform charset...
+
+        final Matcher m = HTML_Title_Regex.matcher(decodedHTML);
+        if (m.lookingAt()) {
+          final String title = m.group(1);
+          if (DEBUG.DND) System.err.println("*** found title [" + title + "]");
+          metaData.setProperty("title", title.trim());
+        }
+      } catch (Throwable e) {
+        // keep whatever HTTP meta-data we got
+        Log.info(connection.getURL() + ": scrapeHTMLmetaData: " + e);
+        if (DEBUG.DND) e.printStackTrace();
+      }
+    } finally {
+      // this also needed to be left open till the decodedStream was done, which
+      // although it should never need to read beyond what's already buffered,
+      // some internal java code has checks that make sure the underlying stream
+      // isn't closed, even it it isn't used.
+      byteStream.close();
+    }
+
+    if (DEBUG.DND) System.err.println(
+      "*** scrapeHTMLmetaData returning [" + metaData + "]"
+    );
+    return metaData;
+  }
+}
@@ -21,7 +21,6 @@ import java.awt.Image;
 import java.io.*;
 import java.net.*;
 import java.util.*;
-import java.util.regex.*;
 import tufts.Util;
 import tufts.vue.gui.GUI;
 
@@ -2034,6 +2033,11 @@ public class URLResource extends Resource implements XMLUnmarshalListener {
     scanForMetaDataAsync(c, false);
   }
 
+  /**
+   * Queue a meta-data scan with the shared URLMetaDataScanner, which limits
+   * how many scans run at once and how many connections go to any one host,
+   * and caches the results.  Only http & https URL's are scanned.
+   */
   public void scanForMetaDataAsync(
     final LWComponent c,
     final boolean setLabelFromTitle
@@ -2044,62 +2048,65 @@ public class URLResource extends Resource implements XMLUnmarshalListener {
     // anyway, which if it's a file should come from the CabinetResource
     //return;
     //}
-    new Thread("VUE-URL-MetaData") {
-      public void run() {
-        scanForMetaData(c, setLabelFromTitle);
-      }
-    }
-      .start();
-  }
-
-  void scanForMetaData(final LWComponent c, boolean setLabelFromTitle) {
-    if (true) {
-      //System.out.println("SKIPPING META-DATA SCAN " + this);
-      return;
-    }
-
-    //URL _url = asURL();
-    URL _url = mURL;
+    final URL url = mURL;
 
-    if (_url == null) {
-      if (DEBUG.Enabled) out("couldn't get URL");
+    if (!isScannable(url)) {
+      if (DEBUG.Enabled) out("not scanning for meta-data: " + url);
       return;
     }
 
+    final String initialLabel = c.getLabel();
     final boolean forceTitleToLabel =
       setLabelFromTitle ||
-      c.getLabel() == null ||
-      c.getLabel().equals(mTitle) ||
-      c.getLabel().equals(getSpec());
+      initialLabel == null ||
+      initialLabel.equals(mTitle) ||
+      initialLabel.equals(getSpec());
 
-    try {
-      _scanForMetaData(_url);
-    } catch (Throwable t) {
-      Log.info(_url + ": meta-data extraction failed: " + t);
-      if (DEBUG.Enabled) tufts.Util.printStackTrace(t, _url.toString());
-    }
-
-    if (forceTitleToLabel && getTitle() != null) c.setLabel(getTitle());
+    markAccessAttempt();
 
-    if (DEBUG.Enabled) out("properties " + mProperties);
+    URLMetaDataScanner.getDefault()
+      .scan(
+        url,
+        forceTitleToLabel,
+        new URLMetaDataScanner.Callback() {
+          public void scanned(URL url, final Properties metaData) {
+            if (metaData == null) return;
+            GUI.invokeOnEDT(
+              new Runnable() {
+                public void run() {
+                  applyMetaData(metaData);
+                  // don't clobber a label that was edited while we were scanning
+                  if (
+                    forceTitleToLabel &&
+                    getTitle() != null &&
+                    (
+                      initialLabel == null
+                        ? c.getLabel() == null
+                        : initialLabel.equals(c.getLabel())
+                    )
+                  ) c.setLabel(getTitle());
+                  if (DEBUG.Enabled) out("properties " + mProperties);
+                }
+              }
+            );
+          }
+        }
+      );
   }
 
-  private void _scanForMetaData(URL _url) throws java.io.IOException {
-    if (DEBUG.Enabled) System.out.println(
-      this + " _scanForMetaData: xml props " + mXMLpropertyList
+  private static boolean isScannable(URL url) {
+    return (
+      url != null &&
+      ("http".equals(url.getProtocol()) || "https".equals(url.getProtocol()))
     );
+  }
 
-    // TODO: split into scrapeHTTPMetaData for content type & size,
-    // and scrapeHTML meta-data for title.  Tho really, we need
-    // at this point to start having a whole pluggable set of content
-    // meta-data scrapers.
-
-    if (DEBUG.Enabled) System.out.println("*** Opening connection to " + _url);
-    markAccessAttempt();
-
-    Properties metaData = scrapeHTMLmetaData(_url.openConnection(), 2048);
-    if (DEBUG.Enabled) System.out.println("*** Got meta-data " + metaData);
+  /** @param metaData as returned by URLMetaDataScanner.scrapeHTMLmetaData */
+  private void applyMetaData(Properties metaData) {
     markAccessSuccess();
+    for (String key : metaData.stringPropertyNames()) {
+      if (!key.equals("title")) setProperty(key, metaData.getProperty(key));
+    }
     String title = metaData.getProperty("title");
     if (title != null && title.length() > 0) {
       setProperty("title", title);
@@ -2107,167 +2114,10 @@ public class URLResource extends Resource implements XMLUnmarshalListener {
       setTitle(title);
     }
     try {
-      setByteSize(Integer.parseInt((String) getProperty("contentLength")));
+      setByteSize(Long.parseLong(metaData.getProperty("url.contentLength")));
     } catch (Exception e) {}
   }
 
-  // TODO: need to handle <title lang=he> example (is that legal HTML?) --
-  //private static final Pattern HTML_Title = Pattern.compile(".*<\\s*title\\s*>\\s*([^<]+)", // did we need .* at end?
-  // need to ensure there is a space after title or the '>' immediately: don't want to match a tag that was <title-i-am-not> !
-
-  private static final Pattern HTML_Title_Regex = Pattern.compile(
-    ".*<\\s*title[^>]*>\\s*([^<]+)", // hacked for lang=he constructs, but too broad
-    Pattern.MULTILINE | Pattern.DOTALL | Pattern.CASE_INSENSITIVE
-  );
-
-  private static final Pattern Content_Charset_Regex = Pattern.compile(
-    ".*charset\\s*=\\s*([^\">\\s]+)",
-    Pattern.MULTILINE | Pattern.DOTALL | Pattern.CASE_INSENSITIVE
-  );
-
-  // TODO: break out searching into looking for regex with each chunk of data we get in at least x size (e.g, 256)
-
-  private Properties scrapeHTMLmetaData(
-    URLConnection connection,
-    int maxSearchBytes
-  ) throws java.io.IOException {
-    Properties metaData = new Properties();
-
-    InputStream byteStream = connection.getInputStream();
-
-    if (DEBUG.DND && DEBUG.META) {
-      System.err.println("Getting headers from " + connection);
-      System.err.println("Headers: " + connection.getHeaderFields());
-    }
-
-    // note: be sure to call getContentType and don't rely on getting it from the HeaderFields map,
-    // as sometimes it's set by the OS for a file:/// URL when there are no header fields (no http server)
-    // (actually, this is set by java via a mime type table based on file extension, or a guess based on the stream)
-    if (DEBUG.DND) System.err.println("*** getting contentType & encoding...");
-    final String contentType = connection.getContentType();
-    final String contentEncoding = connection.getContentEncoding();
-    final int contentLength = connection.getContentLength();
-
-    if (DEBUG.DND) System.err.println("*** contentType [" + contentType + "]");
-    if (DEBUG.DND) System.err.println(
-      "*** contentEncoding [" + contentEncoding + "]"
-    );
-    if (DEBUG.DND) System.err.println(
-      "*** contentLength [" + contentLength + "]"
-    );
-
-    setProperty("url.contentType", contentType);
-    setProperty("url.contentEncoding", contentEncoding);
-    if (contentLength >= 0) setProperty("url.contentLength", contentLength);
-
-    //if (contentType.toLowerCase().startsWith("text/html") == false) {
-    if (!isHTML()) { // we only currently handle HTML
-      if (DEBUG.Enabled) System.err.println(
-        "*** contentType [" +
-        contentType +
-        "] not HTML; skipping title extraction"
-      );
-      return metaData;
-    }
-
-    if (DEBUG.DND) System.err.println("*** scanning for HTML meta-data...");
-
-    try {
-      final BufferedInputStream bufStream = new BufferedInputStream(
-        byteStream,
-        maxSearchBytes
-      );
-      bufStream.mark(maxSearchBytes);
-
-      final byte[] byteBuffer = new byte[maxSearchBytes];
-      int bytesRead = 0;
-      int len = 0;
-      // BufferedInputStream still won't read thru a block, so we need to allow
-      // a few reads here to get thru a couple of blocks, so we can get up to
-      // our maxbytes (e.g., a common return chunk count is 1448 bytes, presumably related to the MTU)
-      do {
-        int max = maxSearchBytes - bytesRead;
-        len = bufStream.read(byteBuffer, bytesRead, max);
-        System.out.println("*** read " + len);
-        if (len > 0) bytesRead += len; else if (len < 0) break;
-      } while (len > 0 && bytesRead < maxSearchBytes);
-      if (DEBUG.DND) System.out.println("*** Got total chars: " + bytesRead);
-      String html = new String(byteBuffer, 0, bytesRead);
-      if (DEBUG.DND && DEBUG.META) System.out.println(
-        "*** HTML-STRING[" + html + "]"
-      );
-
-      // first, look for a content encoding, so we can search for and get the title
-      // on a properly encoded character stream
-
-      String charset = null;
-
-      Matcher cm = Content_Charset_Regex.matcher(html);
-      if (cm.lookingAt()) {
-        charset = cm.group(1);
-        if (DEBUG.DND) System.err.println(
-          "*** found HTML specified charset [" + charset + "]"
-        );
-        setProperty("charset", charset);
-      }
-
-      if (charset == null && contentEncoding != null) {
-        if (DEBUG.DND || true) System.err.println(
-          "*** no charset found: using contentEncoding charset " +
-          contentEncoding
-        );
-        charset = contentEncoding;
-      }
-
-      final String decodedHTML;
-
-      if (charset != null) {
-        bufStream.reset();
-        InputStreamReader decodedStream = new InputStreamReader(
-          bufStream,
-          charset
-        );
-        //InputStreamReader decodedStream = new InputStreamReader(new ByteArrayInputStream(byteBuffer), charset);
-        if (true || DEBUG.DND) System.out.println(
-          "*** decoding bytes into characters with official encoding " +
-          decodedStream.getEncoding()
-        );
-        setProperty("contentEncoding", decodedStream.getEncoding());
-        char[] decoded = new char[bytesRead];
-        int decodedChars = decodedStream.read(decoded);
-        decodedStream.close();
-        if (true || DEBUG.DND) System.err.println(
-          "*** " + decodedChars + " characters decoded using " + charset
-        );
-        decodedHTML = new String(decoded, 0, decodedChars);
-      } else decodedHTML = html; // we'll just have to go with the default platform charset...
-
-      // these needed to be left open till the decodedStream was done, which
-      // although it should never need to read beyond what's already buffered,
-      // some internal java code has checks that make sure the underlying stream
-      // isn't closed, even it it isn't used.
-      byteStream.close();
-      bufStream.close();
-
-      Matcher m = HTML_Title_Regex.matcher(decodedHTML);
-      if (m.lookingAt()) {
-        String title = m.group(1);
-        if (true || DEBUG.DND) System.err.println(
-          "*** found title [" + title + "]"
-        );
-        metaData.put("title", title.trim());
-      }
-    } catch (Throwable e) {
-      System.err.println("scrapeHTMLmetaData: " + e);
-      if (DEBUG.DND) e.printStackTrace();
-    }
-
-    if (DEBUG.DND || DEBUG.Enabled) System.err.println(
-      "*** scrapeHTMLmetaData returning [" + metaData + "]"
-    );
-    return metaData;
-  }
-
   //     private static void dumpBytes(String s) {
   //         try {
   //             dumpBytes(s.getBytes("UTF-8"));
@@ -18,8 +18,10 @@ package tufts.vue;
 import static tufts.Util.*;
 
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Point;
 import java.awt.geom.Point2D;
+import java.io.*;
 import java.util.*;
 import javax.swing.Action;
 import tufts.Util;
@@ -34,6 +36,14 @@ import tufts.Util;
  * stuffed into an un-named Undo action if they attempt an undo while
  * there are unmarked changes.
  *
+ * The history is held to a memory budget (undo.memoryBudget, in MB).
+ * Once the estimated size of all recorded actions exceeds it, older
+ * actions are compacted: runs of the same action on the same properties
+ * are coalesced, actions that are only property changes are spilled to a
+ * log on disk and read back if the user ever undoes that far, and as a
+ * last resort, the oldest actions are dropped.  The most recent actions
+ * are always kept in memory as they are.
+ *
  * @version $Revision: $ / $Date: $ / $Author: sfraize $
  * @author Scott Fraize
  */
@@ -84,6 +94,21 @@ public class UndoManager implements LWComponent.Listener {
 
   private boolean isSuspended = false;
 
+  /** estimated bytes of undo history we'll keep in memory */
+  private static final long DefaultMemoryBudget =
+    VueResources.getInt("undo.memoryBudget", 64) * 1024L * 1024L;
+
+  /** the number of most recent actions never compacted, spilled or dropped */
+  private static final int KeepRecent = 20;
+
+  private long mMemoryBudget = DefaultMemoryBudget;
+
+  /** the on-disk log of spilled actions: created on first use */
+  private UndoSpill mSpill;
+
+  private int mCoalescedCount;
+  private int mDroppedCount;
+
   public UndoManager(LWMap map) {
     mMap = map;
     mCurrentUndo = new UndoAction();
@@ -109,6 +134,13 @@ public class UndoManager implements LWComponent.Listener {
     private boolean sorted = false;
     private List<Thread> attachedThreads;
 
+    /** estimated bytes held by the undoSequence, once marked */
+    private long bytes;
+    /** where this action was written in the spill log, or -1 if it never was */
+    private long spillOffset = -1;
+    /** the size of the undoSequence while it's spilled: it's null until reloaded */
+    private int spilledSize;
+
     UndoAction() {
       undoSequence = new ArrayList();
     }
@@ -126,11 +158,51 @@ public class UndoManager implements LWComponent.Listener {
     }
 
     int changeCount() {
-      return undoSequence.size();
+      return size();
     }
 
     int size() {
-      return undoSequence.size();
+      return undoSequence == null ? spilledSize : undoSequence.size();
+    }
+
+    boolean isSpilled() {
+      return undoSequence == null;
+    }
+
+    /** sort the undoSequence into the order the changes happened, if that's not already been done */
+    void sort() {
+      if (!sorted) {
+        Collections.sort(undoSequence);
+        sorted = true;
+      }
+    }
+
+    /** @return true if every change is a simple property change: no hierarchy changes, no custom Undoable's */
+    boolean isPropertyOnly() {
+      for (Object o : undoSequence) {
+        final UndoItem item = (UndoItem) o;
+        if (
+          item.propKey == LWKey.HierarchyChanging ||
+          item.oldValue instanceof Undoable
+        ) return false;
+      }
+      return true;
+    }
+
+    /** @return true if the other action changed no property on any component that this one didn't */
+    boolean covers(UndoAction other) {
+      final Set<Object> changed = new HashSet();
+      for (Object o : undoSequence) changed.add(((UndoItem) o).changeKey());
+      for (Object o : other.undoSequence) if (
+        !changed.contains(((UndoItem) o).changeKey())
+      ) return false;
+      return true;
+    }
+
+    long estimateBytes() {
+      long total = 64;
+      for (Object o : undoSequence) total += ((UndoItem) o).estimateBytes();
+      return total;
     }
 
     void mark(String name) {
@@ -187,8 +259,7 @@ public class UndoManager implements LWComponent.Listener {
       }
 
       if (!sorted) {
-        Collections.sort(undoSequence);
-        sorted = true;
+        sort();
         if (DEBUG.UNDO) {
           System.out.println(
             "======================================================="
@@ -281,6 +352,7 @@ public class UndoManager implements LWComponent.Listener {
         " from " +
         eventCount +
         " events" +
+        (isSpilled() ? " spilled" : "") +
         "]"
       );
     }
@@ -303,6 +375,38 @@ public class UndoManager implements LWComponent.Listener {
       this.order = order;
     }
 
+    /** @return a key unique to the component & property changed */
+    Object changeKey() {
+      return Arrays.asList(component, propKey);
+    }
+
+    /** a rough guess at a deleted component's size, including its label, style & shape */
+    private static final long DeletedComponentBytes = 2048;
+
+    /**
+     * @return a rough estimate of the memory held on to by this item, including any
+     * deleted components in a saved child list, which only this item keeps alive
+     */
+    long estimateBytes() {
+      long bytes = 48;
+      if (oldValue instanceof String) {
+        bytes += 40 + 2 * ((String) oldValue).length();
+      } else if (oldValue instanceof Collection) {
+        final Collection values = (Collection) oldValue;
+        bytes += 40 + 8 * values.size();
+        for (Object o : values) {
+          if (o instanceof LWComponent && ((LWComponent) o).isDeleted()) {
+            bytes +=
+              DeletedComponentBytes *
+              (1 + ((LWComponent) o).getAllDescendents(LWComponent.ChildKind.ANY).size());
+          }
+        }
+      } else if (oldValue != null) {
+        bytes += 32;
+      }
+      return bytes;
+    }
+
     void undo() {
       if (DEBUG.UNDO) Log.debug("UNDOING: " + this);
       if (propKey == LWKey.HierarchyChanging) {
@@ -695,6 +799,25 @@ public class UndoManager implements LWComponent.Listener {
       return current;
     }
 
+    UndoAction at(int index) {
+      return (UndoAction) get(index);
+    }
+
+    /** remove the given number of actions from the bottom of the list */
+    void dropOldest(int count) {
+      removeRange(0, count);
+      current -= count;
+    }
+
+    /** remove the action at the given index, which must be below the top */
+    void drop(int index) {
+      if (index >= current) throw new IllegalStateException(
+        this + " can't drop " + index
+      );
+      removeRange(index, index + 1);
+      current--;
+    }
+
     private void out(String s) {
       System.out.println("\tUAL[" + name + "] " + s);
     }
@@ -726,6 +849,7 @@ public class UndoManager implements LWComponent.Listener {
   //     }
 
   public void updateGlobalActionLabels() {
+    if (java.awt.GraphicsEnvironment.isHeadless()) return; // no menus to update
     setActionLabel(Actions.Undo, UndoList);
     setActionLabel(Actions.Redo, RedoList);
   }
@@ -784,6 +908,7 @@ public class UndoManager implements LWComponent.Listener {
 
     UndoAction undoAction = UndoList.pop();
     if (DEBUG.UNDO) System.out.println("\n" + this + " undoing " + undoAction);
+    if (undoAction != null && undoAction.isSpilled()) reload(undoAction);
     if (undoAction != null) {
       mRedoCaptured = false;
       try {
@@ -798,7 +923,8 @@ public class UndoManager implements LWComponent.Listener {
     }
     updateGlobalActionLabels();
     // We've undo everything: we can mark the map as having no modifications
-    if (UndoList.peek() == null) mMap.markAsSaved();
+    // (unless some of the history had to be dropped)
+    if (UndoList.peek() == null && mDroppedCount == 0) mMap.markAsSaved();
   }
 
   private void setActionLabel(Action a, UndoActionList undoList) {
@@ -1143,6 +1269,7 @@ public class UndoManager implements LWComponent.Listener {
     if (addUndoable) {
       UndoList.add(collectChangesAsUndoAction(name));
       RedoList.clear();
+      enforceMemoryBudget();
       fireUserActionCompleted();
       updateGlobalActionLabels();
     } else {
@@ -1155,6 +1282,7 @@ public class UndoManager implements LWComponent.Listener {
 
     final UndoAction markedUndo = mCurrentUndo;
     markedUndo.mark(name);
+    markedUndo.bytes = markedUndo.estimateBytes();
     resetMark();
     return markedUndo;
   }
@@ -1172,9 +1300,384 @@ public class UndoManager implements LWComponent.Listener {
     UndoList.clear();
     RedoList.clear();
     mComponentChanges.clear();
+    if (mSpill != null) {
+      mSpill.close();
+      mSpill = null;
+    }
+    mDroppedCount = 0;
     if (VUE.getActiveMap() == mMap) updateGlobalActionLabels();
   }
 
+  //----------------------------------------------------------------------------
+  // memory budget
+  //----------------------------------------------------------------------------
+
+  /** @param bytes the estimated size the in-memory undo history is held to */
+  public synchronized void setMemoryBudget(long bytes) {
+    mMemoryBudget = bytes;
+    enforceMemoryBudget();
+  }
+
+  public synchronized long getMemoryBudget() {
+    return mMemoryBudget;
+  }
+
+  /** @return true if there's anything left to undo */
+  public synchronized boolean hasUndo() {
+    return UndoList.peek() != null;
+  }
+
+  /** @return the estimated bytes held in memory by the undo & redo history */
+  public synchronized long getMemoryUsage() {
+    return inMemoryBytes(UndoList) + inMemoryBytes(RedoList);
+  }
+
+  private static long inMemoryBytes(UndoActionList list) {
+    long total = 0;
+    for (int i = 0; i < list.size(); i++) {
+      final UndoAction action = list.at(i);
+      if (!action.isSpilled()) total += action.bytes;
+    }
+    return total;
+  }
+
+  /** @return the number of undo actions currently spilled to disk */
+  public synchronized int getSpilledCount() {
+    int count = 0;
+    for (int i = 0; i < UndoList.size(); i++) if (
+      UndoList.at(i).isSpilled()
+    ) count++;
+    return count;
+  }
+
+  /** @return the size of the on-disk log of spilled undo actions */
+  public synchronized long getSpilledBytes() {
+    return mSpill == null ? 0 : mSpill.length();
+  }
+
+  /** @return a one line summary of undo memory use, for the log or diagnostics */
+  public synchronized String getMemoryReport() {
+    return (
+      "undo history for " +
+      mMap.getLabel() +
+      ": " +
+      UndoList.size() +
+      " undo & " +
+      RedoList.size() +
+      " redo actions, " +
+      VueUtil.abbrevBytes(getMemoryUsage()) +
+      " of " +
+      VueUtil.abbrevBytes(mMemoryBudget) +
+      " in memory; " +
+      getSpilledCount() +
+      " spilled (" +
+      VueUtil.abbrevBytes(getSpilledBytes()) +
+      " on disk), " +
+      mCoalescedCount +
+      " coalesced, " +
+      mDroppedCount +
+      " dropped"
+    );
+  }
+
+  /**
+   * If the history is over budget, compact the older actions: first coalesce runs of
+   * the same action on the same properties, then spill property-only actions to disk,
+   * oldest first, and if that's still not enough, drop the oldest actions outright.
+   */
+  private synchronized void enforceMemoryBudget() {
+    long usage = getMemoryUsage();
+    if (usage <= mMemoryBudget) return;
+
+    // Coalesce: if the newer of two consecutive actions of the same name only
+    // changed properties the older one also changed, undoing the older one undoes
+    // both: the newer action can simply be dropped.
+    for (int i = UndoList.top() - KeepRecent; i > 0; i--) {
+      final UndoAction older = UndoList.at(i - 1);
+      final UndoAction newer = UndoList.at(i);
+      if (
+        older.isSpilled() ||
+        newer.isSpilled() ||
+        !older.isPropertyOnly() ||
+        !newer.isPropertyOnly() ||
+        !String.valueOf(older.name).equals(newer.name) ||
+        !older.covers(newer)
+      ) continue;
+      UndoList.drop(i);
+      usage -= newer.bytes;
+      mCoalescedCount++;
+    }
+
+    // Spill: oldest first, so what's most likely to be undone stays in memory.
+    Map<String, LWComponent> components = null;
+    for (int i = 0; i < UndoList.top() - KeepRecent && usage > mMemoryBudget; i++) {
+      final UndoAction action = UndoList.at(i);
+      if (action.isSpilled() || !action.isPropertyOnly()) continue;
+      if (action.spillOffset < 0) {
+        if (components == null) components = componentsByID();
+        if (!spill(action, components)) continue;
+      }
+      // the spill log still has it if it's ever been spilled
+      action.spilledSize = action.undoSequence.size();
+      action.undoSequence = null;
+      usage -= action.bytes;
+    }
+
+    // Drop: anything still over budget is the oldest history we can't store.
+    // Only in-memory actions free anything, but history can only be dropped
+    // from the bottom, so we drop up to the last in-memory action we need to.
+    int drop = 0;
+    for (int i = 0; usage > mMemoryBudget && i < UndoList.top() - KeepRecent; i++) {
+      final UndoAction action = UndoList.at(i);
+      if (!action.isSpilled()) {
+        usage -= action.bytes;
+        drop = i + 1;
+      }
+    }
+    final boolean firstDrop = drop > 0 && mDroppedCount == 0;
+    if (drop > 0) {
+      UndoList.dropOldest(drop);
+      mDroppedCount += drop;
+    }
+
+    if (firstDrop) Log.info(getMemoryReport()); else if (
+      DEBUG.UNDO || DEBUG.Enabled
+    ) Log.debug(getMemoryReport());
+  }
+
+  /** the ID we use for the map itself, which has none */
+  private static final String MapID = "";
+
+  /** @return every component in the map we can refer to by ID in the spill log */
+  private Map<String, LWComponent> componentsByID() {
+    final Map<String, LWComponent> components = new HashMap();
+    for (LWComponent c : mMap.getAllDescendents(LWComponent.ChildKind.ANY)) {
+      if (c.getID() != null) components.put(c.getID(), c);
+    }
+    components.put(MapID, mMap);
+    return components;
+  }
+
+  /** @return true if the action was written to the spill log */
+  private boolean spill(UndoAction action, Map<String, LWComponent> components) {
+    action.sort();
+    try {
+      final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      final DataOutputStream out = new DataOutputStream(buf);
+      out.writeInt(action.eventCount);
+      out.writeInt(action.undoSequence.size());
+      for (Object o : action.undoSequence) {
+        final UndoItem item = (UndoItem) o;
+        final String id = item.component == mMap ? MapID : item.component.getID();
+        if (id == null || components.get(id) != item.component) return false;
+        out.writeUTF(id);
+        if (!UndoSpill.writeKey(out, item.propKey)) return false;
+        if (!UndoSpill.writeValue(out, item.oldValue)) return false;
+        out.writeInt(item.order);
+      }
+      out.close();
+      if (mSpill == null) mSpill = new UndoSpill();
+      action.spillOffset = mSpill.append(buf.toByteArray());
+      return true;
+    } catch (IOException e) {
+      Log.warn("failed to spill " + action + ": " + e);
+      return false;
+    }
+  }
+
+  /** read the action back in from the spill log: changes to components no longer in the map are lost */
+  private void reload(UndoAction action) {
+    final List items = new ArrayList(action.spilledSize);
+    try {
+      final DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(mSpill.read(action.spillOffset))
+      );
+      final Map<String, LWComponent> components = componentsByID();
+      action.eventCount = in.readInt();
+      for (int n = in.readInt(); n > 0; n--) {
+        final String id = in.readUTF();
+        final Object key = UndoSpill.readKey(in);
+        final Object value = UndoSpill.readValue(in);
+        final int order = in.readInt();
+        final LWComponent c = components.get(id);
+        if (c == null) Log.warn(
+          "lost undo of " + key + " on missing component #" + id
+        ); else items.add(new UndoItem(c, key, value, order));
+      }
+    } catch (IOException e) {
+      Log.error("failed to reload " + action, e);
+    }
+    action.undoSequence = items;
+    action.sorted = true;
+    if (DEBUG.UNDO) Log.debug("reloaded " + action);
+  }
+
+  /**
+   * An append-only log of spilled undo actions, in a temporary file that's
+   * deleted when VUE exits.  Values are written in a compact tagged form: only
+   * simple property values are supported.
+   */
+  private static final class UndoSpill {
+
+    private static final int NULL = 0, STRING = 1, INTEGER = 2, LONG = 3;
+    private static final int FLOAT = 4, DOUBLE = 5, BOOLEAN = 6, COLOR = 7;
+    private static final int POINT = 8, POINT2D_FLOAT = 9, POINT2D_DOUBLE = 10;
+    private static final int SIZE = 11, FONT = 12;
+
+    private final File file;
+    private final RandomAccessFile log;
+
+    UndoSpill() throws IOException {
+      file = File.createTempFile("vue-undo-", ".log");
+      file.deleteOnExit();
+      log = new RandomAccessFile(file, "rw");
+    }
+
+    /** @return the offset the record was written at */
+    long append(byte[] record) throws IOException {
+      final long offset = log.length();
+      log.seek(offset);
+      log.writeInt(record.length);
+      log.write(record);
+      return offset;
+    }
+
+    byte[] read(long offset) throws IOException {
+      log.seek(offset);
+      final byte[] record = new byte[log.readInt()];
+      log.readFully(record);
+      return record;
+    }
+
+    long length() {
+      try {
+        return log.length();
+      } catch (IOException e) {
+        return 0;
+      }
+    }
+
+    void close() {
+      try {
+        log.close();
+      } catch (IOException e) {}
+      file.delete();
+    }
+
+    static boolean writeKey(DataOutputStream out, Object key)
+      throws IOException {
+      if (key instanceof LWComponent.Key) {
+        final int index = LWComponent.Key.AllKeys.indexOf(key);
+        if (index < 0) return false;
+        out.writeBoolean(true);
+        out.writeInt(index);
+      } else if (key instanceof String) {
+        out.writeBoolean(false);
+        out.writeUTF((String) key);
+      } else {
+        return false;
+      }
+      return true;
+    }
+
+    static Object readKey(DataInputStream in) throws IOException {
+      if (in.readBoolean()) return LWComponent.Key.AllKeys.get(in.readInt());
+      // string keys are compared by identity: they're all interned constants
+      return in.readUTF().intern();
+    }
+
+    static boolean writeValue(DataOutputStream out, Object value)
+      throws IOException {
+      if (value == null) {
+        out.writeByte(NULL);
+      } else if (value instanceof String) {
+        final String s = (String) value;
+        if (s.length() > 16 * 1024) return false; // beyond what writeUTF can be sure of
+        out.writeByte(STRING);
+        out.writeUTF(s);
+      } else if (value.getClass() == Integer.class) {
+        out.writeByte(INTEGER);
+        out.writeInt((Integer) value);
+      } else if (value.getClass() == Long.class) {
+        out.writeByte(LONG);
+        out.writeLong((Long) value);
+      } else if (value.getClass() == Float.class) {
+        out.writeByte(FLOAT);
+        out.writeFloat((Float) value);
+      } else if (value.getClass() == Double.class) {
+        out.writeByte(DOUBLE);
+        out.writeDouble((Double) value);
+      } else if (value.getClass() == Boolean.class) {
+        out.writeByte(BOOLEAN);
+        out.writeBoolean((Boolean) value);
+      } else if (value.getClass() == Color.class) {
+        out.writeByte(COLOR);
+        out.writeInt(((Color) value).getRGB());
+      } else if (value.getClass() == Point.class) {
+        out.writeByte(POINT);
+        out.writeInt(((Point) value).x);
+        out.writeInt(((Point) value).y);
+      } else if (value.getClass() == Point2D.Float.class) {
+        out.writeByte(POINT2D_FLOAT);
+        out.writeFloat(((Point2D.Float) value).x);
+        out.writeFloat(((Point2D.Float) value).y);
+      } else if (value.getClass() == Point2D.Double.class) {
+        out.writeByte(POINT2D_DOUBLE);
+        out.writeDouble(((Point2D.Double) value).x);
+        out.writeDouble(((Point2D.Double) value).y);
+      } else if (value.getClass() == Size.class) {
+        out.writeByte(SIZE);
+        out.writeFloat(((Size) value).width);
+        out.writeFloat(((Size) value).height);
+      } else if (
+        value.getClass() == Font.class && !((Font) value).isTransformed()
+      ) {
+        out.writeByte(FONT);
+        out.writeUTF(((Font) value).getName());
+        out.writeInt(((Font) value).getStyle());
+        out.writeFloat(((Font) value).getSize2D());
+      } else {
+        return false;
+      }
+      return true;
+    }
+
+    static Object readValue(DataInputStream in) throws IOException {
+      switch (in.readByte()) {
+        case NULL:
+          return null;
+        case STRING:
+          return in.readUTF();
+        case INTEGER:
+          return in.readInt();
+        case LONG:
+          return in.readLong();
+        case FLOAT:
+          return in.readFloat();
+        case DOUBLE:
+          return in.readDouble();
+        case BOOLEAN:
+          return in.readBoolean();
+        case COLOR:
+          return new Color(in.readInt(), true);
+        case POINT:
+          return new Point(in.readInt(), in.readInt());
+        case POINT2D_FLOAT:
+          return new Point2D.Float(in.readFloat(), in.readFloat());
+        case POINT2D_DOUBLE:
+          return new Point2D.Double(in.readDouble(), in.readDouble());
+        case SIZE:
+          return new Size(in.readFloat(), in.readFloat());
+        case FONT:
+          return new Font(in.readUTF(), in.readInt(), 1).deriveFont(
+            in.readFloat()
+          );
+        default:
+          throw new IOException("corrupt undo spill log");
+      }
+    }
+  }
+
   /**
    * Store a key in the given UndoableThread that tells the UndoManager what UndoAction
    * is affected by LWCEvents coming from that thread.  This must be called BEFORE any
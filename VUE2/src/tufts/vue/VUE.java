@@ -1794,7 +1794,8 @@ public class VUE implements VueConstants {
         	}
         	 */
 
-    if (FilesToOpen.size() == 0) VUE.displayMap(
+    final int recovered = OpenAction.recoverUnsavedMaps();
+    if (FilesToOpen.size() == 0 && recovered == 0) VUE.displayMap(
       new LWMap(VueResources.getString("vue.main.newmap"))
     );
     // Generally, we need to wait until java 1.5 JSplitPane's have been validated to
@@ -3303,6 +3304,7 @@ public class VUE implements VueConstants {
       return SaveAction.saveMap(map);
     } else if (response == JOptionPane.NO_OPTION) { // Don't Save
       // don't save -- just close
+      tufts.vue.action.MapJournal.discard(map);
       return true;
     } else return false; // anything else (Cancel or dialog window closed)
   }
@@ -3320,11 +3322,13 @@ public class VUE implements VueConstants {
         try {
           if (mMapTabsRight != null) mMapTabsRight.closeMap(map);
         } catch (ArrayIndexOutOfBoundsException abe) {}
+        tufts.vue.action.MapJournal.discard(map);
       }
     } else {
       if (askIfRevertOK(map)) {
         mMapTabsLeft.closeMap(map);
         if (mMapTabsRight != null) mMapTabsRight.closeMap(map);
+        tufts.vue.action.MapJournal.discard(map);
       }
     }
     if (mMapTabsRight != null) {
@@ -0,0 +1,15 @@
+
+// generated by /root/project/VUE2/src/build.xml
+package tufts.vue;
+/** generated by /root/project/VUE2/src/build.xml October 17 2026 0241 */
+public final class Version {
+/** October 17 2026 at 0241 by root on Linux 6.18.44-fc-v139 amd64 JVM 17.0.9+9 */
+public static final String
+        Date = "October 17 2026",
+        Time = "0241",
+        User = "root",
+        Platform = "Linux 6.18.44-fc-v139 amd64",
+        JVM = "17.0.9+9(bits=64)",
+        AllInfo = "October 17 2026 at 0241 by root on " + Platform + " JVM " + JVM,
+        WhatString = "@(#)VUE: built " + AllInfo;
+}
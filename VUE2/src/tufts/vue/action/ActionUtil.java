@@ -521,25 +521,41 @@ public class ActionUtil {
   }
 
   /*
-   * This method checks whether a file can be safely saved and opened by castor
+   * This method checks whether a file can be safely saved and opened by castor.
+   * This is all done in memory: see SaveValidator for what's checked.  Any
+   * problems are reported to the user.  If the check itself fails, that's
+   * logged, and the map is let through: castor will report anything it can't write.
    * @param map the map whose save compatiblity needs to be tested
    * @returrn true if compatible to castor save, false otherwise
    */
   public static boolean isCastorCompatible(LWMap map) {
+    final java.util.List<SaveValidator.Problem> problems;
     try {
-      File tempFile = File.createTempFile("vueTest", "vue");
-      tempFile.deleteOnExit();
-      marshallMap(tempFile, map);
-      unmarshallMap(tempFile);
-      return true;
+      problems = SaveValidator.validate(map);
     } catch (Throwable t) {
-      tufts.vue.VueUtil.alert(
-        VueResources.getString("actionutil.filesave.error") + t,
-        VueResources.getString("actionutil.filesave.title")
-      );
-      Log.error("Testing save: " + map + ";" + t);
-      Util.printStackTrace(t);
+      Log.error("Testing save failed: " + map, t);
+      return true;
+    }
+
+    if (problems.isEmpty()) return true;
+
+    final StringBuilder msg = new StringBuilder(
+      VueResources.getString("actionutil.filesave.error")
+    );
+    int shown = 0;
+    for (SaveValidator.Problem p : problems) {
+      Log.warn("Testing save: " + map + "; " + p);
+      if (shown < 10) {
+        msg.append("\n  ").append(p);
+        shown++;
+      }
     }
+    if (problems.size() > shown) msg.append("\n  ...");
+
+    tufts.vue.VueUtil.alert(
+      msg.toString(),
+      VueResources.getString("actionutil.filesave.title")
+    );
     return false;
   }
 
@@ -654,6 +670,16 @@ public class ActionUtil {
       );
     }
 
+    if (isBinarySave(targetFile)) {
+      try {
+        marshallMapBinary(fos, map, targetFile, tmpFile);
+        sync(FD, targetFile, tmpFile);
+      } finally {
+        fos.close();
+      }
+      return;
+    }
+
     if (OUTPUT_ENCODING.equals("UTF-8") || OUTPUT_ENCODING.equals("UTF8")) {
       writer = new OutputStreamWriter(fos, OUTPUT_ENCODING);
     } else {
@@ -705,20 +731,96 @@ public class ActionUtil {
     if (DEBUG.IO) Log.debug("flushing " + writer);
     writer.flush();
 
+    // just as backup -- must however be done before writer.close()
+    sync(FD, targetFile, tmpFile);
+
+    if (DEBUG.IO) Log.debug("closing " + writer);
+    writer.close();
+    if (DEBUG.IO) Log.debug(" closed " + writer);
+  }
+
+  private static void sync(FileDescriptor FD, File targetFile, File tmpFile) {
     if (FD != null) {
       try {
         if (DEBUG.IO) Log.debug("syncing " + FD + "; for " + tmpFile);
-        // just as backup -- must however be done before writer.close()
         FD.sync();
         Log.info(" sync'd " + FD + "; for " + tmpFile);
       } catch (Throwable t) {
         Log.warn("after save to " + targetFile + "; sync failed: " + t);
       }
     }
+  }
 
-    if (DEBUG.IO) Log.debug("closing " + writer);
-    writer.close();
-    if (DEBUG.IO) Log.debug(" closed " + writer);
+  private static BinaryMapFormat BinaryFormat;
+
+  /** @return the binary map format for the current mapping */
+  static synchronized BinaryMapFormat getBinaryFormat() throws IOException {
+    if (BinaryFormat == null) BinaryFormat =
+      new BinaryMapFormat(XML_MAPPING_DEFAULT, XML_MAPPING_CURRENT_VERSION_ID);
+    return BinaryFormat;
+  }
+
+  /**
+   * New .vue saves are only binary if mapping.lw.binary is set, as older versions
+   * of VUE can't read them, but once a map file is binary, we keep it that way.
+   */
+  private static boolean isBinarySave(File targetFile) {
+    return (
+      BinaryMapFormat.isBinaryMap(targetFile) ||
+      (VueResources.getBool("mapping.lw.binary") &&
+        targetFile.getName().toLowerCase().endsWith(".vue"))
+    );
+  }
+
+  /**
+   * Save the map in the binary map format.  Map state is updated just as for a castor
+   * XML save.
+   */
+  private static void marshallMapBinary(
+    final OutputStream out,
+    final LWMap map,
+    final File targetFile,
+    final File tmpFile
+  ) throws java.io.IOException {
+    final BinaryMapFormat format = getBinaryFormat();
+
+    map.makeReadyForSaving(targetFile);
+
+    Log.info("marshalling " + map + " to: " + tmpFile + " (binary)");
+
+    final int oldModelVersion = map.getModelVersion();
+    final File oldSaveFile = map.getFile();
+    map.setModelVersion(LWMap.getCurrentModelVersion());
+    map.setFile(targetFile);
+
+    try {
+      format.write(map, tufts.vue.Version.WhatString, out);
+    } catch (Throwable t) {
+      Log.error(tmpFile + "; " + map, t);
+      VueUtil.alert(
+        VueResources.getString("actionutil.filecorrupted.error") +
+        "\n\n" +
+        VueResources.getString("actionutil.filecorrupted.description") +
+        "\n" +
+        Util.formatLines(t.toString(), 80),
+        VueResources.getString("actionutil.rename.title")
+      );
+      try {
+        map.setModelVersion(oldModelVersion);
+        map.setFile(oldSaveFile);
+      } catch (Throwable tx) {
+        Util.printStackTrace(tx);
+      }
+      throw new WrappedMarshallException(t);
+    }
+
+    try {
+      // should never fail, but if it does, the save itself has still worked
+      map.markAsSaved();
+    } catch (Throwable t) {
+      Log.error(t);
+    }
+    Log.info("wrote " + map + " to " + tmpFile);
   }
 
   /**
@@ -1094,6 +1196,8 @@ public class ActionUtil {
       //Util.printStackTrace("UM " + url);
     }
 
+    if (isBinaryMap(url)) return unmarshallBinaryMap(url, handler);
+
     final BufferedReader reader = getMapReaderForURL(
       url,
       BOOTSTRAP_ENCODING,
@@ -1393,6 +1497,84 @@ public class ActionUtil {
     return map;
   }
 
+  private static InputStream openMapStream(URL url) throws IOException {
+    final File file = tufts.vue.Resource.getLocalFileIfPresent(url);
+    if (file != null) return new FileInputStream(
+      file
+    ); else return UrlAuthentication.getAuthenticatedStream(url);
+  }
+
+  /** @return true if the map data at the given URL is in the binary map format */
+  private static boolean isBinaryMap(URL url) throws IOException {
+    final File file = tufts.vue.Resource.getLocalFileIfPresent(url);
+    if (file != null) return BinaryMapFormat.isBinaryMap(file);
+    final InputStream in = openMapStream(url);
+    try {
+      return BinaryMapFormat.isBinaryMap(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static LWMap unmarshallBinaryMap(
+    final URL url,
+    MapUnmarshalHandler mapHandler
+  ) throws IOException {
+    Log.info("unmarshalling binary: " + url);
+
+    File file = tufts.vue.Resource.getLocalFileIfPresent(url);
+    if (file == null) file = new File(url.getFile());
+
+    if (mapHandler == null) mapHandler =
+      new MapUnmarshalHandler(url, tufts.vue.Resource.MANAGED_UNMARSHALLING); // managed is the default
+
+    final InputStream in = openMapStream(url);
+    LWMap map = null;
+    try {
+      final BinaryMapFormat.Header[] header = new BinaryMapFormat.Header[1];
+      map = getBinaryFormat().read(in, mapHandler, header);
+
+      Log.info("unmarshalled: " + map + "; " + header[0]);
+
+      // The below three notify calls must be called in exact sequence (file, then version, then completed)
+      mapHandler.notifyFile(map, file);
+      mapHandler.notifyVersionOfVueThatSavedMap(header[0].savingVersion);
+      mapHandler.notifyUnmarshallingCompleted();
+
+      Log.debug("completed: " + map);
+    } catch (Exception e) {
+      tufts.Util.printStackTrace(
+        e,
+        "Exception restoring map from [" + url + "]: " + e.getClass().getName()
+      );
+      throw new Error("Exception restoring map from [" + url + "]", e);
+    } finally {
+      in.close();
+    }
+
+    return map;
+  }
+
+  /**
+   * Restore a map from a binary map image already in memory (e.g., reassembled by
+   * MapJournal).  The map will be associated with the given file, which may be null.
+   */
+  static LWMap unmarshallBinaryMap(final InputStream in, final File file)
+    throws IOException {
+    final MapUnmarshalHandler mapHandler = new MapUnmarshalHandler(
+      file,
+      tufts.vue.Resource.MANAGED_UNMARSHALLING
+    );
+    final LWMap map = getBinaryFormat().read(in, mapHandler, null);
+    if (file != null) {
+      mapHandler.notifyFile(map, file);
+    } else {
+      mapHandler.map = map;
+    }
+    mapHandler.notifyUnmarshallingCompleted();
+    return map;
+  }
+
   /**
    * This class is only there to provide something for the old mapping description for LWMergeMap to refer
    * to. XMLObjectFactory will turn it into an LWMap.  For the re-mapping to work, it must be a subclass of LWMap.
@@ -0,0 +1,1588 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue.action;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.exolab.castor.xml.UnmarshalListener;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import tufts.Util;
+import tufts.vue.DEBUG;
+import tufts.vue.LWComponent;
+import tufts.vue.LWMap;
+
+/**
+ * A compact binary save format for LWMap's, driven by the same castor mapping file
+ * we use for XML persistance, so that anything castor would save, this will save, via
+ * the same getters and setters, and with the same unmarshalling events delivered to
+ * the MapUnmarshalHandler in the same order.  That means all the existing XML restore
+ * hooks (XML_initialized, XML_fieldAdded, XML_addNotify, XML_completed, and
+ * LWMap.completeXMLRestore) work exactly as they do for castor.
+ *
+ * This exists because castor is slow and a memory hog on big maps: it's
+ * reflection-driven through it's own descriptor layers for every single value, builds
+ * SAX events and string buffers for all of them, and goes through IDREF resolution
+ * tables for everything.  Here, all the reflection is resolved once per class, values
+ * are written as tagged binary data, and repeated strings (fonts, colors, property
+ * keys, etc) are written only once and shared on restore.
+ *
+ * The stream is self-describing: each class written is described once by name with
+ * the names of it's fields, and every value is tagged with it's type, so fields
+ * unknown to the reading version of VUE can be skipped, and fields that have since
+ * been added are simply left at their defaults.
+ *
+ * Files in this format always start with the MAGIC bytes, which is how
+ * ActionUtil.unmarshallMap decides which engine to use.
+ */
+public final class BinaryMapFormat {
+
+  private static final org.apache.log4j.Logger Log =
+    org.apache.log4j.Logger.getLogger(BinaryMapFormat.class);
+
+  /** all binary map files start with these bytes: they can never be the start of a castor XML save file */
+  static final byte[] MAGIC = {
+    (byte) 0x89,
+    'V',
+    'U',
+    'E',
+    'M',
+    'A',
+    'P',
+    '\n',
+  };
+
+  private static final int FORMAT_VERSION = 1;
+
+  // value tags
+  private static final int T_FALSE = 1;
+  private static final int T_TRUE = 2;
+  private static final int T_INT = 3;
+  private static final int T_LONG = 4;
+  private static final int T_FLOAT = 5;
+  private static final int T_DOUBLE = 6;
+  private static final int T_SHORT = 7;
+  private static final int T_BYTE = 8;
+  private static final int T_CHAR = 9;
+  private static final int T_STRING = 10;
+  private static final int T_OBJECT = 11;
+  private static final int T_REF = 12;
+  private static final int T_LIST = 13;
+  private static final int T_ENUM = 14;
+  private static final int T_NULL = 15;
+
+  /** strings longer than this are written in place instead of being added to the shared string table */
+  private static final int MAX_SHARED_STRING = 256;
+
+  /** A field from the castor mapping file */
+  private static final class FieldMap {
+
+    String name;
+    String getMethod, setMethod;
+    boolean direct, attribute, reference, collection, isTransient, wildcard;
+  }
+
+  /** A class from the castor mapping file */
+  private static final class ClassMap {
+
+    String name, extendsName, identity;
+    final List<FieldMap> fields = new ArrayList();
+  }
+
+  /** Resolved access to a single persisted field of a single concrete class */
+  private static final class Accessor {
+
+    final String name;
+    final boolean attribute, reference, collection, persisted;
+    final Method getter;
+    final java.lang.reflect.Field field;
+    final Method[] setters;
+
+    Accessor(
+      String name,
+      boolean attribute,
+      boolean reference,
+      boolean collection,
+      boolean persisted,
+      Method getter,
+      java.lang.reflect.Field field,
+      Method[] setters
+    ) {
+      this.name = name;
+      this.attribute = attribute;
+      this.reference = reference;
+      this.collection = collection;
+      this.persisted = persisted && (getter != null || field != null);
+      this.getter = getter;
+      this.field = field;
+      this.setters = setters;
+    }
+
+    Object get(Object o) throws Exception {
+      if (field != null) return field.get(o); else if (
+        getter != null
+      ) return getter.invoke(o); else return null;
+    }
+
+    /** @return false if there was no way to set the given value */
+    boolean set(Object o, Object value) throws Exception {
+      if (field != null) {
+        field.set(o, convert(value, field.getType()));
+        return true;
+      }
+      // prefer a setter that takes the value as-is
+      for (Method m : setters) {
+        if (accepts(m.getParameterTypes()[0], value)) {
+          m.invoke(o, value);
+          return true;
+        }
+      }
+      for (Method m : setters) {
+        final Object converted = convert(value, m.getParameterTypes()[0]);
+        if (converted != null || value == null) {
+          m.invoke(o, converted);
+          return true;
+        }
+      }
+      return false;
+    }
+
+    Class getSetterType() {
+      if (field != null) return field.getType(); else if (
+        setters.length > 0
+      ) return setters[0].getParameterTypes()[0]; else return null;
+    }
+
+    @Override
+    public String toString() {
+      return "Accessor[" + name + (attribute ? " @" : "") + "]";
+    }
+  }
+
+  /** Everything we need to persist instances of a single concrete class */
+  private static final class ClassInfo {
+
+    final Class type;
+    /** all persisted fields: attributes first, then elements, each in castor mapping order */
+    final Accessor[] fields;
+    final int attributeCount;
+    final Accessor identity;
+    final Map<String, Accessor> byName = new HashMap();
+
+    ClassInfo(Class type, List<Accessor> fields, Accessor identity) {
+      this.type = type;
+      final List<Accessor> ordered = new ArrayList(fields.size());
+      for (Accessor a : fields) if (a.attribute) ordered.add(a);
+      this.attributeCount = ordered.size();
+      for (Accessor a : fields) if (!a.attribute) ordered.add(a);
+      this.fields = ordered.toArray(new Accessor[ordered.size()]);
+      this.identity = identity;
+      for (Accessor a : this.fields) byName.put(a.name, a);
+    }
+
+    @Override
+    public String toString() {
+      return "ClassInfo[" + type.getName() + " n=" + fields.length + "]";
+    }
+  }
+
+  private final URL mappingSource;
+  private final String mappingVersion;
+  private final Map<String, ClassMap> mClassMaps = new HashMap();
+  private final Map<Class, ClassInfo> mClassInfo = new ConcurrentHashMap();
+
+  /**
+   * @param mappingSource - the castor mapping file that describes what's to be persisted
+   * @param mappingVersion - the version ID of that mapping, recorded in the header of saved maps
+   */
+  BinaryMapFormat(URL mappingSource, String mappingVersion)
+    throws IOException {
+    this.mappingSource = mappingSource;
+    this.mappingVersion = mappingVersion;
+    loadMapping(mappingSource);
+  }
+
+  /** @return true if the given file is a binary map */
+  public static boolean isBinaryMap(File file) {
+    if (file == null || !file.isFile() || file.length() < MAGIC.length) {
+      return false;
+    }
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      return isBinaryMap(in);
+    } catch (IOException e) {
+      Log.warn("checking header of " + file + "; " + e);
+      return false;
+    } finally {
+      if (in != null) try {
+        in.close();
+      } catch (IOException e) {}
+    }
+  }
+
+  /** Check the magic bytes at the start of the stream.  The bytes are consumed. */
+  public static boolean isBinaryMap(InputStream in) throws IOException {
+    for (byte b : MAGIC) if (in.read() != (b & 0xFF)) return false;
+    return true;
+  }
+
+  //=============================================================================
+  // Mapping
+  //=============================================================================
+
+  private void loadMapping(URL source) throws IOException {
+    final Document doc;
+    final InputStream in = source.openStream();
+    try {
+      final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setValidating(false);
+      factory.setNamespaceAware(false);
+      doc = factory.newDocumentBuilder().parse(in);
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("failed to parse mapping " + source + "; " + e);
+    } finally {
+      in.close();
+    }
+
+    final NodeList classes = doc.getDocumentElement().getElementsByTagName(
+      "class"
+    );
+    for (int i = 0; i < classes.getLength(); i++) {
+      final Element ce = (Element) classes.item(i);
+      final ClassMap cm = new ClassMap();
+      cm.name = ce.getAttribute("name");
+      cm.extendsName = attr(ce, "extends");
+      cm.identity = attr(ce, "identity");
+      final NodeList fields = ce.getElementsByTagName("field");
+      for (int x = 0; x < fields.getLength(); x++) {
+        final Element fe = (Element) fields.item(x);
+        final FieldMap fm = new FieldMap();
+        fm.name = fe.getAttribute("name");
+        fm.getMethod = attr(fe, "get-method");
+        fm.setMethod = attr(fe, "set-method");
+        fm.direct = "true".equals(fe.getAttribute("direct"));
+        fm.isTransient = "true".equals(fe.getAttribute("transient"));
+        fm.collection = attr(fe, "collection") != null;
+        final NodeList binds = fe.getElementsByTagName("bind-xml");
+        if (binds.getLength() > 0) {
+          final Element be = (Element) binds.item(0);
+          fm.attribute = "attribute".equals(be.getAttribute("node"));
+          fm.reference = "true".equals(be.getAttribute("reference"));
+          fm.wildcard = attr(be, "matches") != null;
+        }
+        cm.fields.add(fm);
+      }
+      mClassMaps.put(cm.name, cm);
+    }
+
+    if (DEBUG.IO || DEBUG.INIT) Log.debug(
+      "loaded " + mClassMaps.size() + " class mappings from " + source
+    );
+  }
+
+  private static String attr(Element e, String name) {
+    final String value = e.getAttribute(name);
+    return value.length() == 0 ? null : value;
+  }
+
+  private ClassInfo getInfo(Class type) {
+    ClassInfo info = mClassInfo.get(type);
+    if (info == null) {
+      info = createInfo(type);
+      mClassInfo.put(type, info);
+    }
+    return info;
+  }
+
+  private ClassInfo createInfo(Class type) {
+    // use the mapping for the class itself, or for it's closest mapped ancestor
+    ClassMap cm = null;
+    for (Class c = type; c != null && cm == null; c = c.getSuperclass()) {
+      cm = mClassMaps.get(c.getName());
+    }
+    if (cm == null) return introspect(type);
+
+    // castor's "extends" chain: ancestor fields come first
+    final LinkedList<ClassMap> chain = new LinkedList();
+    for (ClassMap m = cm; m != null; m = m.extendsName == null
+      ? null
+      : mClassMaps.get(m.extendsName)) {
+      chain.addFirst(m);
+    }
+
+    final Map<String, Accessor> fields = new LinkedHashMap();
+    String identity = null;
+    for (ClassMap m : chain) {
+      if (m.identity != null) identity = m.identity;
+      for (FieldMap fm : m.fields) {
+        if (fm.wildcard) continue; // only for capturing unknown XML
+        final Accessor a = createAccessor(type, fm);
+        if (a != null) {
+          fields.remove(fm.name);
+          fields.put(fm.name, a);
+        }
+      }
+    }
+
+    final ClassInfo info = new ClassInfo(
+      type,
+      new ArrayList(fields.values()),
+      identity == null ? null : fields.get(identity)
+    );
+    if (DEBUG.IO && DEBUG.META) Log.debug("mapped " + info);
+    return info;
+  }
+
+  private static Accessor createAccessor(Class type, FieldMap fm) {
+    final String cap = Character.toUpperCase(fm.name.charAt(0)) +
+    fm.name.substring(1);
+
+    if (fm.direct) {
+      final java.lang.reflect.Field field = findField(type, fm.name);
+      if (field == null) {
+        Log.warn(type.getName() + ": no field " + fm.name);
+        return null;
+      }
+      return new Accessor(
+        fm.name,
+        fm.attribute,
+        fm.reference,
+        fm.collection,
+        !fm.isTransient,
+        null,
+        field,
+        new Method[0]
+      );
+    }
+
+    Method getter = null;
+    if (fm.getMethod != null) {
+      getter = findMethod(type, fm.getMethod);
+    } else {
+      getter = findMethod(type, "get" + cap);
+      if (getter == null) getter = findMethod(type, "is" + cap);
+    }
+
+    final Method[] setters = findSetters(
+      type,
+      fm.setMethod == null ? "set" + cap : fm.setMethod
+    );
+
+    if (getter == null && setters.length == 0) {
+      if (DEBUG.IO) Log.debug(type.getName() + ": no access to " + fm.name);
+      return null;
+    }
+
+    return new Accessor(
+      fm.name,
+      fm.attribute,
+      fm.reference,
+      fm.collection,
+      !fm.isTransient,
+      getter,
+      null,
+      setters
+    );
+  }
+
+  /** For classes not in the mapping: castor introspects public read/write bean properties and public fields */
+  private static ClassInfo introspect(Class type) {
+    final Map<String, Accessor> fields = new LinkedHashMap();
+    try {
+      for (java.beans.PropertyDescriptor pd : java.beans.Introspector.getBeanInfo(
+        type,
+        Object.class
+      )
+        .getPropertyDescriptors()) {
+        final Method getter = pd.getReadMethod();
+        final Method setter = pd.getWriteMethod();
+        if (getter == null || setter == null) continue;
+        final Class ptype = pd.getPropertyType();
+        fields.put(
+          pd.getName(),
+          new Accessor(
+            pd.getName(),
+            false,
+            false,
+            ptype != null &&
+            (Collection.class.isAssignableFrom(ptype) || ptype.isArray()),
+            true,
+            getter,
+            null,
+            new Method[] { setter }
+          )
+        );
+      }
+    } catch (java.beans.IntrospectionException e) {
+      Log.warn("introspecting " + type + "; " + e);
+    }
+    for (java.lang.reflect.Field f : type.getFields()) {
+      final int mod = f.getModifiers();
+      if (
+        Modifier.isStatic(mod) ||
+        Modifier.isFinal(mod) ||
+        Modifier.isTransient(mod) ||
+        fields.containsKey(f.getName())
+      ) continue;
+      fields.put(
+        f.getName(),
+        new Accessor(
+          f.getName(),
+          false,
+          false,
+          false,
+          true,
+          null,
+          f,
+          new Method[0]
+        )
+      );
+    }
+    final ClassInfo info = new ClassInfo(
+      type,
+      new ArrayList(fields.values()),
+      null
+    );
+    if (DEBUG.IO) Log.debug("introspected " + info);
+    return info;
+  }
+
+  private static Method findMethod(Class type, String name) {
+    try {
+      return type.getMethod(name);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static Method[] findSetters(Class type, String name) {
+    final List<Method> found = new ArrayList(1);
+    for (Method m : type.getMethods()) {
+      if (
+        m.getName().equals(name) &&
+        m.getParameterTypes().length == 1 &&
+        !Modifier.isStatic(m.getModifiers())
+      ) found.add(m);
+    }
+    return found.toArray(new Method[found.size()]);
+  }
+
+  private static java.lang.reflect.Field findField(Class type, String name) {
+    for (Class c = type; c != null; c = c.getSuperclass()) {
+      try {
+        final java.lang.reflect.Field f = c.getDeclaredField(name);
+        f.setAccessible(true);
+        return f;
+      } catch (NoSuchFieldException e) {}
+    }
+    return null;
+  }
+
+  //=============================================================================
+  // Value conversion
+  //=============================================================================
+
+  private static Class box(Class type) {
+    if (!type.isPrimitive()) return type; else if (
+      type == Integer.TYPE
+    ) return Integer.class; else if (type == Float.TYPE) return Float.class; else if (
+      type == Boolean.TYPE
+    ) return Boolean.class; else if (type == Long.TYPE) return Long.class; else if (
+      type == Double.TYPE
+    ) return Double.class; else if (type == Short.TYPE) return Short.class; else if (
+      type == Byte.TYPE
+    ) return Byte.class; else if (type == Character.TYPE) return Character.class; else return type;
+  }
+
+  private static boolean accepts(Class type, Object value) {
+    if (value == null) return !type.isPrimitive(); else return box(type)
+      .isInstance(value);
+  }
+
+  /** @return the value converted to the given type, or null if that can't be done */
+  private static Object convert(Object value, Class type) {
+    if (value == null) return null;
+    final Class boxed = box(type);
+    if (boxed.isInstance(value)) return value;
+    try {
+      if (value instanceof Number) {
+        final Number n = (Number) value;
+        if (boxed == Integer.class) return n.intValue(); else if (
+          boxed == Float.class
+        ) return n.floatValue(); else if (boxed == Long.class) return n.longValue(); else if (
+          boxed == Double.class
+        ) return n.doubleValue(); else if (boxed == Short.class) return n.shortValue(); else if (
+          boxed == Byte.class
+        ) return n.byteValue();
+      }
+      if (boxed == String.class) return value.toString();
+      if (value instanceof String) {
+        final String s = (String) value;
+        if (boxed == Integer.class) return Integer.valueOf(s); else if (
+          boxed == Float.class
+        ) return Float.valueOf(s); else if (boxed == Long.class) return Long.valueOf(s); else if (
+          boxed == Double.class
+        ) return Double.valueOf(s); else if (boxed == Boolean.class) return Boolean.valueOf(s); else if (
+          boxed == Short.class
+        ) return Short.valueOf(s); else if (boxed == Byte.class) return Byte.valueOf(s); else if (
+          boxed == Character.class && s.length() == 1
+        ) return s.charAt(0);
+      }
+    } catch (NumberFormatException e) {
+      Log.warn("can't convert " + Util.tags(value) + " to " + type);
+    }
+    return null;
+  }
+
+  /** @return true if we only know how to save the given value as a string: it's neither mapped nor one of ours */
+  private boolean isOpaque(Object value) {
+    for (Class c = value.getClass(); c != null; c = c.getSuperclass()) {
+      if (mClassMaps.containsKey(c.getName())) return false;
+    }
+    final String name = value.getClass().getName();
+    return !(name.startsWith("tufts.") || name.startsWith("edu.tufts."));
+  }
+
+  //=============================================================================
+  // Writing
+  //=============================================================================
+
+  /**
+   * Write the given map to the given stream.  The map is not modified in any way: the
+   * caller is responsible for anything castor persistance would normally do to prepare
+   * the map for saving (e.g., LWMap.makeReadyForSaving).  The stream is flushed, but
+   * not closed.
+   */
+  public void write(LWMap map, String savingVersion, OutputStream out)
+    throws IOException {
+    write(map, savingVersion, out, null);
+  }
+
+  /**
+   * @param latest - if non-null, any component found in the map is replaced with the
+   * component of the same ID in this table, if there is one.  Used to reassemble
+   * a map from a base map and it's journal fragments.
+   */
+  void write(
+    LWMap map,
+    String savingVersion,
+    OutputStream out,
+    Map<String, ? extends Object> latest
+  ) throws IOException {
+    final long start = System.nanoTime();
+    final Writer w = new Writer(out);
+    w.latest = latest;
+    for (byte b : MAGIC) w.writeByte(b);
+    w.writeVarInt(FORMAT_VERSION);
+    w.writeString(mappingVersion);
+    w.writeString(savingVersion == null ? "" : savingVersion);
+    w.writeLong(System.currentTimeMillis());
+    w.writeValue(map, false);
+    w.flush();
+    if (DEBUG.Enabled || DEBUG.IO) Log.debug(
+      String.format(
+        "wrote %s: %d objects, %d shared strings, %d bytes in %.1fms",
+        map,
+        w.objectCount,
+        w.strings.size(),
+        w.byteCount,
+        (System.nanoTime() - start) / 1e6
+      )
+    );
+  }
+
+  /**
+   * Write the given components as a fragment for MapJournal.  Each component is written
+   * with all of it's own data, but any other LWComponent found in it's data (e.g., it's
+   * children) is written only as a reference to it's ID, so the size of the fragment
+   * is independent of the size of the map.
+   *
+   * @param referenced - if non-null, every object referenced by ID from the fragment
+   * is put here under it's ID
+   */
+  void writeFragment(
+    Collection<? extends LWComponent> components,
+    OutputStream out,
+    Map<String, Object> referenced
+  ) throws IOException {
+    final Writer w = new Writer(out);
+    w.referenced = referenced;
+    w.writeVarInt(FORMAT_VERSION);
+    w.writeString(mappingVersion);
+    w.writeVarInt(components.size());
+    for (LWComponent c : components) {
+      w.fragmentRoot = c;
+      w.writeObject(c);
+    }
+    w.flush();
+  }
+
+  private final class Writer {
+
+    final OutputStream out;
+    final byte[] buf = new byte[64 * 1024];
+    int pos;
+    long byteCount;
+    int objectCount;
+    final Map<String, Integer> strings = new HashMap();
+    final Map<Class, Integer> classes = new HashMap();
+    final ActionUtil.VueMarshalListener filter = new ActionUtil.VueMarshalListener();
+
+    /** if non-null, we're writing a fragment: other components are written only by reference */
+    LWComponent fragmentRoot;
+    Map<String, Object> referenced;
+    Map<String, ? extends Object> latest;
+
+    Writer(OutputStream out) {
+      this.out = out;
+    }
+
+    void flush() throws IOException {
+      out.write(buf, 0, pos);
+      byteCount += pos;
+      pos = 0;
+      out.flush();
+    }
+
+    void writeByte(int b) throws IOException {
+      if (pos == buf.length) {
+        out.write(buf, 0, pos);
+        byteCount += pos;
+        pos = 0;
+      }
+      buf[pos++] = (byte) b;
+    }
+
+    void writeVarInt(int v) throws IOException {
+      while ((v & ~0x7F) != 0) {
+        writeByte((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      writeByte(v);
+    }
+
+    void writeVarLong(long v) throws IOException {
+      while ((v & ~0x7FL) != 0) {
+        writeByte((int) ((v & 0x7F) | 0x80));
+        v >>>= 7;
+      }
+      writeByte((int) v);
+    }
+
+    void writeLong(long v) throws IOException {
+      for (int shift = 56; shift >= 0; shift -= 8) writeByte((int) (v >>> shift));
+    }
+
+    void writeInt(int v) throws IOException {
+      writeByte(v >>> 24);
+      writeByte(v >>> 16);
+      writeByte(v >>> 8);
+      writeByte(v);
+    }
+
+    /** A string is either an index into the shared table, or a literal, in modified UTF-8 so that any char can be represented */
+    void writeString(String s) throws IOException {
+      final int len = s.length();
+      if (len <= MAX_SHARED_STRING) {
+        final Integer index = strings.get(s);
+        if (index != null) {
+          writeVarInt((index << 1) | 1);
+          return;
+        }
+        strings.put(s, strings.size());
+      }
+      writeVarInt(len << 1);
+      for (int i = 0; i < len; i++) {
+        final char c = s.charAt(i);
+        if (c >= 0x0001 && c <= 0x007F) {
+          writeByte(c);
+        } else if (c > 0x07FF) {
+          writeByte(0xE0 | ((c >> 12) & 0x0F));
+          writeByte(0x80 | ((c >> 6) & 0x3F));
+          writeByte(0x80 | (c & 0x3F));
+        } else {
+          writeByte(0xC0 | ((c >> 6) & 0x1F));
+          writeByte(0x80 | (c & 0x3F));
+        }
+      }
+    }
+
+    void writeValue(Object v, boolean asText) throws IOException {
+      if (v == null) {
+        writeByte(T_NULL);
+      } else if (v instanceof String) {
+        writeByte(T_STRING);
+        writeString((String) v);
+      } else if (v instanceof Boolean) {
+        writeByte(((Boolean) v) ? T_TRUE : T_FALSE);
+      } else if (v instanceof Integer) {
+        writeByte(T_INT);
+        final int i = (Integer) v;
+        writeVarInt((i << 1) ^ (i >> 31));
+      } else if (v instanceof Float) {
+        writeByte(T_FLOAT);
+        writeInt(Float.floatToIntBits((Float) v));
+      } else if (v instanceof Long) {
+        writeByte(T_LONG);
+        final long l = (Long) v;
+        writeVarLong((l << 1) ^ (l >> 63));
+      } else if (v instanceof Double) {
+        writeByte(T_DOUBLE);
+        writeLong(Double.doubleToLongBits((Double) v));
+      } else if (v instanceof Short) {
+        writeByte(T_SHORT);
+        writeVarInt(((Short) v) & 0xFFFF);
+      } else if (v instanceof Byte) {
+        writeByte(T_BYTE);
+        writeByte((Byte) v);
+      } else if (v instanceof Character) {
+        writeByte(T_CHAR);
+        writeVarInt((Character) v);
+      } else if (v instanceof Enum) {
+        writeByte(T_ENUM);
+        writeString(((Enum) v).getDeclaringClass().getName());
+        writeString(((Enum) v).name());
+      } else if (asText || isOpaque(v)) {
+        // castor would persist these via toString as well
+        writeByte(T_STRING);
+        writeString(v.toString());
+      } else if (v instanceof LWComponent) {
+        writeComponent((LWComponent) v);
+      } else {
+        writeObject(v);
+      }
+    }
+
+    void writeComponent(LWComponent c) throws IOException {
+      // the map shares it's ID with the first component it ever created, so it's
+      // never looked up by ID
+      if (latest != null && c.getID() != null && !(c instanceof LWMap)) {
+        final Object replacement = latest.get(c.getID());
+        if (replacement instanceof LWComponent) c = (LWComponent) replacement;
+      }
+      if (fragmentRoot != null && c != fragmentRoot) writeReference(
+        c
+      ); else writeObject(c);
+    }
+
+    void writeObject(Object o) throws IOException {
+      final ClassInfo info = getInfo(o.getClass());
+      writeByte(T_OBJECT);
+      writeClass(info);
+      objectCount++;
+
+      for (int i = 0; i < info.fields.length; i++) {
+        final Accessor field = info.fields[i];
+        if (!field.persisted) continue;
+        Object value = null;
+        try {
+          value = field.get(o);
+        } catch (Throwable t) {
+          // as castor does, skip the field and carry on with the rest of the save
+          if (t instanceof java.lang.reflect.InvocationTargetException) t =
+            t.getCause();
+          Log.warn("getting " + field.name + " from " + Util.tags(o), t);
+        }
+        if (value == null) continue;
+
+        if (field.collection) {
+          final List items = toList(value);
+          if (items.isEmpty()) continue;
+          writeVarInt(i + 1);
+          writeByte(T_LIST);
+          writeVarInt(items.size());
+          for (Object item : items) writeFieldValue(field, item);
+        } else if (isMarshalled(value)) {
+          writeVarInt(i + 1);
+          writeFieldValue(field, value);
+        }
+      }
+      writeVarInt(0);
+    }
+
+    void writeFieldValue(Accessor field, Object value) throws IOException {
+      if (field.reference) {
+        writeReference(value);
+      } else {
+        writeValue(value, field.attribute);
+      }
+    }
+
+    void writeReference(Object value) throws IOException {
+      final ClassInfo target = getInfo(value.getClass());
+      Object id = null;
+      if (target.identity != null) {
+        try {
+          id = target.identity.get(value);
+        } catch (Exception e) {
+          throw error("getting identity of " + Util.tags(value), e);
+        }
+      }
+      if (id == null) {
+        Log.warn("no identity for reference to " + Util.tags(value));
+        writeByte(T_NULL);
+      } else {
+        writeByte(T_REF);
+        writeString(id.toString());
+        if (referenced != null) referenced.put(id.toString(), value);
+      }
+    }
+
+    /** @return a list of all the items that should be persisted */
+    List toList(Object value) {
+      final List items = new ArrayList();
+      if (value instanceof Collection) {
+        for (Object o : (Collection) value) if (isMarshalled(o)) items.add(o);
+      } else if (value instanceof Object[]) {
+        for (Object o : (Object[]) value) if (isMarshalled(o)) items.add(o);
+      } else if (value instanceof Iterator) {
+        final Iterator i = (Iterator) value;
+        while (i.hasNext()) {
+          final Object o = i.next();
+          if (isMarshalled(o)) items.add(o);
+        }
+      } else if (value instanceof Enumeration) {
+        final Enumeration e = (Enumeration) value;
+        while (e.hasMoreElements()) {
+          final Object o = e.nextElement();
+          if (isMarshalled(o)) items.add(o);
+        }
+      } else if (isMarshalled(value)) {
+        items.add(value);
+      }
+      return items;
+    }
+
+    /** apply the same conditional marshalling castor does via ActionUtil.VueMarshalListener */
+    boolean isMarshalled(Object o) {
+      return o != null && filter.preMarshal(o);
+    }
+
+    void writeClass(ClassInfo info) throws IOException {
+      final Integer index = classes.get(info.type);
+      if (index != null) {
+        writeVarInt(index + 1);
+      } else {
+        classes.put(info.type, classes.size());
+        writeVarInt(0);
+        writeString(info.type.getName());
+        writeVarInt(info.fields.length);
+        writeVarInt(info.attributeCount);
+        for (Accessor a : info.fields) writeString(a.name);
+      }
+    }
+  }
+
+  private static IOException error(String msg, Throwable cause) {
+    if (cause instanceof java.lang.reflect.InvocationTargetException) cause =
+      cause.getCause();
+    final IOException e = new IOException(msg + "; " + cause);
+    e.initCause(cause);
+    return e;
+  }
+
+  //=============================================================================
+  // Reading
+  //=============================================================================
+
+  /** The header data of a binary map stream */
+  public static final class Header {
+
+    public final int formatVersion;
+    public final String mappingVersion;
+    public final String savingVersion;
+    public final long saved;
+
+    Header(
+      int formatVersion,
+      String mappingVersion,
+      String savingVersion,
+      long saved
+    ) {
+      this.formatVersion = formatVersion;
+      this.mappingVersion = mappingVersion;
+      this.savingVersion = savingVersion;
+      this.saved = saved;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "Header[v%d mapping=%s saver=%s saved=%s]",
+        formatVersion,
+        mappingVersion,
+        savingVersion,
+        new Date(saved)
+      );
+    }
+  }
+
+  /**
+   * Restore a map from the given stream, which must start with the MAGIC bytes.
+   * Objects are created and populated, and all events are delivered to the given
+   * listener, just as castor would.  Completing the restore (e.g.,
+   * MapUnmarshalHandler.notifyUnmarshallingCompleted) is up to the caller.
+   *
+   * @param header - if non-null, the header data is delivered to the first slot
+   */
+  public LWMap read(InputStream in, UnmarshalListener listener, Header[] header)
+    throws IOException {
+    final long start = System.nanoTime();
+    final Reader r = new Reader(in, listener);
+    for (byte b : MAGIC) {
+      if (r.readByte() != (b & 0xFF)) throw new IOException(
+        "not a binary VUE map"
+      );
+    }
+    final int formatVersion = r.readVarInt();
+    if (formatVersion > FORMAT_VERSION) throw new IOException(
+      "binary map format version " +
+      formatVersion +
+      " is newer than this version of VUE supports (" +
+      FORMAT_VERSION +
+      ")"
+    );
+    final Header h = new Header(
+      formatVersion,
+      r.readString(),
+      r.readString(),
+      r.readLong()
+    );
+    if (header != null && header.length > 0) header[0] = h;
+    if (DEBUG.IO) Log.debug("reading " + h);
+
+    final int tag = r.readByte();
+    final Object root = r.readValue(tag);
+    if (!(root instanceof LWMap)) throw new IOException(
+      "no map found: " + Util.tags(root)
+    );
+    r.checkUnresolved();
+
+    if (DEBUG.Enabled || DEBUG.IO) Log.debug(
+      String.format(
+        "read %s: %d objects, %d shared strings in %.1fms",
+        root,
+        r.objectCount,
+        r.strings.size(),
+        (System.nanoTime() - start) / 1e6
+      )
+    );
+    return (LWMap) root;
+  }
+
+  /**
+   * Read a fragment written by writeFragment.  References to objects not in the
+   * fragment are resolved from the given table, which is not modified.
+   *
+   * @return the top-level components of the fragment
+   */
+  List<LWComponent> readFragment(
+    InputStream in,
+    UnmarshalListener listener,
+    Map<String, ? extends Object> external
+  ) throws IOException {
+    final Reader r = new Reader(in, listener);
+    r.external = external;
+    final int formatVersion = r.readVarInt();
+    if (formatVersion > FORMAT_VERSION) throw new IOException(
+      "journal fragment format version " +
+      formatVersion +
+      " is newer than this version of VUE supports (" +
+      FORMAT_VERSION +
+      ")"
+    );
+    r.readString(); // mapping version
+    final int count = r.readVarInt();
+    final List<LWComponent> components = new ArrayList(count);
+    for (int i = 0; i < count; i++) {
+      final Object o = r.readValue(r.readByte());
+      if (o instanceof LWComponent) components.add((LWComponent) o); else Log.warn(
+        "skipping fragment item " + Util.tags(o)
+      );
+    }
+    r.resolveExternal();
+    r.checkUnresolved();
+    return components;
+  }
+
+  /** A class as described in the stream, mapped to what we know about it at runtime */
+  private static final class StreamClass {
+
+    final ClassInfo info;
+    final Constructor constructor;
+    /** the local accessor for each field in the stream (null for those we no longer know about) */
+    final Accessor[] fields;
+    final int attributeCount;
+
+    StreamClass(
+      ClassInfo info,
+      Constructor constructor,
+      Accessor[] fields,
+      int attributeCount
+    ) {
+      this.info = info;
+      this.constructor = constructor;
+      this.fields = fields;
+      this.attributeCount = attributeCount;
+    }
+  }
+
+  /** A reference to an object we haven't seen yet */
+  private static final class PendingRef {
+
+    final Object target;
+    final Accessor field;
+
+    PendingRef(Object target, Accessor field) {
+      this.target = target;
+      this.field = field;
+    }
+  }
+
+  private static final class Ref {
+
+    final String id;
+
+    Ref(String id) {
+      this.id = id;
+    }
+  }
+
+  /** A collection field that contained references, to be populated once the fragment has been read */
+  private static final class DeferredList {
+
+    final Object target;
+    final Accessor field;
+    final Collection collection;
+    final List items;
+
+    DeferredList(
+      Object target,
+      Accessor field,
+      Collection collection,
+      List items
+    ) {
+      this.target = target;
+      this.field = field;
+      this.collection = collection;
+      this.items = items;
+    }
+  }
+
+  private final class Reader {
+
+    final InputStream in;
+    final UnmarshalListener listener;
+    final byte[] buf = new byte[64 * 1024];
+    int pos, limit;
+    char[] chars = new char[256];
+    int objectCount;
+    final List<String> strings = new ArrayList();
+    final List<StreamClass> classes = new ArrayList();
+    final Map<String, Object> identified = new HashMap();
+    final Map<String, List<PendingRef>> pending = new HashMap();
+
+    /** if non-null, we're reading a fragment: unresolved references are looked up here at the end */
+    Map<String, ? extends Object> external;
+    final List<DeferredList> deferred = new ArrayList();
+
+    Reader(InputStream in, UnmarshalListener listener) {
+      this.in = in;
+      this.listener = listener;
+    }
+
+    int readByte() throws IOException {
+      if (pos == limit) {
+        limit = in.read(buf, 0, buf.length);
+        pos = 0;
+        if (limit <= 0) {
+          limit = 0;
+          throw new EOFException();
+        }
+      }
+      return buf[pos++] & 0xFF;
+    }
+
+    int readVarInt() throws IOException {
+      int v = 0;
+      for (int shift = 0; shift < 35; shift += 7) {
+        final int b = readByte();
+        v |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) return v;
+      }
+      throw new IOException("malformed varint");
+    }
+
+    long readVarLong() throws IOException {
+      long v = 0;
+      for (int shift = 0; shift < 70; shift += 7) {
+        final int b = readByte();
+        v |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) return v;
+      }
+      throw new IOException("malformed varlong");
+    }
+
+    long readLong() throws IOException {
+      long v = 0;
+      for (int i = 0; i < 8; i++) v = (v << 8) | readByte();
+      return v;
+    }
+
+    int readInt() throws IOException {
+      return (
+        (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte()
+      );
+    }
+
+    String readString() throws IOException {
+      final int code = readVarInt();
+      if ((code & 1) != 0) return strings.get(code >>> 1);
+      final int len = code >>> 1;
+      if (chars.length < len) chars = new char[Math.max(len, chars.length * 2)];
+      for (int i = 0; i < len; i++) {
+        final int b = readByte();
+        if (b < 0x80) {
+          chars[i] = (char) b;
+        } else if ((b & 0xE0) == 0xC0) {
+          chars[i] = (char) (((b & 0x1F) << 6) | (readByte() & 0x3F));
+        } else {
+          final int b2 = readByte();
+          chars[i] =
+            (char) (((b & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (readByte() & 0x3F));
+        }
+      }
+      final String s = new String(chars, 0, len);
+      if (len <= MAX_SHARED_STRING) strings.add(s);
+      return s;
+    }
+
+    Object readValue(int tag) throws IOException {
+      switch (tag) {
+        case T_NULL:
+          return null;
+        case T_FALSE:
+          return Boolean.FALSE;
+        case T_TRUE:
+          return Boolean.TRUE;
+        case T_INT:
+          {
+            final int v = readVarInt();
+            return (v >>> 1) ^ -(v & 1);
+          }
+        case T_LONG:
+          {
+            final long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+          }
+        case T_FLOAT:
+          return Float.intBitsToFloat(readInt());
+        case T_DOUBLE:
+          return Double.longBitsToDouble(readLong());
+        case T_SHORT:
+          return (short) readVarInt();
+        case T_BYTE:
+          return (byte) readByte();
+        case T_CHAR:
+          return (char) readVarInt();
+        case T_STRING:
+          return readString();
+        case T_ENUM:
+          return readEnum(readString(), readString());
+        case T_REF:
+          return new Ref(readString());
+        case T_OBJECT:
+          return readObject();
+        default:
+          throw new IOException("bad value tag " + tag);
+      }
+    }
+
+    Object readEnum(String className, String name) {
+      try {
+        return Enum.valueOf((Class) Class.forName(className), name);
+      } catch (Throwable t) {
+        Log.warn("unknown enum " + className + "." + name + "; " + t);
+        return null;
+      }
+    }
+
+    StreamClass readClass() throws IOException {
+      final int index = readVarInt();
+      if (index > 0) return classes.get(index - 1);
+
+      final String name = readString();
+      final int count = readVarInt();
+      final int attributeCount = readVarInt();
+      final String[] names = new String[count];
+      for (int i = 0; i < count; i++) names[i] = readString();
+
+      ClassInfo info = null;
+      Constructor constructor = null;
+      final Accessor[] fields = new Accessor[count];
+      try {
+        Class type = Class.forName(name);
+        if (type == ActionUtil.OLD_MERGE_MAP_STUB.class) type = LWMap.class;
+        info = getInfo(type);
+        constructor = type.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        for (int i = 0; i < count; i++) fields[i] = info.byName.get(names[i]);
+      } catch (Throwable t) {
+        Log.warn("can't restore instances of " + name + "; " + t);
+      }
+      final StreamClass sc = new StreamClass(
+        info,
+        constructor,
+        fields,
+        attributeCount
+      );
+      classes.add(sc);
+      return sc;
+    }
+
+    /** @return the new object, or null if it couldn't be created (it's data is skipped) */
+    Object readObject() throws IOException {
+      final StreamClass sc = readClass();
+      Object o = null;
+      if (sc.constructor != null) {
+        try {
+          o = sc.constructor.newInstance();
+        } catch (Throwable t) {
+          Log.warn("can't create " + sc.info.type + "; " + t);
+        }
+      }
+      if (o != null) {
+        objectCount++;
+        listener.initialized(o);
+      }
+
+      boolean attributesDone = false;
+      for (;;) {
+        final int index = readVarInt() - 1;
+        if (!attributesDone && (index < 0 || index >= sc.attributeCount)) {
+          attributesDone = true;
+          if (o != null) attributesProcessed(sc, o);
+        }
+        if (index < 0) break;
+        if (index >= sc.fields.length) throw new IOException(
+          "bad field index " + index + " for " + Util.tags(sc.info)
+        );
+
+        final Accessor field = o == null ? null : sc.fields[index];
+        final int tag = readByte();
+        if (tag == T_LIST) {
+          readList(o, field);
+        } else {
+          final Object value = readValue(tag);
+          if (field != null) setField(
+            o,
+            field,
+            value,
+            index >= sc.attributeCount
+          );
+        }
+      }
+
+      if (o != null) listener.unmarshalled(o);
+      return o;
+    }
+
+    void attributesProcessed(StreamClass sc, Object o) {
+      listener.attributesProcessed(o);
+      if (sc.info.identity == null) return;
+      // in a fragment, the map's ID would hide the component that shares it
+      if (external != null && o instanceof LWMap) return;
+      try {
+        final Object id = sc.info.identity.get(o);
+        if (id != null) bind(id.toString(), o);
+      } catch (Exception e) {
+        Log.warn("getting identity of " + Util.tags(o) + "; " + e);
+      }
+    }
+
+    void bind(String id, Object o) {
+      identified.put(id, o);
+      final List<PendingRef> waiting = pending.remove(id);
+      if (waiting != null) {
+        for (PendingRef p : waiting) set(p.target, p.field, o);
+      }
+    }
+
+    void setField(Object o, Accessor field, Object value, boolean element) {
+      if (value instanceof Ref) {
+        final String id = ((Ref) value).id;
+        final Object target = identified.get(id);
+        if (target != null) {
+          set(o, field, target);
+        } else {
+          List<PendingRef> waiting = pending.get(id);
+          if (waiting == null) pending.put(
+            id,
+            waiting = new ArrayList(2)
+          );
+          waiting.add(new PendingRef(o, field));
+        }
+      } else if (value != null) {
+        if (set(o, field, value) && element && !isSimple(value)) {
+          listener.fieldAdded(field.name, o, value);
+        }
+      }
+    }
+
+    boolean set(Object o, Accessor field, Object value) {
+      if (field.field == null && field.setters.length == 0) {
+        // read-only to castor as well: e.g., persisted only for reference
+        return false;
+      }
+      try {
+        if (field.set(o, value)) return true;
+        Log.warn(
+          "no setter for " +
+          field.name +
+          " in " +
+          o.getClass().getName() +
+          " taking " +
+          Util.tags(value)
+        );
+      } catch (Throwable t) {
+        if (t instanceof java.lang.reflect.InvocationTargetException) t =
+          t.getCause();
+        Log.warn(
+          "setting " +
+          field.name +
+          " in " +
+          o.getClass().getName() +
+          " to " +
+          Util.tags(value) +
+          "; " +
+          t
+        );
+        if (DEBUG.IO) Util.printStackTrace(t);
+      }
+      return false;
+    }
+
+    /**
+     * As castor does, add each item to the collection returned by the getter as soon
+     * as it's been restored.  If there's no collection, gather the items and hand them
+     * all to the setter at the end.
+     */
+    void readList(Object o, Accessor field) throws IOException {
+      final int count = readVarInt();
+      Collection target = null;
+      List gathered = null;
+      if (field != null) {
+        try {
+          final Object current = field.get(o);
+          if (current instanceof Collection) target = (Collection) current;
+        } catch (Exception e) {
+          Log.warn("getting " + field.name + " from " + Util.tags(o) + "; " + e);
+        }
+        if (target == null) gathered = new ArrayList(count);
+      }
+
+      if (external != null) {
+        // a fragment: lists of components will be lists of references, which
+        // may not resolve until the whole fragment has been read
+        final List items = new ArrayList(count);
+        boolean hasRefs = false;
+        for (int i = 0; i < count; i++) {
+          final Object item = readValue(readByte());
+          if (item instanceof Ref) hasRefs = true;
+          if (item != null) items.add(item);
+        }
+        if (field == null) return;
+        if (hasRefs) deferred.add(new DeferredList(o, field, target, items)); else addAll(
+          o,
+          field,
+          target,
+          items
+        );
+        return;
+      }
+
+      for (int i = 0; i < count; i++) {
+        final Object item = readValue(readByte());
+        if (field == null || item == null) continue;
+        if (item instanceof Ref) {
+          Log.warn("reference lists unsupported: " + field.name);
+        } else if (target != null) {
+          add(o, field, target, item);
+        } else {
+          gathered.add(item);
+        }
+      }
+
+      if (gathered != null) setGathered(o, field, gathered);
+    }
+
+    void add(Object o, Accessor field, Collection target, Object item) {
+      add(o, field, target, item, true);
+    }
+
+    void add(
+      Object o,
+      Accessor field,
+      Collection target,
+      Object item,
+      boolean notify
+    ) {
+      try {
+        target.add(item);
+      } catch (Throwable t) {
+        Log.warn("adding to " + field.name + " in " + Util.tags(o) + "; " + t);
+        return;
+      }
+      if (notify && !isSimple(item)) listener.fieldAdded(field.name, o, item);
+    }
+
+    void addAll(Object o, Accessor field, Collection target, List items) {
+      addAll(o, field, target, items, true);
+    }
+
+    /**
+     * @param notify - false if the items are only referenced here: the listener
+     * would otherwise re-parent them (e.g., a map's children out of their layers)
+     */
+    void addAll(
+      Object o,
+      Accessor field,
+      Collection target,
+      List items,
+      boolean notify
+    ) {
+      if (target != null) {
+        for (Object item : items) add(o, field, target, item, notify);
+      } else {
+        setGathered(o, field, items, notify);
+      }
+    }
+
+    void setGathered(Object o, Accessor field, List gathered) {
+      setGathered(o, field, gathered, true);
+    }
+
+    void setGathered(
+      Object o,
+      Accessor field,
+      List gathered,
+      boolean notify
+    ) {
+      if (!gathered.isEmpty()) {
+        final Class type = field.getSetterType();
+        Object value = gathered;
+        if (type != null) {
+          if (type.isArray()) {
+            final Object[] array = (Object[]) java.lang.reflect.Array.newInstance(
+              type.getComponentType(),
+              gathered.size()
+            );
+            value = gathered.toArray(array);
+          } else if (type.isAssignableFrom(Vector.class) && !type.isAssignableFrom(ArrayList.class)) {
+            value = new Vector(gathered);
+          } else if (!type.isAssignableFrom(ArrayList.class) && type.isAssignableFrom(LinkedHashSet.class)) {
+            value = new LinkedHashSet(gathered);
+          }
+        }
+        if (set(o, field, value) && notify) {
+          for (Object item : gathered) {
+            if (!isSimple(item)) listener.fieldAdded(field.name, o, item);
+          }
+        }
+      }
+    }
+
+    /** For fragments: resolve everything that wasn't found in the fragment itself from the external table */
+    void resolveExternal() {
+      for (DeferredList list : deferred) {
+        final List items = new ArrayList(list.items.size());
+        for (Object item : list.items) {
+          if (item instanceof Ref) {
+            final String id = ((Ref) item).id;
+            Object target = identified.get(id);
+            if (target == null) target = external.get(id);
+            if (target != null) items.add(target); else Log.warn(
+              "unresolved reference " +
+              list.field.name +
+              "=" +
+              id +
+              " in " +
+              Util.tags(list.target)
+            );
+          } else {
+            items.add(item);
+          }
+        }
+        // components in a fragment only ever appear here as references: where
+        // each belongs (e.g., it's layer) is persisted by the component itself
+        addAll(list.target, list.field, list.collection, items, false);
+      }
+      deferred.clear();
+
+      for (Iterator<Map.Entry<String, List<PendingRef>>> i = pending
+        .entrySet()
+        .iterator(); i.hasNext();) {
+        final Map.Entry<String, List<PendingRef>> e = i.next();
+        final Object target = external.get(e.getKey());
+        if (target != null) {
+          for (PendingRef p : e.getValue()) set(p.target, p.field, target);
+          i.remove();
+        }
+      }
+    }
+
+    void checkUnresolved() {
+      if (pending.isEmpty()) return;
+      for (Map.Entry<String, List<PendingRef>> e : pending.entrySet()) {
+        for (PendingRef p : e.getValue()) {
+          Log.warn(
+            "unresolved reference " +
+            p.field.name +
+            "=" +
+            e.getKey() +
+            " in " +
+            Util.tags(p.target)
+          );
+        }
+      }
+    }
+  }
+
+  private static boolean isSimple(Object value) {
+    return (
+      value instanceof String ||
+      value instanceof Number ||
+      value instanceof Boolean ||
+      value instanceof Character ||
+      value instanceof Enum
+    );
+  }
+
+  @Override
+  public String toString() {
+    return "BinaryMapFormat[" + mappingVersion + " " + mappingSource + "]";
+  }
+}
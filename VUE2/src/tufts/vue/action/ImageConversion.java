@@ -76,36 +76,58 @@ public class ImageConversion extends VueAction {
     }
   }
 
+  /**
+   * @return a TiledImageWriter for the given map at the given zoom.  Map images
+   * are rendered a tile at a time, so large maps at high zoom factors don't
+   * need a single image buffer for the whole map.
+   */
+  public static TiledImageWriter createTiledWriter(
+    LWMap map,
+    double zoomFactor
+  ) {
+    TiledImageWriter writer = new TiledImageWriter(map, zoomFactor);
+    writer.setTileSize(
+      VueResources.getInt(
+        "imageExport.tileSize",
+        TiledImageWriter.DefaultTileSize
+      )
+    );
+    return writer;
+  }
+
+  private static Dimension writeTiled(
+    LWMap map,
+    File location,
+    double zoomFactor,
+    String format
+  ) throws IOException {
+    TiledImageWriter writer = createTiledWriter(map, zoomFactor);
+    if (format.equals(JPEG)) writer.writeJPEG(location); else writer.writePNG(
+      location
+    );
+    return writer.getSize();
+  }
+
   /**A method which sets up for converting the active viewer to a Jpeg file*/
   public static Dimension createActiveMapJpeg(
     File location,
     double zoomFactor
-  ) {
-    // todo: jpeg output quality is poor; see:
-    // http://www.universalwebservices.net/web-programming-resources/java/adjust-jpeg-image-compression-quality-when-saving-images-in-java
-    BufferedImage bi = VUE.getActiveMap().getAsImage(zoomFactor);
-    convert(bi, location, JPEG);
-    Dimension d = new Dimension(bi.getWidth(), bi.getHeight());
-    return d;
+  ) throws IOException {
+    return writeTiled(VUE.getActiveMap(), location, zoomFactor, JPEG);
   }
 
   /**A method which sets up for converting the active viewer to a Jpeg file*/
-  public static Dimension createActiveMapPng(File location, double zoomFactor) {
-    BufferedImage bi = VUE.getActiveMap().getAsImage(zoomFactor);
-    convert(bi, location, PNG);
-    Dimension d = new Dimension(bi.getWidth(), bi.getHeight());
-    return d;
+  public static Dimension createActiveMapPng(File location, double zoomFactor)
+    throws IOException {
+    return writeTiled(VUE.getActiveMap(), location, zoomFactor, PNG);
   }
 
   public static Dimension createActiveMapPng(
     File location,
     LWMap map,
     double zoomFactor
-  ) {
-    BufferedImage bi = map.getAsImage(zoomFactor);
-    convert(bi, location, PNG);
-    Dimension d = new Dimension(bi.getWidth(), bi.getHeight());
-    return d;
+  ) throws IOException {
+    return writeTiled(map, location, zoomFactor, PNG);
   }
 
   public void act() {
@@ -71,10 +71,21 @@ public class ImageMap extends VueAction {
   public void act() {
     File selectedFile = ActionUtil.selectFile("Saving Imap", "html");
 
-    if (selectedFile != null) createImageMap(selectedFile, 1.0, "png");
+    if (selectedFile != null) {
+      try {
+        createImageMap(selectedFile, 1.0, "png");
+      } catch (IOException e) {
+        tufts.Util.printStackTrace(e, "Couldn't write image map: " + selectedFile);
+        VueUtil.alert(
+          VueResources.getString("imagemap.mapnotsaved.error") + "\n\n" + e,
+          VueResources.getString("imagemap.mapnotsaved.title")
+        );
+      }
+    }
   }
 
-  public void createImageMap(File file, LWMap map, double zoom) {
+  public void createImageMap(File file, LWMap map, double zoom)
+    throws IOException {
     String imageLocation =
       file.getAbsolutePath().substring(0, file.getAbsolutePath().length() - 5) +
       ".png";
@@ -101,10 +112,16 @@ public class ImageMap extends VueAction {
     }
     imageDimensions =
       ImageConversion.createActiveMapPng(imageLocationFile, map, 1.0);
+    if (VueResources.getBool("imagemap.deepZoom")) createDeepZoom(
+      file,
+      map,
+      1.0
+    );
     createHtml(imageName, fileName, map, zoom);
   }
 
-  public void createImageMap(File file, double zoom, String format) {
+  public void createImageMap(File file, double zoom, String format)
+    throws IOException {
     // See: VUE-536 in JIRA, If SaveAction Class still chooses "html" as the
     // file type for image maps
     // html file will already not be overwritten
@@ -147,9 +164,31 @@ public class ImageMap extends VueAction {
         zoom
       ); else imageDimensions =
       ImageConversion.createActiveMapPng(imageLocationFile, zoom);
+    if (VueResources.getBool("imagemap.deepZoom")) createDeepZoom(
+      file,
+      VUE.getActiveMap(),
+      zoom
+    );
     createHtml(imageName, fileName, zoom);
   }
 
+  /**
+   * Write a Deep Zoom tile pyramid of the map next to the given image map html
+   * file: [name].dzi, and the tiles in [name]_files, for use with zoomable
+   * image viewers when the full size image is too big to browse.
+   */
+  public static void createDeepZoom(File htmlFile, LWMap map, double zoom)
+    throws IOException {
+    final String path = htmlFile.getAbsolutePath();
+    final int dot = path.lastIndexOf('.');
+    final String base = dot > path.lastIndexOf(File.separatorChar)
+      ? path.substring(0, dot)
+      : path;
+    ImageConversion
+      .createTiledWriter(map, zoom)
+      .writeDeepZoom(new File(base + ".dzi"), ImageConversion.PNG);
+  }
+
   /**
    * Returns a string containing the coordinates (x1, y1, x2, y2) for a given
    * rectangle. This string is intended for use in an image map.
@@ -0,0 +1,887 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue.action;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import tufts.Util;
+import tufts.vue.DEBUG;
+import tufts.vue.LWCEvent;
+import tufts.vue.LWComponent;
+import tufts.vue.LWKey;
+import tufts.vue.LWMap;
+import tufts.vue.VueResources;
+import tufts.vue.VueUtil;
+
+/**
+ * Crash-safe autosave for a map, at a cost proportional to the edits made rather
+ * than the size of the map.
+ *
+ * We listen to the same LWCEvent stream the UndoManager records, and collect the
+ * components that have changed.  At the end of each user action, just those
+ * components are written, in the BinaryMapFormat, as a fragment appended to a
+ * journal file beside the map file (".~MapName.vue.journal", next to the ".~"
+ * backup we already keep).  Any other component a fragment refers to (e.g., the
+ * children of a changed node) is written only by ID, unless it's new since the
+ * journal's base, in which case it's written into the same fragment.
+ *
+ * The journal starts with the name, length and modification time of it's base: the
+ * map file itself, or a snapshot.  Once the journal has grown past the size of it's
+ * base, it's compacted: the base and journal are replayed exactly as for recovery
+ * into a full binary snapshot, and a new journal is started against that, so
+ * recovery never has to replay more than about one map's worth of edits.
+ *
+ * All disk I/O, including syncing each record and compacting, happens on a single
+ * background thread, in order.  Compacting works only from the files, never the
+ * live map, so it costs the user nothing.  Serializing the changed components
+ * happens on the thread that completed the user action, as the model isn't
+ * thread-safe, but that's only ever the components changed by that action.
+ *
+ * To recover, the base map is loaded, the journal is replayed into a table of the
+ * most recent version of each changed component, and the map is re-assembled from
+ * the base and that table by BinaryMapFormat, then restored as from any binary map.
+ * A record that was only partially written when we crashed fails it's checksum, and
+ * it and everything after it is ignored.
+ *
+ * Saving the map starts a new, empty journal against the new save file, and closing
+ * the map, or declining to save it, deletes the journal.
+ *
+ * A map that has never been saved has no file to journal against, so one is made
+ * for it: when journaling starts, a full binary snapshot of the map is written to a
+ * uniquely named file in the "unsaved" folder of the user's VUE folder, and that
+ * stands in for the save file until the map is first saved.  These are offered for
+ * recovery at startup (see getRecoverableUnsaved).
+ */
+public final class MapJournal implements LWComponent.Listener {
+
+  private static final org.apache.log4j.Logger Log =
+    org.apache.log4j.Logger.getLogger(MapJournal.class);
+
+  private static final byte[] MAGIC = {
+    (byte) 0x89,
+    'V',
+    'U',
+    'E',
+    'J',
+    'R',
+    'N',
+    '\n',
+  };
+
+  private static final int JOURNAL_VERSION = 1;
+
+  /** we'll never snapshot until the journal is at least this big, no matter how small the map is */
+  private static final long MIN_SNAPSHOT_BYTES = 1024 * 1024;
+
+  private static final ExecutorService IO = Executors.newSingleThreadExecutor(
+    new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        final Thread it = new Thread(r, "VUE-MapJournal");
+        it.setDaemon(true);
+        it.setPriority(Thread.NORM_PRIORITY - 1);
+        return it;
+      }
+    }
+  );
+
+  /** all journals currently attached to an open map */
+  private static final Map<LWMap, MapJournal> Journals = new HashMap();
+
+  /** maps restored by recover that have yet to be attached: they continue the existing journal */
+  private static final Map<LWMap, File> Recovered = new WeakHashMap();
+
+  /** where maps that have never been saved are journaled: may be set for testing */
+  static File UnsavedFolder;
+
+  private final LWMap mMap;
+  private final File mFile;
+  private final File mJournalFile;
+  /** true if mFile is our own snapshot of a map that has never been saved */
+  private final boolean mUnsaved;
+
+  /** components changed since the last record was written */
+  private final Set<LWComponent> mDirty = new LinkedHashSet();
+
+  /** ID's of all components in the base or already written to the journal */
+  private final Set<String> mKnown = new HashSet();
+
+  /** the current base: either mFile, or a snapshot file */
+  private File mBaseFile;
+
+  /** bytes written to the journal since the base */
+  private long mJournalBytes;
+  /** updated by the I/O thread once a snapshot has been written */
+  private volatile long mSnapshotThreshold;
+
+  /** set on the first I/O failure, after which we give up on this map */
+  private volatile boolean mFailed;
+
+  private MapJournal(LWMap map, File file, boolean unsaved) {
+    mMap = map;
+    mFile = file;
+    mJournalFile = getJournalFile(file);
+    mUnsaved = unsaved;
+  }
+
+  private static boolean isEnabled() {
+    return VueResources.getBool("mapping.lw.journal");
+  }
+
+  /** @return true if we can journal a map with the given save file */
+  private static boolean isJournalable(File file) {
+    return (
+      file != null &&
+      file.isFile() &&
+      file.getName().toLowerCase().endsWith(".vue")
+    );
+  }
+
+  static File getJournalFile(File mapFile) {
+    return new File(
+      mapFile.getParentFile(),
+      String.format(".~%s.journal", mapFile.getName())
+    );
+  }
+
+  private static synchronized File getUnsavedFolder() {
+    if (UnsavedFolder == null) UnsavedFolder = new File(
+      VueUtil.getDefaultUserFolder(),
+      "unsaved"
+    );
+    return UnsavedFolder;
+  }
+
+  /** @return true if the given file stands in for the save file of a map that's never been saved */
+  private static boolean isUnsaved(File mapFile) {
+    return getUnsavedFolder().equals(mapFile.getParentFile());
+  }
+
+  private static File newUnsavedFile() throws IOException {
+    final File folder = getUnsavedFolder();
+    if (!folder.isDirectory() && !folder.mkdirs()) throw new IOException(
+      "couldn't create " + folder
+    );
+    return File.createTempFile("unsaved-", ".vue", folder);
+  }
+
+  private File newSnapshotFile() {
+    return new File(
+      mFile.getParentFile(),
+      String.format(
+        ".~%s.%x.snapshot",
+        mFile.getName(),
+        System.currentTimeMillis()
+      )
+    );
+  }
+
+  /**
+   * Start journaling changes to the given map.  If the map was just restored via
+   * recover, it's existing journal is continued, and the map is marked as modified,
+   * as none of the recovered changes have been saved.  A map that has never been
+   * saved is journaled against a snapshot in the unsaved folder.
+   */
+  public static void attach(LWMap map) {
+    if (!isEnabled()) return;
+    final File recoveredFrom;
+    synchronized (MapJournal.class) {
+      if (Journals.containsKey(map)) return;
+      recoveredFrom = Recovered.remove(map);
+    }
+    final boolean unsaved = map.getFile() == null;
+    final MapJournal journal;
+    try {
+      final File file;
+      if (!unsaved) {
+        file = map.getFile();
+        if (!isJournalable(file)) return;
+      } else if (recoveredFrom != null && isUnsaved(recoveredFrom)) {
+        file = recoveredFrom;
+      } else {
+        file = newUnsavedFile();
+      }
+      journal = new MapJournal(map, file, unsaved);
+      if (recoveredFrom != null && recoveredFrom.equals(file)) {
+        journal.resume();
+        map.markAsModified();
+      } else {
+        journal.start();
+      }
+    } catch (Throwable t) {
+      Log.warn("couldn't start journal for " + map + "; " + t);
+      return;
+    }
+    synchronized (MapJournal.class) {
+      Journals.put(map, journal);
+    }
+    map.addLWCListener(journal);
+    Log.info("journaling " + map + " to " + journal.mJournalFile);
+  }
+
+  /**
+   * The map has been saved to it's file: all changes so far are safe, so start a new
+   * journal against the save file, which may be a new file for a "save as".
+   */
+  public static void mapSaved(LWMap map) {
+    discard(map);
+    attach(map);
+  }
+
+  /**
+   * Stop journaling the given map and delete it's journal: called when the map
+   * has been closed, or the user has declined to save it's changes.
+   */
+  public static void discard(LWMap map) {
+    final MapJournal journal;
+    synchronized (MapJournal.class) {
+      journal = Journals.remove(map);
+      Recovered.remove(map);
+    }
+    if (journal == null) return;
+    map.removeLWCListener(journal);
+    journal.mFailed = true; // ignore anything still pending
+    final File baseFile = journal.mBaseFile;
+    final File journalFile = journal.mJournalFile;
+    final File mapFile = journal.mFile;
+    final boolean unsaved = journal.mUnsaved;
+    // wait for this: we may be about to re-open the same file
+    await(
+      IO.submit(
+        new Runnable() {
+          public void run() {
+            delete(journalFile);
+            if (baseFile != null && !baseFile.equals(mapFile)) delete(
+              baseFile
+            );
+            if (unsaved) delete(mapFile);
+          }
+        }
+      )
+    );
+  }
+
+  /** Stop journaling the given map, but leave it's journal in place */
+  static void detach(LWMap map) {
+    final MapJournal journal;
+    synchronized (MapJournal.class) {
+      journal = Journals.remove(map);
+    }
+    if (journal != null) map.removeLWCListener(journal);
+  }
+
+  /** For testing: compact the journal of the given map now, regardless of it's size */
+  static void compact(LWMap map) throws IOException {
+    final MapJournal journal;
+    synchronized (MapJournal.class) {
+      journal = Journals.get(map);
+    }
+    if (journal != null) journal.compact();
+  }
+
+  /** For testing: wait for all pending journal I/O to complete */
+  static void sync() {
+    await(
+      IO.submit(
+        new Runnable() {
+          public void run() {}
+        }
+      )
+    );
+  }
+
+  private static void await(Future f) {
+    try {
+      f.get();
+    } catch (Exception e) {
+      Log.warn("waiting for journal I/O; " + e);
+    }
+  }
+
+  private static void delete(File file) {
+    if (file.exists() && !file.delete()) Log.warn("failed to delete " + file);
+  }
+
+  /**
+   * Start a new, empty journal against the map file.  If the map has never been
+   * saved, the map file is first written with a snapshot of the map as it is now.
+   */
+  private void start() throws IOException {
+    mBaseFile = mFile;
+    mJournalBytes = 0;
+    collectIDs(mMap, mKnown);
+    final byte[] snapshot;
+    if (mUnsaved) {
+      final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      ActionUtil.getBinaryFormat()
+        .write(mMap, tufts.vue.Version.WhatString, buf);
+      snapshot = buf.toByteArray();
+      mSnapshotThreshold = Math.max(MIN_SNAPSHOT_BYTES, snapshot.length);
+    } else {
+      snapshot = null;
+      mSnapshotThreshold = Math.max(MIN_SNAPSHOT_BYTES, mFile.length());
+    }
+    IO.execute(
+      new Runnable() {
+        public void run() {
+          try {
+            if (snapshot != null) replace(mFile, snapshot);
+            replace(mJournalFile, createHeader(mFile));
+          } catch (Throwable t) {
+            failed("starting journal", t);
+          }
+        }
+      }
+    );
+  }
+
+  /** Continue the existing journal for a map just restored from it */
+  private void resume() throws IOException {
+    final Header header = readHeader(mJournalFile);
+    if (header == null || header.base == null) throw new IOException(
+      "no valid journal to resume: " + mJournalFile
+    );
+    mBaseFile = header.base;
+    mJournalBytes = mJournalFile.length() - header.length;
+    mSnapshotThreshold = Math.max(MIN_SNAPSHOT_BYTES, mBaseFile.length());
+    // everything in the map is now either in the base or the journal
+    collectIDs(mMap, mKnown);
+  }
+
+  private static void collectIDs(LWMap map, Set<String> ids) {
+    ids.add(map.getID());
+    for (LWComponent c : map.getAllDescendents(LWComponent.ChildKind.ANY)) {
+      if (c.getID() != null) ids.add(c.getID());
+    }
+  }
+
+  private void failed(String what, Throwable t) {
+    if (mFailed) return;
+    mFailed = true;
+    Log.error(what + ": " + mJournalFile + "; journaling disabled for " + mMap, t);
+  }
+
+  /**
+   * We record exactly the changes the UndoManager would: hierarchy changes, and
+   * property changes with an old value.  At the end of each user action, what's
+   * changed is written out.
+   */
+  public void LWCChanged(LWCEvent e) {
+    if (mFailed) return;
+
+    if (e.key == LWKey.UserActionCompleted) {
+      flush();
+      return;
+    }
+    if (e.key == LWKey.Repaint || e.key == LWKey.RepaintAsync) return;
+
+    final boolean hierarchyEvent =
+      e.key == LWKey.HierarchyChanging || e.getName().startsWith("hier.");
+
+    if (!hierarchyEvent && !e.hasOldValue()) return;
+
+    synchronized (mDirty) {
+      if (!(e.getSource() instanceof LWComponent)) {
+        // e.g., the LWPathwayList, which is persisted as part of the map
+        mDirty.add(mMap);
+      }
+      if (hierarchyEvent) {
+        // the children of the source have changed: any new children will be
+        // picked up when we write the parent.
+        if (e.getSource() instanceof LWComponent) mDirty.add(
+          (LWComponent) e.getSource()
+        );
+        if (e.getSource() instanceof LWMap.Layer) {
+          // the members of all layers are persisted by the map, and each
+          // of them persists the layer it's in
+          mDirty.add(mMap);
+          if (e.getComponents() != null) mDirty.addAll(e.getComponents());
+        }
+      } else if (e.getComponents() != null) {
+        mDirty.addAll(e.getComponents());
+      } else if (e.getComponent() != null) {
+        mDirty.add(e.getComponent());
+      }
+    }
+  }
+
+  /** Write a record of everything changed since the last one */
+  void flush() {
+    final Set<LWComponent> changed;
+    synchronized (mDirty) {
+      if (mDirty.isEmpty()) return;
+      changed = new LinkedHashSet(mDirty);
+      mDirty.clear();
+    }
+    if (mFailed) return;
+
+    try {
+      append(changed);
+      if (mJournalBytes > mSnapshotThreshold) compact();
+    } catch (Throwable t) {
+      failed("journaling", t);
+    }
+  }
+
+  private void append(Set<LWComponent> changed) throws IOException {
+    final long start = DEBUG.IO ? System.nanoTime() : 0;
+    final BinaryMapFormat format = ActionUtil.getBinaryFormat();
+    final Map<String, Object> referenced = new HashMap();
+    final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+    for (Iterator<LWComponent> i = changed.iterator(); i.hasNext();) {
+      if (i.next().getID() == null) i.remove();
+    }
+
+    // Anything referenced that's not in the base, or already in the journal, is new,
+    // and must go into this record as well.  Repeat until there's nothing new.
+    boolean added;
+    do {
+      buf.reset();
+      referenced.clear();
+      format.writeFragment(changed, buf, referenced);
+      added = false;
+      for (Map.Entry<String, Object> e : referenced.entrySet()) {
+        if (
+          e.getValue() instanceof LWComponent &&
+          !mKnown.contains(e.getKey()) &&
+          changed.add((LWComponent) e.getValue())
+        ) added = true;
+      }
+    } while (added);
+
+    for (LWComponent c : changed) mKnown.add(c.getID());
+
+    final byte[] record = buf.toByteArray();
+    mJournalBytes += record.length + 8;
+
+    if (DEBUG.IO) Log.debug(
+      String.format(
+        "%s: journaled %d components, %d bytes in %.1fms",
+        mMap,
+        changed.size(),
+        record.length,
+        (System.nanoTime() - start) / 1e6
+      )
+    );
+
+    IO.execute(
+      new Runnable() {
+        public void run() {
+          if (mFailed) return;
+          try {
+            appendRecord(mJournalFile, record);
+          } catch (Throwable t) {
+            failed("appending to journal", t);
+          }
+        }
+      }
+    );
+  }
+
+  /**
+   * Replace the base and journal with a full snapshot and a new, empty journal.  All
+   * that happens here is deciding on the new base: the snapshot is assembled from the
+   * old base and journal in the background, once every record so far has been
+   * written.  The old journal and base stay valid until the new ones are completely
+   * in place.
+   */
+  private void compact() throws IOException {
+    // Once this is done, the base will hold exactly what's in the map now, as every
+    // change so far is in the journal.  Anything no longer in the map (e.g.,
+    // deleted, but could come back via undo) won't be in the new base, so must be
+    // journaled in full if we see it again.
+    mKnown.clear();
+    collectIDs(mMap, mKnown);
+    mJournalBytes = 0;
+
+    final File oldBase = mBaseFile;
+    final File newBase = newSnapshotFile();
+    mBaseFile = newBase;
+
+    IO.execute(
+      new Runnable() {
+        public void run() {
+          if (mFailed) return;
+          try {
+            final long start = System.nanoTime();
+            final Header header = readHeader(mJournalFile);
+            if (header == null || header.base == null) throw new IOException(
+              "journal unreadable"
+            );
+            final Replay replay = replay(mFile, mJournalFile, header);
+            if (mFailed) return;
+            replace(newBase, replay.map);
+            replace(mJournalFile, createHeader(newBase));
+            if (!oldBase.equals(mFile)) delete(oldBase);
+            mSnapshotThreshold = Math.max(MIN_SNAPSHOT_BYTES, replay.map.length);
+            Log.info(
+              String.format(
+                "%s: compacted %d records into a snapshot of %d bytes in %.1fms: %s",
+                mMap,
+                replay.records,
+                replay.map.length,
+                (System.nanoTime() - start) / 1e6,
+                newBase
+              )
+            );
+          } catch (Throwable t) {
+            failed("writing snapshot " + newBase, t);
+          }
+        }
+      }
+    );
+  }
+
+  //========================================================================================
+  // File format
+  //========================================================================================
+
+  private static byte[] createHeader(File base) throws IOException {
+    return createHeader(base.getName(), base.length(), base.lastModified());
+  }
+
+  private static byte[] createHeader(
+    String baseName,
+    long baseLength,
+    long baseModified
+  ) throws IOException {
+    final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(buf);
+    out.write(MAGIC);
+    out.writeInt(JOURNAL_VERSION);
+    out.writeUTF(baseName);
+    out.writeLong(baseLength);
+    out.writeLong(baseModified);
+    out.flush();
+    return buf.toByteArray();
+  }
+
+  private static final class Header {
+
+    /** the base file, if it still exists exactly as it was when the journal was started */
+    File base;
+    /** the length of the header in bytes */
+    long length;
+  }
+
+  /** @return the journal header, or null if there's no journal, or it's unreadable */
+  private static Header readHeader(File journalFile) {
+    if (!journalFile.isFile()) return null;
+    DataInputStream in = null;
+    try {
+      in =
+        new DataInputStream(
+          new BufferedInputStream(new FileInputStream(journalFile))
+        );
+      for (byte b : MAGIC) {
+        if (in.readByte() != b) return null;
+      }
+      if (in.readInt() > JOURNAL_VERSION) {
+        Log.warn("journal is from a newer version of VUE: " + journalFile);
+        return null;
+      }
+      final String baseName = in.readUTF();
+      final long baseLength = in.readLong();
+      final long baseModified = in.readLong();
+      final File base = new File(journalFile.getParentFile(), baseName);
+      final Header h = new Header();
+      h.length = createHeader(baseName, 0, 0).length;
+      if (
+        base.isFile() &&
+        base.length() == baseLength &&
+        base.lastModified() == baseModified
+      ) h.base = base; else Log.info(
+        "journal base has changed or is missing: " + base
+      );
+      return h;
+    } catch (IOException e) {
+      Log.warn("reading journal header " + journalFile + "; " + e);
+      return null;
+    } finally {
+      if (in != null) try {
+        in.close();
+      } catch (IOException e) {}
+    }
+  }
+
+  /** Atomically replace the given file with the given content */
+  private static void replace(File file, byte[] content) throws IOException {
+    final File tmp = new File(file.getParentFile(), file.getName() + "$new");
+    final FileOutputStream out = new FileOutputStream(tmp);
+    try {
+      out.write(content);
+      out.flush();
+      out.getFD().sync();
+    } finally {
+      out.close();
+    }
+    if (file.exists() && !file.delete()) { // Required on Win32 or rename will fail
+      throw new IOException("couldn't remove " + file);
+    }
+    if (!tmp.renameTo(file)) throw new IOException(
+      "couldn't rename " + tmp + " to " + file
+    );
+  }
+
+  private static void appendRecord(File file, byte[] record)
+    throws IOException {
+    final CRC32 crc = new CRC32();
+    crc.update(record);
+    final FileOutputStream fos = new FileOutputStream(file, true);
+    try {
+      final DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(fos, record.length + 8)
+      );
+      out.writeInt(record.length);
+      out.writeInt((int) crc.getValue());
+      out.write(record);
+      out.flush();
+      fos.getFD().sync();
+    } finally {
+      fos.close();
+    }
+  }
+
+  //========================================================================================
+  // Recovery
+  //========================================================================================
+
+  /**
+   * @return true if there's a journal for the given map file holding changes that
+   * haven't been saved to it.
+   */
+  public static boolean hasRecoverableChanges(File mapFile) {
+    if (!isEnabled() || mapFile == null) return false;
+    synchronized (MapJournal.class) {
+      // the map is open now: this is it's live journal
+      if (isLive(mapFile)) return false;
+    }
+    final File journalFile = getJournalFile(mapFile);
+    final Header header = readHeader(journalFile);
+    if (header == null || header.base == null) return false;
+    return (
+      !header.base.equals(mapFile) || journalFile.length() > header.length
+    );
+  }
+
+  /**
+   * Delete any journal for the given map file without recovering it: e.g., if the
+   * user has declined to recover it.
+   */
+  public static void discard(File mapFile) {
+    final File journalFile = getJournalFile(mapFile);
+    final Header header = readHeader(journalFile);
+    if (
+      header != null && header.base != null && !header.base.equals(mapFile)
+    ) delete(header.base);
+    delete(journalFile);
+    if (isUnsaved(mapFile)) delete(mapFile);
+  }
+
+  /**
+   * @return the stand-in save files of maps that were never saved, and have
+   * journaled changes left over from a previous session.  Any left over without
+   * changes to recover are deleted.
+   */
+  public static List<File> getRecoverableUnsaved() {
+    final List<File> found = new ArrayList();
+    if (!isEnabled()) return found;
+    final File[] files = getUnsavedFolder().listFiles();
+    if (files == null) return found;
+    Arrays.sort(files);
+    for (File file : files) {
+      if (file.getName().startsWith(".") || !isJournalable(file)) continue;
+      synchronized (MapJournal.class) {
+        if (isLive(file)) continue;
+      }
+      if (hasRecoverableChanges(file)) found.add(file); else discard(file);
+    }
+    return found;
+  }
+
+  /** @return true if the given map file is being journaled now: must hold the class lock */
+  private static boolean isLive(File mapFile) {
+    for (MapJournal j : Journals.values()) {
+      if (j.mFile.equals(mapFile)) return true;
+    }
+    return false;
+  }
+
+  /** A base and journal replayed together */
+  private static final class Replay {
+
+    /** the map as of the last intact record, in the binary format */
+    byte[] map;
+    /** the length of the journal up to the end of the last intact record */
+    long validLength;
+    int records;
+    int changed;
+  }
+
+  /**
+   * Replay the journal into a table of the most recent version of each changed
+   * component, and re-assemble the map from the base and that table.  This works
+   * only from the files, and may be run on any thread.
+   */
+  private static Replay replay(File mapFile, File journalFile, Header header)
+    throws IOException {
+    final BinaryMapFormat format = ActionUtil.getBinaryFormat();
+    final LWMap base;
+    if (isUnsaved(mapFile)) {
+      // always one of our own binary snapshots: restore it without a file, so the
+      // map keeps it's own label, rather than taking the name of the snapshot
+      final InputStream in = new BufferedInputStream(
+        new FileInputStream(header.base)
+      );
+      try {
+        base = ActionUtil.unmarshallBinaryMap(in, null);
+      } finally {
+        in.close();
+      }
+    } else {
+      base = ActionUtil.unmarshallMap(header.base);
+    }
+
+    // everything a journal record can refer to: the base, and all prior records.
+    // The map itself is kept out of these, as it shares it's ID with the first
+    // component it created.
+    final Map<String, Object> known = new HashMap();
+    for (LWComponent c : base.getAllDescendents(LWComponent.ChildKind.ANY)) {
+      if (c.getID() != null) known.put(c.getID(), c);
+    }
+    final Map<String, LWComponent> latest = new HashMap();
+    LWMap latestMap = base;
+
+    final Replay replay = new Replay();
+    replay.validLength = header.length;
+    final DataInputStream in = new DataInputStream(
+      new BufferedInputStream(new FileInputStream(journalFile))
+    );
+    try {
+      in.skipBytes((int) header.length);
+      final CRC32 crc = new CRC32();
+      for (;;) {
+        final byte[] record;
+        try {
+          final int length = in.readInt();
+          final int checksum = in.readInt();
+          if (length < 0 || length > journalFile.length()) break;
+          record = new byte[length];
+          in.readFully(record);
+          crc.reset();
+          crc.update(record);
+          if ((int) crc.getValue() != checksum) {
+            Log.warn(
+              "bad checksum in record " + replay.records + " of " + journalFile
+            );
+            break;
+          }
+        } catch (EOFException e) {
+          break;
+        }
+        final List<LWComponent> components = format.readFragment(
+          new ByteArrayInputStream(record),
+          new MapUnmarshalHandler(
+            mapFile,
+            tufts.vue.Resource.MANAGED_UNMARSHALLING
+          ),
+          known
+        );
+        for (LWComponent c : components) {
+          if (c instanceof LWMap) {
+            latestMap = (LWMap) c;
+          } else {
+            known.put(c.getID(), c);
+            latest.put(c.getID(), c);
+          }
+        }
+        replay.validLength += record.length + 8;
+        replay.records++;
+      }
+    } finally {
+      in.close();
+    }
+
+    // re-assemble the map from the base, with the latest version of every changed component
+    final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    format.write(latestMap, tufts.vue.Version.WhatString, buf, latest);
+    replay.map = buf.toByteArray();
+    replay.changed = latest.size();
+    return replay;
+  }
+
+  /**
+   * Restore the given map file with all the changes in it's journal.  The journal
+   * is left in place (truncated to the last intact record), and continues to be
+   * used once the restored map is displayed.
+   */
+  public static LWMap recover(File mapFile) throws IOException {
+    final long start = System.nanoTime();
+    final File journalFile = getJournalFile(mapFile);
+    final Header header = readHeader(journalFile);
+    if (header == null || header.base == null) throw new IOException(
+      "no valid journal for " + mapFile
+    );
+
+    Log.info("recovering " + mapFile + " from " + header.base + " + " + journalFile);
+
+    final Replay replay = replay(mapFile, journalFile, header);
+
+    if (replay.validLength < journalFile.length()) {
+      Log.warn(
+        "truncating damaged journal " + journalFile + " to " + replay.validLength
+      );
+      final RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+      try {
+        raf.setLength(replay.validLength);
+      } finally {
+        raf.close();
+      }
+    }
+
+    // restore the re-assembled map as we would any map: a map that was never saved
+    // still has no file
+    final LWMap map = ActionUtil.unmarshallBinaryMap(
+      new ByteArrayInputStream(replay.map),
+      isUnsaved(mapFile) ? null : mapFile
+    );
+
+    Log.info(
+      String.format(
+        "recovered %s: %d journal records, %d changed components in %.1fms",
+        map,
+        replay.records,
+        replay.changed,
+        (System.nanoTime() - start) / 1e6
+      )
+    );
+
+    synchronized (MapJournal.class) {
+      Recovered.put(map, mapFile);
+    }
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return "MapJournal[" + mMap + " " + mJournalFile + "]";
+  }
+}
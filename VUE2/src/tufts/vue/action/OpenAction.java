@@ -213,6 +213,8 @@ public class OpenAction extends VueAction {
       map = Archive.openVuePackage(file);
     } else if (Archive.isVueIMSCPArchive(file)) {
       map = Archive.loadVueIMSCPArchive(file);
+    } else if (MapJournal.hasRecoverableChanges(file) && askRecover(file)) {
+      map = MapJournal.recover(file);
     } else {
       map = ActionUtil.unmarshallMap(file);
     }
@@ -220,6 +222,49 @@ public class OpenAction extends VueAction {
     return map;
   }
 
+  /** @return true if the user wants to recover the changes in the journal for the given map file */
+  private static boolean askRecover(File file) {
+    final int response = VueUtil.confirm(
+      String.format(
+        VueResources.getString("openaction.recover.message"),
+        file.getName()
+      ),
+      VueResources.getString("openaction.recover.title")
+    );
+    if (response == JOptionPane.YES_OPTION) return true;
+    MapJournal.discard(file);
+    return false;
+  }
+
+  /**
+   * Offer to recover each map that was never saved, but has changes journaled
+   * from a previous session that didn't exit cleanly.
+   * @return the number of maps recovered and displayed
+   */
+  public static int recoverUnsavedMaps() {
+    int recovered = 0;
+    for (File file : MapJournal.getRecoverableUnsaved()) {
+      final int response = VueUtil.confirm(
+        String.format(
+          VueResources.getString("openaction.recoverunsaved.message"),
+          new Date(MapJournal.getJournalFile(file).lastModified())
+        ),
+        VueResources.getString("openaction.recover.title")
+      );
+      if (response != JOptionPane.YES_OPTION) {
+        MapJournal.discard(file);
+        continue;
+      }
+      try {
+        VUE.displayMap(MapJournal.recover(file));
+        recovered++;
+      } catch (Throwable t) {
+        Log.error("recovering unsaved map " + file, t);
+      }
+    }
+    return recovered;
+  }
+
   //     private static LWMap unpackVueArchive(File file)
   //         throws java.io.IOException,
   //                java.util.zip.ZipException
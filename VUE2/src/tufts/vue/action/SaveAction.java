@@ -168,7 +168,10 @@ public class SaveAction extends VueAction {
       if (name.endsWith(".rli.xml")) {
         new IMSResourceList().convert(map, file);
       } else if (name.endsWith(".xml") || name.endsWith(".vue")) {
+        // don't replace the last good save with one that won't load again
+        if (!ActionUtil.isCastorCompatible(map)) return false;
         ActionUtil.marshallMap(file, map);
+        MapJournal.mapSaved(map);
       } else if (
         name.endsWith(".jpeg") || name.endsWith(".jpg")
       ) ImageConversion.createActiveMapJpeg(
@@ -282,6 +285,7 @@ public class SaveAction extends VueAction {
         index.write(writer);
         writer.close();
       } else if (name.endsWith(VueUtil.VueArchiveExtension)) {
+        if (!ActionUtil.isCastorCompatible(map)) return false;
         Archive.writeArchive(map, file);
       } else {
         Log.warn("Unknown save type for filename extension: " + name);
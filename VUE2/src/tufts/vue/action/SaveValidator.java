@@ -0,0 +1,234 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue.action;
+
+import edu.tufts.vue.metadata.MetadataList;
+import edu.tufts.vue.metadata.VueMetadataElement;
+import java.util.*;
+import tufts.Util;
+import tufts.vue.DEBUG;
+import tufts.vue.LWComponent;
+import tufts.vue.LWMap;
+import tufts.vue.LWPathway;
+import tufts.vue.MetaMap;
+import tufts.vue.Resource;
+
+/**
+ * Checks, in memory, for the content in a map that castor will happily write out
+ * but that will then fail to load back in, so we can refuse to save (and tell the
+ * user exactly what's wrong) without actually having to save and re-load the map.
+ *
+ * What we look for:
+ *
+ * Characters that can't appear in XML 1.0 at all, even as character references
+ * (most ASCII control characters, unpaired surrogates, U+FFFE and U+FFFF).  These
+ * most often come in via paste from other applications into labels and notes.
+ *
+ * Property entries that can't be converted to the String key / value pairs that
+ * PropertyEntry persists (null keys or values, toString failures).
+ *
+ * Resources with no spec, which can't be re-created on restore.
+ *
+ * Every component in the map (including layers, pathways and slides) is visited
+ * exactly once.
+ */
+public final class SaveValidator {
+
+  private static final org.apache.log4j.Logger Log =
+    org.apache.log4j.Logger.getLogger(SaveValidator.class);
+
+  /** A single reason a component can't be saved */
+  public static final class Problem {
+
+    public final LWComponent component;
+    public final String field;
+    public final String reason;
+
+    Problem(LWComponent c, String field, String reason) {
+      this.component = c;
+      this.field = field;
+      this.reason = reason;
+    }
+
+    @Override
+    public String toString() {
+      return component.getDisplayLabel() + " [" + field + "]: " + reason;
+    }
+  }
+
+  private final List<Problem> problems = new ArrayList();
+
+  private SaveValidator() {}
+
+  /** @return all the problems found in the map: the list will be empty if it can be safely saved */
+  public static List<Problem> validate(LWMap map) {
+    final long start = DEBUG.IO ? System.nanoTime() : 0;
+    final SaveValidator v = new SaveValidator();
+
+    v.check(map);
+    for (LWComponent c : map.getAllDescendents(LWComponent.ChildKind.ANY)) {
+      v.check(c);
+    }
+
+    if (DEBUG.IO) Log.debug(
+      String.format(
+        "validated %s in %.1fms; %d problems",
+        map,
+        (System.nanoTime() - start) / 1000000.0,
+        v.problems.size()
+      )
+    );
+
+    return v.problems;
+  }
+
+  private void check(LWComponent c) {
+    checkText(c, "label", c.getLabel());
+    checkText(c, "notes", c.getNotes());
+
+    final MetadataList metadata = c.getMetadataList();
+    if (metadata != null) {
+      for (VueMetadataElement vme : metadata.getMetadata()) {
+        checkText(c, "metadata key", vme.getKey());
+        checkText(c, "metadata value", vme.getValue());
+      }
+    }
+
+    checkProperties(c, "data", c.getRawData(), false);
+
+    if (c.hasResource()) checkResource(c, c.getResource());
+
+    if (c instanceof LWPathway) {
+      for (LWPathway.Entry e : ((LWPathway) c).getEntries()) {
+        checkText(c, "pathway notes", e.getNotes());
+      }
+    }
+  }
+
+  private void checkResource(LWComponent c, Resource r) {
+    final String spec;
+    try {
+      spec = r.getSpec();
+    } catch (Throwable t) {
+      add(c, "resource", "spec unavailable: " + t);
+      return;
+    }
+    if (spec == null || spec.trim().length() == 0) add(
+      c,
+      "resource",
+      "no resource spec"
+    ); else checkText(c, "resource spec", spec);
+
+    checkText(c, "resource title", r.getTitle());
+    checkProperties(c, "resource property", r.getProperties(), true);
+  }
+
+  private void checkProperties(
+    LWComponent c,
+    String field,
+    MetaMap properties,
+    boolean isResource
+  ) {
+    if (properties == null || properties.size() == 0) return;
+
+    for (Map.Entry e : properties.entries()) {
+      final Object key = e.getKey();
+      if (key == null) {
+        add(c, field, "null key");
+        continue;
+      }
+      final String keyString = key.toString();
+      if (isResource && Resource.isRuntimePropertyKey(keyString)) {
+        // these are never persisted: see ActionUtil.VueMarshalListener
+        continue;
+      }
+      checkText(c, field + " key", keyString);
+
+      final Object value = e.getValue();
+      if (value == null) {
+        add(c, field, "null value for " + Util.tags(keyString));
+        continue;
+      }
+      final String valueString;
+      try {
+        valueString = value.toString();
+      } catch (Throwable t) {
+        add(
+          c,
+          field,
+          "unsupported value type " +
+          value.getClass().getName() +
+          " for " +
+          Util.tags(keyString) +
+          ": " +
+          t
+        );
+        continue;
+      }
+      if (valueString == null) add(
+        c,
+        field,
+        "unsupported value type " +
+        value.getClass().getName() +
+        " for " +
+        Util.tags(keyString)
+      ); else checkText(c, field + " " + keyString, valueString);
+    }
+  }
+
+  private void checkText(LWComponent c, String field, String text) {
+    if (text == null) return;
+    final int bad = findIllegalChar(text);
+    if (bad >= 0) add(
+      c,
+      field,
+      String.format(
+        "illegal character U+%04X at position %d",
+        (int) text.charAt(bad),
+        bad
+      )
+    );
+  }
+
+  private void add(LWComponent c, String field, String reason) {
+    final Problem p = new Problem(c, field, reason);
+    if (DEBUG.IO) Log.debug(p);
+    problems.add(p);
+  }
+
+  /**
+   * @return the index of the first character in the string that isn't allowed
+   * anywhere in an XML 1.0 document, or -1 if there are none
+   */
+  public static int findIllegalChar(String s) {
+    final int len = s.length();
+    for (int i = 0; i < len; i++) {
+      final char c = s.charAt(i);
+      if (c >= 0x20 && c < 0xD800) continue; // the vast majority
+      if (c == '\t' || c == '\n' || c == '\r') continue;
+      if (Character.isHighSurrogate(c)) {
+        if (i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+          i++;
+          continue;
+        }
+        return i;
+      }
+      if (c >= 0xE000 && c <= 0xFFFD) continue;
+      return i;
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,555 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue.action;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import javax.imageio.*;
+import javax.imageio.stream.*;
+import tufts.Util;
+import tufts.vue.DEBUG;
+import tufts.vue.LWComponent;
+import tufts.vue.LWMap;
+
+/**
+ * Produces images of an LWComponent (usually an entire LWMap) a tile at a time,
+ * so that exporting very large maps at high zoom doesn't require allocating a
+ * single image for the whole map.
+ *
+ * For PNG output, horizontal strips of tiles are streamed straight through the
+ * PNG ImageWriter (which pulls the image a row at a time), so peak memory is a
+ * couple of strips, not the whole image.  The JPEG ImageWriter always pulls the
+ * entire raster at once, so JPEG output still assembles the full image, but
+ * into a 3 byte-per-pixel image.
+ *
+ * This can also write a Deep Zoom (.dzi) tile pyramid for use by zoomable
+ * image viewers, with each level rendered directly from the map at that
+ * level's zoom.
+ *
+ * All drawing happens one tile at a time on a single thread: drawing an
+ * LWComponent uses state cached in the components (e.g., the zero transform,
+ * the label text boxes), so the tree can't be drawn by more than one thread at
+ * once.  What overlaps is the encoding: the next PNG strip is drawn while the
+ * current one is being encoded, and Deep Zoom tiles are encoded in parallel.
+ */
+public class TiledImageWriter {
+
+  private static final org.apache.log4j.Logger Log =
+    org.apache.log4j.Logger.getLogger(TiledImageWriter.class);
+
+  public static final int DefaultTileSize = 512;
+
+  private final LWComponent source;
+  private final Rectangle2D.Float mapBounds;
+  private final double zoom;
+  private final Color fillColor;
+  private final boolean opaque;
+  private final int width, height;
+  private int tileSize = DefaultTileSize;
+  /** the number of threads encoding deep zoom tiles */
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * @param source -- what to render.  If an LWMap, the map's fill color is used as the background.
+   * @param zoom -- the scale of the image relative to the map
+   */
+  public TiledImageWriter(LWComponent source, double zoom) {
+    this.source = source;
+    this.zoom = zoom;
+    this.mapBounds = source.getImageBounds();
+    this.fillColor = source instanceof LWMap ? source.getFillColor() : null;
+    this.opaque = fillColor != null && fillColor.getAlpha() == 255;
+    this.width = (int) Math.ceil(mapBounds.width * zoom);
+    this.height = (int) Math.ceil(mapBounds.height * zoom);
+  }
+
+  public void setTileSize(int size) {
+    if (size < 16) throw new IllegalArgumentException("tile size " + size);
+    tileSize = size;
+  }
+
+  public void setThreads(int n) {
+    threads = Math.max(1, n);
+  }
+
+  /** @return the pixel size of the full image */
+  public Dimension getSize() {
+    return new Dimension(width, height);
+  }
+
+  /**
+   * Render the given pixel region of the full image at the given zoom into the
+   * given image (which may be a sub-image of a larger one).
+   */
+  private void renderRegion(
+    BufferedImage image,
+    int x,
+    int y,
+    int w,
+    int h,
+    double atZoom
+  ) {
+    final Rectangle2D.Float region = new Rectangle2D.Float(
+      (float) (mapBounds.x + x / atZoom),
+      (float) (mapBounds.y + y / atZoom),
+      (float) (w / atZoom),
+      (float) (h / atZoom)
+    );
+    final Graphics2D g = image.createGraphics();
+    try {
+      g.setClip(0, 0, w, h);
+      source.drawImageRegion(g, region, atZoom, fillColor);
+    } finally {
+      g.dispose();
+    }
+  }
+
+  private BufferedImage createImage(int w, int h, boolean jpeg) {
+    final int type;
+    if (jpeg) type = BufferedImage.TYPE_3BYTE_BGR; else if (opaque) type =
+      BufferedImage.TYPE_INT_RGB; else type = BufferedImage.TYPE_INT_ARGB;
+    return new BufferedImage(w, h, type);
+  }
+
+  /**
+   * Render, one after another on the calling thread, all tiles covering the given
+   * image (a horizontal strip of the full image starting at row y, or the full image).
+   */
+  private void renderTiles(BufferedImage image, int y, double atZoom) {
+    for (int ty = 0; ty < image.getHeight(); ty += tileSize) {
+      for (int tx = 0; tx < image.getWidth(); tx += tileSize) {
+        final int w = Math.min(tileSize, image.getWidth() - tx);
+        final int h = Math.min(tileSize, image.getHeight() - ty);
+        renderRegion(image.getSubimage(tx, ty, w, h), tx, y + ty, w, h, atZoom);
+      }
+    }
+  }
+
+  /** @return the full image, rendered a tile at a time */
+  BufferedImage renderImage(boolean jpeg) {
+    prepareForRender();
+    final BufferedImage image = createImage(width, height, jpeg);
+    renderTiles(image, 0, zoom);
+    return image;
+  }
+
+  private static void waitFor(List<Future> tasks) throws IOException {
+    try {
+      for (Future f : tasks) f.get();
+    } catch (ExecutionException e) {
+      for (Future f : tasks) f.cancel(true);
+      throw new IOException("tile rendering failed: " + e.getCause(), e);
+    } catch (InterruptedException e) {
+      for (Future f : tasks) f.cancel(true);
+      throw new InterruptedIOException("tile rendering interrupted");
+    }
+  }
+
+  private static ExecutorService createPool(final String name, int n) {
+    return Executors.newFixedThreadPool(
+      n,
+      new ThreadFactory() {
+        int count = 0;
+
+        public synchronized Thread newThread(Runnable r) {
+          final Thread t = new Thread(r, name + "-" + count++);
+          t.setDaemon(true);
+          t.setPriority(Thread.MIN_PRIORITY);
+          return t;
+        }
+      }
+    );
+  }
+
+  /**
+   * Before rendering, make sure anything that's lazily computed while drawing (e.g., link
+   * shapes) is computed once, here on the calling thread.
+   */
+  private void prepareForRender() {
+    for (LWComponent c : source.getAllDescendents(
+      LWComponent.ChildKind.PROPER
+    )) c.getPaintBounds();
+  }
+
+  /**
+   * A RenderedImage that renders itself a strip at a time as it's rows are requested.
+   * The PNG ImageWriter asks for the image a row at a time, top to bottom, so we
+   * only ever need the current strip, and the next one, which is rendered on the
+   * (single) render thread while the current strip is being encoded.
+   *
+   * Any region can be requested, but only requests that fall within one strip are
+   * returned without copying, and requests that aren't top to bottom re-render
+   * strips: it's meant for writers that pull the image in row order.
+   */
+  class StripImage implements RenderedImage {
+
+    private final ExecutorService renderer;
+    private final ColorModel colorModel;
+    private final SampleModel sampleModel;
+    private BufferedImage strip, nextStrip;
+    private int stripY = -1;
+    private Future<BufferedImage> pending;
+    private int pendingY = -1;
+
+    StripImage(ExecutorService renderer) {
+      this.renderer = renderer;
+      final BufferedImage prototype = createImage(1, 1, false);
+      colorModel = prototype.getColorModel();
+      sampleModel = colorModel.createCompatibleSampleModel(width, tileSize);
+    }
+
+    private Future<BufferedImage> renderStripAsync(final int y) {
+      return renderer.submit(
+        new Callable<BufferedImage>() {
+          public BufferedImage call() throws Exception {
+            final BufferedImage image = createImage(
+              width,
+              Math.min(tileSize, height - y),
+              false
+            );
+            renderTiles(image, y, zoom);
+            return image;
+          }
+        }
+      );
+    }
+
+    private void loadStrip(int y) {
+      try {
+        if (pending == null || pendingY != y) {
+          if (pending != null) pending.cancel(true);
+          pending = renderStripAsync(y);
+        }
+        strip = pending.get();
+        stripY = y;
+        if (DEBUG.IMAGE) Log.debug("strip ready at row " + y);
+        pendingY = y + tileSize;
+        pending = pendingY < height ? renderStripAsync(pendingY) : null;
+      } catch (Exception e) {
+        throw new IllegalStateException("rendering strip at row " + y, e);
+      }
+    }
+
+    public Raster getData(Rectangle r) {
+      final int stripStart = r.y - (r.y % tileSize);
+      if (r.y + r.height <= stripStart + tileSize) {
+        if (stripStart != stripY) loadStrip(stripStart);
+        return strip
+          .getRaster()
+          .createChild(r.x, r.y - stripY, r.width, r.height, r.x, r.y, null);
+      }
+      return copyData(
+        Raster.createWritableRaster(
+          sampleModel.createCompatibleSampleModel(r.width, r.height),
+          new Point(r.x, r.y)
+        )
+      );
+    }
+
+    public Raster getData() {
+      return getData(new Rectangle(0, 0, width, height));
+    }
+
+    public WritableRaster copyData(WritableRaster raster) {
+      if (raster == null) raster =
+        Raster.createWritableRaster(
+          sampleModel.createCompatibleSampleModel(width, height),
+          null
+        );
+      final Rectangle bounds = raster.getBounds().intersection(
+        new Rectangle(0, 0, width, height)
+      );
+      for (
+        int y = bounds.y - (bounds.y % tileSize);
+        y < bounds.y + bounds.height;
+        y += tileSize
+      ) {
+        if (y != stripY) loadStrip(y);
+        raster.setRect(
+          strip
+            .getRaster()
+            .createChild(0, 0, width, strip.getHeight(), 0, y, null)
+        );
+      }
+      return raster;
+    }
+
+    public Raster getTile(int tileX, int tileY) {
+      return getData();
+    }
+
+    public Vector<RenderedImage> getSources() {
+      return null;
+    }
+
+    public Object getProperty(String name) {
+      return Image.UndefinedProperty;
+    }
+
+    public String[] getPropertyNames() {
+      return null;
+    }
+
+    public ColorModel getColorModel() {
+      return colorModel;
+    }
+
+    public SampleModel getSampleModel() {
+      return sampleModel;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    public int getMinX() {
+      return 0;
+    }
+
+    public int getMinY() {
+      return 0;
+    }
+
+    public int getNumXTiles() {
+      return 1;
+    }
+
+    public int getNumYTiles() {
+      return 1;
+    }
+
+    public int getMinTileX() {
+      return 0;
+    }
+
+    public int getMinTileY() {
+      return 0;
+    }
+
+    public int getTileWidth() {
+      return width;
+    }
+
+    public int getTileHeight() {
+      return height;
+    }
+
+    public int getTileGridXOffset() {
+      return 0;
+    }
+
+    public int getTileGridYOffset() {
+      return 0;
+    }
+  }
+
+  private static ImageWriter getWriter(String format) throws IOException {
+    final Iterator<ImageWriter> iter = ImageIO.getImageWritersByFormatName(
+      format
+    );
+    if (!iter.hasNext()) throw new IOException("no image writer for " + format);
+    return iter.next();
+  }
+
+  private static void write(
+    ImageWriter writer,
+    RenderedImage image,
+    ImageWriteParam param,
+    File file
+  ) throws IOException {
+    file.delete(); // FileImageOutputStream won't truncate an existing file
+    final ImageOutputStream output = new FileImageOutputStream(file);
+    try {
+      writer.setOutput(output);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+      output.close();
+    }
+  }
+
+  /** Render and stream the full image as a PNG to the given file */
+  public void writePNG(File file) throws IOException {
+    final long start = System.currentTimeMillis();
+    Log.info(
+      "writing " +
+      width +
+      "x" +
+      height +
+      " PNG in " +
+      tileSize +
+      "px tiles to " +
+      file
+    );
+    prepareForRender();
+    final ExecutorService renderer = createPool("VUE-TileRender", 1);
+    try {
+      final ImageWriter writer = getWriter(ImageConversion.PNG);
+      write(
+        writer,
+        new StripImage(renderer),
+        writer.getDefaultWriteParam(),
+        file
+      );
+    } catch (IllegalStateException e) {
+      if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+      throw new IOException(e.getMessage(), e);
+    } finally {
+      renderer.shutdownNow();
+    }
+    Log.info(
+      "wrote " + file + " in " + (System.currentTimeMillis() - start) + "ms"
+    );
+  }
+
+  /** Render the full image a tile at a time, and write it as a JPEG to the given file */
+  public void writeJPEG(File file) throws IOException {
+    Log.info(
+      "writing " +
+      width +
+      "x" +
+      height +
+      " JPEG (approx " +
+      Util.abbrevBytes(3L * width * height) +
+      ") to " +
+      file
+    );
+    final BufferedImage image = renderImage(true);
+    final ImageWriter writer = getWriter(ImageConversion.JPEG);
+    final ImageWriteParam param = writer.getDefaultWriteParam();
+    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    param.setCompressionQuality(1);
+    write(writer, image, param, file);
+  }
+
+  /**
+   * Write a Deep Zoom image: the given .dzi descriptor, and the tile pyramid in
+   * a directory next to it named [name]_files, with one sub-directory of tiles
+   * per level, from level 0 (a single pixel), up to the full size image.
+   */
+  public void writeDeepZoom(File dziFile, String format) throws IOException {
+    final String name = dziFile.getName().replaceFirst("\\.[^.]*$", "");
+    final File tileDir = new File(dziFile.getParentFile(), name + "_files");
+    final int maxLevel = (int) Math.ceil(
+      Math.log(Math.max(width, height)) / Math.log(2)
+    );
+
+    Log.info(
+      "writing deep zoom pyramid " +
+      width +
+      "x" +
+      height +
+      ", " +
+      (maxLevel + 1) +
+      " levels, to " +
+      tileDir
+    );
+    prepareForRender();
+
+    final ExecutorService encoders = createPool("VUE-TileEncode", threads);
+    try {
+      for (int level = maxLevel; level >= 0; level--) {
+        final double scale = Math.pow(2, maxLevel - level);
+        final int levelWidth = Math.max(1, (int) Math.ceil(width / scale));
+        final int levelHeight = Math.max(1, (int) Math.ceil(height / scale));
+        final File levelDir = new File(tileDir, Integer.toString(level));
+        if (
+          !levelDir.isDirectory() && !levelDir.mkdirs()
+        ) throw new IOException("can't create " + levelDir);
+        writeLevel(
+          levelDir,
+          levelWidth,
+          levelHeight,
+          zoom / scale,
+          format,
+          encoders
+        );
+      }
+    } finally {
+      encoders.shutdownNow();
+    }
+
+    final PrintWriter out = new PrintWriter(
+      new OutputStreamWriter(new FileOutputStream(dziFile), "UTF-8")
+    );
+    try {
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println(
+        "<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\"" +
+        " TileSize=\"" +
+        tileSize +
+        "\" Overlap=\"0\" Format=\"" +
+        (format.equals(ImageConversion.JPEG) ? "jpg" : format) +
+        "\">"
+      );
+      out.println(
+        "  <Size Width=\"" + width + "\" Height=\"" + height + "\"/>"
+      );
+      out.println("</Image>");
+    } finally {
+      out.close();
+    }
+  }
+
+  private void writeLevel(
+    final File levelDir,
+    final int levelWidth,
+    final int levelHeight,
+    final double levelZoom,
+    final String format,
+    ExecutorService encoders
+  ) throws IOException {
+    final boolean jpeg = format.equals(ImageConversion.JPEG);
+    final String ext = jpeg ? "jpg" : format;
+    final List<Future> tiles = new ArrayList<Future>();
+
+    for (int col = 0; col * tileSize < levelWidth; col++) {
+      for (int row = 0; row * tileSize < levelHeight; row++) {
+        final int x = col * tileSize;
+        final int y = row * tileSize;
+        final int w = Math.min(tileSize, levelWidth - x);
+        final int h = Math.min(tileSize, levelHeight - y);
+        final File tileFile = new File(levelDir, col + "_" + row + "." + ext);
+        // render here, encode in the background
+        final BufferedImage tile = createImage(w, h, jpeg);
+        renderRegion(tile, x, y, w, h, levelZoom);
+        tiles.add(
+          encoders.submit(
+            new Callable() {
+              public Object call() throws IOException {
+                final ImageWriter writer = getWriter(format);
+                write(writer, tile, writer.getDefaultWriteParam(), tileFile);
+                return null;
+              }
+            }
+          )
+        );
+        // don't let rendered tiles pile up faster than they can be encoded
+        if (tiles.size() > threads * 2) waitFor(tiles.subList(0, threads));
+      }
+    }
+    waitFor(tiles);
+  }
+}
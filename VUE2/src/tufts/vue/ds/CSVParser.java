@@ -0,0 +1,368 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue.ds;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A streaming RFC-4180 CSV reader.  The file is memory-mapped and split into chunks
+ * on record boundaries, and the chunks are decoded and parsed in parallel, a few
+ * chunks ahead of the records being asked for.  Records are returned in file order.
+ *
+ * Quoted values may contain commas, line breaks and doubled ("") quotes.  Unquoted
+ * values are trimmed, and blank lines are skipped.
+ *
+ * Finding record boundaries in the raw bytes requires a charset in which quote and
+ * line-break characters are always their single ASCII bytes (e.g., UTF-8, any
+ * windows-* or ISO-8859-* encoding).  Files in any other charset (e.g., UTF-16)
+ * are parsed as a single chunk.
+ *
+ */
+final class CSVParser {
+
+  static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+  private static final int THREADS = Math.max(
+    1,
+    Runtime.getRuntime().availableProcessors()
+  );
+
+  private static final ThreadPoolExecutor Pool = new ThreadPoolExecutor(
+    THREADS,
+    THREADS,
+    10,
+    TimeUnit.SECONDS,
+    new LinkedBlockingQueue(),
+    new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        final Thread it = new Thread(r, "VUE-CSV");
+        it.setDaemon(true);
+        it.setPriority(Thread.NORM_PRIORITY - 1);
+        return it;
+      }
+    }
+  );
+
+  static {
+    Pool.allowCoreThreadTimeOut(true);
+  }
+
+  private final RandomAccessFile mFile;
+  private final FileChannel mChannel;
+  private final long mLength;
+  private final Charset mCharset;
+  private final boolean isSplittable;
+  private final int mChunkSize;
+
+  /** chunks being parsed, in file order */
+  private final LinkedList<Future<String[][]>> mPending = new LinkedList();
+  /** the file offsets where each pending chunk ends */
+  private final LinkedList<Long> mPendingEnds = new LinkedList();
+
+  /** where the next chunk to be split off starts */
+  private long mSplitPosition;
+  /** the end of the chunk we're currently returning records from */
+  private long mPosition;
+
+  private String[][] mRecords;
+  private int mNext;
+
+  CSVParser(File file, String charsetName) throws IOException {
+    this(file, charsetName, DEFAULT_CHUNK_SIZE);
+  }
+
+  CSVParser(File file, String charsetName, int chunkSize) throws IOException {
+    try {
+      mCharset = Charset.forName(charsetName);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("unsupported encoding: " + charsetName, e);
+    }
+    mFile = new RandomAccessFile(file, "r");
+    mChannel = mFile.getChannel();
+    mLength = mChannel.size();
+    mChunkSize = chunkSize;
+    isSplittable = isAsciiCompatible(mCharset);
+    if (!isSplittable && mLength > Integer.MAX_VALUE) {
+      close();
+      throw new IOException(
+        file + ": too large to read as " + mCharset.name()
+      );
+    }
+    if (isSplittable && mLength >= 3) {
+      // skip any UTF-8 byte-order-mark
+      final ByteBuffer start = ByteBuffer.allocate(3);
+      mChannel.read(start, 0);
+      if (
+        start.get(0) == (byte) 0xEF &&
+        start.get(1) == (byte) 0xBB &&
+        start.get(2) == (byte) 0xBF
+      ) mSplitPosition = 3;
+    }
+    mPosition = mSplitPosition;
+  }
+
+  private static boolean isAsciiCompatible(Charset cs) {
+    final String probe = "\",\r\n";
+    return (
+      cs.canEncode() &&
+      Arrays.equals(probe.getBytes(cs), new byte[] { '"', ',', '\r', '\n' })
+    );
+  }
+
+  /** @return the next record, or null at end of file */
+  String[] readNext() throws IOException {
+    while (mRecords == null || mNext == mRecords.length) {
+      fillPending();
+      if (mPending.isEmpty()) return null;
+      mRecords = await(mPending.removeFirst());
+      mPosition = mPendingEnds.removeFirst();
+      mNext = 0;
+    }
+    final String[] record = mRecords[mNext];
+    mRecords[mNext++] = null;
+    return record;
+  }
+
+  /** @return the number of bytes of the file we've returned records from */
+  long getPosition() {
+    return mPosition;
+  }
+
+  long getLength() {
+    return mLength;
+  }
+
+  void close() throws IOException {
+    for (Future f : mPending) f.cancel(false);
+    mPending.clear();
+    mPendingEnds.clear();
+    mFile.close();
+  }
+
+  private String[][] await(Future<String[][]> chunk) throws IOException {
+    try {
+      return chunk.get();
+    } catch (InterruptedException e) {
+      close();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("CSV load interrupted");
+    } catch (ExecutionException e) {
+      close();
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      throw new IOException("CSV parse failed: " + cause, cause);
+    }
+  }
+
+  /** keep enough chunks in the works for all the threads, and one each to spare */
+  private void fillPending() throws IOException {
+    while (mPending.size() < THREADS * 2 && mSplitPosition < mLength) {
+      final ByteBuffer chunk = splitChunk();
+      final boolean isFirst = mPending.isEmpty() && mRecords == null;
+      mPending.add(
+        Pool.submit(
+          new Callable<String[][]>() {
+            public String[][] call() throws Exception {
+              return parse(decode(chunk), isFirst);
+            }
+          }
+        )
+      );
+      mPendingEnds.add(mSplitPosition);
+    }
+  }
+
+  /**
+   * Split off the next chunk, ending at the last record boundary within the chunk
+   * size, or the end of the file. A record bigger than the chunk size gets a chunk to
+   * itself.
+   */
+  private ByteBuffer splitChunk() throws IOException {
+    final long start = mSplitPosition;
+
+    if (!isSplittable) {
+      mSplitPosition = mLength;
+      return map(start, mLength - start);
+    }
+
+    long window = mChunkSize;
+    for (;;) {
+      final long size = Math.min(window, mLength - start);
+      final MappedByteBuffer buf = map(start, size);
+      if (start + size == mLength) {
+        mSplitPosition = mLength;
+        return buf;
+      }
+      final int boundary = lastRecordBoundary(buf, (int) size);
+      if (boundary > 0) {
+        mSplitPosition = start + boundary;
+        buf.limit(boundary);
+        return buf;
+      }
+      if (window >= Integer.MAX_VALUE / 2) throw new IOException(
+        "CSV record at byte " + start + " is too large"
+      );
+      window *= 2;
+    }
+  }
+
+  private MappedByteBuffer map(long start, long size) throws IOException {
+    return mChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+  }
+
+  // where lastRecordBoundary is in a record: the same states parse goes through
+  private static final int VALUE_START = 0;
+  private static final int UNQUOTED = 1;
+  private static final int QUOTED = 2;
+  private static final int AFTER_QUOTE = 3;
+
+  /**
+   * @return the offset just past the last line break that isn't inside a quoted value,
+   * or 0 if none.  The buffer must start at a record boundary.  This must follow
+   * exactly the rules of parse: a quote only opens a quoted value at the start of a
+   * value (after any blanks), and is otherwise just another character.
+   */
+  static int lastRecordBoundary(ByteBuffer buf, int size) {
+    int state = VALUE_START;
+    int boundary = 0;
+    for (int i = 0; i < size; i++) {
+      final byte b = buf.get(i);
+      if (state == QUOTED) {
+        if (b == '"') {
+          if (i + 1 < size && buf.get(i + 1) == '"') i++; else state =
+            AFTER_QUOTE;
+        }
+        continue;
+      }
+      if (b == ',') {
+        state = VALUE_START;
+      } else if (b == '\n') {
+        state = VALUE_START;
+        boundary = i + 1;
+      } else if (b == '\r') {
+        state = VALUE_START;
+        if (i + 1 < size && buf.get(i + 1) != '\n') boundary = i + 1;
+      } else if (state == VALUE_START) {
+        if (b == '"') state = QUOTED; else if (b != ' ' && b != '\t') state =
+          UNQUOTED;
+      }
+    }
+    return boundary;
+  }
+
+  private CharBuffer decode(ByteBuffer bytes) throws IOException {
+    return mCharset
+      .newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE)
+      .decode(bytes);
+  }
+
+  private static String[][] parse(CharBuffer text, boolean isFirst) {
+    final char[] c;
+    int i;
+    final int end;
+    if (text.hasArray()) {
+      c = text.array();
+      i = text.arrayOffset() + text.position();
+      end = text.arrayOffset() + text.limit();
+    } else {
+      c = text.toString().toCharArray();
+      i = 0;
+      end = c.length;
+    }
+    if (isFirst && i < end && c[i] == '\uFEFF') i++;
+    return parse(c, i, end);
+  }
+
+  /** parse all the records in c[start..end) */
+  static String[][] parse(char[] c, int start, int end) {
+    final List<String[]> records = new ArrayList();
+    final List<String> values = new ArrayList();
+    final StringBuilder buf = new StringBuilder();
+    int i = start;
+
+    while (i < end) {
+      values.clear();
+      boolean blank = true;
+
+      for (;;) {
+        final int valueStart = i;
+        while (i < end && (c[i] == ' ' || c[i] == '\t')) i++;
+        String value;
+        if (i < end && c[i] == '"') {
+          blank = false;
+          buf.setLength(0);
+          int run = ++i;
+          for (;;) {
+            if (i == end) {
+              // unterminated: take the rest
+              buf.append(c, run, i - run);
+              break;
+            }
+            if (c[i] == '"') {
+              buf.append(c, run, i - run);
+              if (i + 1 < end && c[i + 1] == '"') {
+                buf.append('"');
+                i += 2;
+                run = i;
+                continue;
+              }
+              i++;
+              break;
+            }
+            i++;
+          }
+          // anything between the closing quote and the delimiter is kept
+          final int rest = i;
+          while (i < end && !isDelimiter(c[i])) i++;
+          if (i > rest) buf.append(new String(c, rest, i - rest).trim());
+          value = buf.toString();
+        } else {
+          while (i < end && !isDelimiter(c[i])) i++;
+          value = new String(c, valueStart, i - valueStart).trim();
+          if (value.length() > 0) blank = false;
+        }
+        values.add(value);
+        if (i < end && c[i] == ',') {
+          blank = false;
+          i++;
+        } else break;
+      }
+
+      if (i < end && c[i] == '\r') i++;
+      if (i < end && c[i] == '\n') i++;
+
+      if (!blank) records.add(values.toArray(new String[values.size()]));
+    }
+    return records.toArray(new String[records.size()][]);
+  }
+
+  private static boolean isDelimiter(char ch) {
+    return ch == ',' || ch == '\n' || ch == '\r';
+  }
+}
@@ -570,7 +570,7 @@ public final class DataAction {
     }
 
     if (r.isCrossSchema()) {
-      link.mStrokeStyle.setTo(LWComponent.StrokeStyle.DASH3);
+      link.setStrokeStyle(LWComponent.StrokeStyle.DASH3);
       link.setStrokeWidth(2);
     }
 
@@ -615,7 +615,7 @@ public final class DataAction {
     LWLink link = new LWLink(src, dest);
     link.setArrowState(0);
     if (specialColor != null) {
-      link.mStrokeStyle.setTo(LWComponent.StrokeStyle.DASH3);
+      link.setStrokeStyle(LWComponent.StrokeStyle.DASH3);
       link.setStrokeWidth(3);
       link.setStrokeColor(specialColor);
       if (specialColor == Color.red) {
@@ -118,10 +118,16 @@ class DataDropHandler extends MapDropTarget.DropHandler {
     //             GUI.activateWaitCursor(); // *** STILL isn't working even though the drop is complete & drag/drop cursor should be cleared
     //             try {
     Log.info("servicing the drop: " + drop);
-    serviceDrop(DataDropHandler.this, drop, newNodes, clusteringTargets);
-    if (
-      drop.items != null && drop.items.size() > 0
-    ) MapDropTarget.addNodesToMap(drop);
+    final LWMap map = drop.viewer.getMap();
+    map.beginEventBatch();
+    try {
+      serviceDrop(DataDropHandler.this, drop, newNodes, clusteringTargets);
+      if (
+        drop.items != null && drop.items.size() > 0
+      ) MapDropTarget.addNodesToMap(drop);
+    } finally {
+      map.endEventBatch();
+    }
     MapDropTarget.completeDrop(drop);
     String undoName = "Data Drop";
     if (droppingDataItem.getField() != null) undoName +=
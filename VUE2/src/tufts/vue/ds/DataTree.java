@@ -1939,8 +1939,8 @@ public class DataTree extends javax.swing.JTree implements DragGestureListener {
     //dragNode.setFillColor(null);
     //dragNode.setStrokeWidth(0);
     if (!treeNode.isValue()) {
-      dragNode.mFontSize.setTo(24);
-      dragNode.mFontStyle.setTo(java.awt.Font.BOLD);
+      dragNode.setFontSize(24);
+      dragNode.setFontStyle(java.awt.Font.BOLD);
       //                 dragNode.setClientData(LWComponent.ListFactory.class,
       //                                        new NodeProducer(treeNode));
     }
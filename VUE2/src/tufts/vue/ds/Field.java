@@ -66,7 +66,12 @@ public class Field implements tufts.vue.XMLUnmarshalListener {
   /** if true, the values were too long to meaninfully track and enumerate */
   private boolean mValueTrackDisabled;
 
-  /** map of all possible unique values for enumeration tracking */
+  /**
+   * map of all possible unique values for enumeration tracking.  This isn't derived
+   * from the RowStore columns, as not every tracked value is in a row (e.g.,
+   * XMLIngest tracks values outside of any row), but the values are the instances
+   * from the store's dictionary, so this costs an entry per unique value, not per row.
+   */
   private final Multiset<String> mValues = LinkedHashMultiset.create();
 
   private String mType = TYPE_INTEGER; // starts most specific as default, is cleared upon finding anything else
@@ -232,11 +237,14 @@ public class Field implements tufts.vue.XMLUnmarshalListener {
 
     final Set<String> valuesToCheck = mValues.elementSet();
     for (LWComponent c : nodes) {
-      for (String value : valuesToCheck) {
+      final tufts.vue.MetaMap data = c.getRawData();
+      if (data == null) continue;
+      // check just the values the node has, rather than every value in the data-set
+      for (Object value : new HashSet(data.getValues(this.name))) {
         //if (c.getDataSchema() == schema && c.hasDataValue(this.name, value)) {
-        if (c.hasDataValue(this.name, value)) {
+        if (valuesToCheck.contains(value)) {
           //if (!c.isDataValueNode()) // SMF - changed to allow data-value nodes 2009-10-04
-          mContextValues.add(value);
+          mContextValues.add((String) value);
           //Log.debug(String.format("found in context: %s=[%s], count=%d", this.name, value, mContextValues.count(value)));
         }
       }
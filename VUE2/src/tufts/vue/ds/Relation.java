@@ -366,6 +366,80 @@ public final class Relation {
     return results.size() > 0 ? results.values() : Collections.EMPTY_LIST;
   }
 
+  /**
+   * Add to results every row in the searchSchema for which getCrossSchemaRelation(field,
+   * row, fieldValue) would find a join.  Rather than run the joins from every row, we
+   * find the rows in the field's schema with the field value, collect the values they
+   * can be joined by, and look those up in the searchSchema.
+   *
+   * @return false if the joins couldn't be run this way, in which case the caller must
+   * check each row
+   */
+  static boolean searchJoinedRows(
+    final Schema searchSchema,
+    final Field field,
+    final String fieldValue,
+    final Collection results
+  ) {
+    final Schema fieldSchema = field.getSchema();
+
+    if (fieldSchema == null || fieldSchema == searchSchema) return false;
+    if (fieldValue == null || fieldValue == ALL_VALUES) return false;
+
+    final List<Association> joins = Association.getJoins(searchSchema, field);
+
+    for (Association join : joins) {
+      // runJoin would go on to search for further joins from the index schema
+      if (!fieldSchema.hasField(join.getFieldForSchema(fieldSchema))) return false;
+    }
+
+    final Collection<DataRow> fieldRows = fieldSchema.getRowsWithValue(
+      field.getName(),
+      fieldValue
+    );
+
+    for (Association join : joins) {
+      final Field indexKey = join.getFieldForSchema(fieldSchema);
+      final String localKey = join.getKeyForSchema(searchSchema);
+
+      // runJoin matches the index key by any of it's aliases as well
+      final Collection<String> indexKeys = new LinkedHashSet();
+      indexKeys.add(indexKey.getName());
+      for (Association a : Association.getAliases(indexKey)) {
+        if (a.isEnabled()) indexKeys.add(a.getPairedField(indexKey).getName());
+      }
+
+      final Set<String> indexValues = new HashSet();
+      for (DataRow row : fieldRows) {
+        for (String key : indexKeys) {
+          for (Object value : row.getValues(key)) {
+            if (value instanceof String) indexValues.add((String) value);
+          }
+        }
+      }
+
+      // the join is by the first value only: see getCrossSchemaJoinedValues
+      for (String value : indexValues) {
+        for (DataRow row : searchSchema.getRowsWithValue(localKey, value)) {
+          if (value.equals(row.getString(localKey))) results.add(row);
+        }
+      }
+    }
+
+    if (DEBUG.Enabled) Log.debug(
+      "searchJoinedRows: " +
+      quoteKV(field, fieldValue) +
+      " joined " +
+      joins.size() +
+      " ways to " +
+      results.size() +
+      " rows in " +
+      searchSchema
+    );
+
+    return true;
+  }
+
   /** @return passed in results for convenience */
   // call this something like "getUniqueRelatedValues"
   // this doesn't care if the searchKey is from the indexSchema or not (originally, this
@@ -607,7 +681,7 @@ public final class Relation {
   static void searchDataWithField(
     final Field fieldKey,
     final String fieldValue,
-    final Collection<? extends Scannable> searchSet,
+    final Schema searchSchema,
     final Collection results
   ) {
     final String fieldName = fieldKey.getName();
@@ -625,13 +699,13 @@ public final class Relation {
       //             //Util.dump(Association.lookup(field));
     }
 
-    searchData(fieldName, fieldValue, searchSet, results);
+    searchData(fieldName, fieldValue, searchSchema, results);
 
     for (Association a : Association.getAliases(fieldKey)) {
       if (a.isEnabled()) {
         final String relatedField = a.getPairedField(fieldKey).getName();
         if (fieldName.equals(relatedField)) continue; // already searched above
-        searchData(relatedField, fieldValue, searchSet, results);
+        searchData(relatedField, fieldValue, searchSchema, results);
       }
     }
   }
@@ -641,9 +715,8 @@ public final class Relation {
    * betweens rows from DIFFERENT schema's.
    *
    * @param rowKey - a data "row" - a bag of related key/value pairs
-   * @param searchSet - a bag of rows to search for association based relationships
-   * @param searchSchema - Schema for the rows in the searchSet, DIFFERENT from rowKey's schema
-   * @param results - rows found in the searchSet that have a relationship to rowKey will be added here
+   * @param searchSchema - Schema whose rows are searched for association based relationships, DIFFERENT from rowKey's schema
+   * @param results - rows found in the searchSchema that have a relationship to rowKey will be added here
    *
    * For example, in VUE, this would eventually be called after dropping "all rows" in
    * the DataTree from Schema-InTree, onto a node on the map from Schema-OnMap, and searching
@@ -659,14 +732,9 @@ public final class Relation {
 
   static void searchDataWithRow(
     final Scannable rowKey, // e.g., a MetaMap, from a DIFFERENT schema than the search-set
-    final Collection<? extends Scannable> searchSet,
-    final Schema searchSchema, // may be null if the searchSet contains more than one Schema
+    final Schema searchSchema,
     final Collection results
   ) {
-    if (searchSchema == null) throw new UnsupportedOperationException(
-      "schema is null; variable searchSet schema's not implemented"
-    );
-
     // [edit] look auto-joins e.g., if there are ANY join between Faculty & Pubs (e.g.,
     // Name=Author), then these to schemas are in fact "joined", and can filter
     // based on that.
@@ -685,8 +753,6 @@ public final class Relation {
         "searchDataWithRow: " +
         "\n      rowKey: " +
         rowKey +
-        "\n   searchSet: " +
-        Util.tags(searchSet) +
         "\nsearchSchema: " +
         searchSchema
       );
@@ -707,29 +773,45 @@ public final class Relation {
       searchData(
         localKey,
         rowKey.getString(remoteKey), // TODO: handle multiple values
-        searchSet,
+        searchSchema,
         results
       );
     }
 
-    for (Scannable s : searchSet) {
-      if (isAutoRelated(rowKey, s)) results.add(s);
-    }
+    // automatic relations by either schema's key field, as in tryAutoRelate
+    searchRelatedBy(rowKey.getSchema().getKeyFieldName(), rowKey, searchSchema, results);
+    searchRelatedBy(searchSchema.getKeyFieldName(), rowKey, searchSchema, results);
   }
 
-  /** search the given Scannable's for the given key=value, and add matches to results */
+  /** search the given Schema's rows for the given key=value, and add matches to results */
   private static void searchData(
     final String key,
     final String value,
-    final Collection<? extends Scannable> searchSet,
+    final Schema searchSchema,
     final Collection results
   ) {
     if (DEBUG.Enabled) Log.debug(
-      "searchData: " + quoteKV(key, value) + " in " + Util.tags(searchSet)
+      "searchData: " + quoteKV(key, value) + " in " + searchSchema
     );
 
-    for (Scannable row : searchSet) {
-      if (row.hasEntry(key, value)) results.add(row);
+    results.addAll(searchSchema.getRowsWithValue(key, value));
+  }
+
+  /** add to results every row in the searchSchema for which relatedBy(key, rowKey, row) would find a value */
+  private static void searchRelatedBy(
+    final String key,
+    final Scannable rowKey,
+    final Schema searchSchema,
+    final Collection results
+  ) {
+    results.addAll(searchSchema.getRowsWithValue(key, rowKey.getString(key)));
+
+    // the reverse case: the row's value is any of rowKey's values
+    for (Object value : rowKey.getValues(key)) {
+      if (!(value instanceof String)) continue;
+      for (DataRow row : searchSchema.getRowsWithValue(key, (String) value)) {
+        if (value.equals(row.getString(key))) results.add(row);
+      }
     }
   }
 
@@ -779,19 +861,6 @@ public final class Relation {
     return null;
   }
 
-  /** note: duplicate core logic of tryAutoRelate, trimmed for performance (it doesn't return a new Relation) */
-  private static boolean isAutoRelated(Scannable row1, Scannable row2) {
-    final Schema s1 = row1.getSchema();
-
-    if (relatedBy(s1.getKeyFieldName(), row1, row2) != null) return true;
-
-    final Schema s2 = row2.getSchema();
-
-    if (relatedBy(s2.getKeyFieldName(), row1, row2) != null) return true;
-
-    return false;
-  }
-
   /** @return true if the two rows (from the same schema) are the "same" -- the have the same key field value */
   public static boolean isSameRow(final Scannable row1, final Scannable row2) {
     if (DEBUG.Enabled) {
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue.ds;
+
+import java.util.*;
+import tufts.vue.MetaMap;
+
+/**
+ * Columnar storage for the rows of a Schema.  Each column is an int[] of codes into a
+ * dictionary of values shared by all the columns, so a value that appears in a
+ * million rows is stored once, and each value in a row costs an int, instead of a
+ * MetaMap entry.
+ *
+ * Columns are by field name, not Field, as rows are sometimes filled with Field
+ * instances that aren't in the Schema (e.g., matrix data-sets).  As in MetaMap,
+ * names are matched independent of case.
+ *
+ * A column holds at most one value per row: DataRow handles any others.  A column
+ * only spans the rows from the first to the last that have a value for it, so a key
+ * that first appears a million rows in costs nothing for the rows before it.
+ *
+ */
+final class RowStore {
+
+  private static final int NONE = -1;
+
+  /** the shared dictionary */
+  private final Map<String, Integer> mCodes = new HashMap();
+  private String[] mValues = new String[256];
+  private int mValueCount;
+
+  /** in the order created, which is the order values were added to the rows */
+  private final List<Column> mColumns = new ArrayList();
+  private final Map<String, Column> mByName = new HashMap();
+  /** lower-cased name -> all columns with that name, independent of case */
+  private final Map<String, Column[]> mByKey = new HashMap();
+
+  private int mRowCount;
+
+  private static final class Column {
+
+    final String name;
+    /** the row codes[0] is for */
+    int first;
+    int[] codes;
+
+    Column(String name, int row) {
+      this.name = name;
+      this.first = row;
+      this.codes = new int[8];
+      Arrays.fill(codes, NONE);
+    }
+
+    int get(int row) {
+      final int i = row - first;
+      return i < 0 || i >= codes.length ? NONE : codes[i];
+    }
+
+    void set(int row, int code) {
+      int i = row - first;
+      if (i < 0) {
+        // a row before any other with this key
+        final int[] grown = new int[codes.length - i];
+        Arrays.fill(grown, 0, -i, NONE);
+        System.arraycopy(codes, 0, grown, -i, codes.length);
+        codes = grown;
+        first = row;
+        i = 0;
+      } else if (i >= codes.length) {
+        final int oldLength = codes.length;
+        codes =
+          Arrays.copyOf(codes, Math.max(i + 1, oldLength + (oldLength >> 1)));
+        Arrays.fill(codes, oldLength, codes.length, NONE);
+      }
+      codes[i] = code;
+    }
+  }
+
+  RowStore() {
+    // so that it's always the same instance: Field.EMPTY_VALUE is checked for by identity
+    encode(Field.EMPTY_VALUE);
+  }
+
+  /** @return the index of a new, empty row */
+  int newRow() {
+    return mRowCount++;
+  }
+
+  /**
+   * @return the stored instance of value, which is shared with every other row
+   * that has the same value, or null if the row already has a value for name
+   */
+  String set(int row, String name, String value) {
+    Column c = mByName.get(name);
+    if (c == null) {
+      c = new Column(name, row);
+      mColumns.add(c);
+      mByName.put(name, c);
+      mByKey.clear();
+    } else if (c.get(row) != NONE) {
+      return null;
+    }
+    final int code = encode(value);
+    c.set(row, code);
+    return mValues[code];
+  }
+
+  /** @return the first value in the row for the given name, or null if none */
+  String get(int row, String name) {
+    for (Column c : columns(name)) {
+      final int code = c.get(row);
+      if (code != NONE) return mValues[code];
+    }
+    return null;
+  }
+
+  Collection<String> getAll(int row, String name) {
+    final Column[] columns = columns(name);
+    if (columns.length == 1) {
+      // by far the most common case
+      final int code = columns[0].get(row);
+      return code == NONE
+        ? Collections.EMPTY_LIST
+        : Collections.singletonList(mValues[code]);
+    }
+    final List<String> values = new ArrayList(columns.length);
+    for (Column c : columns) {
+      final int code = c.get(row);
+      if (code != NONE) values.add(mValues[code]);
+    }
+    return values;
+  }
+
+  boolean has(int row, String name, CharSequence value) {
+    if (value == null) return false;
+    // any CharSequence with the same characters matches, not just a String
+    final Integer code = mCodes.get(value.toString());
+    if (code == null) return false;
+    for (Column c : columns(name)) if (c.get(row) == code) return true;
+    return false;
+  }
+
+  /** @return the number of values in the row */
+  int size(int row) {
+    int count = 0;
+    for (Column c : mColumns) if (c.get(row) != NONE) count++;
+    return count;
+  }
+
+  /** @return a new MetaMap with all the values in the row, in the order they were added */
+  MetaMap toMetaMap(int row, Schema schema) {
+    final MetaMap map = new MetaMap();
+    map.setSchema(schema);
+    for (Column c : mColumns) {
+      final int code = c.get(row);
+      if (code != NONE) map.put(c.name, mValues[code]);
+    }
+    return map;
+  }
+
+  int getValueCount() {
+    return mValueCount;
+  }
+
+  private Column[] columns(String name) {
+    final String key = name.toLowerCase();
+    Column[] columns = mByKey.get(key);
+    if (columns == null) {
+      final List<Column> matching = new ArrayList(1);
+      for (Column c : mColumns) if (c.name.equalsIgnoreCase(name)) matching.add(
+        c
+      );
+      columns = matching.toArray(new Column[matching.size()]);
+      mByKey.put(key, columns);
+    }
+    return columns;
+  }
+
+  private int encode(String value) {
+    final Integer existing = mCodes.get(value);
+    if (existing != null) return existing;
+    if (mValueCount == mValues.length) mValues =
+      Arrays.copyOf(mValues, mValueCount + (mValueCount >> 1));
+    mValues[mValueCount] = value;
+    mCodes.put(value, mValueCount);
+    return mValueCount++;
+  }
+}
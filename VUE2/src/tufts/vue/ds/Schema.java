@@ -67,6 +67,12 @@ public class Schema implements tufts.vue.XMLUnmarshalListener {
   private Field mEncodingField;
 
   private final List<DataRow> mRows = new ArrayList();
+  /** the actual values of the rows: DataRow's are views into this */
+  private RowStore mStore = new RowStore();
+
+  /** lower-case field name -> value -> the rows with that value, in row order: each field is
+   * indexed the first time it's searched, and all are dropped whenever the rows change */
+  private final Map<String, Map<String, List<DataRow>>> mRowIndex = new HashMap();
 
   //private Object mSource;
   private Resource mResource;
@@ -883,7 +889,20 @@ public class Schema implements tufts.vue.XMLUnmarshalListener {
     //             }
     //         }
 
-    mContextRowNodeCount = 0;
+    // the row nodes by their key values, so each row need only look at it's own nodes
+    final Map<Object, List<LWComponent>> rowNodes = new HashMap();
+    int rowNodeCount = 0;
+    for (LWComponent node : nodes) {
+      if (!node.isDataRow(this)) continue;
+      rowNodeCount++;
+      for (Object key : new HashSet(node.getRawData().getValues(keyFieldName))) {
+        List<LWComponent> keyed = rowNodes.get(key);
+        if (keyed == null) rowNodes.put(key, keyed = new ArrayList(1));
+        keyed.add(node);
+      }
+    }
+
+    mContextRowNodeCount = mRows.size() * rowNodeCount; // todo: is wildly overcounting -- need to total at end by adding all final row.mContextCount's
 
     for (DataRow row : mRows) {
       final String rowKey = row.getValue(keyField);
@@ -891,16 +910,14 @@ public class Schema implements tufts.vue.XMLUnmarshalListener {
       row.mContextCount = 0;
       row.setContextChanged(false);
 
-      for (LWComponent node : nodes) {
-        if (!node.isDataRow(this)) continue;
-
-        mContextRowNodeCount++; // todo: is wildly overcounting -- need to total at end by adding all final row.mContextCount's
-
-        if (!node.hasDataValue(keyFieldName, rowKey)) continue;
+      if (rowKey == null) continue;
+      final List<LWComponent> keyed = rowNodes.get(rowKey);
+      if (keyed == null) continue;
 
+      final MetaMap rawData = row.getData();
+      for (LWComponent node : keyed) {
         row.mContextCount++;
 
-        final MetaMap rawData = row.getData();
         final MetaMap mapData = node.getRawData();
         //Log.debug("comparing:\n" + rawData.values() + " to:\n" + mapData.values());
         if (rawData != mapData) {
@@ -933,6 +950,8 @@ public class Schema implements tufts.vue.XMLUnmarshalListener {
   public synchronized void flushData() {
     if (DEBUG.Enabled) Log.debug("flushing " + this);
     mRows.clear();
+    mRowIndex.clear();
+    mStore = new RowStore();
     mLongestFieldName = 10; // for debug
     for (Field f : getFields()) {
       f.flushStats(); // flush data / enums, but keep any style
@@ -940,10 +959,62 @@ public class Schema implements tufts.vue.XMLUnmarshalListener {
   }
 
   public synchronized DataRow findRow(Field field, String value) {
-    for (DataRow row : mRows) if (row.contains(field, value)) return row;
+    for (DataRow row : getRowsWithValue(field.getName(), value)) if (
+      row.contains(field, value)
+    ) return row;
     return null;
   }
 
+  /**
+   * @return all rows with the given value for the given key (as any of their values
+   * for that key), in row order.  The result must not be modified.
+   */
+  synchronized List<DataRow> getRowsWithValue(String key, String value) {
+    if (key == null || value == null) return Collections.EMPTY_LIST;
+    // keys are case independent, as in MetaMap
+    final String indexKey = key.toLowerCase();
+    Map<String, List<DataRow>> index = mRowIndex.get(indexKey);
+    if (index == null) {
+      index = indexRows(key);
+      mRowIndex.put(indexKey, index);
+    }
+    final List<DataRow> rows = index.get(value);
+    return rows == null ? Collections.EMPTY_LIST : rows;
+  }
+
+  /** a value has been added to a row: any index already built for the key is now stale */
+  synchronized void valueAdded(String key) {
+    if (!mRowIndex.isEmpty()) mRowIndex.remove(key.toLowerCase());
+  }
+
+  private Map<String, List<DataRow>> indexRows(String key) {
+    final long start = DEBUG.Enabled ? System.nanoTime() : 0;
+    final Map<String, List<DataRow>> index = new HashMap();
+    for (DataRow row : mRows) {
+      for (Object value : row.getValues(key)) {
+        if (!(value instanceof String)) continue; // could never match a search
+        List<DataRow> rows = index.get(value);
+        if (rows == null) {
+          rows = new ArrayList(1);
+          index.put((String) value, rows);
+        } else if (rows.get(rows.size() - 1) == row) {
+          continue; // the same value repeated in a row
+        }
+        rows.add(row);
+      }
+    }
+    if (DEBUG.Enabled) Log.debug(
+      String.format(
+        "%s; indexed %s: %d values in %.1fms",
+        this,
+        Relation.quoteKey(key),
+        index.size(),
+        (System.nanoTime() - start) / 1e6
+      )
+    );
+    return index;
+  }
+
   @Override
   public String toString() {
     try {
@@ -1351,8 +1422,14 @@ public class Schema implements tufts.vue.XMLUnmarshalListener {
     return debug.toString();
   }
 
+  /** for DataRow */
+  RowStore getStore() {
+    return mStore;
+  }
+
   protected void addRow(DataRow row) {
     mRows.add(row);
+    mRowIndex.clear();
   }
 
   protected void addRow(String[] values) {
@@ -1412,17 +1489,17 @@ public class Schema implements tufts.vue.XMLUnmarshalListener {
       addRow(fromRow);
       existingRows.put(
         values[matrixColNums.get(rowName)],
-        new Integer(fromRow.mmap.size())
+        new Integer(fromRow.size())
       );
     } else {
       //it's currently in as a ToRow replace it
       int valCount = existingRows.get(values[matrixColNums.get(rowName)]);
-      if (valCount < fromRow.mmap.size()) {
+      if (valCount < fromRow.size()) {
         //remove the existing row, add new one.
         existingRows.remove(values[matrixColNums.get(rowName)]);
         existingRows.put(
           values[matrixColNums.get(rowName)],
-          new Integer(fromRow.mmap.size())
+          new Integer(fromRow.size())
         );
 
         for (DataRow r : getRows()) {
@@ -1457,7 +1534,7 @@ public class Schema implements tufts.vue.XMLUnmarshalListener {
         addRow(toRow);
         existingRows.put(
           values[matrixColNums.get(colName)],
-          new Integer(toRow.mmap.size())
+          new Integer(toRow.size())
         );
       }
 
@@ -1629,7 +1706,7 @@ public class Schema implements tufts.vue.XMLUnmarshalListener {
     // todo: more performant than HashSet?  perhaps just scan at end for dupes
 
     if (hasField(field)) {
-      Relation.searchDataWithField(field, fieldValue, getRows(), results);
+      Relation.searchDataWithField(field, fieldValue, this, results);
     } else {
       // todo performance: getCrossSchemaRelation is recomputing all sorts of
       // stuff each time that we could do faster if we unrolled in one place --
@@ -1657,7 +1734,10 @@ public class Schema implements tufts.vue.XMLUnmarshalListener {
       //             if (Association.hasAliases(this, field)) {
       //             }
 
-      if (Association.hasJoins(this, field)) {
+      if (
+        Association.hasJoins(this, field) &&
+        !Relation.searchJoinedRows(this, field, fieldValue, results)
+      ) {
         for (DataRow row : getRows()) {
           if (
             Relation.getCrossSchemaRelation(field, row.getData(), fieldValue) !=
@@ -1680,7 +1760,7 @@ public class Schema implements tufts.vue.XMLUnmarshalListener {
     // we use a HashSet to prevent duplicates, which could happen through
     // duplicate associations, or associations that are duped by an auto-join
 
-    Relation.searchDataWithRow(searchKeys, getRows(), this, matching);
+    Relation.searchDataWithRow(searchKeys, this, matching);
 
     return matching;
   }
@@ -1735,17 +1815,32 @@ public class Schema implements tufts.vue.XMLUnmarshalListener {
   }
 }
 
-/** a row impl that handles flat tables as well as Xml style variable "rows" or item groups */
+/**
+ * A row impl that handles flat tables as well as Xml style variable "rows" or item
+ * groups.  The values are kept in the Schema's RowStore, unless the row has more than
+ * one value for a key, in which case the row keeps all it's values in a MetaMap.
+ */
 //class DataRow extends tufts.vue.MetaMap {
 final class DataRow implements Relation.Scannable {
 
-  final tufts.vue.MetaMap mmap = new tufts.vue.MetaMap();
+  private final Schema schema;
+  private final RowStore store;
+  private final int index;
+  /** if non-null, all our values are here, and none are in the store */
+  private tufts.vue.MetaMap mmap;
+  /**
+   * the last MetaMap made from the store, for as long as anyone's holding it (e.g.,
+   * a node created from this row), so they get the same instance from getData
+   */
+  private java.lang.ref.WeakReference<tufts.vue.MetaMap> mData;
 
   boolean isContextChanged;
   int mContextCount;
 
   DataRow(Schema s) {
-    mmap.setSchema(s);
+    schema = s;
+    store = s.getStore();
+    index = store.newRow();
   }
 
   void setContextChanged(boolean t) {
@@ -1775,44 +1870,59 @@ final class DataRow implements Relation.Scannable {
     //super.put(f.getName(), value);
 
     if (value.length() == 0) value = Field.EMPTY_VALUE;
+
+    schema.valueAdded(f.getName());
+
+    if (mmap == null) {
+      final String stored = store.set(index, f.getName(), value);
+      if (stored != null) {
+        mData = null;
+        return stored;
+      }
+      // a second value for this key: from now on, this row holds it's own values
+      mmap = store.toMetaMap(index, schema);
+      mData = null;
+    }
     mmap.put(f.getName(), value);
     return value;
   }
 
   Iterable<Map.Entry> dataEntries() {
-    return mmap.entries();
+    return getData().entries();
   }
 
   public String getValue(String key) {
-    return mmap.getString(key);
+    return mmap == null ? store.get(index, key) : mmap.getString(key);
   }
 
   /** interface Scannable */
   public Collection<String> getValues(String key) {
-    return mmap.getValues(key);
+    return mmap == null ? store.getAll(index, key) : mmap.getValues(key);
   }
 
   public Collection<String> getValues(Field f) {
-    return mmap.getValues(f.getName());
+    return getValues(f.getName());
   }
 
   /** interface Scannable */
   public Schema getSchema() {
-    return mmap.getSchema();
+    return schema;
   }
 
   /** interface Scannable */
   public String getString(String key) {
-    return mmap.getString(key);
+    return getValue(key);
   }
 
   /** interface Scannable */
   public boolean hasEntry(String key, CharSequence value) {
-    return mmap.hasEntry(key, value);
+    return mmap == null
+      ? store.has(index, key, value)
+      : mmap.hasEntry(key, value);
   }
 
   String getValue(Field f) {
-    return mmap.getString(f.getName());
+    return getValue(f.getName());
     //return super.getString(f.getName());
   }
 
@@ -1820,12 +1930,28 @@ final class DataRow implements Relation.Scannable {
     return value != null && value.equals(getValue(field));
   }
 
+  /** @return the number of values in the row */
+  int size() {
+    return mmap == null ? store.size(index) : mmap.size();
+  }
+
   @Override
   public String toString() {
-    return mmap.values().toString();
+    return getData().values().toString();
   }
 
+  /**
+   * @return the row as a MetaMap.  Unless the row holds it's own values, this is made
+   * from the store, and the same instance is returned for as long as it's referenced
+   * from somewhere else, so callers can still compare row data by identity.
+   */
   tufts.vue.MetaMap getData() {
-    return mmap;
+    if (mmap != null) return mmap;
+    tufts.vue.MetaMap data = mData == null ? null : mData.get();
+    if (data == null) {
+      data = store.toMetaMap(index, schema);
+      mData = new java.lang.ref.WeakReference<tufts.vue.MetaMap>(data);
+    }
+    return data;
   }
 }
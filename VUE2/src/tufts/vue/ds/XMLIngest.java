@@ -19,6 +19,11 @@ import java.io.*;
 import java.net.*;
 import java.util.*;
 import javax.xml.parsers.*;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.*;
 import org.w3c.dom.*;
 import org.w3c.dom.Node;
@@ -225,6 +230,56 @@ public class XMLIngest {
     org.xml.sax.InputSource input,
     String itemKey
   ) {
+    return ingestXML(schema, input, itemKey, STREAMING);
+  }
+
+  /**
+   * @param streaming if true, scan the input in a single pass as a StAX event
+   * stream, otherwise build a DOM for the entire document first and scan that.
+   * Both produce the same schema: the DOM scan is kept for comparison.
+   */
+  public static Schema ingestXML(
+    XmlSchema schema,
+    org.xml.sax.InputSource input,
+    String itemKey,
+    boolean streaming
+  ) {
+    if (streaming) {
+      if (schema == null) schema =
+        new XmlSchema(tufts.vue.Resource.instance(input), itemKey); else schema.flushData();
+      // if the input has no stream of it's own, we open it, so we close it
+      InputStream opened = null;
+      try {
+        if (
+          input.getCharacterStream() == null && input.getByteStream() == null
+        ) opened =
+          new BufferedInputStream(new URL(input.getSystemId()).openStream());
+        final XMLStreamReader reader = openStream(input, opened);
+        try {
+          streamXML(schema, reader);
+        } finally {
+          reader.close();
+        }
+      } catch (XMLStreamException e) {
+        throw new tufts.vue.DataSourceException(
+          "XML parse failed: " + input.getSystemId(),
+          e
+        );
+      } catch (IOException e) {
+        throw new tufts.vue.DataSourceException(
+          "XML read failed: " + input.getSystemId(),
+          e
+        );
+      } finally {
+        // XMLStreamReader.close never closes the underlying stream
+        if (opened != null) try {
+          opened.close();
+        } catch (IOException e) {}
+      }
+      if (DEBUG.DR || DEBUG.SCHEMA) schema.dumpSchema(System.err);
+      return schema;
+    }
+
     final org.w3c.dom.Document doc = parseXML(input, false);
 
     //doc.normalizeDocument();
@@ -272,6 +327,301 @@ public class XMLIngest {
     return schema;
   }
 
+  //----------------------------------------------------------------------------
+  // Streaming ingest: the same scan as scanNode, but driven by a StAX event
+  // stream, so only the path to the current element is ever in memory.
+  //----------------------------------------------------------------------------
+
+  private static final XMLInputFactory InputFactory = createInputFactory();
+
+  private static XMLInputFactory createInputFactory() {
+    final XMLInputFactory factory = XMLInputFactory.newInstance();
+    // CDATA sections and text must be reported separately, as they're separate DOM nodes
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+    factory.setProperty(
+      XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+      Boolean.FALSE
+    );
+    // Don't go out to the network for external DTD's (e.g., the Apple plist DTD):
+    // we never validate, and would only hang on a slow or missing host.
+    factory.setXMLResolver(
+      new XMLResolver() {
+        public Object resolveEntity(
+          String publicID,
+          String systemID,
+          String baseURI,
+          String namespace
+        ) {
+          return new ByteArrayInputStream(new byte[0]);
+        }
+      }
+    );
+    return factory;
+  }
+
+  /** @param opened - the stream to read if the input doesn't have one */
+  private static XMLStreamReader openStream(
+    InputSource input,
+    InputStream opened
+  ) throws XMLStreamException {
+    final String systemId = input.getSystemId();
+    synchronized (InputFactory) {
+      if (input.getCharacterStream() != null) {
+        return InputFactory.createXMLStreamReader(
+          systemId,
+          input.getCharacterStream()
+        );
+      } else if (input.getByteStream() != null) {
+        return InputFactory.createXMLStreamReader(
+          systemId,
+          input.getByteStream()
+        );
+      } else {
+        return InputFactory.createXMLStreamReader(systemId, opened);
+      }
+    }
+  }
+
+  /** an open element in the stream */
+  private static final class Frame {
+
+    final String fullName;
+    final String nodeName;
+
+    /** name/value pairs: tracked after the element closes, as with !ATTRIBUTES_IMMEDIATE */
+    final String[] attributes;
+
+    /** the current run of text: a single DOM text node */
+    final StringBuilder text = new StringBuilder();
+
+    /** the text of a preceeding plist <key>, waiting for it's value element */
+    String pendingKey;
+
+    Frame(String fullName, String nodeName, String[] attributes) {
+      this.fullName = fullName;
+      this.nodeName = nodeName;
+      this.attributes = attributes;
+    }
+  }
+
+  private static String qualifiedName(String prefix, String localName) {
+    return prefix == null || prefix.length() == 0
+      ? localName
+      : prefix + ':' + localName;
+  }
+
+  /**
+   * @return the attributes of the element at the reader's current START_ELEMENT,
+   * in document order, followed by any namespace declarations (which a
+   * non-namespace-aware DOM also reports as attributes), as alternating names
+   * and values
+   */
+  private static String[] readAttributes(XMLStreamReader in) {
+    final int attrCount = in.getAttributeCount();
+    final int nsCount = in.getNamespaceCount();
+    if (attrCount + nsCount == 0) return null;
+    final String[] attributes = new String[(attrCount + nsCount) * 2];
+    int n = 0;
+    for (int i = 0; i < attrCount; i++) {
+      attributes[n++] =
+        qualifiedName(in.getAttributePrefix(i), in.getAttributeLocalName(i));
+      attributes[n++] = in.getAttributeValue(i);
+    }
+    for (int i = 0; i < nsCount; i++) {
+      final String prefix = in.getNamespacePrefix(i);
+      attributes[n++] =
+        prefix == null || prefix.length() == 0 ? "xmlns" : "xmlns:" + prefix;
+      attributes[n++] = in.getNamespaceURI(i);
+    }
+    return attributes;
+  }
+
+  /** track a complete text or CDATA node, as scanNode would for a FOLD_TEXT node */
+  private static void trackText(XmlSchema schema, Frame frame, String value) {
+    final String trimmed = value.trim();
+    if (trimmed.length() > 0) schema.trackFieldValuePair(
+      frame.fullName,
+      trimmed
+    );
+  }
+
+  private static void flushText(XmlSchema schema, Frame frame) {
+    if (frame.text.length() > 0) {
+      trackText(schema, frame, frame.text.toString());
+      frame.text.setLength(0);
+    }
+  }
+
+  /** track a leaf element that has no DOM node: e.g., a folded plist key/value pair */
+  private static void trackLeaf(
+    XmlSchema schema,
+    Frame parent,
+    String nodeName,
+    String value
+  ) {
+    final String fullName = parent.fullName + '.' + nodeName;
+    schema.trackNodeOpen(fullName);
+    if (value != null) {
+      final String trimmed = value.trim();
+      if (trimmed.length() > 0) schema.trackFieldValuePair(fullName, trimmed);
+    }
+    schema.trackNodeClose(fullName);
+  }
+
+  /**
+   * Consume the element at the reader's current START_ELEMENT through it's
+   * END_ELEMENT.
+   *
+   * @return the value of it's first child node if that's text or CDATA, otherwise null
+   */
+  private static String readFirstTextAndSkip(XMLStreamReader in)
+    throws XMLStreamException {
+    StringBuilder first = null;
+    boolean done = false;
+    int depth = 1;
+    while (depth > 0) {
+      final int event = in.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        done = true;
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      } else if (!done && depth == 1) {
+        if (
+          event == XMLStreamConstants.CHARACTERS ||
+          event == XMLStreamConstants.SPACE ||
+          event == XMLStreamConstants.ENTITY_REFERENCE
+        ) {
+          if (first == null) first = new StringBuilder();
+          first.append(in.getText());
+        } else if (event == XMLStreamConstants.CDATA) {
+          if (first == null) first = new StringBuilder(in.getText());
+          done = true;
+        }
+      }
+    }
+    return first == null ? null : first.toString();
+  }
+
+  private static void skipElement(XMLStreamReader in) throws XMLStreamException {
+    for (int depth = 1; depth > 0;) {
+      final int event = in.next();
+      if (event == XMLStreamConstants.START_ELEMENT) depth++; else if (
+        event == XMLStreamConstants.END_ELEMENT
+      ) depth--;
+    }
+  }
+
+  private static boolean isBlank(CharSequence s) {
+    for (int i = 0; i < s.length(); i++) if (
+      !Character.isWhitespace(s.charAt(i))
+    ) return false;
+    return true;
+  }
+
+  /**
+   * Scan the entire stream into the schema in a single pass, with the same
+   * results as scanNode over a DOM of the same document (FOLD_TEXT, key folding
+   * and item-path rows), except that whitespace between a plist <key> and it's
+   * value never breaks up the pair, as if the plist DTD had been loaded.
+   */
+  static void streamXML(final XmlSchema schema, final XMLStreamReader in)
+    throws XMLStreamException {
+    final boolean foldKeys = FOLD_KEYS || schema.isXMLKeyFold();
+    final ArrayList<Frame> stack = new ArrayList();
+    Frame frame = null;
+
+    while (in.hasNext()) {
+      final int event = in.next();
+
+      switch (event) {
+        case XMLStreamConstants.START_ELEMENT:
+          {
+            final String nodeName = qualifiedName(
+              in.getPrefix(),
+              in.getLocalName()
+            );
+
+            if (frame != null) {
+              if (foldKeys && frame.pendingKey != null && isBlank(frame.text)) {
+                frame.text.setLength(0);
+              } else {
+                flushText(schema, frame);
+              }
+
+              if (foldKeys) {
+                final String key = frame.pendingKey == null
+                  ? null
+                  : frame.pendingKey.replace(' ', '_');
+                if (key != null) {
+                  frame.pendingKey = null;
+                  if ("true".equals(nodeName) || "false".equals(nodeName)) {
+                    skipElement(in);
+                    trackLeaf(schema, frame, key, nodeName);
+                    continue;
+                  } else if (!"dict".equals(nodeName) && !"array".equals(nodeName)) {
+                    trackLeaf(schema, frame, key, readFirstTextAndSkip(in));
+                    continue;
+                  }
+                  // otherwise, the key is dropped and the dict/array scanned as usual
+                } else if ("key".equals(nodeName)) {
+                  final String keyText = readFirstTextAndSkip(in);
+                  // if there turns out to be no following element, this is tracked as
+                  // a regular <key> element when the parent closes
+                  frame.pendingKey = keyText == null ? "" : keyText;
+                  continue;
+                }
+              }
+            }
+
+            final String fullName = frame == null
+              ? nodeName
+              : frame.fullName + '.' + nodeName;
+            if (frame != null) stack.add(frame);
+            frame = new Frame(fullName, nodeName, readAttributes(in));
+            schema.trackNodeOpen(fullName);
+          }
+          break;
+
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+        case XMLStreamConstants.ENTITY_REFERENCE:
+          if (frame != null) frame.text.append(in.getText());
+          break;
+
+        case XMLStreamConstants.CDATA:
+          if (frame != null) {
+            flushText(schema, frame);
+            trackText(schema, frame, in.getText());
+          }
+          break;
+
+        case XMLStreamConstants.END_ELEMENT:
+          {
+            flushText(schema, frame);
+            if (frame.pendingKey != null) {
+              // the key was the last child: there was nothing to fold it with
+              trackLeaf(schema, frame, "key", frame.pendingKey);
+              frame.pendingKey = null;
+            }
+            schema.trackNodeClose(frame.fullName);
+            final String[] attributes = frame.attributes;
+            if (attributes != null) {
+              for (int i = 0; i < attributes.length; i += 2) {
+                final String value = attributes[i + 1].trim();
+                if (value.length() > 0) schema.trackFieldValuePair(
+                  frame.fullName + ATTR_SEPARATOR + attributes[i],
+                  value
+                );
+              }
+            }
+            frame = stack.isEmpty() ? null : stack.remove(stack.size() - 1);
+          }
+          break;
+      }
+    }
+  }
+
   private static boolean isText(int type) {
     return type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE;
   }
@@ -754,6 +1104,8 @@ public class XMLIngest {
 
   static final char ATTR_SEPARATOR = '@';
 
+  static final boolean STREAMING = true; // default true: ingest from a StAX event stream instead of a DOM
+
   private static final String JIRA_VUE_URL =
     "http://bugs.atech.tufts.edu/secure/IssueNavigator.jspa?view=rss&pid=10001&tempMax=9999&reset=true&decorator=none";
   private static final String JIRA_SFRAIZE_COOKIE =
@@ -15,7 +15,6 @@
 
 package tufts.vue.ds;
 
-import au.com.bytecode.opencsv.CSVReader;
 import edu.tufts.vue.ui.ConfigurationUI;
 import java.awt.*;
 import java.io.*;
@@ -497,20 +496,23 @@ public class XmlDataSource extends BrowseDataSource {
     return r.readLine().split(","); // test impl
   }
 
-  private String[] readLine(CSVReader r) throws java.io.IOException {
-    return trim(r.readNext());
+  private String[] readLine(CSVParser r) throws java.io.IOException {
+    return r.readNext();
   }
 
-  private static String[] trim(String[] values) {
-    if (values == null) return null;
-
-    for (int i = 0; i < values.length; i++) {
-      // fixup for au.com.bytecode.opencsv.CSVReader, which leaves whitespace & quotes in the values!
-      String v = values[i].trim();
-      if (v.length() > 0 && v.charAt(0) == '"') v = v.substring(1);
-      values[i] = v;
-    }
-    return values;
+  /** how often, in rows, to update the loading status */
+  private static final int PROGRESS_ROWS = 10000;
+
+  private void reportProgress(CSVParser r, int rowCount) {
+    if (rowCount % PROGRESS_ROWS != 0 || r.getLength() == 0) return;
+    ContentViewer.showLoadProgress(
+      this,
+      String.format(
+        VueResources.getString("addLibrary.loading.progress"),
+        (int) (r.getPosition() * 100 / r.getLength()),
+        rowCount
+      )
+    );
   }
 
   public Schema ingestCSV(Schema schema, String file, boolean hasColumnTitles)
@@ -519,10 +521,10 @@ public class XmlDataSource extends BrowseDataSource {
     //final CSVReader reader = new CSVReader(new FileReader(file));
     // TODO: need an encoding Win/Mac encoding toggle
     // TODO: need handle this in BrowseDataSource openReader (encoding provided by user in data-source config)
-    // TODO: the Open CSV CSVReader impl is horrible - doesn't handle quoted values properly!
 
-    final CSVReader dataStream = new CSVReader(
-      new InputStreamReader(new FileInputStream(file), this.getEncodingField())
+    final CSVParser dataStream = new CSVParser(
+      new File(file),
+      this.getEncodingField()
     );
     //final BufferedReader dataStream = new BufferedReader(new InputStreamReader(new FileInputStream(file), "windows-1252"));
 
@@ -556,8 +558,10 @@ public class XmlDataSource extends BrowseDataSource {
       file + ": has column names, but no data"
     );
 
+    int rowCount = 0;
     do {
       schema.addRow(values);
+      reportProgress(dataStream, ++rowCount);
     } while ((values = readLine(dataStream)) != null);
 
     dataStream.close();
@@ -596,10 +600,10 @@ public class XmlDataSource extends BrowseDataSource {
     //final CSVReader reader = new CSVReader(new FileReader(file));
     // TODO: need an encoding Win/Mac encoding toggle
     // TODO: need handle this in BrowseDataSource openReader (encoding provided by user in data-source config)
-    // TODO: the Open CSV CSVReader impl is horrible - doesn't handle quoted values properly!
 
-    final CSVReader dataStream = new CSVReader(
-      new InputStreamReader(new FileInputStream(file), this.getEncodingField())
+    final CSVParser dataStream = new CSVParser(
+      new File(file),
+      this.getEncodingField()
     );
     //final BufferedReader dataStream = new BufferedReader(new InputStreamReader(new FileInputStream(file), "windows-1252"));
 
@@ -751,11 +755,13 @@ public class XmlDataSource extends BrowseDataSource {
     schema.existingRows = new HashMap<String, Integer>();
     schema.tempTable = new TreeMap<String, DataRow>();
 
+    int rowCount = 0;
     do {
       if (this.matrixFormatField.equals(TALL)) schema.addMatrixRow(
         this,
         values
       ); else schema.addWideMatrixRow(this, values);
+      reportProgress(dataStream, ++rowCount);
     } while ((values = readLine(dataStream)) != null);
 
     if (this.matrixFormatField.equals(WIDE)) schema.convertToRows();
@@ -0,0 +1,190 @@
+package edu.tufts.osidimpl.repository.localfiles;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalFileIndexTest {
+
+	private File dir;
+	private File root;
+	private File indexFile;
+	private LocalFileIndex index;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("LocalFileIndexTest").toFile();
+		root = new File(dir, "root");
+		indexFile = new File(dir, "localfiles.index");
+		write("report.pdf", "");
+		write("annual report.txt", "");
+		write("reporting/notes.txt", "");
+		write("budget.csv", "quarterly revenue, by department");
+		write(".hidden/report.txt", "");
+		for (int i = 0; i < 25; i++)
+			write("photos/photo-" + i + ".jpg", "");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (index != null)
+			index.close();
+		delete(dir);
+	}
+
+	private File write(String path, String content) throws IOException {
+		final File f = new File(root, path);
+		f.getParentFile().mkdirs();
+		final FileWriter w = new FileWriter(f);
+		w.write(content);
+		w.close();
+		return f;
+	}
+
+	private static void delete(File f) {
+		final File[] children = f.listFiles();
+		if (children != null)
+			for (File c : children)
+				delete(c);
+		f.delete();
+	}
+
+	private LocalFileIndex start() throws InterruptedException {
+		index = new LocalFileIndex(Arrays.asList(root, new File(root, "photos")), indexFile, true);
+		index.start();
+		assertTrue("index wasn't built", index.awaitReady(20000));
+		return index;
+	}
+
+	private static List<String> names(LocalFileIndex.Page page) {
+		final List<String> names = new ArrayList<String>();
+		for (LocalFileIndex.Entry e : page.entries)
+			names.add(e.name);
+		return names;
+	}
+
+	private List<String> search(String query) {
+		return names(index.search(query, 0, LocalFileIndex.DEFAULT_PAGE_SIZE));
+	}
+
+	@Test
+	public void testRankedPrefixAndTokenMatches() throws Exception {
+		start();
+		// nested roots are only indexed once
+		assertEquals(26, index.search("photo", 0, 100).total); // the photos, and their folder
+
+		final List<String> report = search("report");
+		assertEquals(Arrays.asList("report.pdf", "reporting", "annual report.txt", "notes.txt"), report);
+		assertEquals(Arrays.asList("reporting", "notes.txt"), search("reporti"));
+		assertEquals(Arrays.asList("annual report.txt"), search("ANNUAL rep"));
+		assertEquals(Arrays.asList("budget.csv"), search("revenue"));
+		assertEquals(Arrays.asList("budget.csv"), search("quarter budget"));
+		assertEquals(Arrays.asList(), search("port"));
+		assertEquals(Arrays.asList(), search("  "));
+	}
+
+	@Test
+	public void testPages() throws Exception {
+		start();
+		final Set<String> seen = new HashSet<String>();
+		for (int offset = 0; offset < 30; offset += 10) {
+			final LocalFileIndex.Page page = index.search("photo jpg", offset, 10);
+			assertEquals(25, page.total);
+			assertEquals(offset, page.offset);
+			assertEquals(offset < 20 ? 10 : 5, page.entries.size());
+			seen.addAll(names(page));
+		}
+		assertEquals(25, seen.size());
+		assertEquals(0, index.search("photo", 40, 10).entries.size());
+	}
+
+	private void awaitResults(String query, int count) throws InterruptedException {
+		for (int i = 0; i < 1000 && search(query).size() != count; i++)
+			Thread.sleep(20);
+		assertEquals(count, search(query).size());
+	}
+
+	@Test
+	public void testWatchesForChanges() throws Exception {
+		start();
+		write("later/added.txt", "zebra");
+		awaitResults("added", 1);
+		awaitResults("zebra", 1);
+
+		write("later/added.txt", "giraffe");
+		awaitResults("giraffe", 1);
+		awaitResults("zebra", 0);
+
+		new File(root, "budget.csv").delete();
+		awaitResults("budget", 0);
+
+		delete(new File(root, "reporting"));
+		awaitResults("reporting", 0);
+		assertEquals(Arrays.asList("report.pdf", "annual report.txt"), search("report"));
+	}
+
+	@Test
+	public void testSavedBetweenRuns() throws Exception {
+		start();
+		index.close();
+		index = null;
+		assertTrue(indexFile.isFile());
+
+		// the next run can search before it's walked anything
+		final LocalFileIndex reloaded = new LocalFileIndex(Arrays.asList(root), indexFile, true);
+		assertFalse(reloaded.isReady());
+		reloaded.load();
+		assertTrue(reloaded.isReady());
+		assertEquals(Arrays.asList("budget.csv"), names(reloaded.search("revenue", 0, 10)));
+		assertEquals(4, reloaded.search("report", 0, 10).total);
+
+		// and only keeps what's under its own roots
+		final LocalFileIndex other = new LocalFileIndex(Arrays.asList(new File(root, "reporting")), indexFile, true);
+		other.load();
+		// paths are relative to the root, so notes.txt is no longer a match
+		assertEquals(Arrays.asList("reporting"), names(other.search("report", 0, 10)));
+		assertEquals(Arrays.asList("notes.txt"), names(other.search("notes", 0, 10)));
+	}
+
+	@Test
+	public void testTextPreferenceSavedWithIndex() throws Exception {
+		start();
+		index.close();
+		index = null;
+
+		// saved with the text, loaded without: the text is dropped
+		final LocalFileIndex withoutText = new LocalFileIndex(Arrays.asList(root), indexFile, false);
+		withoutText.load();
+		assertEquals(Arrays.asList(), names(withoutText.search("revenue", 0, 10)));
+		assertEquals(Arrays.asList("budget.csv"), names(withoutText.search("budget", 0, 10)));
+
+		// and that's what's saved, though none of the files changed
+		index = withoutText;
+		index.start();
+		assertTrue(index.awaitReady(20000));
+		index.close();
+		index = null;
+		final LocalFileIndex saved = new LocalFileIndex(Arrays.asList(root), indexFile, true);
+		saved.load();
+		assertEquals(Arrays.asList(), names(saved.search("revenue", 0, 10)));
+
+		// saved without the text, run with it: the unchanged files are read again
+		index = new LocalFileIndex(Arrays.asList(root), indexFile, true);
+		index.start();
+		awaitResults("revenue", 1);
+	}
+}
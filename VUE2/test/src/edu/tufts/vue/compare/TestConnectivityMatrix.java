@@ -29,6 +29,7 @@ import junit.framework.TestCase;
 
 import java.io.*;
 import java.net.*;
+import java.util.*;
 
 import tufts.vue.*;
 
@@ -81,5 +82,83 @@ public class TestConnectivityMatrix extends TestCase {
 
     }
 
-}
 
+    public void testSparseEdges() {
+        ConnectivityMatrix.Edges edges = new ConnectivityMatrix.Edges();
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            int row = random.nextInt(200);
+            int col = random.nextInt(200);
+            int value = random.nextInt(4); // zero removes
+            edges.set(row, col, value);
+            if (value == 0)
+                expected.remove(ConnectivityMatrix.Edges.edge(row, col));
+            else
+                expected.put(ConnectivityMatrix.Edges.edge(row, col), value);
+        }
+        assertEquals(expected.size(), edges.size());
+        assertEquals(expected.size(), edges.toArray().length);
+        for (int row = 0; row < 200; row++) {
+            for (int col = 0; col < 200; col++) {
+                Integer value = expected.get(ConnectivityMatrix.Edges.edge(row, col));
+                assertEquals(value == null ? 0 : value.intValue(), edges.get(row, col));
+            }
+        }
+        ConnectivityMatrix.Edges copy = edges.copy();
+        copy.add(7, 9, 5);
+        assertEquals(edges.get(7, 9) + 5, copy.get(7, 9));
+    }
+
+    public void testAggregates() {
+        tufts.vue.gui.GUI.init();
+        LWMap map1 = edu.tufts.vue.compare.Util.getMap();
+        LWMap map2 = edu.tufts.vue.compare.Util.getMap();
+        LWMap map3 = new LWMap("More Cities");
+        LWNode boston = new LWNode("Boston");
+        LWNode austin = new LWNode("Austin");
+        map3.addNode(boston);
+        map3.addNode(austin);
+        LWLink both = new LWLink(boston, austin);
+        both.setArrowState(LWLink.ARROW_NONE);
+        map3.addLink(both);
+        map3.addLink(new LWLink(austin, boston));
+
+        ConnectivityMatrix matrix1 = new ConnectivityMatrix(map1);
+        // links default to a tail arrow: head -> tail
+        assertEquals(2, matrix1.getConnectionCount());
+        assertEquals(1, matrix1.getConnection("Boston", "Miami"));
+        assertEquals(0, matrix1.getConnection("Miami", "Boston"));
+        assertEquals(0, matrix1.getConnection("Boston", "Denver"));
+        assertTrue(matrix1.compare(new ConnectivityMatrix(map2)));
+        assertFalse(matrix1.compare(new ConnectivityMatrix(map3)));
+        assertEquals(1, matrix1.getMatrix()[0][1]);
+
+        List<ConnectivityMatrix> matrices = new ArrayList<ConnectivityMatrix>();
+        matrices.add(matrix1);
+        matrices.add(new ConnectivityMatrix(map2));
+        matrices.add(new ConnectivityMatrix(map3));
+
+        WeightAggregate weights = WeightAggregate.create(matrices);
+        assertEquals(4, weights.size());
+        assertEquals(2, weights.getConnection("Boston", "Miami"));
+        assertEquals(1, weights.getConnection("Boston", "Austin"));
+        assertEquals(1, weights.getConnection("Austin", "Boston"));
+        assertEquals(0, weights.getConnection("Denver", "Austin"));
+        assertEquals(3, weights.getNodeCount("Boston"));
+
+        VoteAggregate votes = VoteAggregate.create(matrices, 0.67, 0.67);
+        assertTrue(votes.isLinkVotedIn("Boston", "Miami"));
+        assertFalse(votes.isLinkVotedIn("Boston", "Austin"));
+        assertEquals(2, votes.getLinkCount("Miami", "Denver"));
+        assertTrue(votes.isNodeVotedIn("Boston"));
+        assertFalse(votes.isNodeVotedIn("Austin"));
+
+        VoteAggregate anyVote = VoteAggregate.create(matrices, 0.0, 0.0);
+        assertTrue(anyVote.isLinkVotedIn("Austin", "Boston"));
+        assertTrue(anyVote.testAndConsumeOppositeLinkVote("Boston", "Austin"));
+        assertFalse(anyVote.isLinkVotedIn("Austin", "Boston"));
+        assertEquals(1, anyVote.getLinkCount("Austin", "Boston"));
+    }
+
+}
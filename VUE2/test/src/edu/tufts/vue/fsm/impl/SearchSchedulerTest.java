@@ -0,0 +1,214 @@
+package edu.tufts.vue.fsm.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.osid.repository.Asset;
+import org.osid.repository.AssetIterator;
+import org.osid.repository.Repository;
+
+import edu.tufts.vue.fsm.SearchEngine;
+
+public class SearchSchedulerTest {
+
+	/** what a fake repository does when searched */
+	private interface Search {
+		String[] run() throws Throwable;
+	}
+
+	private static Asset asset(final String name) {
+		return (Asset) Proxy.newProxyInstance(Asset.class.getClassLoader(), new Class[] { Asset.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("getDisplayName") || method.getName().equals("toString"))
+							return name;
+						return null;
+					}
+				});
+	}
+
+	private static Repository repository(final Search search) {
+		return (Repository) Proxy.newProxyInstance(Repository.class.getClassLoader(), new Class[] { Repository.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("getAssetsBySearch")) {
+							final java.util.Vector assets = new java.util.Vector();
+							for (String name : search.run())
+								assets.add(asset(name));
+							return new edu.tufts.vue.fsm.impl.AssetIterator(assets);
+						}
+						return null;
+					}
+				});
+	}
+
+	private static VueQuery query(String id, Search search) {
+		return new VueQuery(id, repository(search), "criteria", null, null);
+	}
+
+	private static Search returning(final String... names) {
+		return new Search() {
+			public String[] run() {
+				return names;
+			}
+		};
+	}
+
+	/** a search that waits for the latch, and counts the latch down if interrupted */
+	private static Search blockedOn(final CountDownLatch release, final CountDownLatch interrupted,
+			final String... names) {
+		return new Search() {
+			public String[] run() throws Throwable {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+					throw e;
+				}
+				return names;
+			}
+		};
+	}
+
+	private static List<String> names(AssetIterator i) throws Throwable {
+		final List<String> names = new ArrayList<String>();
+		while (i.hasNextAsset())
+			names.add(i.nextAsset().getDisplayName());
+		return names;
+	}
+
+	private static void awaitComplete(SearchEngine engine) throws InterruptedException {
+		for (int i = 0; i < 1000 && !engine.isComplete(); i++)
+			Thread.sleep(10);
+		assertTrue("search didn't complete", engine.isComplete());
+	}
+
+	@Test
+	public void testStreamsResultsAsTheyArrive() throws Throwable {
+		final CountDownLatch release = new CountDownLatch(1);
+		final VueSearchEngine engine = new VueSearchEngine();
+		engine.search(new VueQuery[] {
+				query("stream-slow", blockedOn(release, new CountDownLatch(1), "slow-1")),
+				query("stream-fast", returning("fast-1", "fast-2")) });
+
+		final AssetIterator stream = engine.getStreamingAssetIterator();
+		assertTrue(stream.hasNextAsset());
+		assertEquals("fast-1", stream.nextAsset().getDisplayName());
+		assertEquals("fast-2", stream.nextAsset().getDisplayName());
+		assertFalse(engine.isComplete()); // the slow repository still hasn't answered
+
+		release.countDown();
+		assertEquals("slow-1", stream.nextAsset().getDisplayName());
+		assertFalse(stream.hasNextAsset());
+		assertTrue(engine.isComplete());
+
+		// a new stream replays everything, in the order it arrived
+		assertEquals(java.util.Arrays.asList("fast-1", "fast-2", "slow-1"), names(engine.getStreamingAssetIterator()));
+		assertEquals(java.util.Arrays.asList("slow-1"), names(engine.getAssetIterator("stream-slow")));
+		assertEquals(java.util.Arrays.asList("fast-1", "fast-2"), names(engine.getAssetIterator(1)));
+		assertEquals(SearchEngine.SEARCH_COMPLETED, engine.getStatus(0));
+	}
+
+	@Test
+	public void testDeadline() throws Throwable {
+		SearchScheduler.getInstance().setDeadline("deadline-slow", 200);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		final VueSearchEngine engine = new VueSearchEngine();
+		engine.search(new VueQuery[] {
+				query("deadline-slow", blockedOn(new CountDownLatch(1), interrupted, "never")),
+				query("deadline-fast", returning("fast")) });
+
+		assertEquals(java.util.Arrays.asList("fast"), names(engine.getStreamingAssetIterator()));
+		assertTrue(engine.isComplete());
+		assertEquals(SearchEngine.SEARCH_EXCEPTION, engine.getStatus(0));
+		assertTrue(engine.getExceptionMessage(0), engine.getExceptionMessage(0).startsWith("timed out"));
+		assertTrue("slow search wasn't interrupted", interrupted.await(5, TimeUnit.SECONDS));
+
+		final SearchScheduler.Latency latency = SearchScheduler.getInstance().getLatency("deadline-slow");
+		assertEquals(1, latency.getSearchCount());
+		assertEquals(1, latency.getTimeoutCount());
+		assertTrue(latency.getMaxMillis() >= 200);
+	}
+
+	@Test
+	public void testNewSearchCancelsPrevious() throws Throwable {
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		final VueSearchEngine first = new VueSearchEngine();
+		first.search(new VueQuery[] { query("cancel-old", blockedOn(new CountDownLatch(1), interrupted, "stale")) });
+		Thread.sleep(50);
+		assertFalse(first.isComplete());
+
+		final VueSearchEngine second = new VueSearchEngine();
+		second.search(new VueQuery[] { query("cancel-new", returning("fresh")) });
+
+		assertTrue(first.isComplete());
+		assertEquals("cancelled", first.getExceptionMessage(0));
+		assertFalse(first.getStreamingAssetIterator().hasNextAsset());
+		assertTrue("old search wasn't interrupted", interrupted.await(5, TimeUnit.SECONDS));
+
+		assertEquals(java.util.Arrays.asList("fresh"), names(second.getStreamingAssetIterator()));
+	}
+
+	@Test
+	public void testBoundedPool() throws Throwable {
+		final CountDownLatch release = new CountDownLatch(1);
+		final int[] running = new int[2]; // current, max
+		final Search search = new Search() {
+			public String[] run() throws Throwable {
+				synchronized (running) {
+					running[1] = Math.max(running[1], ++running[0]);
+				}
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} finally {
+					synchronized (running) {
+						running[0]--;
+					}
+				}
+				return new String[] { "hit" };
+			}
+		};
+		final VueQuery[] queries = new VueQuery[20];
+		for (int i = 0; i < queries.length; i++)
+			queries[i] = query("pool-" + i, search);
+		final VueSearchEngine engine = new VueSearchEngine();
+		engine.search(queries);
+		Thread.sleep(200);
+		release.countDown();
+		assertEquals(20, names(engine.getStreamingAssetIterator()).size());
+		assertTrue("max concurrent " + running[1], running[1] > 1 && running[1] <= 8);
+	}
+
+	@Test
+	public void testLatencyMetrics() throws Throwable {
+		final VueSearchEngine engine = new VueSearchEngine();
+		for (int i = 0; i < 3; i++) {
+			engine.search(new VueQuery[] { query("metrics-ok", returning("a")), query("metrics-fail", new Search() {
+				public String[] run() throws Throwable {
+					throw new org.osid.repository.RepositoryException("boom");
+				}
+			}) });
+			awaitComplete(engine);
+		}
+		final SearchScheduler.Latency ok = SearchScheduler.getInstance().getLatency("metrics-ok");
+		final SearchScheduler.Latency fail = SearchScheduler.getInstance().getLatencies().get("metrics-fail");
+		assertNotNull(fail);
+		assertEquals(3, ok.getSearchCount());
+		assertEquals(0, ok.getFailureCount());
+		assertEquals(3, fail.getSearchCount());
+		assertEquals(3, fail.getFailureCount());
+		assertEquals(SearchEngine.SEARCH_EXCEPTION, engine.getStatus(1));
+		assertEquals("boom", engine.getExceptionMessage(1));
+	}
+}
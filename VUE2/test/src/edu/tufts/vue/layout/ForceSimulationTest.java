@@ -0,0 +1,247 @@
+package edu.tufts.vue.layout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Test;
+
+import tufts.vue.LWComponent;
+import tufts.vue.LWLink;
+import tufts.vue.LWMap;
+import tufts.vue.LWNode;
+import tufts.vue.LWSelection;
+import tufts.vue.UndoManager;
+
+public class ForceSimulationTest {
+
+	private static int overlaps(double[] x, double[] y, double[] w, double[] h) {
+		int count = 0;
+		for (int i = 0; i < x.length; i++)
+			for (int j = i + 1; j < x.length; j++)
+				if (Math.abs(x[i] - x[j]) < (w[i] + w[j]) / 2 - 0.5 && Math.abs(y[i] - y[j]) < (h[i] + h[j]) / 2 - 0.5)
+					count++;
+		return count;
+	}
+
+	private static double[] fill(int n, double value) {
+		double[] a = new double[n];
+		java.util.Arrays.fill(a, value);
+		return a;
+	}
+
+	@Test
+	public void testSeparatesStackedBodies() {
+		final int n = 60;
+		final double[] w = new double[n], h = new double[n];
+		final Random random = new Random(1);
+		for (int i = 0; i < n; i++) {
+			w[i] = 40 + random.nextInt(120);
+			h[i] = 20 + random.nextInt(20);
+		}
+		ForceSimulation sim = new ForceSimulation(new double[n], new double[n], w, h, new int[0], new int[0], 30);
+		sim.run(ForceLayout.MAX_ITERATIONS);
+		assertEquals(0, overlaps(sim.getX(), sim.getY(), w, h));
+	}
+
+	@Test
+	public void testLinkedBodiesAreCloser() {
+		// two rings of 20, not linked to each other
+		final int n = 40;
+		final double[] x = new double[n], y = new double[n];
+		final Random random = new Random(2);
+		for (int i = 0; i < n; i++) {
+			x[i] = random.nextDouble() * 2000;
+			y[i] = random.nextDouble() * 2000;
+		}
+		final int[] heads = new int[n], tails = new int[n];
+		for (int i = 0; i < n; i++) {
+			heads[i] = i;
+			tails[i] = (i % 20 == 19) ? i - 19 : i + 1;
+		}
+		ForceSimulation sim = new ForceSimulation(x, y, fill(n, 60), fill(n, 20), heads, tails, 30);
+		sim.run(ForceLayout.MAX_ITERATIONS);
+		double linked = 0, unlinked = 0;
+		for (int i = 0; i < n; i++)
+			linked += Math.hypot(sim.getX()[heads[i]] - sim.getX()[tails[i]], sim.getY()[heads[i]] - sim.getY()[tails[i]]);
+		for (int i = 0; i < 20; i++)
+			unlinked += Math.hypot(sim.getX()[i] - sim.getX()[i + 20], sim.getY()[i] - sim.getY()[i + 20]);
+		linked /= n;
+		unlinked /= 20;
+		assertTrue("linked " + linked + " unlinked " + unlinked, linked * 2 < unlinked);
+		assertTrue("linked " + linked, linked < 200);
+	}
+
+	@Test
+	public void testLargeGraph() {
+		final int n = 10000;
+		final Random random = new Random(3);
+		final double[] x = new double[n], y = new double[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = random.nextDouble() * 5000;
+			y[i] = random.nextDouble() * 5000;
+		}
+		// a random tree, plus some cross links
+		final int links = n - 1 + n / 5;
+		final int[] heads = new int[links], tails = new int[links];
+		for (int e = 0; e < links; e++) {
+			heads[e] = e < n - 1 ? e + 1 : random.nextInt(n);
+			tails[e] = e < n - 1 ? random.nextInt(e + 1) : random.nextInt(n);
+		}
+		final long start = System.currentTimeMillis();
+		ForceSimulation sim = new ForceSimulation(x, y, fill(n, 80), fill(n, 24), heads, tails, 30);
+		final int iterations = sim.run(ForceLayout.MAX_ITERATIONS);
+		final long elapsed = System.currentTimeMillis() - start;
+		System.out.println("ForceSimulation: " + n + " bodies, " + iterations + " iterations in " + elapsed + "ms");
+		for (int i = 0; i < n; i++)
+			assertFalse(Double.isNaN(sim.getX()[i]) || Double.isNaN(sim.getY()[i]));
+		assertTrue("took " + elapsed + "ms", elapsed < 60000);
+	}
+
+	/** two bodies close enough to share a leaf at the tree's max depth repel each other equally */
+	@Test
+	public void testSharedLeafExcludesSelf() {
+		final double[] x = { 0, 0, 100000 }, y = { 0, 0.00001, 0 };
+		final ForceSimulation sim = new ForceSimulation(x, y, fill(3, 10), fill(3, 10), new int[0], new int[0], 20);
+		final double[] f0 = sim.getRepulsion(0), f1 = sim.getRepulsion(1);
+		assertTrue(f0[1] < 0);
+		assertEquals(-f0[1], f1[1], Math.abs(f0[1]) * 1e-6);
+	}
+
+	@Test
+	public void testForceLayoutInBackground() throws Exception {
+		tufts.vue.gui.GUI.init();
+		final LWMap map = new LWMap("background");
+		final UndoManager undo = new UndoManager(map);
+		map.setUndoManager(undo);
+		final List<LWComponent> nodes = new ArrayList<LWComponent>();
+		for (int i = 0; i < 30; i++) {
+			final LWNode node = new LWNode("node " + i);
+			node.setLocation(i * 5, 0);
+			map.add(node);
+			nodes.add(node);
+		}
+		for (int i = 1; i < nodes.size(); i++)
+			map.addLink(new LWLink(nodes.get(i), nodes.get(i - 1)));
+		undo.mark("setup");
+
+		final Exception[] failed = new Exception[1];
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+				try {
+					new ForceLayout().layout(new LWSelection(nodes));
+				} catch (Exception e) {
+					failed[0] = e;
+				}
+				// still running: nothing's moved yet
+				for (int i = 0; i < nodes.size(); i++)
+					assertEquals(i * 5, nodes.get(i).getX(), 0);
+			}
+		});
+		assertNull(failed[0]);
+		ForceLayout.sync();
+
+		int moved = 0;
+		for (int i = 0; i < nodes.size(); i++)
+			if (nodes.get(i).getX() != i * 5)
+				moved++;
+		assertTrue(moved > 0);
+
+		// a single undo puts them all back
+		undo.undo();
+		for (int i = 0; i < nodes.size(); i++) {
+			assertEquals(i * 5, nodes.get(i).getX(), 0);
+			assertEquals(0, nodes.get(i).getY(), 0);
+		}
+	}
+
+	@Test
+	public void testForceLayoutCompletion() throws Exception {
+		tufts.vue.gui.GUI.init();
+		final LWMap map = new LWMap("completion");
+		final UndoManager undo = new UndoManager(map);
+		map.setUndoManager(undo);
+		final List<LWComponent> nodes = new ArrayList<LWComponent>();
+		for (int i = 0; i < 30; i++) {
+			final LWNode node = new LWNode("node " + i);
+			node.setLocation(i * 5, 0);
+			map.add(node);
+			nodes.add(node);
+		}
+		for (int i = 1; i < nodes.size(); i++)
+			map.addLink(new LWLink(nodes.get(i), nodes.get(i - 1)));
+		undo.mark("setup");
+
+		final int[] movedWhenDone = { -1 };
+		final Runnable whenDone = new Runnable() {
+			public void run() {
+				movedWhenDone[0] = 0;
+				for (int i = 1; i < nodes.size(); i++)
+					if (nodes.get(i).getX() != i * 5)
+						movedWhenDone[0]++;
+			}
+		};
+		final boolean[] started = new boolean[1];
+		final Exception[] failed = new Exception[1];
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+				try {
+					started[0] = new ForceLayout().layoutInBackground(new LWSelection(nodes), whenDone);
+				} catch (Exception e) {
+					failed[0] = e;
+				}
+				// the first node is deleted before the layout is applied
+				nodes.get(0).getParent().deleteChildPermanently(nodes.get(0));
+			}
+		});
+		assertNull(failed[0]);
+		assertTrue(started[0]);
+		assertTrue(nodes.get(0).isDeleted());
+		ForceLayout.sync();
+
+		// the rest were still laid out, and only then was whenDone run
+		assertTrue(movedWhenDone[0] > 0);
+		assertFalse(new ForceLayout().layoutInBackground(new LWSelection(nodes), whenDone));
+	}
+
+	@Test
+	public void testForceLayout() throws Exception {
+		tufts.vue.gui.GUI.init();
+		final LWMap map = new LWMap("force");
+		final List<LWComponent> nodes = new ArrayList<LWComponent>();
+		for (int i = 0; i < 100; i++) {
+			final LWNode node = new LWNode("node " + i);
+			node.setLocation(100, 100); // all stacked
+			map.add(node);
+			nodes.add(node);
+		}
+		for (int i = 1; i < nodes.size(); i++)
+			map.addLink(new LWLink(nodes.get(i), nodes.get((i - 1) / 3)));
+
+		new ForceLayout().layout(new LWSelection(nodes));
+
+		final int n = nodes.size();
+		final double[] x = new double[n], y = new double[n], w = new double[n], h = new double[n];
+		double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxWidth = 0;
+		for (int i = 0; i < n; i++) {
+			final LWComponent c = nodes.get(i);
+			w[i] = c.getWidth();
+			h[i] = c.getHeight();
+			x[i] = c.getX() + w[i] / 2;
+			y[i] = c.getY() + h[i] / 2;
+			minX = Math.min(minX, c.getX());
+			maxX = Math.max(maxX, c.getX() + w[i]);
+			maxWidth = Math.max(maxWidth, w[i]);
+		}
+		assertEquals(0, overlaps(x, y, w, h));
+		// still centered on the stack
+		assertEquals(100 + maxWidth / 2, (minX + maxX) / 2, 1);
+	}
+}
@@ -0,0 +1,133 @@
+package edu.tufts.vue.metadata.action;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.tufts.vue.rdf.Query;
+import tufts.vue.LWCEvent;
+import tufts.vue.LWComponent;
+import tufts.vue.LWKey;
+import tufts.vue.LWMap;
+import tufts.vue.LWNode;
+
+public class SearchIndexTest {
+
+	private static Set<LWComponent> set(LWComponent... c) {
+		return new HashSet<LWComponent>(Arrays.asList(c));
+	}
+
+	private static Query query(String key, String value, String qualifier) {
+		Query q = new Query();
+		q.addCriteria(key, value, qualifier);
+		return q;
+	}
+
+	@Test
+	public void testValues() {
+		tufts.vue.gui.GUI.init();
+		LWMap map = new LWMap("SearchIndexTest");
+		LWNode apple = new LWNode("Green Apple");
+		LWNode pear = new LWNode("pear");
+		pear.setNotes("grows near apples");
+		LWNode plum = new LWNode("Plum");
+		plum.addDataValue("Color", "Purple");
+		map.add(apple);
+		map.add(pear);
+		map.add(plum);
+
+		SearchIndex index = new SearchIndex(map);
+		assertEquals(3, index.size());
+		assertEquals(set(apple, pear), index.searchAllValues("APPLE", false));
+		assertEquals(set(apple, pear, plum), index.searchAllValues("p", false));
+		assertEquals(set(plum), index.searchAllValues("urp", false));
+		assertEquals(set(plum), index.searchAllValues("p", true));
+		assertEquals(set(), index.searchAllValues("banana", false));
+
+		assertEquals(set(apple), index.search(query(SearchIndex.LABEL_KEY, "apple", "CONTAINS"), false));
+		assertEquals(set(pear), index.search(query(SearchIndex.NOTES_KEY, "apple", "CONTAINS"), false));
+		assertEquals(set(pear), index.search(query(SearchIndex.LABEL_KEY, "pe", "STARTS_WITH"), false));
+		assertEquals(set(), index.search(query(SearchIndex.LABEL_KEY, "ear", "STARTS_WITH"), false));
+		assertEquals(set(), index.search(query(SearchIndex.LABEL_KEY, "apple", "CONTAINS"), true));
+
+		Query both = query(SearchIndex.LABEL_KEY, "plum", "CONTAINS");
+		both.addCriteria("Color", "purple", "CONTAINS");
+		assertEquals(set(plum), index.search(both, false));
+		both.addCriteria("Color", "green", "CONTAINS");
+		assertEquals(set(), index.search(both, false));
+	}
+
+	@Test
+	public void testIncrementalUpdates() {
+		tufts.vue.gui.GUI.init();
+		LWMap map = new LWMap("SearchIndexTest");
+		LWNode a = new LWNode("alpha");
+		map.add(a);
+		SearchIndex index = new SearchIndex(map);
+		assertEquals(set(a), index.searchAllValues("alpha", false));
+
+		a.setLabel("omega");
+		assertEquals(set(), index.searchAllValues("alpha", false));
+		assertEquals(set(a), index.searchAllValues("omega", false));
+
+		LWNode parent = new LWNode("parent");
+		LWNode child = new LWNode("nested omega");
+		parent.addChild(child);
+		map.add(parent);
+		assertEquals(set(a, child), index.searchAllValues("omega", false));
+
+		// meta-data added directly to the list
+		a.getMetadataList().add("Kind", "letter");
+		assertEquals(set(a), index.searchAllValues("letter", false));
+		a.getMetadataList().getMetadata().remove(0);
+		assertEquals(set(), index.searchAllValues("letter", false));
+
+		map.getActiveLayer().deleteChildPermanently(parent);
+		assertEquals(set(a), index.searchAllValues("omega", false));
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void testMetadataChangeEvents() {
+		tufts.vue.gui.GUI.init();
+		LWMap map = new LWMap("SearchIndexTest");
+		LWNode a = new LWNode("a");
+		LWNode b = new LWNode("b");
+		map.add(a);
+		map.add(b);
+		final List<LWComponent> changed = new ArrayList<LWComponent>();
+		map.addLWCListener(new LWComponent.Listener() {
+			public void LWCChanged(LWCEvent e) {
+				if (e.key == LWKey.MetaData)
+					changed.add(e.getComponent());
+			}
+		});
+		b.getMetadataList().add("Kind", "letter");
+		assertEquals(Arrays.asList(b), changed);
+		map.getMetadataList().add("Author", "someone");
+		assertEquals(Arrays.asList(b, map), changed);
+	}
+
+	@Test
+	public void testManyValues() {
+		tufts.vue.gui.GUI.init();
+		LWMap map = new LWMap("SearchIndexTest");
+		for (int i = 0; i < 2000; i++) {
+			LWNode n = new LWNode("node " + i);
+			n.addDataValue("Group", "g" + (i % 100));
+			map.add(n);
+		}
+		SearchIndex index = new SearchIndex(map);
+		assertEquals(2000, index.size());
+		assertEquals(1, index.searchAllValues("node 1234", false).size());
+		assertEquals(11, index.search(query(SearchIndex.LABEL_KEY, "node 123", "STARTS_WITH"), false).size());
+		assertEquals(20, index.search(query("Group", "g42", "CONTAINS"), false).size());
+		assertEquals(2000, index.searchAllValues("e", false).size());
+	}
+}
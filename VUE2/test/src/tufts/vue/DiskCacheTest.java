@@ -0,0 +1,130 @@
+package tufts.vue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskCacheTest {
+
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("DiskCacheTest").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		delete(dir);
+	}
+
+	private static void delete(File f) {
+		File[] files = f.listFiles();
+		if (files != null)
+			for (File c : files)
+				delete(c);
+		f.delete();
+	}
+
+	private static URI key(int i) throws Exception {
+		return new URI("http://example.com/images/" + i + ".png");
+	}
+
+	private static File write(File file, int bytes) throws Exception {
+		file.getParentFile().mkdirs();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[bytes]);
+		out.close();
+		return file;
+	}
+
+	/** the way Images stores a file: write a temporary, then rename it to permanent */
+	private static File store(DiskCache cache, URI key, int bytes) throws Exception {
+		File tmp = write(cache.fileFor(key, true), bytes);
+		File file = cache.fileFor(key, false);
+		assertTrue(tmp.renameTo(file));
+		cache.stored(file);
+		return file;
+	}
+
+	@Test
+	public void testStoreAndFind() throws Exception {
+		DiskCache cache = new DiskCache(dir, 1024 * 1024);
+		assertNull(cache.find(key(1)));
+		File tmp = write(cache.fileFor(key(1), true), 10);
+		assertNull("temporary files aren't found", cache.find(key(1)));
+		tmp.delete();
+
+		File file = store(cache, key(1), 100);
+		assertEquals(file, cache.find(key(1)));
+		assertEquals(dir, file.getParentFile().getParentFile());
+		assertEquals(100, cache.getByteSize());
+
+		assertTrue(cache.delete(key(1)));
+		assertNull(cache.find(key(1)));
+		assertEquals(0, cache.getByteSize());
+		cache.close();
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		DiskCache cache = new DiskCache(dir, 1000);
+		for (int i = 0; i < 5; i++)
+			store(cache, key(i), 200);
+		cache.sync();
+		// use the oldest, so the next oldest goes first
+		assertNotNull(cache.find(key(0)));
+		store(cache, key(5), 200);
+		assertTrue(cache.getByteSize() <= 900);
+		assertNotNull(cache.find(key(0)));
+		assertNull(cache.find(key(1)));
+		assertNotNull(cache.find(key(5)));
+		cache.close();
+	}
+
+	@Test
+	public void testIndexPersists() throws Exception {
+		DiskCache cache = new DiskCache(dir, 1024 * 1024);
+		for (int i = 0; i < 3000; i++)
+			store(cache, key(i), 10);
+		for (int i = 0; i < 1000; i++)
+			cache.delete(key(i));
+		cache.close();
+		assertTrue("index was compacted", new File(dir, "index").length() < 4000 * 50);
+
+		cache = new DiskCache(dir, 1024 * 1024);
+		assertEquals(2000 * 10, cache.getByteSize());
+		cache.close();
+
+		// a lost index is rebuilt from the files
+		assertTrue(new File(dir, "index").delete());
+		cache = new DiskCache(dir, 1024 * 1024);
+		assertEquals(2000 * 10, cache.getByteSize());
+		cache.close();
+	}
+
+	@Test
+	public void testMigratesFlatCache() throws Exception {
+		File old1 = write(new File(dir, Images.keyToCacheFileName(key(1))), 30);
+		File old2 = write(new File(dir, Images.keyToCacheFileName(key(2))), 40);
+		DiskCache cache = new DiskCache(dir, 1024 * 1024);
+		assertNotNull(cache.find(key(1)));
+		assertNotNull(cache.find(key(2)));
+		assertEquals(70, cache.getByteSize());
+		assertFalse(old1.exists());
+		assertFalse(old2.exists());
+		assertEquals(cache.fileFor(key(2), false), cache.find(key(2)));
+		cache.close();
+	}
+}
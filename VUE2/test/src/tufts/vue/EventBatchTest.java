@@ -0,0 +1,157 @@
+package tufts.vue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class EventBatchTest {
+
+	private static class Recorder implements LWComponent.Listener {
+		final List<LWCEvent> events = new ArrayList<LWCEvent>();
+
+		public void LWCChanged(LWCEvent e) {
+			events.add(e);
+		}
+
+		int count(Object key) {
+			int n = 0;
+			for (LWCEvent e : events)
+				if (e.key == key)
+					n++;
+			return n;
+		}
+	}
+
+	private static LWMap createMap(int nodes) {
+		tufts.vue.gui.GUI.init();
+		LWMap map = new LWMap("EventBatchTest");
+		for (int i = 0; i < nodes; i++)
+			map.add(new LWNode("node " + i));
+		return map;
+	}
+
+	@Test
+	public void testCoalescing() {
+		LWMap map = createMap(10);
+		Recorder recorder = new Recorder();
+		map.addLWCListener(recorder);
+		List<LWComponent> nodes = new ArrayList<LWComponent>(map.getAllDescendents());
+
+		map.beginEventBatch();
+		for (int pass = 0; pass < 5; pass++)
+			for (LWComponent c : nodes)
+				c.setLocation(pass * 10, pass * 10);
+		LWNode added = new LWNode("added");
+		map.add(added);
+		added.setLabel("relabeled");
+		map.beginEventBatch(); // nested
+		nodes.get(0).setLabel("changed");
+		map.endEventBatch();
+		assertEquals("nothing delivered until the batch ends", 0, recorder.events.size());
+		map.endEventBatch();
+
+		assertEquals(10, recorder.count(LWKey.Location));
+		assertEquals(2, recorder.count(LWKey.Label));
+		assertEquals(1, recorder.count(LWKey.ChildrenAdded));
+		assertTrue(recorder.events.indexOf(firstOf(recorder, LWKey.ChildrenAdded)) < recorder.events
+				.indexOf(firstOf(recorder, LWKey.Label)));
+		for (LWCEvent e : recorder.events)
+			if (e.key == LWKey.Location)
+				assertEquals("the first old value is kept", 0f, ((java.awt.geom.Point2D) e.getOldValue()).getX(), 0);
+
+		recorder.events.clear();
+		nodes.get(1).setLocation(1, 1);
+		assertEquals("events flow normally after the batch", 1, recorder.count(LWKey.Location));
+	}
+
+	private static LWCEvent firstOf(Recorder r, Object key) {
+		for (LWCEvent e : r.events)
+			if (e.key == key)
+				return e;
+		return null;
+	}
+
+	/** LWMap batches exempt its UndoManager: this is what it sees */
+	@Test
+	public void testExemptListenerSeesEverything() {
+		LWMap map = createMap(5);
+		Recorder undo = new Recorder();
+		Recorder other = new Recorder();
+		map.addLWCListener(undo);
+		map.addLWCListener(other);
+		List<LWComponent> nodes = new ArrayList<LWComponent>(map.getAllDescendents());
+
+		map.getChangeSupport().beginBatch(undo);
+		for (int pass = 1; pass <= 3; pass++)
+			for (LWComponent c : nodes)
+				c.setLocation(c.getX() + 100, c.getY());
+		assertEquals(15, undo.count(LWKey.Location));
+		assertEquals(0, other.events.size());
+		map.getChangeSupport().endBatch(map);
+
+		assertEquals("not sent again", 15, undo.count(LWKey.Location));
+		assertEquals(5, other.count(LWKey.Location));
+		// every intermediate old value is recorded, in order
+		for (int i = 0; i < 15; i++) {
+			LWCEvent e = undo.events.get(i);
+			assertEquals(nodes.get(i % 5), e.component);
+			assertEquals((i / 5) * 100f, ((java.awt.geom.Point2D) e.getOldValue()).getX(), 0);
+		}
+	}
+
+	@Test
+	public void testListenerRemovedDuringDelivery() {
+		final LWMap map = createMap(3);
+		final Recorder other = new Recorder();
+		map.addLWCListener(new LWComponent.Listener() {
+			public void LWCChanged(LWCEvent e) {
+				map.removeLWCListener(other);
+			}
+		});
+		map.addLWCListener(other);
+
+		map.beginEventBatch();
+		for (LWComponent c : map.getAllDescendents())
+			c.setLabel("relabeled");
+		map.endEventBatch();
+		assertEquals("only the event being delivered when it was removed", 1, other.events.size());
+	}
+
+	@Test
+	public void testListenerList() {
+		LWMap map = createMap(1);
+		LWComponent node = map.getAllDescendents().iterator().next();
+		final List<String> order = new ArrayList<String>();
+		LWComponent.Listener a = new LWComponent.Listener() {
+			public void LWCChanged(LWCEvent e) {
+				if (e.key == LWKey.Notes || e.key == LWKey.Location)
+					order.add("a");
+			}
+		};
+		final LWComponent.Listener b = new LWComponent.Listener() {
+			public void LWCChanged(LWCEvent e) {
+				order.add("b");
+			}
+		};
+		node.addLWCListener(a);
+		node.addLWCListener(b, LWKey.Notes);
+		node.addLWCListener(a); // already listening
+		node.getChangeSupport().setPriorityListener(b);
+
+		node.setNotes("x");
+		assertEquals("[b, a]", order.toString());
+
+		order.clear();
+		node.setLocation(5, 5);
+		assertEquals("[a]", order.toString());
+
+		order.clear();
+		node.removeLWCListener(b);
+		node.setNotes("y");
+		assertEquals("[a]", order.toString());
+	}
+}
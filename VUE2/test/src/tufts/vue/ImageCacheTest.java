@@ -0,0 +1,124 @@
+package tufts.vue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ImageCacheTest {
+
+	private static final long MB = 1024 * 1024;
+
+	private static class TestEntry extends ImageCache.Entry {
+		final boolean disposable;
+		boolean released;
+
+		TestEntry(long bytes, boolean disposable) {
+			super(bytes, true);
+			this.disposable = disposable;
+		}
+
+		protected void releaseData() {
+			released = true;
+		}
+
+		protected boolean isDisposable() {
+			return disposable;
+		}
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		ImageCache cache = new ImageCache(ImageCache.MinBudget);
+		TestEntry[] entries = new TestEntry[4];
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = new TestEntry(4 * MB, i != 1);
+			cache.put("k" + i, entries[i]);
+		}
+		assertEquals(16 * MB, cache.getByteSize());
+		assertEquals(0, cache.getEvictionCount());
+
+		cache.get("k0"); // k1 is now the least recently used
+
+		TestEntry extra = new TestEntry(4 * MB, true);
+		cache.put("extra", extra);
+
+		// evicts down to 3/4 of the budget: the two least recently used
+		assertTrue(entries[1].released);
+		assertTrue(entries[2].released);
+		assertFalse(entries[0].released);
+		assertFalse(extra.released);
+		assertEquals(2, cache.getEvictionCount());
+		assertEquals(12 * MB, cache.getByteSize());
+
+		// non-disposable entries stay in the cache, without their data
+		assertSame(entries[1], cache.get("k1"));
+		assertNull(cache.get("k2"));
+	}
+
+	@Test
+	public void testReplaceAndRemoveReleaseBytes() {
+		ImageCache cache = new ImageCache(64 * MB);
+		TestEntry first = new TestEntry(8 * MB, true);
+		cache.put("key", first);
+		TestEntry second = new TestEntry(2 * MB, true);
+		cache.put("key", second);
+		assertTrue(first.released);
+		assertEquals(2 * MB, cache.getByteSize());
+
+		cache.remove("key");
+		assertTrue(second.released);
+		assertEquals(0, cache.getByteSize());
+		assertEquals(0, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testRePutAndLostPutIfAbsentDontMiscount() {
+		ImageCache cache = new ImageCache(64 * MB);
+		TestEntry entry = new TestEntry(8 * MB, true);
+		cache.put("key", entry);
+		cache.put("key", entry);
+		assertFalse(entry.released);
+		assertEquals(8 * MB, cache.getByteSize());
+
+		TestEntry loser = new TestEntry(2 * MB, true);
+		assertFalse(cache.putIfAbsent("key", loser));
+		assertFalse(loser.released);
+		assertEquals(8 * MB, cache.getByteSize());
+
+		cache.remove("key");
+		assertEquals(0, cache.getByteSize());
+	}
+
+	@Test
+	public void testClaimOnlyReplacesEmptyEntries() {
+		ImageCache cache = new ImageCache(64 * MB);
+		Object loader = new Object();
+		assertTrue(cache.claim("new", loader));
+		assertFalse(cache.claim("new", new Object()));
+		assertSame(loader, cache.get("new"));
+
+		TestEntry live = new TestEntry(MB, false);
+		cache.put("live", live);
+		assertFalse(cache.claim("live", new Object()));
+
+		cache.clear();
+		assertFalse(live.isHeld());
+		assertTrue(cache.claim("live", loader));
+		assertSame(loader, cache.get("live"));
+	}
+
+	@Test
+	public void testShrink() {
+		ImageCache cache = new ImageCache(256 * MB);
+		for (int i = 0; i < 16; i++)
+			cache.put("k" + i, new TestEntry(4 * MB, true));
+		cache.shrink();
+		assertEquals(32 * MB, cache.getByteBudget());
+		assertTrue(cache.getByteSize() <= 32 * MB);
+		assertEquals(16 - cache.size(), cache.getEvictionCount());
+	}
+}
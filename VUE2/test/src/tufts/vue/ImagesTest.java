@@ -0,0 +1,82 @@
+package tufts.vue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImagesTest {
+
+	@Before
+	public void setUp() {
+		tufts.vue.gui.GUI.init();
+	}
+
+	@Test
+	public void testSubsamplingIsPowerOfTwo() {
+		assertEquals(1, Images.getSubsampling(400, 300, 512));
+		assertEquals(1, Images.getSubsampling(1023, 800, 512));
+		assertEquals(2, Images.getSubsampling(1024, 800, 512));
+		assertEquals(2, Images.getSubsampling(1500, 2047, 512));
+		assertEquals(4, Images.getSubsampling(2048, 1536, 512));
+		// 6000 / 512 = 11: rounds down to 8, never below the requested size
+		assertEquals(8, Images.getSubsampling(6000, 4000, 512));
+		assertEquals(8, Images.getSubsampling(4000, 6000, 512));
+		for (int side = 64; side <= 4096; side *= 2) {
+			final int subsampling = Images.getSubsampling(6000, 4000, side);
+			assertEquals(1, Integer.bitCount(subsampling));
+			assertTrue("size " + side, (6000 + subsampling - 1) / subsampling >= side);
+		}
+	}
+
+	@Test
+	public void testReadScaled() throws Exception {
+		final File file = File.createTempFile("ImagesTest", ".png");
+		try {
+			ImageIO.write(new BufferedImage(2000, 1500, BufferedImage.TYPE_INT_RGB), "png", file);
+			final Images.Handle handle = Images.readScaled(file, 512);
+			assertEquals(1000, handle.image.getWidth(null));
+			assertEquals(750, handle.image.getHeight(null));
+			assertArrayEquals(new int[] { 2000, 1500 }, (int[]) handle.data.get("sourcePixels"));
+
+			final Images.Handle small = Images.readScaled(file, 4096);
+			assertEquals(2000, small.image.getWidth(null));
+			assertEquals(1500, small.image.getHeight(null));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testLevelLadder() {
+		// the EMPTY ref allocates levels at class init
+		assertNotNull(ImageRef.EMPTY);
+
+		// the smallest level that covers the display size
+		assertEquals(0, ImageRef.selectLevel(100, 6000));
+		assertEquals(0, ImageRef.selectLevel(512, 6000));
+		assertEquals(1, ImageRef.selectLevel(513, 6000));
+		assertEquals(2, ImageRef.selectLevel(2000, 6000));
+		// each level doubles the one below, as do power-of-two subsamplings
+		assertEquals(512, ImageRef.getLevelSize(0));
+		assertEquals(1024, ImageRef.getLevelSize(1));
+		assertEquals(2048, ImageRef.getLevelSize(2));
+
+		// beyond the largest level, use the full image
+		assertEquals(-1, ImageRef.selectLevel(3000, 6000));
+
+		// a level that wouldn't at least halve the full image falls back to it
+		assertEquals(0, ImageRef.selectLevel(300, 1024));
+		assertEquals(-1, ImageRef.selectLevel(300, 1023));
+		assertEquals(-1, ImageRef.selectLevel(600, 1500));
+		assertEquals(1, ImageRef.selectLevel(600, 2048));
+	}
+}
@@ -0,0 +1,69 @@
+package tufts.vue;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the retained heap per node for maps of generated nodes: once with
+ * the nodes as created, and once with a few style properties set on each from
+ * freshly parsed values, as happens when a saved map is restored.  Not a unit
+ * test: run by hand, e.g.:
+ *
+ *   java -cp ... tufts.vue.LWComponentMemoryBenchmark 100000
+ */
+public class LWComponentMemoryBenchmark {
+
+	private static long usedHeap() {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	static LWMap createMap(int nodes, boolean styled) {
+		final LWMap map = new LWMap("memory");
+		final List<LWComponent> added = new ArrayList<LWComponent>(nodes);
+		for (int i = 0; i < nodes; i++) {
+			final LWNode n = new LWNode("concept " + i);
+			n.setLocation((i % 100) * 120, (i / 100) * 60);
+			if (styled) {
+				// new, equal value instances for each node, as from a map file
+				n.setFillColor(new Color(0xF2AE45));
+				n.setStrokeColor(new Color(0x776D6D));
+				n.setTextColor(LWComponent.StringToColor("#000000"));
+				n.setFont(new Font("Arial", Font.PLAIN, 12));
+				n.setStrokeWidth(1f);
+			}
+			added.add(n);
+		}
+		map.addChildren(added);
+		return map;
+	}
+
+	private static void measure(String name, int nodes, boolean styled) {
+		final long before = usedHeap();
+		final LWMap map = createMap(nodes, styled);
+		final long after = usedHeap();
+		System.out.println(String.format("  %-10s %8.1f MB  %6d bytes/node  %s", name, (after - before) / 1e6,
+				(after - before) / nodes, map));
+	}
+
+	public static void main(String[] args) throws Exception {
+		tufts.vue.gui.GUI.init();
+		org.apache.log4j.Logger.getRootLogger().setLevel(org.apache.log4j.Level.WARN);
+		final int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		System.out.println(nodes + " nodes");
+		createMap(nodes / 10, true); // warm up
+		measure("default", nodes, false);
+		measure("styled", nodes, true);
+		System.exit(0);
+	}
+}
@@ -0,0 +1,84 @@
+package tufts.vue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times vote and weight merges of generated map sets, sequentially and in
+ * parallel.  Not a unit test: run by hand, e.g.:
+ *
+ *   java -cp ... tufts.vue.MergeMapBenchmark 300 200 1000
+ *
+ * for 300 maps of 200 nodes, with labels drawn from 1000 words.
+ */
+public class MergeMapBenchmark {
+
+	/**
+	 * @return count maps, each with the given number of nodes, labeled from a
+	 * shared vocabulary so merge keys overlap across maps, and about 1.5 links
+	 * per node
+	 */
+	static List<LWMap> createMaps(int count, int nodes, int vocabulary, long seed) {
+		final Random random = new Random(seed);
+		final List<LWMap> maps = new ArrayList<LWMap>(count);
+		for (int m = 0; m < count; m++) {
+			final LWMap map = new LWMap("student-" + m);
+			final List<LWNode> added = new ArrayList<LWNode>(nodes);
+			for (int i = 0; i < nodes; i++) {
+				final LWNode n = new LWNode("concept " + random.nextInt(vocabulary));
+				n.setLocation((i % 20) * 120, (i / 20) * 60);
+				map.add(n);
+				added.add(n);
+			}
+			for (int i = 0; i < nodes * 3 / 2; i++) {
+				final LWNode head = added.get(random.nextInt(nodes));
+				final LWNode tail = added.get(random.nextInt(nodes));
+				if (head != tail)
+					map.addLink(new LWLink(head, tail));
+			}
+			maps.add(map);
+		}
+		return maps;
+	}
+
+	static MergeMapFactory createFactory(List<LWMap> maps, boolean parallel) {
+		final MergeMapFactory factory = new MergeMapFactory(maps.get(0), maps, Collections.<Boolean> emptyList());
+		final List<Double> intervals = new ArrayList<Double>();
+		for (int i = 0; i < 6; i++)
+			intervals.add(20 * i + 0.5);
+		factory.setNodeIntervalBoundaries(intervals);
+		factory.setLinkIntervalBoundaries(intervals);
+		factory.setParallel(parallel);
+		return factory;
+	}
+
+	private static void measure(String name, List<LWMap> maps, boolean parallel, boolean vote) {
+		createFactory(maps, parallel).createAsWeightMerge(); // warm up
+		System.gc();
+		final long start = System.nanoTime();
+		final MergeMapFactory factory = createFactory(maps, parallel);
+		final LWMap merged = vote ? factory.createAsVoteMerge() : factory.createAsWeightMerge();
+		final long elapsed = System.nanoTime() - start;
+		System.out.println(String.format("  %-20s %8.1fms  %s", name, elapsed / 1e6, merged));
+	}
+
+	public static void main(String[] args) throws Exception {
+		tufts.vue.gui.GUI.init();
+		edu.tufts.vue.style.StyleReader.readStyles("compare.weight.css"); // the weight styles
+		org.apache.log4j.Logger.getRootLogger().setLevel(org.apache.log4j.Level.WARN);
+		final int count = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		final int nodes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		final int vocabulary = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+		final List<LWMap> maps = createMaps(count, nodes, vocabulary, 42);
+		System.out.println(count + " maps of " + nodes + " nodes, vocabulary " + vocabulary
+				+ ", " + Runtime.getRuntime().availableProcessors() + " processors");
+		measure("weight sequential", maps, false, false);
+		measure("weight parallel", maps, true, false);
+		measure("vote sequential", maps, false, true);
+		measure("vote parallel", maps, true, true);
+		System.exit(0);
+	}
+}
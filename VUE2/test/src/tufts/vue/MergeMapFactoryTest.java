@@ -0,0 +1,75 @@
+package tufts.vue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class MergeMapFactoryTest {
+
+	@BeforeClass
+	public static void init() {
+		tufts.vue.gui.GUI.init();
+		edu.tufts.vue.style.StyleReader.readStyles("compare.weight.css"); // the weight styles
+	}
+
+	/** @return a sorted description of the nodes and links in the merged map */
+	private static List<String> contents(LWMap merged) {
+		final List<String> contents = new ArrayList<String>();
+		for (LWComponent c : merged.getAllDescendents()) {
+			if (c instanceof LWLink) {
+				final LWLink link = (LWLink) c;
+				contents.add(link.getHead().getLabel() + " -> " + link.getTail().getLabel()
+						+ " arrows=" + link.getArrowState() + " width=" + link.getStrokeWidth());
+			} else if (c instanceof LWNode) {
+				contents.add(c.getLabel() + " fill=" + c.getFillColor());
+			}
+		}
+		Collections.sort(contents);
+		return contents;
+	}
+
+	@Test
+	public void testParallelMatchesSequential() {
+		final List<LWMap> maps = MergeMapBenchmark.createMaps(12, 30, 60, 7);
+
+		final List<String> weights = contents(MergeMapBenchmark.createFactory(maps, false).createAsWeightMerge());
+		assertTrue(weights.size() > 60);
+		assertEquals(weights, contents(MergeMapBenchmark.createFactory(maps, true).createAsWeightMerge()));
+
+		final List<String> votes = contents(MergeMapBenchmark.createFactory(maps, false).createAsVoteMerge());
+		assertTrue(votes.size() > 0);
+		assertEquals(votes, contents(MergeMapBenchmark.createFactory(maps, true).createAsVoteMerge()));
+	}
+
+	@Test
+	public void testProgress() {
+		final List<LWMap> maps = MergeMapBenchmark.createMaps(8, 10, 20, 11);
+		// record what we're told, and check it only once the merge is done: progress()
+		// catches anything a listener throws, so an assert in here would never fail
+		final AtomicInteger analyzed = new AtomicInteger();
+		final List<Integer> merged = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<Integer> totals = Collections.synchronizedList(new ArrayList<Integer>());
+		final MergeMapFactory factory = MergeMapBenchmark.createFactory(maps, true);
+		factory.setProgressListener(new MergeMapFactory.ProgressListener() {
+			public void mergeProgress(String stage, int done, int total) {
+				totals.add(total);
+				if (stage.equals("analyzing"))
+					analyzed.incrementAndGet();
+				else
+					merged.add(done);
+			}
+		});
+		factory.createAsVoteMerge();
+		assertEquals(Collections.nCopies(17, 8), totals);
+		assertEquals(9, analyzed.get()); // 0, then once per map, in any order
+		assertEquals(8, merged.size());
+		assertEquals(Integer.valueOf(8), merged.get(7));
+	}
+}
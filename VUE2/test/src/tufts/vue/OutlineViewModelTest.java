@@ -0,0 +1,183 @@
+package tufts.vue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreePath;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OutlineViewModelTest {
+
+	private LWMap map;
+	private LWNode a, b, c;
+	private LWLink link;
+	private OutlineViewModel model;
+	private final List<String> events = new ArrayList<String>();
+
+	@Before
+	public void setUp() {
+		tufts.vue.gui.GUI.init();
+		map = new LWMap("OutlineViewModelTest");
+		a = new LWNode("a");
+		b = new LWNode("b");
+		c = new LWNode("c");
+		map.add(a);
+		map.add(b);
+		a.addChild(c);
+		link = new LWLink(a, b);
+		map.add(link);
+
+		model = new OutlineViewModel(map) {
+			@Override
+			void scheduleFlush() {
+				// the tests flush explicitly
+			}
+		};
+		map.addLWCListener(model, OutlineViewModel.KEYS);
+		model.addTreeModelListener(new TreeModelListener() {
+			public void treeNodesChanged(TreeModelEvent e) {
+				final Object[] children = e.getChildren();
+				events.add("changed " + (children == null ? e.getTreePath().getLastPathComponent() : children[0]));
+			}
+
+			public void treeNodesInserted(TreeModelEvent e) {
+				events.add("inserted " + e.getChildren().length);
+			}
+
+			public void treeNodesRemoved(TreeModelEvent e) {
+				events.add("removed " + e.getChildren().length);
+			}
+
+			public void treeStructureChanged(TreeModelEvent e) {
+				events.add("structure " + e.getTreePath().getLastPathComponent());
+			}
+		});
+	}
+
+	private OutlineViewModel.OutlineNode layerNode() {
+		final OutlineViewModel.OutlineNode root = (OutlineViewModel.OutlineNode) model.getRoot();
+		assertEquals(1, root.getChildCount());
+		return (OutlineViewModel.OutlineNode) root.getChildAt(0);
+	}
+
+	private OutlineViewModel.OutlineNode nodeFor(LWComponent c) {
+		final List<OutlineViewModel.OutlineNode> nodes = model.getIndexedNodes(c);
+		assertEquals(c.toString(), 1, nodes.size());
+		return nodes.get(0);
+	}
+
+	@Test
+	public void testChildrenCreatedOnExpand() {
+		assertEquals(1, model.getIndexedNodeCount());
+		assertFalse(model.isLeaf(model.getRoot()));
+		assertEquals(0, model.getIndexedNodes(a).size());
+
+		final OutlineViewModel.OutlineNode layer = layerNode();
+		assertFalse(layer.isLoaded());
+		assertEquals(2, model.getChildCount(layer));
+		assertEquals(4, model.getIndexedNodeCount());
+
+		// a has it's link, then it's child node
+		final OutlineViewModel.OutlineNode aNode = nodeFor(a);
+		assertFalse(model.isLeaf(aNode));
+		assertFalse(aNode.isLoaded());
+		assertFalse(model.isLeaf(nodeFor(b)));
+		assertEquals(2, aNode.getChildCount());
+		assertSame(link, ((OutlineViewModel.OutlineNode) aNode.getChildAt(0)).getComponent());
+		assertSame(c, ((OutlineViewModel.OutlineNode) aNode.getChildAt(1)).getComponent());
+		assertTrue(model.isLeaf(nodeFor(c)));
+		assertFalse(nodeFor(c).isLoaded());
+	}
+
+	@Test
+	public void testLabelUpdatesIndexedNodes() {
+		layerNode().getChildCount();
+		nodeFor(b).getChildCount(); // a is still collapsed, so the link only has a node under b
+		assertEquals(1, model.getIndexedNodes(link).size());
+		assertEquals(0, model.getIndexedNodes(c).size());
+
+		link.setLabel("relation");
+		a.setLabel("renamed");
+		c.setLabel("not materialized");
+		assertTrue(events.isEmpty()); // batched until the flush
+		model.flush();
+		assertEquals("[changed relation, changed renamed]", events.toString());
+		assertEquals("renamed", nodeFor(a).toString());
+
+		nodeFor(a).getChildCount();
+		assertEquals(2, model.getIndexedNodes(link).size());
+		events.clear();
+		link.setLabel("relation 2");
+		model.flush();
+		assertEquals("[changed relation 2, changed relation 2]", events.toString());
+	}
+
+	@Test
+	public void testStructuralDiffs() {
+		final OutlineViewModel.OutlineNode layer = layerNode();
+		layer.getChildCount();
+		final OutlineViewModel.OutlineNode aNode = nodeFor(a);
+		aNode.getChildCount();
+		final OutlineViewModel.OutlineNode cNode = nodeFor(c);
+
+		// add a node: only an insert at the end of the layer
+		final LWNode d = new LWNode("d");
+		map.add(d);
+		model.flush();
+		assertEquals("[inserted 1]", events.toString());
+		assertEquals(3, layer.getChildCount());
+		assertSame(d, ((OutlineViewModel.OutlineNode) layer.getChildAt(2)).getComponent());
+
+		// a new link between unexpanded nodes only updates the leaf state of d
+		events.clear();
+		map.add(new LWLink(b, d));
+		model.flush();
+		assertFalse(model.isLeaf(nodeFor(d)));
+		assertTrue(events.toString(), events.contains("changed d"));
+		assertFalse(events.toString(), events.contains("structure OutlineViewModelTest"));
+
+		// removing the original link removes it from under a, and keeps the other nodes
+		events.clear();
+		link.getParent().deleteChildPermanently(link);
+		model.flush();
+		assertTrue(events.toString(), events.contains("removed 1"));
+		assertEquals(1, aNode.getChildCount());
+		assertSame(cNode, aNode.getChildAt(0));
+		assertEquals(0, model.getIndexedNodes(link).size());
+
+		// reparenting c moves it's node
+		events.clear();
+		d.addChild(c);
+		model.flush();
+		assertEquals(0, aNode.getChildCount());
+		assertTrue(model.isLeaf(aNode));
+		assertEquals(0, model.getIndexedNodes(c).size()); // d wasn't expanded
+	}
+
+	@Test
+	public void testTreePathCreatesNodes() {
+		final TreePath path = model.getTreePath(c);
+		assertNotNull(path);
+		assertEquals(4, path.getPathCount()); // map, layer, a, c
+		assertSame(c, ((OutlineViewModel.OutlineNode) path.getLastPathComponent()).getComponent());
+		assertSame(a, ((OutlineViewModel.OutlineNode) path.getPathComponent(2)).getComponent());
+
+		final TreePath linkPath = model.getTreePath(link);
+		assertSame(a, ((OutlineViewModel.OutlineNode) linkPath.getPathComponent(2)).getComponent());
+
+		assertTrue(model.contains(link));
+		assertFalse(model.contains(new LWNode("elsewhere")));
+		assertNull(model.getTreePath(new LWNode("elsewhere")));
+	}
+}
@@ -0,0 +1,94 @@
+package tufts.vue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PropertySlotTest {
+
+	@Before
+	public void setUp() {
+		tufts.vue.gui.GUI.init();
+	}
+
+	@Test
+	public void testDefaultsAndChanges() {
+		final LWComponent c = new LWComponent();
+		new LWMap("PropertySlotTest").add(c);
+		assertNull(c.getFillColor());
+		assertEquals(Color.black, c.getTextColor());
+		assertEquals(LWComponent.StrokeStyle.SOLID, c.getStrokeStyle());
+		assertEquals(LWComponent.Alignment.LEFT, c.getAlignment());
+
+		final List<Object> oldValues = new ArrayList<Object>();
+		c.addLWCListener(new LWComponent.Listener() {
+			public void LWCChanged(LWCEvent e) {
+				oldValues.add(e.getOldValue());
+			}
+		});
+		c.setTextColor(Color.red);
+		c.setTextColor(null);
+		c.setTextColor(Color.black);
+		assertEquals(Color.black, c.getTextColor());
+		assertEquals("[" + Color.black + ", " + Color.red + ", null]", oldValues.toString());
+
+		// setting the default again is not a change
+		c.setTextColor(Color.black);
+		assertEquals(3, oldValues.size());
+	}
+
+	@Test
+	public void testFontSubProperties() {
+		final LWComponent c = new LWComponent();
+		c.setFont(new Font("SansSerif", Font.PLAIN, 12));
+		c.setFontSize(20);
+		c.setFontStyle(Font.BOLD);
+		assertEquals(new Font("SansSerif", Font.BOLD, 20), c.getFont());
+		assertEquals("SansSerif", c.getFontName());
+		assertEquals("SansSerif-bold-20", c.getXMLfont());
+		assertEquals(20, LWComponent.KEY_FontSize.getValue(c));
+	}
+
+	@Test
+	public void testEqualValuesAreShared() {
+		final LWNode a = new LWNode("a");
+		final LWNode b = new LWNode("b");
+		a.setFillColor(new Color(0x123456));
+		b.setXMLfillColor("#123456");
+		assertSame(a.getFillColor(), b.getFillColor());
+		a.setFont(new Font("Serif", Font.ITALIC, 17));
+		b.setXMLfont("Serif-italic-17");
+		assertSame(a.getFont(), b.getFont());
+		a.setStrokeWidth(3);
+		b.setStrokeWidth(3);
+		assertSame(a.stroke, b.stroke);
+	}
+
+	@Test
+	public void testFixedAlpha() {
+		final LWPortal portal = new LWPortal();
+		portal.setFillColor(Color.red);
+		assertEquals(64, portal.getFillColor().getAlpha());
+		assertEquals(Color.red.getRGB() & 0xFFFFFF, portal.getFillColor().getRGB() & 0xFFFFFF);
+
+		final LWMap map = new LWMap("PropertySlotTest");
+		map.setFillColor(Color.blue);
+		try {
+			map.setFillColor(new Color(0, 0, 255, 128));
+			fail("translucent map fill");
+		} catch (LWComponent.PropertyValueVeto e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("translucence"));
+		}
+		assertEquals(Color.blue, map.getFillColor());
+	}
+}
@@ -0,0 +1,140 @@
+package tufts.vue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SlideRenderCacheTest {
+
+	/** renders immediately on the calling thread */
+	private static final Executor NOW = new Executor() {
+		public void execute(Runnable r) {
+			r.run();
+		}
+	};
+
+	private SlideRenderCache cache;
+	private LWSlide slide;
+
+	@Before
+	public void setUp() {
+		tufts.vue.gui.GUI.init();
+		// a free-standing slide: pathway slides need the full GUI for their master slides
+		final LWMap map = new LWMap("SlideRenderCacheTest");
+		slide = new LWSlide();
+		slide.setSize(320, 240);
+		map.add(slide);
+		slide.addChild(new LWNode("on the slide"));
+		slide.setFillColor(Color.red);
+		cache = new SlideRenderCache(ImageCache.MinBudget, NOW);
+	}
+
+	private double scaleFor(int width) {
+		return width / slide.getImageBounds().width;
+	}
+
+	@Test
+	public void testRendersOnRequest() {
+		final double scale = scaleFor(200);
+		assertNull(cache.getRaster(slide, scale, null));
+		assertEquals(1, cache.getRenderCount());
+
+		final SlideRenderCache.Raster raster = cache.getRaster(slide, scale, null);
+		assertNotNull(raster);
+		assertEquals(200, raster.getImage().getWidth());
+		assertEquals(Color.red.getRGB(), raster.getImage().getRGB(100, raster.getImage().getHeight() / 2));
+
+		// close enough in scale is the same image
+		assertSame(raster, cache.getRaster(slide, scale * 1.005, null));
+		assertNull(cache.getRaster(slide, scale * 2, null));
+		assertEquals(2, cache.getRenderCount());
+		assertTrue(cache.getByteSize() > 0);
+	}
+
+	@Test
+	public void testChangeInvalidates() {
+		final double scale = scaleFor(100);
+		cache.getRaster(slide, scale, null);
+		assertNotNull(cache.getRaster(slide, scale, null));
+
+		slide.setFillColor(Color.blue);
+		assertNull(cache.getRaster(slide, scale, null));
+		final SlideRenderCache.Raster raster = cache.getRaster(slide, scale, null);
+		assertEquals(Color.blue.getRGB(), raster.getImage().getRGB(50, raster.getImage().getHeight() / 2));
+
+		// changes to the contents of the slide invalidate it as well
+		slide.getChild(0).setLabel("changed");
+		assertNull(cache.getRaster(slide, scale, null));
+	}
+
+	@Test
+	public void testPrefetchKeepsRendered() {
+		final double scale = scaleFor(120);
+		cache.prefetch(Arrays.asList(slide), scale);
+		assertEquals(1, cache.getRenderCount());
+		assertNotNull(cache.getRaster(slide, scale, null));
+
+		// a prefetched slide is re-rendered as soon as it changes
+		slide.setFillColor(Color.green);
+		assertEquals(2, cache.getRenderCount());
+		assertNotNull(cache.getRaster(slide, scale, null));
+
+		cache.prefetch(Collections.<LWComponent> emptyList(), 0);
+		slide.setFillColor(Color.yellow);
+		assertEquals(2, cache.getRenderCount());
+	}
+
+	@Test
+	public void testDrawBlitsAtDeviceScale() {
+		final Rectangle2D.Float bounds = slide.getImageBounds();
+		final double scale = scaleFor(80);
+		final BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D g = image.createGraphics();
+		g.translate(10, 10);
+		g.scale(scale, scale);
+		g.translate(-bounds.x, -bounds.y);
+
+		assertFalse(cache.draw(g, slide, null)); // not ready yet
+		assertTrue(cache.draw(g, slide, null));
+		g.dispose();
+
+		assertEquals(0, image.getRGB(5, 5)); // untouched
+		assertEquals(Color.red.getRGB(), image.getRGB(50, 10 + (int) (bounds.height * scale / 2)));
+	}
+
+	@Test
+	public void testDrawsOnTheAWTThread() {
+		final List<Boolean> onAWT = new ArrayList<Boolean>();
+		final LWSlide watched = new LWSlide() {
+			@Override
+			protected void drawImpl(DrawContext dc) {
+				onAWT.add(EventQueue.isDispatchThread());
+				super.drawImpl(dc);
+			}
+		};
+		watched.setSize(320, 240);
+		new LWMap("SlideRenderCacheTest").add(watched);
+
+		// requested from this thread, as the renderer thread would
+		cache.getRaster(watched, scaleFor(100), null);
+		assertEquals(Arrays.asList(Boolean.TRUE), onAWT);
+		assertNotNull(cache.getRaster(watched, scaleFor(100), null));
+	}
+}
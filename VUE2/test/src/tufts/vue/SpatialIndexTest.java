@@ -0,0 +1,110 @@
+package tufts.vue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SpatialIndexTest {
+
+	private static final int GRID = 20;
+	private static final float SPACING = 100;
+
+	private static LWMap createGridMap() {
+		tufts.vue.gui.GUI.init();
+		LWMap map = new LWMap("SpatialIndexTest");
+		for (int x = 0; x < GRID; x++) {
+			for (int y = 0; y < GRID; y++) {
+				LWNode n = new LWNode(x + "," + y);
+				n.setLocation(x * SPACING, y * SPACING);
+				map.add(n);
+			}
+		}
+		return map;
+	}
+
+	/** @return what drawChildren would have considered before the index: every child in the region, in z-order */
+	private static List<LWComponent> bruteForce(LWContainer layer, Rectangle2D region) {
+		List<LWComponent> found = new ArrayList<LWComponent>();
+		for (LWComponent c : layer.getChildren())
+			if (c.intersects(region))
+				found.add(c);
+		return found;
+	}
+
+	/** the index may return extra candidates, but never miss any, and must preserve z-order */
+	private static void assertCovers(LWContainer layer, Rectangle2D region) {
+		List<LWComponent> expected = bruteForce(layer, region);
+		List<LWComponent> indexed = layer.getChildrenInRegion(region);
+		assertTrue("index missed children in " + region, indexed.containsAll(expected));
+		int last = -1;
+		for (LWComponent c : indexed) {
+			int index = layer.getChildren().indexOf(c);
+			assertTrue("index result out of z-order", index > last);
+			last = index;
+		}
+	}
+
+	@Test
+	public void testRegionQuery() {
+		LWMap map = createGridMap();
+		LWContainer layer = map.getActiveLayer();
+		assertNotNull("layer should be indexed", layer.getSpatialIndex());
+
+		Rectangle2D region = new Rectangle2D.Float(250, 250, 300, 300);
+		assertCovers(layer, region);
+		assertTrue(layer.getChildrenInRegion(region).size() < layer.numChildren() / 4);
+
+		assertCovers(layer, new Rectangle2D.Float(-1000, -1000, 5000, 5000));
+		assertEquals(0, layer.getChildrenInRegion(new Rectangle2D.Float(-5000, -5000, 10, 10)).size());
+	}
+
+	@Test
+	public void testIndexFollowsMovesAndLinks() {
+		LWMap map = createGridMap();
+		LWContainer layer = map.getActiveLayer();
+		LWComponent n1 = layer.getChild(0);
+		LWComponent n2 = layer.getChild(1);
+		LWLink link = new LWLink(n1, n2);
+		map.addLink(link);
+
+		Rectangle2D farAway = new Rectangle2D.Float(5000, 5000, 200, 200);
+		assertEquals(0, layer.getChildrenInRegion(farAway).size());
+
+		// moving the endpoint must bring both the node and the connected link into the far region
+		n1.setLocation(5050, 5050);
+		List<LWComponent> found = layer.getChildrenInRegion(farAway);
+		assertTrue(found.contains(n1));
+		assertTrue(found.contains(link));
+		assertCovers(layer, farAway);
+
+		// moves way outside the original extent force a rebuild
+		n2.setLocation(100000, 100000);
+		assertTrue(layer.getChildrenInRegion(new Rectangle2D.Float(99990, 99990, 50, 50)).contains(n2));
+	}
+
+	@Test
+	public void testHierarchyChanges() {
+		LWMap map = createGridMap();
+		LWContainer layer = map.getActiveLayer();
+		Rectangle2D region = new Rectangle2D.Float(0, 0, 150, 150);
+		assertCovers(layer, region);
+
+		LWNode added = new LWNode("added");
+		added.setLocation(20, 20);
+		map.add(added);
+		assertTrue(layer.getChildrenInRegion(region).contains(added));
+
+		LWComponent first = layer.getChild(0);
+		layer.bringToFront(first);
+		assertCovers(layer, region);
+
+		layer.removeChild(added);
+		assertTrue(!layer.getChildrenInRegion(region).contains(added));
+	}
+}
@@ -0,0 +1,134 @@
+package tufts.vue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+public class TextLabelTest {
+
+	private static final String[] TEXTS = { "Hello", "Hello world, this is a node", "two\nlines here", "a\n", "",
+			"MMMMMMMMMMMMMMMMMMMMMMMM wide" };
+
+	private static LWNode node(String label, Font font) {
+		tufts.vue.gui.GUI.init();
+		final LWNode node = new LWNode(label);
+		node.setFont(font);
+		return node;
+	}
+
+	@Test
+	public void testMeasuresLikeTextBox() {
+		for (int style : new int[] { Font.PLAIN, Font.BOLD, Font.ITALIC }) {
+			for (int size : new int[] { 10, 12, 14, 18, 24, 36 }) {
+				final Font font = new Font("SansSerif", style, size);
+				for (String text : TEXTS) {
+					final LWNode node = node(text, font);
+					final TextBox box = new TextBox(node, text);
+					assertEquals(font + " [" + text + "]", box.getPreferredSize(), node.getTextLabel().getPreferredSize());
+					assertEquals(font + " [" + text + "]", box.getSize(), node.getTextLabel().getSize());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testWrapsWhenNarrowed() {
+		final LWNode node = node("one two three four five six seven", new Font("SansSerif", Font.PLAIN, 14));
+		final TextLabel label = node.getTextLabel();
+		final java.awt.Dimension natural = label.getPreferredSize();
+		label.setSizeFlexHeight(new Size(natural.width / 3, 10));
+		assertEquals(natural.width / 3, label.getWidth());
+		assertTrue("didn't wrap: " + label.getSize(), label.getHeight() >= natural.height * 3);
+		assertEquals(natural.width, label.getPreferredSize().width); // preferred width is still the unwrapped width
+
+		// a style change returns the label to it's unwrapped size
+		node.setFont(new Font("SansSerif", Font.BOLD, 14));
+		assertEquals(1, label.getHeight() / natural.height);
+	}
+
+	@Test
+	public void testNoTextBoxUntilEdit() {
+		tufts.vue.gui.GUI.init();
+		final LWMap map = new LWMap("TextLabelTest");
+		final LWNode a = new LWNode("first node");
+		final LWNode b = new LWNode("second\nnode");
+		final LWLink link = new LWLink(a, b);
+		link.setLabel("link label");
+		map.add(a);
+		map.add(b);
+		map.add(link);
+		a.setLabel("first node, renamed");
+		b.setFont(new Font("SansSerif", Font.BOLD, 20));
+
+		for (LWComponent c : map.getAllDescendents()) {
+			assertNull(c + " has a TextBox", c.labelBox);
+			if (c.hasLabel())
+				assertNotNull(c.textLabel);
+		}
+
+		// the node is laid out around its label
+		final TextLabel label = a.getTextLabel();
+		assertTrue(a.getWidth() > label.getWidth());
+		assertEquals(label.getPreferredSize(), label.getSize());
+		assertFalse(Float.isNaN(label.getBoxX()));
+
+		// starting an edit creates a TextBox at the label's location
+		final TextBox box = a.getLabelBox();
+		assertSame(box, a.labelBox);
+		assertEquals("first node, renamed", box.getText());
+		assertEquals(label.getBoxX(), box.getBoxX(), 0f);
+		assertEquals(label.getBoxY(), box.getBoxY(), 0f);
+		assertFalse(label.isEditing()); // it hasn't been added to a MapViewer
+
+		// and once the edit is complete, the TextBox is dropped
+		a.releaseLabelBox(box);
+		assertNull(a.labelBox);
+
+		// link labels are measured & located too
+		final TextLabel linkLabel = link.getTextLabel();
+		assertTrue(linkLabel.getWidth() > 0);
+		assertTrue(link.getBounds().contains(linkLabel.getBoxX() + 1, linkLabel.getBoxY() + 1));
+	}
+
+	@Test
+	public void testRowsAreShared() {
+		final Font font = new Font("SansSerif", Font.PLAIN, 13);
+		final TextLabel.Rows rows = TextLabel.Rows.get("shared label", font, false, 0);
+		assertSame(rows, TextLabel.Rows.get("shared label", font, false, 0));
+		assertFalse(rows == TextLabel.Rows.get("shared label", font, true, 0));
+		assertFalse(rows == TextLabel.Rows.get("shared label", font, false, 30));
+		assertEquals(1, rows.layouts.length);
+		assertEquals(2, TextLabel.Rows.get("shared label", font, false, 50).layouts.length);
+		assertEquals(3, TextLabel.Rows.get("a\n\nb", font, false, 0).layouts.length);
+		assertTrue(TextLabel.Rows.getCacheReport(), TextLabel.Rows.getCacheReport().indexOf("hits") > 0);
+	}
+
+	@Test
+	public void testDraws() {
+		final LWNode node = node("WWWW", new Font("SansSerif", Font.BOLD, 24));
+		node.setTextColor(Color.red);
+		final TextLabel label = node.getTextLabel();
+		final BufferedImage image = new BufferedImage(label.getWidth(), label.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D g = image.createGraphics();
+		label.draw(new DrawContext(g), Color.white);
+		g.dispose();
+
+		assertEquals(Color.white.getRGB(), image.getRGB(0, 0)); // the fill
+		int red = 0;
+		for (int x = 0; x < image.getWidth(); x++)
+			for (int y = 0; y < image.getHeight(); y++)
+				if (image.getRGB(x, y) == Color.red.getRGB())
+					red++;
+		assertTrue("no text painted", red > 20);
+	}
+}
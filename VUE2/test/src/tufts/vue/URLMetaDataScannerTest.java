@@ -0,0 +1,240 @@
+package tufts.vue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class URLMetaDataScannerTest {
+
+	private HttpServer server;
+	private File dir;
+
+	/** requests block here until it's opened */
+	private volatile CountDownLatch gate;
+
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger maxActive = new AtomicInteger();
+	private final List<String> served = Collections.synchronizedList(new ArrayList<String>());
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("URLMetaDataScannerTest").toFile();
+		gate = new CountDownLatch(0);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) {
+				final String path = exchange.getRequestURI().getPath();
+				hits.incrementAndGet();
+				final int now = active.incrementAndGet();
+				synchronized (maxActive) {
+					maxActive.set(Math.max(maxActive.get(), now));
+				}
+				try {
+					gate.await(10, TimeUnit.SECONDS);
+					served.add(path);
+					final boolean html = !path.endsWith(".txt");
+					final byte[] body = (html ? "<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">"
+							+ "<title>Title of " + path + "</title></head></html>"
+							: "plain text").getBytes("UTF-8");
+					exchange.getResponseHeaders().set("Content-Type", html ? "text/html; charset=UTF-8" : "text/plain");
+					exchange.sendResponseHeaders(200, body.length);
+					final OutputStream out = exchange.getResponseBody();
+					out.write(body);
+					out.close();
+				} catch (Exception e) {
+					e.printStackTrace();
+				} finally {
+					active.decrementAndGet();
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	private URL url(String path) throws Exception {
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+	}
+
+	/** collects scan results, and lets us wait for a given number of them */
+	private static class Results implements URLMetaDataScanner.Callback {
+		final List<Properties> results = Collections.synchronizedList(new ArrayList<Properties>());
+		final CountDownLatch done;
+
+		Results(int expected) {
+			done = new CountDownLatch(expected);
+		}
+
+		public void scanned(URL url, Properties metaData) {
+			results.add(metaData);
+			done.countDown();
+		}
+
+		void await() throws InterruptedException {
+			assertTrue("timed out waiting for scans", done.await(20, TimeUnit.SECONDS));
+		}
+	}
+
+	private static void waitFor(AtomicInteger counter, int value) throws InterruptedException {
+		for (int i = 0; i < 2000 && counter.get() < value; i++)
+			Thread.sleep(5);
+		assertEquals(value, counter.get());
+	}
+
+	@Test
+	public void testScrapesTitleAndContentType() throws Exception {
+		final URLMetaDataScanner scanner = new URLMetaDataScanner(2, 2, 60000, null);
+		final Results results = new Results(2);
+		scanner.scan(url("/page"), false, results);
+		scanner.scan(url("/notes.txt"), false, results);
+		results.await();
+
+		Properties html = results.results.get(0), text = results.results.get(1);
+		if (html.getProperty("title") == null) {
+			html = results.results.get(1);
+			text = results.results.get(0);
+		}
+		assertEquals("Title of /page", html.getProperty("title"));
+		assertEquals("text/html; charset=UTF-8", html.getProperty("url.contentType"));
+		assertEquals("UTF-8", html.getProperty("charset"));
+		assertEquals("text/plain", text.getProperty("url.contentType"));
+		assertEquals("10", text.getProperty("url.contentLength"));
+		assertNull(text.getProperty("title"));
+	}
+
+	@Test
+	public void testFailureReportsNull() throws Exception {
+		final URLMetaDataScanner scanner = new URLMetaDataScanner(1, 1, 60000, null);
+		final Results results = new Results(1);
+		server.stop(0);
+		scanner.scan(url("/gone"), false, results);
+		results.await();
+		assertNull(results.results.get(0));
+	}
+
+	@Test
+	public void testDeduplicatesConcurrentRequests() throws Exception {
+		final URLMetaDataScanner scanner = new URLMetaDataScanner(4, 2, 60000, null);
+		gate = new CountDownLatch(1);
+		final Results results = new Results(5);
+		for (int i = 0; i < 5; i++)
+			scanner.scan(url("/same"), false, results);
+		waitFor(hits, 1);
+		gate.countDown();
+		results.await();
+
+		assertEquals(1, hits.get());
+		assertEquals(1, scanner.getScrapeCount());
+		for (Properties p : results.results)
+			assertEquals("Title of /same", p.getProperty("title"));
+	}
+
+	@Test
+	public void testPerHostLimit() throws Exception {
+		final URLMetaDataScanner scanner = new URLMetaDataScanner(8, 2, 60000, null);
+		gate = new CountDownLatch(1);
+		final Results results = new Results(12);
+		for (int i = 0; i < 12; i++)
+			scanner.scan(url("/page/" + i), false, results);
+		waitFor(hits, 2);
+		Thread.sleep(100); // give any excess requests a chance to show up
+		assertEquals(2, hits.get());
+		gate.countDown();
+		results.await();
+
+		assertEquals(12, hits.get());
+		assertEquals(2, maxActive.get());
+	}
+
+	@Test
+	public void testUrgentRequestsFirst() throws Exception {
+		final URLMetaDataScanner scanner = new URLMetaDataScanner(2, 1, 60000, null);
+		gate = new CountDownLatch(1);
+		final Results results = new Results(4);
+		scanner.scan(url("/first"), false, results);
+		waitFor(hits, 1);
+		scanner.scan(url("/b"), false, results);
+		scanner.scan(url("/c"), false, results);
+		scanner.scan(url("/urgent"), true, results);
+		gate.countDown();
+		results.await();
+
+		assertEquals(java.util.Arrays.asList("/first", "/urgent", "/b", "/c"), served);
+	}
+
+	@Test
+	public void testPersistentCache() throws Exception {
+		final File cacheFile = new File(dir, "url-metadata.cache");
+		final URLMetaDataScanner scanner = new URLMetaDataScanner(2, 2, 60000, cacheFile);
+		final Results first = new Results(1);
+		scanner.scan(url("/cached"), false, first);
+		first.await();
+		scanner.flush().get();
+		assertTrue(cacheFile.isFile());
+
+		// a new scanner, as on the next run of VUE, answers from the cache file
+		final URLMetaDataScanner reloaded = new URLMetaDataScanner(2, 2, 60000, cacheFile);
+		final Results second = new Results(1);
+		reloaded.scan(url("/cached"), false, second);
+		assertEquals(0, second.done.getCount()); // answered immediately
+		assertEquals("Title of /cached", second.results.get(0).getProperty("title"));
+		assertEquals(1, hits.get());
+		assertEquals(0, reloaded.getScrapeCount());
+	}
+
+	@Test
+	public void testExpiredEntriesRescanned() throws Exception {
+		final File cacheFile = new File(dir, "url-metadata.cache");
+		final URLMetaDataScanner scanner = new URLMetaDataScanner(2, 2, 50, cacheFile);
+		final Results first = new Results(1);
+		scanner.scan(url("/stale"), false, first);
+		first.await();
+		scanner.flush().get();
+		Thread.sleep(100);
+
+		final Results second = new Results(1);
+		scanner.scan(url("/stale"), false, second);
+		second.await();
+		assertEquals(2, hits.get());
+
+		// expired entries aren't loaded from the cache file either
+		Thread.sleep(100);
+		final URLMetaDataScanner reloaded = new URLMetaDataScanner(2, 2, 50, cacheFile);
+		final Results third = new Results(1);
+		reloaded.scan(url("/stale"), false, third);
+		third.await();
+		assertEquals(3, hits.get());
+	}
+}
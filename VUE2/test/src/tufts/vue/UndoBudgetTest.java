@@ -0,0 +1,107 @@
+package tufts.vue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class UndoBudgetTest {
+
+	private static LWMap createMap(int nodes) {
+		tufts.vue.gui.GUI.init();
+		LWMap map = new LWMap("UndoBudgetTest");
+		for (int i = 0; i < nodes; i++)
+			map.add(new LWNode("node " + i));
+		return map;
+	}
+
+	private static List<LWComponent> nodes(LWMap map) {
+		return new ArrayList<LWComponent>(map.getAllDescendents());
+	}
+
+	@Test
+	public void testSpilledActionsAreReloaded() {
+		final LWMap map = createMap(10);
+		final List<LWComponent> nodes = nodes(map);
+		final UndoManager undo = new UndoManager(map);
+		undo.setMemoryBudget(8 * 1024);
+
+		for (int i = 0; i < 60; i++) {
+			final LWComponent c = nodes.get(i % nodes.size());
+			c.setLabel("label " + i);
+			c.setFillColor(new Color(i, i, i));
+			c.setLocation(i, i * 2);
+			undo.mark("Edit");
+		}
+		assertTrue(undo.getMemoryReport(), undo.getMemoryUsage() <= 8 * 1024);
+		assertTrue(undo.getMemoryReport(), undo.getSpilledCount() > 0);
+		assertTrue(undo.getMemoryReport(), undo.getSpilledBytes() > 0);
+
+		for (int i = 0; i < 60; i++)
+			undo.undo();
+		for (int i = 0; i < nodes.size(); i++) {
+			final LWComponent c = nodes.get(i);
+			assertEquals("node " + i, c.getLabel());
+			assertEquals(0f, c.getX(), 0f);
+			assertEquals(0f, c.getY(), 0f);
+		}
+		assertEquals(new LWNode("default").getFillColor(), nodes.get(0).getFillColor());
+
+		// and everything can be redone again
+		for (int i = 0; i < 60; i++)
+			undo.redo();
+		assertEquals("label 59", nodes.get(9).getLabel());
+		assertEquals(new Color(50, 50, 50), nodes.get(0).getFillColor());
+	}
+
+	@Test
+	public void testRepeatedChangesCoalesce() {
+		final LWMap map = createMap(2);
+		final LWComponent node = nodes(map).get(0);
+		final UndoManager undo = new UndoManager(map);
+		undo.setMemoryBudget(1);
+
+		for (int i = 1; i <= 100; i++) {
+			node.setLocation(i, i);
+			undo.mark("Move");
+		}
+		assertTrue(undo.getMemoryReport(), undo.getMemoryReport().contains(" 79 coalesced"));
+
+		// the 20 most recent moves are still undone one at a time
+		for (int i = 0; i < 20; i++)
+			undo.undo();
+		assertEquals(80f, node.getX(), 0f);
+		undo.undo(); // all the rest at once
+		assertEquals(0f, node.getX(), 0f);
+	}
+
+	@Test
+	public void testHistoryDroppedAsLastResort() {
+		final LWMap map = createMap(40);
+		final List<LWComponent> nodes = nodes(map);
+		final UndoManager undo = new UndoManager(map);
+		undo.setMemoryBudget(64 * 1024);
+
+		for (LWComponent c : nodes) {
+			c.getParent().deleteChildrenPermanently(java.util.Collections.singletonList(c));
+			undo.mark("Delete");
+		}
+		assertEquals(0, map.getAllDescendents().size());
+		map.markAsModified(); // changes off the AWT thread don't count themselves
+		assertTrue(undo.getMemoryReport(), undo.getMemoryUsage() <= 64 * 1024);
+		assertTrue(undo.getMemoryReport(), !undo.getMemoryReport().contains(" 0 dropped"));
+
+		int undone = 0;
+		while (undo.hasUndo()) {
+			undo.undo();
+			undone++;
+		}
+		assertTrue("undone " + undone, undone >= 20 && undone < 40);
+		assertEquals(undone, map.getAllDescendents().size());
+		assertTrue("history was lost: the map is still modified", map.isModified());
+	}
+}
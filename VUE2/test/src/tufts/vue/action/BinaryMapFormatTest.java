@@ -0,0 +1,127 @@
+package tufts.vue.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import tufts.vue.LWComponent;
+import tufts.vue.LWLink;
+import tufts.vue.LWMap;
+import tufts.vue.LWNode;
+import tufts.vue.Resource;
+
+public class BinaryMapFormatTest {
+
+	private static LWMap createMap() {
+		tufts.vue.gui.GUI.init();
+		LWMap map = new LWMap("BinaryMapFormatTest");
+		LWNode prev = null;
+		for (int i = 0; i < 50; i++) {
+			LWNode n = new LWNode("node " + i + " \u00e9\u4e2d");
+			n.setLocation(i * 40, (i % 7) * 30);
+			n.setNotes("notes for " + i + "\n<&>\"");
+			n.getMetadataList().add("http://vue.tufts.edu/vue.rdfs#none", "value " + i);
+			map.add(n);
+			if (prev != null) {
+				LWLink link = new LWLink(prev, n);
+				link.setLabel("link " + i);
+				map.addLink(link);
+			}
+			prev = n;
+		}
+		LWNode withResource = (LWNode) map.getActiveLayer().getChild(0);
+		withResource.setResource(Resource.instance("http://vue.tufts.edu/index.html"));
+
+		LWNode parent = new LWNode("parent");
+		map.add(parent);
+		parent.addChild(new LWNode("child 1"));
+		parent.addChild(new LWNode("child 2"));
+		return map;
+	}
+
+	private static LWMap roundTrip(LWMap map) throws Exception {
+		File file = File.createTempFile("binarymap", ".vue");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		ActionUtil.getBinaryFormat().write(map, "test", out);
+		out.close();
+		assertTrue("should be recognized as binary", BinaryMapFormat.isBinaryMap(file));
+		return ActionUtil.unmarshallMap(file);
+	}
+
+	private static Map<String, LWComponent> byLabel(LWMap map) {
+		Map<String, LWComponent> found = new HashMap<String, LWComponent>();
+		for (LWComponent c : map.getAllDescendents())
+			if (c.getLabel() != null)
+				found.put(c.getLabel(), c);
+		return found;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		LWMap map = createMap();
+		LWMap restored = roundTrip(map);
+		assertNotNull(restored);
+
+		Map<String, LWComponent> before = byLabel(map);
+		Map<String, LWComponent> after = byLabel(restored);
+		assertEquals(before.keySet(), after.keySet());
+
+		for (Map.Entry<String, LWComponent> e : before.entrySet()) {
+			LWComponent c1 = e.getValue();
+			LWComponent c2 = after.get(e.getKey());
+			assertSame(c1.getClass(), c2.getClass());
+			assertEquals(c1.getID(), c2.getID());
+			if (c1 instanceof LWNode) {
+				// link bounds are recomputed on restore, just as they are for castor
+				assertEquals(c1.getX(), c2.getX(), 0.001);
+				assertEquals(c1.getY(), c2.getY(), 0.001);
+			}
+			assertEquals(c1.getNotes(), c2.getNotes());
+			assertEquals(c1.getFillColor(), c2.getFillColor());
+			assertEquals(c1.getFont(), c2.getFont());
+			if (c1 instanceof LWLink) {
+				// IDREF'd endpoints must be resolved to the restored nodes
+				LWLink l2 = (LWLink) c2;
+				assertEquals(((LWLink) c1).getHead().getLabel(), l2.getHead().getLabel());
+				assertSame(after.get(l2.getHead().getLabel()), l2.getHead());
+				assertSame(after.get(l2.getTail().getLabel()), l2.getTail());
+			}
+			if (c1.getParent() instanceof LWNode)
+				assertEquals(c1.getParent().getLabel(), c2.getParent().getLabel());
+		}
+
+		LWComponent n0 = after.get("node 0 \u00e9\u4e2d");
+		assertTrue(n0.hasResource());
+		assertEquals("http://vue.tufts.edu/index.html", n0.getResource().getSpec());
+		assertEquals("value 0", n0.getMetadataList().getMetadata().get(0).getValue());
+	}
+
+	@Test
+	public void testRewriteIsStable() throws Exception {
+		// a map restored from the binary format must save back to the same content
+		LWMap restored = roundTrip(createMap());
+		LWMap again = roundTrip(restored);
+		assertEquals(byLabel(restored).keySet(), byLabel(again).keySet());
+		assertEquals(restored.getAllDescendents().size(), again.getAllDescendents().size());
+	}
+
+	@Test
+	public void testNotBinary() throws Exception {
+		File file = File.createTempFile("xmlmap", ".vue");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<LW-MAP/>".getBytes("UTF-8"));
+		out.close();
+		assertFalse(BinaryMapFormat.isBinaryMap(file));
+	}
+}
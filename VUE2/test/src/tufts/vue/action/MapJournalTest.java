@@ -0,0 +1,225 @@
+package tufts.vue.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import tufts.vue.LWComponent;
+import tufts.vue.LWKey;
+import tufts.vue.LWLink;
+import tufts.vue.LWMap;
+import tufts.vue.LWNode;
+
+public class MapJournalTest {
+
+	private static File saveMap() throws Exception {
+		tufts.vue.gui.GUI.init();
+		LWMap map = new LWMap("MapJournalTest");
+		LWNode prev = null;
+		for (int i = 0; i < 20; i++) {
+			LWNode n = new LWNode("node " + i);
+			n.setLocation(i * 40, 0);
+			map.add(n);
+			if (prev != null)
+				map.addLink(new LWLink(prev, n));
+			prev = n;
+		}
+		File file = File.createTempFile("journaled", ".vue");
+		file.deleteOnExit();
+		MapJournal.getJournalFile(file).deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		ActionUtil.getBinaryFormat().write(map, "test", out);
+		out.close();
+		return file;
+	}
+
+	private static Map<String, LWComponent> byLabel(LWMap map) {
+		Map<String, LWComponent> found = new HashMap<String, LWComponent>();
+		for (LWComponent c : map.getAllDescendents())
+			if (c.getLabel() != null)
+				found.put(c.getLabel(), c);
+		return found;
+	}
+
+	private static void userActionCompleted(LWMap map) {
+		map.notify(map, LWKey.UserActionCompleted);
+		MapJournal.sync();
+	}
+
+	/** open the file, make some changes, and "crash" */
+	private static LWMap edit(File file) throws Exception {
+		LWMap map = ActionUtil.unmarshallMap(file);
+		MapJournal.attach(map);
+		MapJournal.sync();
+		assertFalse("nothing to recover yet", MapJournal.hasRecoverableChanges(file));
+
+		Map<String, LWComponent> nodes = byLabel(map);
+		nodes.get("node 3").setLabel("renamed");
+		nodes.get("node 4").setLocation(500, 500);
+		userActionCompleted(map);
+
+		LWNode parent = new LWNode("new parent");
+		parent.addChild(new LWNode("new child"));
+		map.add(parent);
+		map.addLink(new LWLink(parent, nodes.get("node 0")));
+		nodes.get("node 10").getParent().deleteChildPermanently(nodes.get("node 10"));
+		userActionCompleted(map);
+
+		// the journal is now live for this map: drop it as if we'd crashed
+		MapJournal.detach(map);
+		return map;
+	}
+
+	@Test
+	public void testRecover() throws Exception {
+		File file = saveMap();
+		LWMap edited = edit(file);
+
+		assertTrue(MapJournal.hasRecoverableChanges(file));
+		LWMap recovered = MapJournal.recover(file);
+		assertNotNull(recovered);
+
+		Map<String, LWComponent> before = byLabel(edited);
+		Map<String, LWComponent> after = byLabel(recovered);
+		assertEquals(before.keySet(), after.keySet());
+		assertNull(after.get("node 10"));
+		assertNull(after.get("node 3"));
+		assertEquals(500, after.get("node 4").getX(), 0.001);
+		assertEquals(500, after.get("node 4").getY(), 0.001);
+		assertSame(after.get("new parent"), after.get("new child").getParent());
+		assertEquals(edited.getAllDescendents().size(), recovered.getAllDescendents().size());
+		for (Map.Entry<String, LWComponent> e : before.entrySet())
+			assertEquals(e.getValue().getID(), after.get(e.getKey()).getID());
+	}
+
+	@Test
+	public void testRecoverAfterCompaction() throws Exception {
+		File file = saveMap();
+		LWMap map = ActionUtil.unmarshallMap(file);
+		MapJournal.attach(map);
+		MapJournal.sync();
+
+		Map<String, LWComponent> nodes = byLabel(map);
+		nodes.get("node 3").setLabel("renamed");
+		LWNode added = new LWNode("added");
+		map.add(added);
+		userActionCompleted(map);
+
+		// compact, then delete something from the new base and re-add it
+		MapJournal.compact(map);
+		MapJournal.sync();
+		assertEquals(1, countFiles(file, ".snapshot"));
+		map.deleteChildPermanently(added);
+		userActionCompleted(map);
+		map.add(added);
+		nodes.get("node 5").setLabel("after compaction");
+		userActionCompleted(map);
+		MapJournal.detach(map);
+
+		Map<String, LWComponent> after = byLabel(MapJournal.recover(file));
+		assertEquals(byLabel(map).keySet(), after.keySet());
+		assertNotNull(after.get("renamed"));
+		assertNotNull(after.get("after compaction"));
+		assertEquals(added.getID(), after.get("added").getID());
+		MapJournal.discard(file);
+		assertEquals(0, countFiles(file, ".snapshot"));
+	}
+
+	private static int countFiles(File mapFile, String suffix) {
+		int count = 0;
+		for (File f : mapFile.getParentFile().listFiles())
+			if (f.getName().startsWith(".~" + mapFile.getName()) && f.getName().endsWith(suffix))
+				count++;
+		return count;
+	}
+
+	@Test
+	public void testDamagedRecordIgnored() throws Exception {
+		File file = saveMap();
+		edit(file);
+
+		// a partial final record, as if we crashed mid-write
+		File journal = MapJournal.getJournalFile(file);
+		RandomAccessFile raf = new RandomAccessFile(journal, "rw");
+		raf.setLength(journal.length() - 10);
+		raf.close();
+
+		LWMap recovered = MapJournal.recover(file);
+		Map<String, LWComponent> after = byLabel(recovered);
+		// the first action made it, the second didn't
+		assertNotNull(after.get("renamed"));
+		assertNotNull(after.get("node 10"));
+		assertNull(after.get("new parent"));
+	}
+
+	@Test
+	public void testDiscard() throws Exception {
+		File file = saveMap();
+		edit(file);
+		assertTrue(MapJournal.hasRecoverableChanges(file));
+		MapJournal.discard(file);
+		assertFalse(MapJournal.hasRecoverableChanges(file));
+		assertFalse(MapJournal.getJournalFile(file).exists());
+	}
+
+	@Test
+	public void testRecoverUnsaved() throws Exception {
+		tufts.vue.gui.GUI.init();
+		File folder = java.nio.file.Files.createTempDirectory("unsaved").toFile();
+		folder.deleteOnExit();
+		MapJournal.UnsavedFolder = folder;
+
+		LWMap map = new LWMap("never saved");
+		map.add(new LWNode("first"));
+		MapJournal.attach(map);
+		MapJournal.sync();
+		assertEquals("nothing to recover yet", 0, MapJournal.getRecoverableUnsaved().size());
+
+		map.add(new LWNode("second"));
+		userActionCompleted(map);
+		MapJournal.detach(map);
+
+		List<File> unsaved = MapJournal.getRecoverableUnsaved();
+		assertEquals(1, unsaved.size());
+		LWMap recovered = MapJournal.recover(unsaved.get(0));
+		assertNull(recovered.getFile());
+		assertEquals("never saved", recovered.getLabel());
+		assertNotNull(byLabel(recovered).get("first"));
+		assertNotNull(byLabel(recovered).get("second"));
+
+		// the recovered map continues the same journal, until it's closed
+		MapJournal.attach(recovered);
+		MapJournal.sync();
+		assertEquals(0, MapJournal.getRecoverableUnsaved().size());
+		MapJournal.discard(recovered);
+		assertEquals(0, folder.listFiles().length);
+	}
+
+	@Test
+	public void testUnsavedWithoutChangesCleanedUp() throws Exception {
+		tufts.vue.gui.GUI.init();
+		File folder = java.nio.file.Files.createTempDirectory("unsaved").toFile();
+		folder.deleteOnExit();
+		MapJournal.UnsavedFolder = folder;
+
+		LWMap map = new LWMap("never changed");
+		MapJournal.attach(map);
+		MapJournal.sync();
+		MapJournal.detach(map);
+		assertEquals(2, folder.listFiles().length);
+		assertEquals(0, MapJournal.getRecoverableUnsaved().size());
+		assertEquals(0, folder.listFiles().length);
+	}
+}
@@ -0,0 +1,97 @@
+package tufts.vue.action;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.management.ManagementFactory;
+
+import tufts.vue.LWLink;
+import tufts.vue.LWMap;
+import tufts.vue.LWNode;
+
+/**
+ * Compares save and load time, allocation, and file size of castor XML vs.
+ * BinaryMapFormat on generated maps.  Not a unit test: run by hand, e.g.:
+ *
+ *   java -cp ... tufts.vue.action.MapPersistenceBenchmark 1000 10000 50000
+ */
+public class MapPersistenceBenchmark {
+
+	private static final com.sun.management.ThreadMXBean Threads =
+		(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private interface Task {
+		Object run() throws Exception;
+	}
+
+	private static LWMap createMap(int nodes) {
+		LWMap map = new LWMap("benchmark-" + nodes);
+		LWNode prev = null;
+		for (int i = 0; i < nodes; i++) {
+			LWNode n = new LWNode("node " + i);
+			n.setLocation((i % 100) * 120, (i / 100) * 60);
+			if (i % 10 == 0)
+				n.setNotes("notes for node " + i);
+			if (i % 5 == 0)
+				n.getMetadataList().add("http://vue.tufts.edu/vue.rdfs#none", "keyword " + (i % 50));
+			map.add(n);
+			if (prev != null && i % 2 == 0)
+				map.addLink(new LWLink(prev, n));
+			prev = n;
+		}
+		return map;
+	}
+
+	private static void measure(String name, Task task) throws Exception {
+		task.run(); // warm up
+		System.gc();
+		final long tid = Thread.currentThread().getId();
+		final long bytes = Threads.getThreadAllocatedBytes(tid);
+		final long start = System.nanoTime();
+		task.run();
+		final long elapsed = System.nanoTime() - start;
+		final long allocated = Threads.getThreadAllocatedBytes(tid) - bytes;
+		System.out.println(String.format("  %-14s %8.1fms %10.1fMB allocated", name, elapsed / 1e6, allocated / 1e6));
+	}
+
+	public static void main(String[] args) throws Exception {
+		tufts.vue.gui.GUI.init();
+		if (args.length == 0)
+			args = new String[] { "1000", "10000" };
+
+		for (String arg : args) {
+			final LWMap map = createMap(Integer.parseInt(arg));
+			final File xml = File.createTempFile("benchmark", ".vue");
+			final File bin = File.createTempFile("benchmark", ".vue");
+			xml.deleteOnExit();
+			bin.deleteOnExit();
+
+			System.out.println(map);
+			measure("castor save", new Task() {
+				public Object run() throws Exception {
+					ActionUtil.marshallMap(xml, map);
+					return null;
+				}
+			});
+			measure("binary save", new Task() {
+				public Object run() throws Exception {
+					FileOutputStream out = new FileOutputStream(bin);
+					ActionUtil.getBinaryFormat().write(map, "benchmark", out);
+					out.close();
+					return null;
+				}
+			});
+			measure("castor load", new Task() {
+				public Object run() throws Exception {
+					return ActionUtil.unmarshallMap(xml);
+				}
+			});
+			measure("binary load", new Task() {
+				public Object run() throws Exception {
+					return ActionUtil.unmarshallMap(bin);
+				}
+			});
+			System.out.println(String.format("  file size: castor %dKB, binary %dKB", xml.length() / 1024, bin.length() / 1024));
+		}
+		System.exit(0);
+	}
+}
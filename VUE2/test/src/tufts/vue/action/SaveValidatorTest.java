@@ -0,0 +1,75 @@
+package tufts.vue.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import tufts.vue.LWMap;
+import tufts.vue.LWNode;
+import tufts.vue.Resource;
+
+public class SaveValidatorTest {
+
+	private static LWMap createMap() {
+		tufts.vue.gui.GUI.init();
+		LWMap map = new LWMap("SaveValidatorTest");
+		for (int i = 0; i < 20; i++) {
+			LWNode n = new LWNode("node " + i + " \u00e9\u4e2d \ud83d\ude00");
+			n.setNotes("line one\n\tline two\r\n");
+			map.add(n);
+		}
+		return map;
+	}
+
+	@Test
+	public void testCleanMap() {
+		assertTrue(SaveValidator.validate(createMap()).isEmpty());
+		assertTrue(ActionUtil.isCastorCompatible(createMap()));
+	}
+
+	@Test
+	public void testIllegalCharacters() {
+		assertEquals(-1, SaveValidator.findIllegalChar("plain \u00e9 \ud83d\ude00"));
+		assertEquals(1, SaveValidator.findIllegalChar("a\u0001b"));
+		assertEquals(1, SaveValidator.findIllegalChar("a\ud83d"));
+		assertEquals(0, SaveValidator.findIllegalChar("\ude00a"));
+		assertEquals(2, SaveValidator.findIllegalChar("ab\uffff"));
+
+		// setLabel and setNotes strip some, but not all, control characters
+		LWMap map = createMap();
+		LWNode bad = new LWNode("pasted\u001b[0mfrom a terminal");
+		map.add(bad);
+		LWNode badNotes = new LWNode("ok");
+		badNotes.setNotes("truncated \ud83d");
+		map.add(badNotes);
+		LWNode badMetadata = new LWNode("ok");
+		badMetadata.getMetadataList().add("http://vue.tufts.edu/vue.rdfs#none", "\u000c");
+		map.add(badMetadata);
+
+		List<SaveValidator.Problem> problems = SaveValidator.validate(map);
+		assertEquals(3, problems.size());
+		assertSame(bad, problems.get(0).component);
+		assertEquals("label", problems.get(0).field);
+		assertSame(badNotes, problems.get(1).component);
+		assertEquals("notes", problems.get(1).field);
+		assertSame(badMetadata, problems.get(2).component);
+		assertEquals("metadata value", problems.get(2).field);
+	}
+
+	@Test
+	public void testResourceSpec() {
+		LWMap map = createMap();
+		LWNode n = new LWNode("with resource");
+		n.setResource(Resource.instance("http://vue.tufts.edu/\u0002"));
+		map.add(n);
+		List<SaveValidator.Problem> problems = SaveValidator.validate(map);
+		assertTrue(problems.size() > 0);
+		for (SaveValidator.Problem p : problems)
+			assertSame(n, p.component);
+		assertEquals("resource spec", problems.get(0).field);
+	}
+}
@@ -0,0 +1,134 @@
+package tufts.vue.action;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import tufts.vue.LWLink;
+import tufts.vue.LWMap;
+import tufts.vue.LWNode;
+
+public class TiledImageWriterTest {
+
+	private static final int TILE = 64;
+
+	private LWMap map;
+
+	@Before
+	public void setUp() {
+		tufts.vue.gui.GUI.init();
+		map = new LWMap("TiledImageWriterTest");
+		map.setFillColor(Color.white);
+		LWNode last = null;
+		for (int i = 0; i < 12; i++) {
+			final LWNode n = new LWNode("node " + i);
+			n.setLocation((i % 4) * 130, (i / 4) * 90 + (i % 3) * 7);
+			n.setFillColor(new Color(40 * (i % 6), 120, 200));
+			map.add(n);
+			if (last != null)
+				map.add(new LWLink(last, n));
+			last = n;
+		}
+	}
+
+	/** the whole map rendered in one pass */
+	private BufferedImage renderSinglePass(double zoom) {
+		final Rectangle2D.Float bounds = map.getImageBounds();
+		final BufferedImage image = new BufferedImage((int) Math.ceil(bounds.getWidth() * zoom),
+				(int) Math.ceil(bounds.getHeight() * zoom), BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = image.createGraphics();
+		map.drawImageRegion(g, bounds, zoom, map.getFillColor());
+		g.dispose();
+		return image;
+	}
+
+	private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+		assertEquals("width", expected.getWidth(), actual.getWidth());
+		assertEquals("height", expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++)
+			for (int x = 0; x < expected.getWidth(); x++)
+				assertEquals("pixel " + x + "," + y, expected.getRGB(x, y) & 0xFFFFFF, actual.getRGB(x, y) & 0xFFFFFF);
+	}
+
+	private static BufferedImage readPNG(File file) throws Exception {
+		// not ImageIO.read: the ICO reader on the class path claims to read PNGs
+		final ImageReader reader = ImageIO.getImageReadersByFormatName("png").next();
+		final ImageInputStream in = ImageIO.createImageInputStream(file);
+		try {
+			reader.setInput(in);
+			return reader.read(0);
+		} finally {
+			in.close();
+			reader.dispose();
+		}
+	}
+
+	@Test
+	public void testTiledMatchesSinglePass() {
+		final TiledImageWriter writer = new TiledImageWriter(map, 1.0);
+		writer.setTileSize(TILE);
+		assertSameImage(renderSinglePass(1.0), writer.renderImage(true));
+	}
+
+	@Test
+	public void testPNGStripsMatchSinglePass() throws Exception {
+		final File file = File.createTempFile("TiledImageWriterTest", ".png");
+		try {
+			final TiledImageWriter writer = new TiledImageWriter(map, 1.0);
+			writer.setTileSize(TILE);
+			writer.writePNG(file);
+			assertSameImage(renderSinglePass(1.0), readPNG(file));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testStripImageRegions() {
+		final BufferedImage expected = renderSinglePass(1.0);
+		final TiledImageWriter writer = new TiledImageWriter(map, 1.0);
+		writer.setTileSize(TILE);
+		final ExecutorService renderer = Executors.newSingleThreadExecutor();
+		try {
+			final RenderedImage strips = writer.new StripImage(renderer);
+			// within a strip, across strips, and back up again
+			final Rectangle[] regions = { new Rectangle(3, 10, 50, 20), new Rectangle(0, TILE - 5, 100, TILE + 10),
+					new Rectangle(7, 2, 30, 3) };
+			for (Rectangle r : regions) {
+				final Raster raster = strips.getData(r);
+				assertEquals(r, raster.getBounds());
+				for (int y = r.y; y < r.y + r.height; y++)
+					for (int x = r.x; x < r.x + r.width; x++)
+						assertEquals("pixel " + x + "," + y, expected.getRGB(x, y) & 0xFFFFFF,
+								strips.getColorModel().getRGB(raster.getDataElements(x, y, null)) & 0xFFFFFF);
+			}
+		} finally {
+			renderer.shutdownNow();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteFailureIsReported() throws Exception {
+		final File missing = File.createTempFile("TiledImageWriterTest", "");
+		missing.delete();
+		// the export used to be logged and reported as a success
+		ImageConversion.createActiveMapPng(new File(missing, "map.png"), map, 1.0);
+	}
+}
@@ -0,0 +1,109 @@
+package tufts.vue.ds;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CSVParserTest {
+
+	private static File write(String text, String charset) throws Exception {
+		File file = File.createTempFile("CSVParserTest", ".csv");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(text.getBytes(charset));
+		out.close();
+		return file;
+	}
+
+	private static List<String[]> readAll(File file, String charset, int chunkSize) throws Exception {
+		CSVParser in = new CSVParser(file, charset, chunkSize);
+		List<String[]> records = new ArrayList<String[]>();
+		String[] record;
+		while ((record = in.readNext()) != null)
+			records.add(record);
+		assertEquals(file.length(), in.getPosition());
+		in.close();
+		return records;
+	}
+
+	private static String[][] parse(String text) {
+		return CSVParser.parse(text.toCharArray(), 0, text.length());
+	}
+
+	@Test
+	public void testQuoting() {
+		String[][] records = parse("a, b ,\"c, d\"\r\n\"say \"\"hi\"\"\",\"two\nlines\",\n\n  \"x\" ,y\rlast");
+		assertEquals(4, records.length);
+		assertArrayEquals(new String[] { "a", "b", "c, d" }, records[0]);
+		assertArrayEquals(new String[] { "say \"hi\"", "two\nlines", "" }, records[1]);
+		assertArrayEquals(new String[] { "x", "y" }, records[2]);
+		assertArrayEquals(new String[] { "last" }, records[3]);
+		assertArrayEquals(new String[] { "", "" }, parse(",")[0]);
+		assertArrayEquals(new String[] { "unterminated,\n" }, parse("\"unterminated,\n")[0]);
+	}
+
+	@Test
+	public void testChunks() throws Exception {
+		StringBuilder text = new StringBuilder("id,name,notes\n");
+		for (int i = 0; i < 2000; i++)
+			text.append(i).append(",\"name ").append(i).append("\",\"line one\nline \"\"two\"\", ").append(i)
+					.append("\"\r\n");
+		File file = write(text.toString(), "UTF-8");
+
+		List<String[]> whole = readAll(file, "UTF-8", Integer.MAX_VALUE / 4);
+		List<String[]> chunked = readAll(file, "UTF-8", 97);
+		assertEquals(2001, whole.size());
+		assertEquals(whole.size(), chunked.size());
+		for (int i = 0; i < whole.size(); i++)
+			assertArrayEquals(whole.get(i), chunked.get(i));
+		assertArrayEquals(new String[] { "1999", "name 1999", "line one\nline \"two\", 1999" }, chunked.get(2000));
+	}
+
+	@Test
+	public void testChunkSizes() throws Exception {
+		// quotes inside unquoted values, and after a closing quote, are just characters
+		StringBuilder text = new StringBuilder("size,name,notes\n");
+		for (int i = 0; i < 50; i++)
+			text.append(i).append("\" screen,  \"tv ").append(i).append("\" \"x,6'2\",")
+					.append(i % 3 == 0 ? "\"a\nb\"\"\"" : "plain \"\"").append(i % 2 == 0 ? "\r\n" : "\r");
+		File file = write(text.toString(), "UTF-8");
+
+		List<String[]> whole = readAll(file, "UTF-8", Integer.MAX_VALUE / 4);
+		assertEquals(51, whole.size());
+		assertArrayEquals(new String[] { "1\" screen", "tv 1\"x", "6'2\"", "plain \"\"" }, whole.get(2));
+		for (int chunkSize = 1; chunkSize <= 64; chunkSize++) {
+			List<String[]> chunked = readAll(file, "UTF-8", chunkSize);
+			assertEquals("chunk size " + chunkSize, whole.size(), chunked.size());
+			for (int i = 0; i < whole.size(); i++)
+				assertArrayEquals("chunk size " + chunkSize, whole.get(i), chunked.get(i));
+		}
+	}
+
+	@Test
+	public void testCharsets() throws Exception {
+		String text = "caf\u00E9,na\u00EFve\n\"\u00FCber\",x\n";
+		for (String charset : new String[] { "windows-1252", "UTF-8", "UTF-16" }) {
+			List<String[]> records = readAll(write(text, charset), charset, 4);
+			assertEquals(charset, 2, records.size());
+			assertArrayEquals(charset, new String[] { "caf\u00E9", "na\u00EFve" }, records.get(0));
+			assertArrayEquals(charset, new String[] { "\u00FCber", "x" }, records.get(1));
+		}
+		// a UTF-8 byte-order-mark
+		List<String[]> records = readAll(write("\uFEFFid,name\n", "UTF-8"), "UTF-8", 4);
+		assertArrayEquals(new String[] { "id", "name" }, records.get(0));
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		CSVParser in = new CSVParser(write("", "UTF-8"), "UTF-8");
+		assertNull(in.readNext());
+		in.close();
+	}
+}
@@ -0,0 +1,191 @@
+package tufts.vue.ds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+
+import tufts.vue.Resource;
+
+public class SchemaTest {
+
+	private Association association;
+
+	private static Schema schema(String name, String... fields) {
+		final Schema s = Schema.getNewAuthorityInstance(Resource.instance("test:" + name), name, name);
+		s.ensureFields(fields);
+		s.setKeyField(fields[0]);
+		return s;
+	}
+
+	@After
+	public void tearDown() {
+		if (association != null)
+			Association.remove(association);
+	}
+
+	@Test
+	public void testFindRow() {
+		final Schema s = schema("findRow", "id", "color");
+		for (int i = 0; i < 1000; i++)
+			s.addRow(new String[] { "id" + i, i % 2 == 0 ? "red" : "blue" });
+		final Field id = s.getField("id");
+		final Field color = s.getField("color");
+
+		assertEquals("id500", s.findRow(id, "id500").getValue(id));
+		assertEquals("id0", s.findRow(color, "red").getValue(id));
+		assertEquals("id1", s.findRow(color, "blue").getValue(id));
+		assertNull(s.findRow(id, "id1000"));
+
+		// the index must see rows added after it was built
+		s.addRow(new String[] { "id1000", "green" });
+		assertEquals("id1000", s.findRow(id, "id1000").getValue(id));
+		assertEquals("id1000", s.findRow(color, "green").getValue(id));
+
+		s.flushData();
+		assertNull(s.findRow(id, "id500"));
+	}
+
+	@Test
+	public void testIndexSeesChangedRows() {
+		final Schema s = schema("changedRows", "id", "color");
+		for (int i = 0; i < 100; i++)
+			s.addRow(new String[] { "id" + i, "red" });
+		final Field id = s.getField("id");
+		final Field color = s.getField("color");
+		assertEquals(100, s.getMatchingRows(color, "red").size());
+		assertEquals(0, s.getRowsWithValue("color", "blue").size());
+
+		// a row already in the schema gains a second value after the index was built
+		final DataRow row = s.findRow(id, "id42");
+		row.addValue(color, "blue");
+		assertEquals(Arrays.asList(row), s.getRowsWithValue("color", "blue"));
+		assertEquals(1, s.getMatchingRows(color, "blue").size());
+		assertEquals(100, s.getMatchingRows(color, "red").size());
+
+		// and a key it never had before
+		final DataRow other = s.findRow(id, "id7");
+		other.addValue(id, "alias7");
+		assertEquals(Arrays.asList(other), s.getRowsWithValue("id", "alias7"));
+	}
+
+	@Test
+	public void testMatchingRows() {
+		final Schema s = schema("matching", "id", "category");
+		for (int i = 0; i < 500; i++)
+			s.addRow(new String[] { "id" + i, "cat" + (i % 7) });
+		final Field category = s.getField("category");
+
+		final Set<DataRow> expected = new HashSet<DataRow>();
+		for (DataRow row : s.getRows())
+			if (row.hasEntry("category", "cat3"))
+				expected.add(row);
+
+		assertEquals(expected, new HashSet<DataRow>(s.getMatchingRows(category, "cat3")));
+		assertEquals(0, s.getMatchingRows(category, "cat7").size());
+	}
+
+	@Test
+	public void testJoinedRows() {
+		final Schema paintings = schema("paintings", "title", "medium");
+		final Schema mediums = schema("mediums", "medium", "type");
+		final String[] medium = { "oil", "tempera", "watercolor", "gouache" };
+		final String[] type = { "oil", "egg", "water", "water" };
+		for (int i = 0; i < medium.length; i++)
+			mediums.addRow(new String[] { medium[i], type[i] });
+		for (int i = 0; i < 100; i++)
+			paintings.addRow(new String[] { "painting " + i, medium[i % medium.length] });
+
+		Association.add(paintings.getField("medium"), mediums.getField("medium"));
+		association = Association.getBetweens(paintings, mediums).get(0);
+
+		final Field typeField = mediums.getField("type");
+		for (String t : new String[] { "oil", "egg", "water", "none" }) {
+			// what it would be to check every row for a join
+			final Set<DataRow> expected = new HashSet<DataRow>();
+			for (DataRow row : paintings.getRows())
+				if (Relation.getCrossSchemaRelation(typeField, row.getData(), t) != null)
+					expected.add(row);
+
+			final Collection<DataRow> found = paintings.getMatchingRows(typeField, t);
+			assertEquals(t, expected, new HashSet<DataRow>(found));
+		}
+		assertEquals(50, paintings.getMatchingRows(typeField, "water").size());
+		assertSame(mediums, typeField.getSchema());
+	}
+
+	@Test
+	public void testRowStorage() {
+		final Schema s = schema("storage", "id", "color");
+		for (int i = 0; i < 1000; i++)
+			s.addRow(new String[] { "id" + i, i % 2 == 0 ? " red " : "" });
+		final DataRow first = s.getRows().get(0);
+		final DataRow second = s.getRows().get(2);
+		assertEquals("red", first.getValue("COLOR"));
+		// values are shared between rows
+		assertSame(first.getValue("color"), second.getValue("color"));
+		assertSame(Field.EMPTY_VALUE, s.getRows().get(1).getValue("color"));
+		assertTrue(first.hasEntry("Color", "red"));
+		assertTrue(first.hasEntry("color", new StringBuilder("red")));
+		assertFalse(first.hasEntry("color", "blue"));
+		assertEquals(2, first.size());
+		assertEquals("[id0, red]", first.toString());
+
+		// a second value for the same key, as in XML data
+		final Field color = s.getField("color");
+		first.takeValue(color, "green");
+		assertEquals(Arrays.asList("red", "green"), new java.util.ArrayList<String>(first.getValues("color")));
+		assertEquals("red", first.getValue(color));
+		assertTrue(first.hasEntry("color", "green"));
+		assertEquals(3, first.size());
+		assertSame(first.getData(), first.getData());
+		// the other rows are unaffected
+		assertEquals(Arrays.asList("red"), new java.util.ArrayList<String>(second.getValues("color")));
+	}
+
+	@Test
+	public void testSparseColumns() {
+		final RowStore store = new RowStore();
+		for (int i = 0; i < 1000; i++)
+			store.set(store.newRow(), "id", "id" + i);
+		// a key first seen late, then in an earlier row
+		assertNotNull(store.set(900, "note", "late"));
+		assertNotNull(store.set(10, "note", "early"));
+		assertNull(store.set(900, "note", "again"));
+		assertEquals("late", store.get(900, "note"));
+		assertEquals("early", store.get(10, "NOTE"));
+		assertNull(store.get(500, "note"));
+		assertNull(store.get(999, "note"));
+		assertEquals(1, store.size(500));
+		assertEquals(2, store.size(10));
+		assertEquals("id999", store.get(999, "id"));
+		assertTrue(store.has(10, "note", new StringBuilder("early")));
+		assertFalse(store.has(10, "note", new StringBuilder("late")));
+	}
+
+	@Test
+	public void testRowDataIdentity() {
+		final Schema s = schema("identity", "id", "color");
+		s.addRow(new String[] { "id0", "red" });
+		final DataRow row = s.getRows().get(0);
+		// as held by a node created from the row
+		final tufts.vue.MetaMap held = row.getData();
+		assertSame(held, row.getData());
+		assertEquals("red", held.getString("color"));
+
+		// a change to the row's values is seen in a new MetaMap
+		row.takeValue(s.getField("color"), "blue");
+		assertEquals(Arrays.asList("red", "blue"), new java.util.ArrayList<String>(row.getData().getValues("color")));
+		assertSame(row.getData(), row.getData());
+	}
+}
@@ -0,0 +1,201 @@
+package tufts.vue.ds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import tufts.vue.ds.XMLIngest.XmlSchema;
+
+public class XMLIngestTest {
+
+	private static final String RSS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<rss version=\"2.0\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">\n"
+			+ "  <channel>\n"
+			+ "    <title>Test Feed</title>\n"
+			+ "    <!-- a comment -->\n"
+			+ "    <item>\n"
+			+ "      <title>First &amp; foremost</title>\n"
+			+ "      <link>http://example.com/1</link>\n"
+			+ "      <description><![CDATA[<b>bold</b> text]]></description>\n"
+			+ "      <dc:creator>alice</dc:creator>\n"
+			+ "      <category domain=\"tags\">one</category>\n"
+			+ "      <category domain=\"tags\">two</category>\n"
+			+ "      <guid isPermaLink=\"false\">  id-1  </guid>\n"
+			+ "    </item>\n"
+			+ "    <item>\n"
+			+ "      <title>Second</title>\n"
+			+ "      <description>before <i>middle</i> after</description>\n"
+			+ "      <enclosure url=\"http://example.com/a.mp3\" length=\"12\" type=\"audio/mpeg\"/>\n"
+			+ "      <comments><comment author=\"bob\">nested</comment><comment author=\"carol\">more</comment></comments>\n"
+			+ "    </item>\n"
+			+ "  </channel>\n"
+			+ "</rss>\n";
+
+	// no whitespace between elements: without the plist DTD, the DOM scan only folds compact plists
+	private static final String PLIST = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<plist version=\"1.0\"><dict>"
+			+ "<key>Major Version</key><integer>1</integer>"
+			+ "<key>Tracks</key><dict>"
+			+ "<key>100</key><dict><key>Track ID</key><integer>100</integer><key>Name</key><string>Song A</string>"
+			+ "<key>Compilation</key><true/><key>Disabled</key><false/></dict>"
+			+ "<key>101</key><dict><key>Track ID</key><integer>101</integer><key>Name</key><string>Song &amp; B</string>"
+			+ "<key>Artwork</key><array><dict><key>Format</key><string>jpeg</string></dict></array>"
+			+ "<key>Dangling</key></dict>"
+			+ "</dict>"
+			+ "</dict></plist>";
+
+	private static InputSource input(String xml) {
+		final InputSource is = new InputSource("file:/tmp/XMLIngestTest.xml");
+		is.setCharacterStream(new StringReader(xml));
+		return is;
+	}
+
+	private static XmlSchema ingest(String xml, String itemKey, boolean streaming) {
+		return (XmlSchema) XMLIngest.ingestXML(null, input(xml), itemKey, streaming);
+	}
+
+	/**
+	 * @return every field with its sorted values, then every row's values. Fields
+	 * are sorted: DOM implementations differ on attribute order, so the order in
+	 * which attribute fields are created does too.
+	 */
+	private static List<String> describe(Schema schema) {
+		final List<String> d = new ArrayList<String>();
+		for (Field f : schema.getFields()) {
+			final List<String> values = new ArrayList<String>(f.getValues());
+			Collections.sort(values);
+			d.add(f.getName() + "=" + values);
+		}
+		Collections.sort(d);
+		for (DataRow row : schema.getRows()) {
+			final List<String> values = new ArrayList<String>();
+			for (Field f : schema.getFields())
+				if (!row.getValues(f).isEmpty())
+					values.add(f.getName() + "=" + row.getValues(f));
+			Collections.sort(values);
+			d.add("row: " + values);
+		}
+		return d;
+	}
+
+	@Test
+	public void testRssMatchesDOM() {
+		final List<String> dom = describe(ingest(RSS, "rss.channel.item", false));
+		final List<String> stream = describe(ingest(RSS, "rss.channel.item", true));
+		assertEquals(dom, stream);
+
+		final XmlSchema schema = ingest(RSS, "rss.channel.item", true);
+		assertEquals(2, schema.getRows().size());
+		final DataRow first = schema.getRows().get(0);
+		assertEquals("First & foremost", first.getValue("title"));
+		assertEquals("<b>bold</b> text", first.getValue("description"));
+		assertEquals("alice", first.getValue("dc:creator"));
+		assertEquals("id-1", first.getValue("guid"));
+		assertEquals("[one, two]", first.getValues("category").toString());
+		assertEquals("[before, after]", schema.getRows().get(1).getValues("description").toString());
+		assertEquals("[bob, carol]", schema.getRows().get(1).getValues("comments.comment@author").toString());
+		assertTrue(stream.contains("rss@xmlns:dc=[http://purl.org/dc/elements/1.1/]"));
+		assertTrue(stream.contains("rss.channel.title=[Test Feed]"));
+	}
+
+	@Test
+	public void testPlistKeyFoldMatchesDOM() {
+		final String itemKey = "plist.dict.dict.dict";
+		final List<String> dom = describe(ingest(PLIST, itemKey, false));
+		final List<String> stream = describe(ingest(PLIST, itemKey, true));
+		assertEquals(dom, stream);
+
+		final XmlSchema schema = ingest(PLIST, itemKey, true);
+		assertTrue(schema.isXMLKeyFold());
+		assertEquals(2, schema.getRows().size());
+		final DataRow a = schema.getRows().get(0);
+		assertEquals("100", a.getValue("Track_ID"));
+		assertEquals("Song A", a.getValue("Name"));
+		assertEquals("true", a.getValue("Compilation"));
+		assertEquals("false", a.getValue("Disabled"));
+		final DataRow b = schema.getRows().get(1);
+		assertEquals("Song & B", b.getValue("Name"));
+		assertEquals("jpeg", b.getValue("array.dict.Format"));
+		assertEquals("Dangling", b.getValue("key"));
+	}
+
+	@Test
+	public void testPrettyPlistWithDoctype() {
+		// indented, and with a DTD we must not try to fetch
+		final String plist = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://127.0.0.1:1/PropertyList-1.0.dtd\">\n"
+				+ "<plist version=\"1.0\">\n<dict>\n"
+				+ "\t<key>Tracks</key>\n\t<dict>\n"
+				+ "\t\t<key>7</key>\n\t\t<dict>\n"
+				+ "\t\t\t<key>Track ID</key><integer>7</integer>\n"
+				+ "\t\t\t<key>Name</key>\n\t\t\t<string>Indented</string>\n"
+				+ "\t\t</dict>\n\t</dict>\n</dict>\n</plist>\n";
+		final XmlSchema schema = ingest(plist, "plist.dict.dict.dict", true);
+		assertEquals(1, schema.getRows().size());
+		assertEquals("7", schema.getRows().get(0).getValue("Track_ID"));
+		assertEquals("Indented", schema.getRows().get(0).getValue("Name"));
+	}
+
+	@Test
+	public void testStreamFromSystemIdIsClosed() throws Exception {
+		final File file = File.createTempFile("XMLIngestTest", ".xml");
+		file.deleteOnExit();
+		final FileOutputStream out = new FileOutputStream(file);
+		out.write(RSS.getBytes("UTF-8"));
+		out.close();
+
+		// no stream of its own: the ingest opens the URL
+		final InputSource input = new InputSource(file.toURI().toString());
+		final XmlSchema schema = (XmlSchema) XMLIngest.ingestXML(null, input, "rss.channel.item", true);
+		assertEquals(2, schema.getRows().size());
+		assertFalse(isOpen(file));
+
+		// the parser itself closes the stream at the end of the document, but not if
+		// it fails part way through
+		final FileOutputStream broken = new FileOutputStream(file);
+		broken.write(RSS.replace("</title>", "</oops>").getBytes("UTF-8"));
+		broken.close();
+		try {
+			XMLIngest.ingestXML(null, new InputSource(file.toURI().toString()), "rss.channel.item", true);
+			fail("parsed broken XML");
+		} catch (tufts.vue.DataSourceException e) {
+		}
+		assertFalse(isOpen(file));
+	}
+
+	/** @return true if we can see (e.g., on Linux) that this process has the file open */
+	private static boolean isOpen(File file) throws Exception {
+		final File[] open = new File("/proc/self/fd").listFiles();
+		if (open != null)
+			for (File fd : open)
+				if (file.getCanonicalPath().equals(fd.getCanonicalPath()))
+					return true;
+		return false;
+	}
+
+	@Test
+	public void testLargeStream() {
+		final int count = 20000;
+		final StringBuilder xml = new StringBuilder("<rss><channel>");
+		for (int i = 0; i < count; i++)
+			xml.append("<item><title>Item ").append(i).append("</title><key>").append(i % 7)
+					.append("</key><link href=\"http://example.com/").append(i).append("\"/></item>");
+		xml.append("</channel></rss>");
+		final XmlSchema schema = ingest(xml.toString(), "rss.channel.item", true);
+		assertEquals(count, schema.getRows().size());
+		assertEquals("Item 12345", schema.getRows().get(12345).getValue("title"));
+		assertEquals("http://example.com/12345", schema.getRows().get(12345).getValue("link@href"));
+		assertEquals(7, schema.getField("key").getValues().size());
+	}
+}